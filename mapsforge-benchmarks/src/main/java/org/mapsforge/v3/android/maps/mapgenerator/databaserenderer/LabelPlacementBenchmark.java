@@ -0,0 +1,289 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.v3.android.maps.mapgenerator.databaserenderer.LabelPlacement.ReferencePosition;
+import org.mapsforge.v3.core.Tile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the collision handling of the {@link LabelPlacement} on synthetic labels which are randomly distributed
+ * over a tile: the four point greedy selection with indexed heaps against the former implementation with
+ * {@link PriorityQueue PriorityQueues}, and the removal of overlapping rectangles with a {@link RectangleGrid} against
+ * the former comparison of all pairs.
+ * <p>
+ * Symbols and label boundaries need Android to be created, so only the parts of the algorithms which work on plain
+ * coordinates are measured.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class LabelPlacementBenchmark {
+	private static final Comparator<ReferencePosition> BOTTOM_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.y < y.y) {
+				return -1;
+			}
+
+			if (x.y > y.y) {
+				return 1;
+			}
+
+			return 0;
+		}
+	};
+
+	/**
+	 * The distance which is kept between the rectangles.
+	 */
+	private static final int DISTANCE = 2;
+
+	/**
+	 * The fraction of reference positions which are invalid, for example because they overlap with a symbol.
+	 */
+	private static final double INVALID_FRACTION = 0.2;
+
+	private static final long SEED = 42;
+
+	private static final Comparator<ReferencePosition> TOP_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.y - x.height < y.y - y.height) {
+				return -1;
+			}
+
+			if (x.y - x.height > y.y - y.height) {
+				return 1;
+			}
+			return 0;
+		}
+	};
+
+	/**
+	 * Removes the overlapping rectangles by comparing all pairs, like the former implementation.
+	 */
+	private static int removeOverlappingPairwise(int[] rectangles, boolean[] removed) {
+		int keptRectangles = 0;
+		for (int x = 0; x < removed.length; ++x) {
+			if (removed[x]) {
+				continue;
+			}
+			++keptRectangles;
+			int left = rectangles[x * 4] - DISTANCE;
+			int top = rectangles[x * 4 + 1] - DISTANCE;
+			int right = rectangles[x * 4 + 2] + DISTANCE;
+			int bottom = rectangles[x * 4 + 3] + DISTANCE;
+			for (int y = x + 1; y < removed.length; ++y) {
+				if (!removed[y] && left < rectangles[y * 4 + 2] && rectangles[y * 4] < right
+						&& top < rectangles[y * 4 + 3] && rectangles[y * 4 + 1] < bottom) {
+					removed[y] = true;
+				}
+			}
+		}
+		return keptRectangles;
+	}
+
+	/**
+	 * Selects the label positions with the former implementation of the four point greedy strategy, which removes
+	 * arbitrary elements from {@link PriorityQueue PriorityQueues} in linear time.
+	 */
+	private static List<ReferencePosition> selectFourPointGreedyPriorityQueue(ReferencePosition[] refPos) {
+		List<ReferencePosition> placedPositions = new ArrayList<ReferencePosition>();
+		PriorityQueue<ReferencePosition> priorUp = new PriorityQueue<ReferencePosition>(refPos.length * 2 + 1,
+				BOTTOM_EDGE_COMPARATOR);
+		PriorityQueue<ReferencePosition> priorDown = new PriorityQueue<ReferencePosition>(refPos.length * 2 + 1,
+				TOP_EDGE_COMPARATOR);
+
+		for (int i = 0; i < refPos.length; i++) {
+			if (refPos[i] != null) {
+				priorUp.add(refPos[i]);
+				priorDown.add(refPos[i]);
+			}
+		}
+
+		while (priorUp.size() != 0) {
+			ReferencePosition referencePosition = priorUp.remove();
+			placedPositions.add(referencePosition);
+
+			if (priorUp.size() == 0) {
+				return placedPositions;
+			}
+
+			for (int i = 0; i < 4; ++i) {
+				priorUp.remove(refPos[referencePosition.nodeNumber * 4 + i]);
+			}
+			for (int i = 0; i < 4; ++i) {
+				priorDown.remove(refPos[referencePosition.nodeNumber * 4 + i]);
+			}
+
+			LinkedList<ReferencePosition> linkedRef = new LinkedList<ReferencePosition>();
+			while (priorDown.size() != 0) {
+				if (priorDown.peek().x < referencePosition.x + referencePosition.width) {
+					linkedRef.add(priorDown.remove());
+				} else {
+					break;
+				}
+			}
+
+			for (int i = 0; i < linkedRef.size(); i++) {
+				if ((linkedRef.get(i).x <= referencePosition.x + referencePosition.width)
+						&& (linkedRef.get(i).y >= referencePosition.y - linkedRef.get(i).height)
+						&& (linkedRef.get(i).y <= referencePosition.y + linkedRef.get(i).height)) {
+					priorUp.remove(linkedRef.get(i));
+					linkedRef.remove(i);
+					i--;
+				}
+			}
+			priorDown.addAll(linkedRef);
+		}
+
+		return placedPositions;
+	}
+
+	/**
+	 * The number of labels per tile.
+	 */
+	@Param({ "10", "100", "1000", "5000" })
+	public int labels;
+
+	private RectangleGrid rectangleGrid;
+	private int[] rectangles;
+	private ReferencePosition[] refPos;
+	private boolean[] removed;
+
+	/**
+	 * Selects the label positions with indexed heaps.
+	 * 
+	 * @return the number of placed labels.
+	 */
+	@Benchmark
+	public int fourPointGreedy() {
+		return LabelPlacement.selectFourPointGreedy(this.refPos).size();
+	}
+
+	/**
+	 * Selects the label positions with the former {@link PriorityQueue} implementation.
+	 * 
+	 * @return the number of placed labels.
+	 */
+	@Benchmark
+	public int fourPointGreedyPriorityQueue() {
+		return selectFourPointGreedyPriorityQueue(this.refPos).size();
+	}
+
+	/**
+	 * Removes the overlapping label rectangles with a grid.
+	 * 
+	 * @return the number of kept rectangles.
+	 */
+	@Benchmark
+	public int removeOverlappingGrid() {
+		RectangleGrid grid = this.rectangleGrid;
+		grid.clear();
+
+		int[] r = this.rectangles;
+		int keptRectangles = 0;
+		for (int i = 0; i < this.labels; ++i) {
+			if (!grid.intersects(r[i * 4], r[i * 4 + 1], r[i * 4 + 2], r[i * 4 + 3])) {
+				grid.add(r[i * 4] - DISTANCE, r[i * 4 + 1] - DISTANCE, r[i * 4 + 2] + DISTANCE, r[i * 4 + 3]
+						+ DISTANCE);
+				++keptRectangles;
+			}
+		}
+		return keptRectangles;
+	}
+
+	/**
+	 * Removes the overlapping label rectangles by comparing all pairs.
+	 * 
+	 * @return the number of kept rectangles.
+	 */
+	@Benchmark
+	public int removeOverlappingPairwise() {
+		for (int i = 0; i < this.removed.length; ++i) {
+			this.removed[i] = false;
+		}
+		return removeOverlappingPairwise(this.rectangles, this.removed);
+	}
+
+	/**
+	 * Creates the random labels with four reference positions each and verifies that both implementations of each
+	 * algorithm return the same result.
+	 */
+	@Setup
+	public void setUp() {
+		Random random = new Random(SEED);
+		this.refPos = new ReferencePosition[this.labels * 4];
+		this.rectangles = new int[this.labels * 4];
+		for (int label = 0; label < this.labels; ++label) {
+			float x = random.nextFloat() * Tile.TILE_SIZE;
+			float y = random.nextFloat() * Tile.TILE_SIZE;
+			float width = 20 + random.nextInt(60);
+			float height = 10 + random.nextInt(6);
+			float symbolSize = 8 + random.nextInt(16);
+
+			float[] positionsX = { x - width / 2, x - width / 2, x - symbolSize / 2 - width, x + symbolSize / 2 };
+			float[] positionsY = { y - symbolSize / 2, y + symbolSize / 2 + height, y + height / 2,
+					y + height / 2 - 0.1f };
+			for (int i = 0; i < 4; ++i) {
+				if (random.nextDouble() >= INVALID_FRACTION) {
+					this.refPos[label * 4 + i] = new ReferencePosition(positionsX[i], positionsY[i], label, width,
+							height, null);
+				}
+			}
+
+			this.rectangles[label * 4] = (int) (x - width / 2);
+			this.rectangles[label * 4 + 1] = (int) (y - height);
+			this.rectangles[label * 4 + 2] = (int) (x + width / 2);
+			this.rectangles[label * 4 + 3] = (int) y;
+		}
+		this.rectangleGrid = new RectangleGrid(-Tile.TILE_SIZE, 2 * Tile.TILE_SIZE);
+		this.removed = new boolean[this.labels];
+
+		List<ReferencePosition> expected = selectFourPointGreedyPriorityQueue(this.refPos);
+		List<ReferencePosition> actual = LabelPlacement.selectFourPointGreedy(this.refPos);
+		if (!expected.equals(actual)) {
+			throw new IllegalStateException("different label positions: " + expected.size() + ", " + actual.size());
+		}
+
+		int expectedRectangles = removeOverlappingPairwise();
+		int actualRectangles = removeOverlappingGrid();
+		if (expectedRectangles != actualRectangles) {
+			throw new IllegalStateException("different rectangles: " + expectedRectangles + ", " + actualRectangles);
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Measures the cost of matching a single element against the rules of {@link InternalRenderTheme#OSMARENDER}, by
+ * walking the rule tree, via the compiled {@link RuleIndex}, via the matching cache of a {@link RenderTheme} which
+ * already contains all elements and via the {@link MatchTable} of a map file which contains all tags except the names,
+ * references and elevations.
+ * <p>
+ * The render instructions of the theme need Android to be created, so they are replaced by instructions which only
+ * count their calls.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class RenderThemeBenchmark {
+	/**
+	 * Replaces all render instructions and counts how often they are executed.
+	 */
+	private static final class CountingRenderInstruction implements RenderInstruction {
+		int calls;
+
+		CountingRenderInstruction() {
+			// do nothing
+		}
+
+		@Override
+		public void destroy() {
+			// do nothing
+		}
+
+		@Override
+		public void renderNode(RenderCallback renderCallback, List<Tag> tags) {
+			++this.calls;
+		}
+
+		@Override
+		public void renderWay(RenderCallback renderCallback, List<Tag> tags) {
+			++this.calls;
+		}
+
+		@Override
+		public void scaleStrokeWidth(float scaleFactor) {
+			// do nothing
+		}
+
+		@Override
+		public void scaleTextSize(float scaleFactor) {
+			// do nothing
+		}
+	}
+
+	/**
+	 * Builds the rule tree of a render theme like the RenderThemeHandler, but without real render instructions.
+	 */
+	private static final class RuleHandler extends DefaultHandler {
+		final List<Rule> rules = new ArrayList<Rule>();
+		private final RenderInstruction renderInstruction;
+		private final Stack<Rule> ruleStack = new Stack<Rule>();
+
+		RuleHandler(RenderInstruction renderInstruction) {
+			super();
+			this.renderInstruction = renderInstruction;
+		}
+
+		@Override
+		public void endDocument() {
+			for (int i = 0, n = this.rules.size(); i < n; ++i) {
+				this.rules.get(i).onComplete();
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) {
+			if ("rule".equals(localName)) {
+				this.ruleStack.pop();
+			}
+		}
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) {
+			if ("rule".equals(localName)) {
+				Rule rule = Rule.create(localName, attributes, this.ruleStack);
+				if (this.ruleStack.empty()) {
+					this.rules.add(rule);
+				} else {
+					this.ruleStack.peek().addSubRule(rule);
+				}
+				this.ruleStack.push(rule);
+			} else if (!this.ruleStack.empty()) {
+				this.ruleStack.peek().addRenderingInstruction(this.renderInstruction);
+			}
+		}
+	}
+
+	private static final List<List<Tag>> AREAS = Arrays.asList(Arrays.asList(new Tag("building", "yes")),
+			Arrays.asList(new Tag("landuse", "forest")), Arrays.asList(new Tag("natural", "water")),
+			Arrays.asList(new Tag("amenity", "parking")), Arrays.asList(new Tag("leisure", "park")),
+			Arrays.asList(new Tag("landuse", "residential")));
+
+	/**
+	 * The keys of the tags which a map database passes in addition to those referenced by tag IDs.
+	 */
+	private static final List<String> IMPLICIT_KEYS = Arrays.asList("addr:housenumber", "ele", "name", "ref");
+
+	private static final List<List<Tag>> NODES = Arrays.asList(
+			Arrays.asList(new Tag("place", "city"), new Tag("name", "Berlin")),
+			Arrays.asList(new Tag("amenity", "restaurant"), new Tag("name", "Zur Post")),
+			Arrays.asList(new Tag("highway", "bus_stop")),
+			Arrays.asList(new Tag("natural", "peak"), new Tag("name", "Brocken"), new Tag("ele", "1141")),
+			Arrays.asList(new Tag("shop", "supermarket")), Arrays.asList(new Tag("tourism", "hotel")),
+			Arrays.asList(new Tag("barrier", "gate")), Arrays.asList(new Tag("power", "tower")));
+
+	private static final String OSMARENDER_FILE = "osmarender.xml";
+
+	private static final List<List<Tag>> WAYS = Arrays.asList(
+			Arrays.asList(new Tag("highway", "residential"), new Tag("name", "Hauptstraße")),
+			Arrays.asList(new Tag("highway", "motorway"), new Tag("ref", "A 2")),
+			Arrays.asList(new Tag("highway", "footway")), Arrays.asList(new Tag("railway", "rail")),
+			Arrays.asList(new Tag("waterway", "river"), new Tag("name", "Elbe")),
+			Arrays.asList(new Tag("boundary", "administrative"), new Tag("admin_level", "8")),
+			Arrays.asList(new Tag("highway", "primary"), new Tag("bridge", "yes"), new Tag("layer", "1")),
+			Arrays.asList(new Tag("power", "line")));
+
+	private static Tag[] getMapFileTags(List<List<Tag>> elements) {
+		List<Tag> mapFileTags = new ArrayList<Tag>();
+		for (int i = 0, n = elements.size(); i < n; ++i) {
+			List<Tag> tags = elements.get(i);
+			for (int j = 0, m = tags.size(); j < m; ++j) {
+				if (!IMPLICIT_KEYS.contains(tags.get(j).key)) {
+					mapFileTags.add(tags.get(j));
+				}
+			}
+		}
+		return mapFileTags.toArray(new Tag[mapFileTags.size()]);
+	}
+
+	/**
+	 * The zoom level at which the elements are matched.
+	 */
+	@Param({ "12", "17" })
+	public byte zoomLevel;
+
+	private RuleIndex closedWayRuleIndex;
+	private final CountingRenderInstruction countingRenderInstruction = new CountingRenderInstruction();
+	private RuleIndex linearWayRuleIndex;
+	private MatchTable matchTable;
+	private final List<RenderInstruction> matchingList = new ArrayList<RenderInstruction>();
+	private int nextElement;
+	private RuleIndex nodeRuleIndex;
+	private RenderTheme renderTheme;
+	private List<Rule> rules;
+
+	/**
+	 * Matches the next node, way and area via the matching cache of the render theme.
+	 * 
+	 * @return the number of executed render instructions.
+	 */
+	@Benchmark
+	public int matchCached() {
+		this.countingRenderInstruction.calls = 0;
+		int element = this.nextElement++;
+
+		this.renderTheme.matchNode(null, NODES.get(element % NODES.size()), this.zoomLevel);
+		this.renderTheme.matchLinearWay(null, WAYS.get(element % WAYS.size()), this.zoomLevel);
+		this.renderTheme.matchClosedWay(null, AREAS.get(element % AREAS.size()), this.zoomLevel);
+		return this.countingRenderInstruction.calls;
+	}
+
+	/**
+	 * Matches the next node, way and area via the compiled rules.
+	 * 
+	 * @return the number of executed render instructions.
+	 */
+	@Benchmark
+	public int matchCompiled() {
+		this.countingRenderInstruction.calls = 0;
+		this.matchingList.clear();
+		int element = this.nextElement++;
+
+		if (this.nodeRuleIndex != null) {
+			this.nodeRuleIndex.matchNode(null, NODES.get(element % NODES.size()), this.matchingList);
+		}
+		if (this.linearWayRuleIndex != null) {
+			this.linearWayRuleIndex.matchWay(null, WAYS.get(element % WAYS.size()), this.matchingList);
+		}
+		if (this.closedWayRuleIndex != null) {
+			this.closedWayRuleIndex.matchWay(null, AREAS.get(element % AREAS.size()), this.matchingList);
+		}
+		return this.countingRenderInstruction.calls;
+	}
+
+	/**
+	 * Matches the next node, way and area via the match table of the map file.
+	 * 
+	 * @return the number of executed render instructions.
+	 */
+	@Benchmark
+	public int matchTable() {
+		this.countingRenderInstruction.calls = 0;
+		this.matchingList.clear();
+		int element = this.nextElement++;
+
+		this.matchTable.matchNode(null, NODES.get(element % NODES.size()), this.zoomLevel, this.matchingList);
+		this.matchTable.matchWay(null, WAYS.get(element % WAYS.size()), this.zoomLevel, Closed.NO, this.matchingList);
+		this.matchTable.matchWay(null, AREAS.get(element % AREAS.size()), this.zoomLevel, Closed.YES,
+				this.matchingList);
+		return this.countingRenderInstruction.calls;
+	}
+
+	/**
+	 * Matches the next node, way and area by walking the rule tree.
+	 * 
+	 * @return the number of executed render instructions.
+	 */
+	@Benchmark
+	public int matchTree() {
+		this.countingRenderInstruction.calls = 0;
+		this.matchingList.clear();
+		int element = this.nextElement++;
+
+		List<Tag> node = NODES.get(element % NODES.size());
+		List<Tag> way = WAYS.get(element % WAYS.size());
+		List<Tag> area = AREAS.get(element % AREAS.size());
+		for (int i = 0, n = this.rules.size(); i < n; ++i) {
+			Rule rule = this.rules.get(i);
+			rule.matchNode(null, node, this.zoomLevel);
+			rule.matchWay(null, way, this.zoomLevel, Closed.NO, this.matchingList);
+			rule.matchWay(null, area, this.zoomLevel, Closed.YES, this.matchingList);
+		}
+		return this.countingRenderInstruction.calls;
+	}
+
+	/**
+	 * Parses the rules of the render theme, compiles them for the zoom level, fills the matching cache and creates the
+	 * match table.
+	 * 
+	 * @throws IOException
+	 *             if the render theme cannot be read.
+	 * @throws ParserConfigurationException
+	 *             if the XML parser cannot be created.
+	 * @throws SAXException
+	 *             if the render theme cannot be parsed.
+	 */
+	@Setup
+	public void setUp() throws IOException, ParserConfigurationException, SAXException {
+		SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+		saxParserFactory.setNamespaceAware(true);
+		XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
+		RuleHandler ruleHandler = new RuleHandler(this.countingRenderInstruction);
+		xmlReader.setContentHandler(ruleHandler);
+
+		// InternalRenderTheme#getRenderThemeAsStream depends on the class loader of the current thread's class
+		String path = InternalRenderTheme.OSMARENDER.getRelativePathPrefix() + OSMARENDER_FILE;
+		InputStream inputStream = InternalRenderTheme.class.getResourceAsStream(path);
+		if (inputStream == null) {
+			throw new IOException("render theme not found: " + path);
+		}
+		try {
+			xmlReader.parse(new InputSource(inputStream));
+		} finally {
+			inputStream.close();
+		}
+
+		this.rules = ruleHandler.rules;
+		this.nodeRuleIndex = RuleIndex.create(this.rules, Element.NODE, Closed.ANY, this.zoomLevel);
+		this.linearWayRuleIndex = RuleIndex.create(this.rules, Element.WAY, Closed.NO, this.zoomLevel);
+		this.closedWayRuleIndex = RuleIndex.create(this.rules, Element.WAY, Closed.YES, this.zoomLevel);
+
+		List<List<Tag>> allWays = new ArrayList<List<Tag>>(WAYS);
+		allWays.addAll(AREAS);
+		this.matchTable = new MatchTable(this.rules, getMapFileTags(NODES), getMapFileTags(allWays));
+
+		this.renderTheme = new RenderTheme(0, 1, 1);
+		for (int i = 0, n = this.rules.size(); i < n; ++i) {
+			this.renderTheme.addRule(this.rules.get(i));
+		}
+		this.renderTheme.complete();
+		for (int i = 0, n = NODES.size(); i < n; ++i) {
+			this.renderTheme.matchNode(null, NODES.get(i), this.zoomLevel);
+		}
+		for (int i = 0, n = WAYS.size(); i < n; ++i) {
+			this.renderTheme.matchLinearWay(null, WAYS.get(i), this.zoomLevel);
+		}
+		for (int i = 0, n = AREAS.size(); i < n; ++i) {
+			this.renderTheme.matchClosedWay(null, AREAS.get(i), this.zoomLevel);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the projection of way nodes to tile-relative pixel coordinates by {@link TileProjection} with the exact
+ * formula of {@link MercatorProjection}. Each operation projects one way node.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class TileProjectionBenchmark {
+	private static final double CONVERSION_FACTOR = 1000000d;
+	private static final double LATITUDE = 52.5;
+	private static final double LONGITUDE = 13.4;
+	private static final int NUMBER_OF_WAY_NODES = 4096;
+
+	private static float sum(float[] values) {
+		float sum = 0;
+		for (float value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * The zoom level of the tile.
+	 */
+	@Param({ "8", "14", "18" })
+	public byte zoomLevel;
+
+	private float[] coordinates;
+	private float[] pixelCoordinates;
+	private Tile tile;
+	private TileProjection tileProjection;
+
+	/**
+	 * @return the sum of all pixel coordinates.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_WAY_NODES)
+	public float projectExact() {
+		float[] source = this.coordinates;
+		float[] target = this.pixelCoordinates;
+		byte tileZoomLevel = this.tile.zoomLevel;
+		long tilePixelX = this.tile.getPixelX();
+		long tilePixelY = this.tile.getPixelY();
+		for (int i = 0; i < source.length; i += 2) {
+			target[i] = (float) (MercatorProjection.longitudeToPixelX(source[i] / CONVERSION_FACTOR, tileZoomLevel)
+					- tilePixelX);
+			target[i + 1] = (float) (MercatorProjection.latitudeToPixelY(source[i + 1] / CONVERSION_FACTOR,
+					tileZoomLevel) - tilePixelY);
+		}
+		return sum(target);
+	}
+
+	/**
+	 * @return the sum of all pixel coordinates.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_WAY_NODES)
+	public float projectTable() {
+		System.arraycopy(this.coordinates, 0, this.pixelCoordinates, 0, this.coordinates.length);
+		this.tileProjection.project(this.pixelCoordinates);
+		return sum(this.pixelCoordinates);
+	}
+
+	/**
+	 * Creates random way nodes on the tile at the given zoom level which contains the map center.
+	 */
+	@Setup
+	public void setUp() {
+		this.tile = new Tile(MercatorProjection.longitudeToTileX(LONGITUDE, this.zoomLevel),
+				MercatorProjection.latitudeToTileY(LATITUDE, this.zoomLevel), this.zoomLevel);
+		this.tileProjection = new TileProjection(this.tile);
+
+		Random random = new Random(NUMBER_OF_WAY_NODES);
+		this.coordinates = new float[NUMBER_OF_WAY_NODES * 2];
+		this.pixelCoordinates = new float[this.coordinates.length];
+		for (int i = 0; i < this.coordinates.length; i += 2) {
+			double pixelX = this.tile.getPixelX() + random.nextDouble() * Tile.TILE_SIZE;
+			double pixelY = this.tile.getPixelY() + random.nextDouble() * Tile.TILE_SIZE;
+			this.coordinates[i] = (int) (MercatorProjection.pixelXToLongitude(pixelX, this.zoomLevel)
+					* CONVERSION_FACTOR);
+			this.coordinates[i + 1] = (int) (MercatorProjection.pixelYToLatitude(pixelY, this.zoomLevel)
+					* CONVERSION_FACTOR);
+		}
+	}
+}
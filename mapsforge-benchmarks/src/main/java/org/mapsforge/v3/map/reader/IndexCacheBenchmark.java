@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link IndexCache#getIndexEntry(SubFileParameter, long)} for random blocks of a synthetic map file. A
+ * small cache shows the cost of reading index blocks from the file, a large cache the cost of a cache hit.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class IndexCacheBenchmark {
+	private static final int NUMBER_OF_BLOCK_NUMBERS = 1024;
+
+	/**
+	 * The number of blocks in each row and column of the synthetic map file.
+	 */
+	@Param({ "64", "512" })
+	public int blocksPerSide;
+
+	/**
+	 * The capacity of the index cache in bytes.
+	 */
+	@Param({ "640", "655360" })
+	public long indexCacheSize;
+
+	private long[] blockNumbers;
+	private File file;
+	private IndexCache indexCache;
+	private MapFileChannel mapFileChannel;
+	private int nextBlockNumber;
+	private SubFileParameter subFileParameter;
+
+	/**
+	 * @return the index entry of the next random block.
+	 */
+	@Benchmark
+	public long getIndexEntry() {
+		long blockNumber = this.blockNumbers[this.nextBlockNumber];
+		this.nextBlockNumber = (this.nextBlockNumber + 1) % NUMBER_OF_BLOCK_NUMBERS;
+		return this.indexCache.getIndexEntry(this.subFileParameter, blockNumber);
+	}
+
+	/**
+	 * Creates and opens a synthetic map file with empty blocks.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be created or read.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		this.file = SyntheticMapFile.create(this.blocksPerSide, 0, 0, 2, false);
+		this.mapFileChannel = new MapFileChannel(this.file);
+		this.subFileParameter = SyntheticMapFile.readSubFileParameter(this.mapFileChannel);
+		this.indexCache = new IndexCache(this.mapFileChannel, null, this.indexCacheSize);
+
+		Random random = new Random(NUMBER_OF_BLOCK_NUMBERS);
+		this.blockNumbers = new long[NUMBER_OF_BLOCK_NUMBERS];
+		for (int i = 0; i < NUMBER_OF_BLOCK_NUMBERS; ++i) {
+			this.blockNumbers[i] = random.nextInt((int) this.subFileParameter.numberOfBlocks);
+		}
+	}
+
+	/**
+	 * Destroys the index cache and deletes the synthetic map file.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.indexCache.destroy();
+		this.mapFileChannel.close();
+		if (!this.file.delete()) {
+			this.file.deleteOnExit();
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.FileOpenResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures complete tile queries via {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} and
+ * {@link MapDatabase#executeQuery(Tile, RawMapDatabaseCallback)} for random tiles of a synthetic map file. The size
+ * of the file is configured via the number of blocks per side and the number of elements per block.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class MapDatabaseBenchmark {
+	private static final int NUMBER_OF_TILES = 1024;
+	private static final int WAY_NODES = 20;
+
+	/**
+	 * The capacity of the decoded block cache in bytes, zero to disable it.
+	 */
+	@Param({ "0", "67108864" })
+	public long blockCacheSize;
+
+	/**
+	 * The number of blocks in each row and column of the synthetic map file.
+	 */
+	@Param({ "16", "64" })
+	public int blocksPerSide;
+
+	/**
+	 * The number of POIs and the number of ways in each block.
+	 */
+	@Param({ "64" })
+	public int elementsPerBlock;
+
+	/**
+	 * True if the map file should be memory-mapped, false otherwise.
+	 */
+	@Param({ "false", "true" })
+	public boolean memoryMapped;
+
+	/**
+	 * The zoom level of the queried tiles.
+	 */
+	@Param({ "12", "14", "16" })
+	public byte zoomLevel;
+
+	private BlackholeCallback blackholeCallback;
+	private File file;
+	private MapDatabase mapDatabase;
+	private int nextTile;
+	private Tile[] tiles;
+
+	/**
+	 * Queries the next random tile with the classic callback.
+	 * 
+	 * @param blackhole
+	 *            the sink for the map elements.
+	 */
+	@Benchmark
+	public void executeQuery(Blackhole blackhole) {
+		this.blackholeCallback.blackhole = blackhole;
+		this.mapDatabase.executeQuery(nextTile(), (MapDatabaseCallback) this.blackholeCallback);
+	}
+
+	/**
+	 * Queries the next random tile with the raw callback.
+	 * 
+	 * @param blackhole
+	 *            the sink for the map elements.
+	 */
+	@Benchmark
+	public void executeQueryRaw(Blackhole blackhole) {
+		this.blackholeCallback.blackhole = blackhole;
+		this.mapDatabase.executeQuery(nextTile(), (RawMapDatabaseCallback) this.blackholeCallback);
+	}
+
+	/**
+	 * Creates and opens a synthetic map file and creates random tiles inside it.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be created or opened.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		this.file = SyntheticMapFile.create(this.blocksPerSide, this.elementsPerBlock, this.elementsPerBlock,
+				WAY_NODES, true);
+		this.mapDatabase = new MapDatabase();
+		this.mapDatabase.setBlockCacheSize(this.blockCacheSize);
+		FileOpenResult fileOpenResult = this.mapDatabase.openFile(this.file, this.memoryMapped);
+		if (!fileOpenResult.isSuccess()) {
+			throw new IOException(fileOpenResult.getErrorMessage());
+		}
+
+		this.blackholeCallback = new BlackholeCallback();
+		Random random = new Random(NUMBER_OF_TILES);
+		this.tiles = new Tile[NUMBER_OF_TILES];
+		for (int i = 0; i < NUMBER_OF_TILES; ++i) {
+			this.tiles[i] = SyntheticMapFile.getRandomTile(this.blocksPerSide, this.zoomLevel, random);
+		}
+	}
+
+	/**
+	 * Closes and deletes the synthetic map file.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.mapDatabase.closeFile();
+		if (!this.file.delete()) {
+			this.file.deleteOnExit();
+		}
+	}
+
+	private Tile nextTile() {
+		Tile tile = this.tiles[this.nextTile];
+		this.nextTile = (this.nextTile + 1) % NUMBER_OF_TILES;
+		return tile;
+	}
+
+	/**
+	 * Passes all map elements to a {@link Blackhole}, so that their decoding cannot be eliminated.
+	 */
+	private static final class BlackholeCallback implements MapDatabaseCallback, RawMapDatabaseCallback {
+		Blackhole blackhole;
+
+		BlackholeCallback() {
+			// do nothing
+		}
+
+		@Override
+		public void renderPointOfInterest(byte layer, int latitude, int longitude, List<Tag> tags) {
+			this.blackhole.consume(latitude);
+			this.blackhole.consume(tags);
+		}
+
+		@Override
+		public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+			this.blackhole.consume(pointOfInterest.getLatitude());
+			this.blackhole.consume(pointOfInterest.getTagIds());
+		}
+
+		@Override
+		public void renderWaterBackground() {
+			// do nothing
+		}
+
+		@Override
+		public void renderWay(byte layer, float[] labelPosition, List<Tag> tags, float[][] wayNodes) {
+			this.blackhole.consume(tags);
+			this.blackhole.consume(wayNodes);
+		}
+
+		@Override
+		public void renderWay(RawWay way) {
+			this.blackhole.consume(way.getTagIds());
+			this.blackhole.consume(way.getCoordinates());
+		}
+	}
+}
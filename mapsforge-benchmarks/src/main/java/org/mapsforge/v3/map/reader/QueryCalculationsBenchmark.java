@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the calculation of the base tiles, the tile bitmask and the blocks of a query by {@link QueryCalculations}
+ * for random tiles at zoom levels below, at and above the base zoom level.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class QueryCalculationsBenchmark {
+	private static final int BLOCKS_PER_SIDE = 16;
+	private static final int NUMBER_OF_TILES = 1024;
+
+	/**
+	 * The zoom level of the tiles.
+	 */
+	@Param({ "12", "14", "16" })
+	public byte zoomLevel;
+
+	private int nextTile;
+	private QueryParameters queryParameters;
+	private SubFileParameter subFileParameter;
+	private Tile[] tiles;
+
+	/**
+	 * @return a checksum of the calculated query parameters.
+	 */
+	@Benchmark
+	public long calculateQuery() {
+		Tile tile = this.tiles[this.nextTile];
+		this.nextTile = (this.nextTile + 1) % NUMBER_OF_TILES;
+
+		QueryCalculations.calculateBaseTiles(this.queryParameters, tile, this.subFileParameter);
+		QueryCalculations.calculateBlocks(this.queryParameters, this.subFileParameter);
+		return this.queryParameters.fromBlockX + this.queryParameters.toBlockY + this.queryParameters.queryTileBitmask;
+	}
+
+	/**
+	 * Reads the sub-file parameters of a synthetic map file and creates random tiles inside it.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be created or read.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		File file = SyntheticMapFile.create(BLOCKS_PER_SIDE, 0, 0, 2, false);
+		MapFileChannel mapFileChannel = new MapFileChannel(file);
+		try {
+			this.subFileParameter = SyntheticMapFile.readSubFileParameter(mapFileChannel);
+		} finally {
+			mapFileChannel.close();
+			if (!file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+
+		this.queryParameters = new QueryParameters();
+		Random random = new Random(NUMBER_OF_TILES);
+		this.tiles = new Tile[NUMBER_OF_TILES];
+		for (int i = 0; i < NUMBER_OF_TILES; ++i) {
+			this.tiles[i] = SyntheticMapFile.getRandomTile(BLOCKS_PER_SIDE, this.zoomLevel, random);
+		}
+	}
+}
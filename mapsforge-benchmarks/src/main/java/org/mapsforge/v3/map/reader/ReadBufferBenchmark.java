@@ -0,0 +1,161 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the decoding of variable-byte encoded integers by {@link ReadBuffer#readSignedInt()},
+ * {@link ReadBuffer#readSignedInts(int[], int, int)} and {@link ReadBuffer#readUnsignedInt()}. Each operation decodes
+ * one value.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class ReadBufferBenchmark {
+	private static final int NUMBER_OF_VALUES = 4096;
+
+	private static ReadBuffer createReadBuffer(MapFileChannel mapFileChannel, long address, int length)
+			throws IOException {
+		ReadBuffer readBuffer = new ReadBuffer(mapFileChannel);
+		if (!readBuffer.readFromFile(address, length)) {
+			throw new IOException("reading the values has failed");
+		}
+		return readBuffer;
+	}
+
+	/**
+	 * The maximum absolute value, which determines the number of bytes per value.
+	 */
+	@Param({ "63", "8191", "1048575" })
+	public int maximumValue;
+
+	private File file;
+	private MapFileChannel mapFileChannel;
+	private ReadBuffer signedReadBuffer;
+	private ReadBuffer unsignedReadBuffer;
+	private final int[] values = new int[NUMBER_OF_VALUES];
+
+	/**
+	 * @return the sum of all signed values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_VALUES)
+	public int readSignedInt() {
+		ReadBuffer readBuffer = this.signedReadBuffer;
+		readBuffer.setBufferPosition(0);
+		int sum = 0;
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			sum += readBuffer.readSignedInt();
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the sum of all signed values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_VALUES)
+	public int readSignedInts() {
+		ReadBuffer readBuffer = this.signedReadBuffer;
+		readBuffer.setBufferPosition(0);
+		readBuffer.readSignedInts(this.values, 0, NUMBER_OF_VALUES);
+		int sum = 0;
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			sum += this.values[i];
+		}
+		return sum;
+	}
+
+	/**
+	 * @return the sum of all unsigned values.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(NUMBER_OF_VALUES)
+	public int readUnsignedInt() {
+		ReadBuffer readBuffer = this.unsignedReadBuffer;
+		readBuffer.setBufferPosition(0);
+		int sum = 0;
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			sum += readBuffer.readUnsignedInt();
+		}
+		return sum;
+	}
+
+	/**
+	 * Writes random signed and unsigned values to a temporary file and reads them into two buffers.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be written or read.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		Random random = new Random(NUMBER_OF_VALUES);
+		ByteArrayOutputStream signedValues = new ByteArrayOutputStream();
+		ByteArrayOutputStream unsignedValues = new ByteArrayOutputStream();
+		for (int i = 0; i < NUMBER_OF_VALUES; ++i) {
+			SyntheticMapFile.writeSignedInt(signedValues, random.nextInt(2 * this.maximumValue + 1)
+					- this.maximumValue);
+			SyntheticMapFile.writeUnsignedInt(unsignedValues, random.nextInt(this.maximumValue + 1));
+		}
+
+		this.file = File.createTempFile("values", ".bin");
+		OutputStream outputStream = new FileOutputStream(this.file);
+		try {
+			signedValues.writeTo(outputStream);
+			unsignedValues.writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
+
+		this.mapFileChannel = new MapFileChannel(this.file);
+		this.signedReadBuffer = createReadBuffer(this.mapFileChannel, 0, signedValues.size());
+		this.unsignedReadBuffer = createReadBuffer(this.mapFileChannel, signedValues.size(), unsignedValues.size());
+	}
+
+	/**
+	 * Closes and deletes the temporary file.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.mapFileChannel.close();
+		if (!this.file.delete()) {
+			this.file.deleteOnExit();
+		}
+	}
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.mapsforge.v3.core.MercatorProjection;
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.FileOpenResult;
+import org.mapsforge.v3.map.reader.header.MapFileHeader;
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+
+/**
+ * Creates binary map files with random content for the benchmarks.
+ * <p>
+ * A synthetic map file has a single sub-file with a square grid of blocks at the base zoom level. Each block contains
+ * the given number of POIs and ways with random tags, names and coordinates, all of them visible from the minimum zoom
+ * level on. The content depends only on the parameters, so repeated runs read exactly the same data.
+ */
+public final class SyntheticMapFile {
+	/**
+	 * The base zoom level of the sub-file.
+	 */
+	public static final byte BASE_ZOOM_LEVEL = 14;
+
+	/**
+	 * The X number of the upper left block at the base zoom level.
+	 */
+	public static final long FIRST_TILE_X = MercatorProjection.longitudeToTileX(13.4, BASE_ZOOM_LEVEL);
+
+	/**
+	 * The Y number of the upper left block at the base zoom level.
+	 */
+	public static final long FIRST_TILE_Y = MercatorProjection.latitudeToTileY(52.5, BASE_ZOOM_LEVEL);
+
+	/**
+	 * The maximum zoom level of the sub-file.
+	 */
+	public static final byte ZOOM_LEVEL_MAX = 18;
+
+	/**
+	 * The minimum zoom level of the sub-file.
+	 */
+	public static final byte ZOOM_LEVEL_MIN = 12;
+
+	private static final String[] ELEMENT_NAMES = { "Alexanderplatz", "Friedrichstra\u00dfe", "Unter den Linden",
+			"Potsdamer Platz", "Kurf\u00fcrstendamm" };
+	private static final int FILE_VERSION = 3;
+	private static final String MAGIC_BYTE = "mapsforge binary OSM";
+	private static final long MAP_DATE = 1330000000000L;
+	private static final String[] POI_TAGS = { "amenity=cafe", "amenity=restaurant", "shop=bakery",
+			"tourism=hotel" };
+	private static final String PROJECTION = "Mercator";
+	private static final long RANDOM_SEED = 42;
+	private static final int TILE_PIXEL_SIZE = 256;
+	private static final int WAY_FEATURE_DOUBLE_DELTA_ENCODING = 0x04;
+	private static final int WAY_FEATURE_NAME = 0x80;
+	private static final int WAY_NODE_MAXIMUM_STEP = 20;
+	private static final String[] WAY_TAGS = { "building=yes", "highway=primary", "highway=residential",
+			"landuse=forest", "natural=water" };
+
+	/**
+	 * Creates a new synthetic map file, which is deleted when the virtual machine terminates.
+	 * 
+	 * @param blocksPerSide
+	 *            the number of blocks in each row and column of the grid.
+	 * @param poisPerBlock
+	 *            the number of POIs in each block.
+	 * @param waysPerBlock
+	 *            the number of ways in each block.
+	 * @param wayNodes
+	 *            the number of way nodes of each way.
+	 * @param doubleDeltaEncoding
+	 *            true if the way nodes should be stored with double-delta encoding, false for single-delta encoding.
+	 * @return the new map file.
+	 * @throws IOException
+	 *             if the file cannot be written.
+	 */
+	public static File create(int blocksPerSide, int poisPerBlock, int waysPerBlock, int wayNodes,
+			boolean doubleDeltaEncoding) throws IOException {
+		if (blocksPerSide < 1) {
+			throw new IllegalArgumentException("blocksPerSide must be positive: " + blocksPerSide);
+		} else if (wayNodes < 2) {
+			throw new IllegalArgumentException("a way needs at least two way nodes: " + wayNodes);
+		}
+
+		Random random = new Random(RANDOM_SEED);
+		int numberOfBlocks = blocksPerSide * blocksPerSide;
+		int indexSize = numberOfBlocks * SubFileParameter.BYTES_PER_INDEX_ENTRY;
+
+		ByteArrayOutputStream index = new ByteArrayOutputStream(indexSize);
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		for (int block = 0; block < numberOfBlocks; ++block) {
+			writeFiveBytes(index, indexSize + blocks.size());
+			writeBlock(blocks, random, poisPerBlock, waysPerBlock, wayNodes, doubleDeltaEncoding);
+		}
+		long subFileSize = (long) index.size() + blocks.size();
+
+		// the size of the header does not depend on the values of its numeric fields
+		int headerSize = createHeader(blocksPerSide, 0, 0, 0).length;
+		byte[] header = createHeader(blocksPerSide, headerSize + subFileSize, headerSize, subFileSize);
+
+		File file = File.createTempFile("synthetic", ".map");
+		file.deleteOnExit();
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			outputStream.write(header);
+			index.writeTo(outputStream);
+			blocks.writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
+		return file;
+	}
+
+	/**
+	 * @param blocksPerSide
+	 *            the number of blocks in each row and column of the grid.
+	 * @param zoomLevel
+	 *            the zoom level of the tile.
+	 * @param random
+	 *            the source of randomness.
+	 * @return a random tile at the given zoom level which lies inside the grid of a synthetic map file.
+	 */
+	public static Tile getRandomTile(int blocksPerSide, byte zoomLevel, Random random) {
+		long tileX = FIRST_TILE_X + random.nextInt(blocksPerSide);
+		long tileY = FIRST_TILE_Y + random.nextInt(blocksPerSide);
+		if (zoomLevel < BASE_ZOOM_LEVEL) {
+			int zoomLevelDifference = BASE_ZOOM_LEVEL - zoomLevel;
+			return new Tile(tileX >>> zoomLevelDifference, tileY >>> zoomLevelDifference, zoomLevel);
+		}
+		int zoomLevelDifference = zoomLevel - BASE_ZOOM_LEVEL;
+		long subTileX = random.nextInt(1 << zoomLevelDifference);
+		long subTileY = random.nextInt(1 << zoomLevelDifference);
+		return new Tile((tileX << zoomLevelDifference) + subTileX, (tileY << zoomLevelDifference) + subTileY,
+				zoomLevel);
+	}
+
+	/**
+	 * Reads the header of a synthetic map file.
+	 * 
+	 * @param mapFileChannel
+	 *            the opened map file.
+	 * @return the parameters of the only sub-file.
+	 * @throws IOException
+	 *             if the header cannot be read or is invalid.
+	 */
+	static SubFileParameter readSubFileParameter(MapFileChannel mapFileChannel) throws IOException {
+		MapFileHeader mapFileHeader = new MapFileHeader();
+		FileOpenResult fileOpenResult = mapFileHeader.readHeader(new ReadBuffer(mapFileChannel),
+				mapFileChannel.size());
+		if (!fileOpenResult.isSuccess()) {
+			throw new IOException(fileOpenResult.getErrorMessage());
+		}
+		return mapFileHeader.getSubFileParameters()[0];
+	}
+
+	private static int centerLatitude(long tileY) {
+		double latitude = (MercatorProjection.tileYToLatitude(tileY, BASE_ZOOM_LEVEL) + MercatorProjection
+				.tileYToLatitude(tileY + 1, BASE_ZOOM_LEVEL)) / 2;
+		return (int) (latitude * 1000000);
+	}
+
+	private static int centerLongitude(long tileX) {
+		double longitude = (MercatorProjection.tileXToLongitude(tileX, BASE_ZOOM_LEVEL) + MercatorProjection
+				.tileXToLongitude(tileX + 1, BASE_ZOOM_LEVEL)) / 2;
+		return (int) (longitude * 1000000);
+	}
+
+	private static byte[] createHeader(int blocksPerSide, long fileSize, long startAddress, long subFileSize)
+			throws IOException {
+		ByteArrayOutputStream remainingHeader = new ByteArrayOutputStream();
+		DataOutputStream dataOutputStream = new DataOutputStream(remainingHeader);
+		dataOutputStream.writeInt(FILE_VERSION);
+		dataOutputStream.writeLong(fileSize);
+		dataOutputStream.writeLong(MAP_DATE);
+
+		// the bounding box connects the centers of the outer blocks, so that it covers exactly the grid
+		dataOutputStream.writeInt(centerLatitude(FIRST_TILE_Y + blocksPerSide - 1));
+		dataOutputStream.writeInt(centerLongitude(FIRST_TILE_X));
+		dataOutputStream.writeInt(centerLatitude(FIRST_TILE_Y));
+		dataOutputStream.writeInt(centerLongitude(FIRST_TILE_X + blocksPerSide - 1));
+
+		dataOutputStream.writeShort(TILE_PIXEL_SIZE);
+		writeString(remainingHeader, PROJECTION);
+
+		// no optional fields
+		dataOutputStream.writeByte(0);
+
+		writeTags(remainingHeader, POI_TAGS);
+		writeTags(remainingHeader, WAY_TAGS);
+
+		// a single sub-file
+		dataOutputStream.writeByte(1);
+		dataOutputStream.writeByte(BASE_ZOOM_LEVEL);
+		dataOutputStream.writeByte(ZOOM_LEVEL_MIN);
+		dataOutputStream.writeByte(ZOOM_LEVEL_MAX);
+		dataOutputStream.writeLong(startAddress);
+		dataOutputStream.writeLong(subFileSize);
+		dataOutputStream.flush();
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		header.write(MAGIC_BYTE.getBytes("UTF-8"));
+		new DataOutputStream(header).writeInt(remainingHeader.size());
+		remainingHeader.writeTo(header);
+		return header.toByteArray();
+	}
+
+	private static void writeBlock(ByteArrayOutputStream blocks, Random random, int poisPerBlock, int waysPerBlock,
+			int wayNodes, boolean doubleDeltaEncoding) throws IOException {
+		// all elements are visible from the minimum zoom level on
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			boolean firstRow = zoomLevel == ZOOM_LEVEL_MIN;
+			writeUnsignedInt(blocks, firstRow ? poisPerBlock : 0);
+			writeUnsignedInt(blocks, firstRow ? waysPerBlock : 0);
+		}
+
+		ByteArrayOutputStream pois = new ByteArrayOutputStream();
+		for (int poi = 0; poi < poisPerBlock; ++poi) {
+			// the offsets are relative to the upper left corner of the block
+			writeSignedInt(pois, -random.nextInt(10000));
+			writeSignedInt(pois, random.nextInt(10000));
+			// layer and one tag
+			pois.write(5 << 4 | 1);
+			writeUnsignedInt(pois, random.nextInt(POI_TAGS.length));
+			// only the name feature
+			pois.write(0x80);
+			writeString(pois, ELEMENT_NAMES[random.nextInt(ELEMENT_NAMES.length)]);
+		}
+		writeUnsignedInt(blocks, pois.size());
+		pois.writeTo(blocks);
+
+		for (int way = 0; way < waysPerBlock; ++way) {
+			ByteArrayOutputStream wayData = new ByteArrayOutputStream();
+			// the tile bitmask covers all sub-tiles
+			wayData.write(0xff);
+			wayData.write(0xff);
+			wayData.write(5 << 4 | 1);
+			writeUnsignedInt(wayData, random.nextInt(WAY_TAGS.length));
+			wayData.write(WAY_FEATURE_NAME | (doubleDeltaEncoding ? WAY_FEATURE_DOUBLE_DELTA_ENCODING : 0));
+			writeString(wayData, ELEMENT_NAMES[random.nextInt(ELEMENT_NAMES.length)]);
+
+			// one way data block with one way coordinate block
+			writeUnsignedInt(wayData, 1);
+			writeUnsignedInt(wayData, wayNodes);
+			writeWayNodes(wayData, random, wayNodes, doubleDeltaEncoding);
+
+			writeUnsignedInt(blocks, wayData.size());
+			wayData.writeTo(blocks);
+		}
+	}
+
+	private static void writeFiveBytes(OutputStream outputStream, long value) throws IOException {
+		for (int shift = 32; shift >= 0; shift -= 8) {
+			outputStream.write((int) (value >>> shift));
+		}
+	}
+
+	/**
+	 * Writes the given value as variable-byte encoded signed integer (VBE-S).
+	 */
+	static void writeSignedInt(OutputStream outputStream, int value) throws IOException {
+		int absoluteValue = Math.abs(value);
+		while (absoluteValue >= 0x40) {
+			outputStream.write(absoluteValue & 0x7f | 0x80);
+			absoluteValue >>>= 7;
+		}
+		outputStream.write(value < 0 ? absoluteValue | 0x40 : absoluteValue);
+	}
+
+	private static void writeString(OutputStream outputStream, String string) throws IOException {
+		byte[] bytes = string.getBytes("UTF-8");
+		writeUnsignedInt(outputStream, bytes.length);
+		outputStream.write(bytes);
+	}
+
+	private static void writeTags(OutputStream outputStream, String[] tags) throws IOException {
+		new DataOutputStream(outputStream).writeShort(tags.length);
+		for (String tag : tags) {
+			writeString(outputStream, tag);
+		}
+	}
+
+	/**
+	 * Writes the given value as variable-byte encoded unsigned integer (VBE-U).
+	 */
+	static void writeUnsignedInt(OutputStream outputStream, int value) throws IOException {
+		int remainingValue = value;
+		while (remainingValue >= 0x80) {
+			outputStream.write(remainingValue & 0x7f | 0x80);
+			remainingValue >>>= 7;
+		}
+		outputStream.write(remainingValue);
+	}
+
+	private static void writeWayNodes(OutputStream outputStream, Random random, int wayNodes,
+			boolean doubleDeltaEncoding) throws IOException {
+		// a random walk which starts in the middle of the block
+		int latitude = -5000;
+		int longitude = 10000;
+		writeSignedInt(outputStream, latitude);
+		writeSignedInt(outputStream, longitude);
+
+		int previousDeltaLatitude = 0;
+		int previousDeltaLongitude = 0;
+		for (int wayNode = 1; wayNode < wayNodes; ++wayNode) {
+			int deltaLatitude = random.nextInt(2 * WAY_NODE_MAXIMUM_STEP + 1) - WAY_NODE_MAXIMUM_STEP;
+			int deltaLongitude = random.nextInt(2 * WAY_NODE_MAXIMUM_STEP + 1) - WAY_NODE_MAXIMUM_STEP;
+			if (doubleDeltaEncoding) {
+				writeSignedInt(outputStream, deltaLatitude - previousDeltaLatitude);
+				writeSignedInt(outputStream, deltaLongitude - previousDeltaLongitude);
+			} else {
+				writeSignedInt(outputStream, deltaLatitude);
+				writeSignedInt(outputStream, deltaLongitude);
+			}
+			previousDeltaLatitude = deltaLatitude;
+			previousDeltaLongitude = deltaLongitude;
+		}
+	}
+
+	private SyntheticMapFile() {
+		throw new IllegalStateException();
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.FileOpenResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the decoding of single-delta and double-delta encoded way nodes. Each operation reads one memory-mapped
+ * block with long ways and no POIs through the raw callback, so the work is dominated by the way node decoders.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+public class WayNodeDecodingBenchmark {
+	private static final int WAYS_PER_BLOCK = 32;
+
+	/**
+	 * True for double-delta encoded way nodes, false for single-delta encoded way nodes.
+	 */
+	@Param({ "false", "true" })
+	public boolean doubleDeltaEncoding;
+
+	/**
+	 * The number of way nodes of each way.
+	 */
+	@Param({ "16", "1024" })
+	public int wayNodes;
+
+	private File file;
+	private MapDatabase mapDatabase;
+	private final SumCallback sumCallback = new SumCallback();
+	private Tile tile;
+
+	/**
+	 * @return the sum of all decoded coordinates.
+	 */
+	@Benchmark
+	public long decodeWayNodes() {
+		this.sumCallback.sum = 0;
+		this.mapDatabase.executeQuery(this.tile, this.sumCallback);
+		return this.sumCallback.sum;
+	}
+
+	/**
+	 * Creates and opens a synthetic map file with a single block.
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be created or opened.
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		this.file = SyntheticMapFile.create(1, 0, WAYS_PER_BLOCK, this.wayNodes, this.doubleDeltaEncoding);
+		this.mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = this.mapDatabase.openFile(this.file, true);
+		if (!fileOpenResult.isSuccess()) {
+			throw new IOException(fileOpenResult.getErrorMessage());
+		}
+		this.tile = new Tile(SyntheticMapFile.FIRST_TILE_X, SyntheticMapFile.FIRST_TILE_Y,
+				SyntheticMapFile.BASE_ZOOM_LEVEL);
+	}
+
+	/**
+	 * Closes and deletes the synthetic map file.
+	 */
+	@TearDown
+	public void tearDown() {
+		this.mapDatabase.closeFile();
+		if (!this.file.delete()) {
+			this.file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Adds up all way node coordinates, so that the decoding cannot be eliminated.
+	 */
+	private static final class SumCallback implements RawMapDatabaseCallback {
+		long sum;
+
+		SumCallback() {
+			// do nothing
+		}
+
+		@Override
+		public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+			// do nothing
+		}
+
+		@Override
+		public void renderWaterBackground() {
+			// do nothing
+		}
+
+		@Override
+		public void renderWay(RawWay way) {
+			int[] coordinates = way.getCoordinates();
+			for (int segment = 0; segment < way.getNumberOfSegments(); ++segment) {
+				int offset = way.getSegmentOffset(segment);
+				int end = offset + way.getSegmentLength(segment);
+				for (int i = offset; i < end; ++i) {
+					this.sum += coordinates[i];
+				}
+			}
+		}
+	}
+}
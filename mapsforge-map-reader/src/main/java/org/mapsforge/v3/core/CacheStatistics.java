@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+/**
+ * An immutable snapshot of the usage counters of a cache.
+ * <p>
+ * The size and the capacity are measured in the unit in which the cache is bounded, for example bytes or entries.
+ */
+public class CacheStatistics {
+	/**
+	 * The maximum size of the cache.
+	 */
+	public final long capacity;
+
+	/**
+	 * The number of entries which have been removed to make room for new entries.
+	 */
+	public final long evictions;
+
+	/**
+	 * The number of lookups which have found a cached entry.
+	 */
+	public final long hits;
+
+	/**
+	 * The number of lookups which have not found a cached entry.
+	 */
+	public final long misses;
+
+	/**
+	 * The current size of the cache.
+	 */
+	public final long size;
+
+	/**
+	 * @param hits
+	 *            the number of lookups which have found a cached entry.
+	 * @param misses
+	 *            the number of lookups which have not found a cached entry.
+	 * @param evictions
+	 *            the number of entries which have been removed to make room for new entries.
+	 * @param size
+	 *            the current size of the cache.
+	 * @param capacity
+	 *            the maximum size of the cache.
+	 */
+	public CacheStatistics(long hits, long misses, long evictions, long size, long capacity) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.size = size;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return the ratio of hits to all lookups, or zero if no lookups have been made.
+	 */
+	public double getHitRate() {
+		long lookups = this.hits + this.misses;
+		if (lookups == 0) {
+			return 0;
+		}
+		return (double) this.hits / lookups;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("CacheStatistics [hits=");
+		stringBuilder.append(this.hits);
+		stringBuilder.append(", misses=");
+		stringBuilder.append(this.misses);
+		stringBuilder.append(", evictions=");
+		stringBuilder.append(this.evictions);
+		stringBuilder.append(", size=");
+		stringBuilder.append(this.size);
+		stringBuilder.append(", capacity=");
+		stringBuilder.append(this.capacity);
+		stringBuilder.append("]");
+		return stringBuilder.toString();
+	}
+}
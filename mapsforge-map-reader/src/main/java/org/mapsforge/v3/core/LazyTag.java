@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A tag whose value is kept in its UTF-8 encoded form and only decoded if it is requested via {@link #getValue()}.
+ * <p>
+ * Lazy tags are used for free text values like names, references and house numbers, which are often never displayed.
+ * Their {@link #value} field is always null, so they are only created on request: via
+ * {@link org.mapsforge.v3.map.reader.RawMapElement#addLazyTags} and for a
+ * {@link org.mapsforge.v3.map.reader.LazyMapDatabaseCallback}. The tags which are passed to any other
+ * {@link org.mapsforge.v3.map.reader.MapDatabaseCallback} always have a value.
+ */
+public class LazyTag extends Tag {
+	private static final String CHARSET_UTF8 = "UTF-8";
+	private static final long serialVersionUID = 1L;
+
+	private transient String decodedValue;
+	private final byte[] encodedValue;
+
+	/**
+	 * @param key
+	 *            the key of the tag.
+	 * @param encodedValue
+	 *            the UTF-8 encoded value of the tag, which must not be modified afterwards.
+	 */
+	public LazyTag(String key, byte[] encodedValue) {
+		super(key, null);
+		this.encodedValue = encodedValue;
+	}
+
+	@Override
+	public String getValue() {
+		String value = this.decodedValue;
+		if (value == null) {
+			try {
+				value = new String(this.encodedValue, CHARSET_UTF8);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+			this.decodedValue = value;
+		}
+		return value;
+	}
+
+	@Override
+	public int hashCode() {
+		return calculateHashCode(this.key, getValue());
+	}
+
+	/**
+	 * @return true if the value has already been decoded, false otherwise.
+	 */
+	public boolean isDecoded() {
+		return this.decodedValue != null;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("LazyTag [key=");
+		stringBuilder.append(this.key);
+		stringBuilder.append(", value=");
+		stringBuilder.append(getValue());
+		stringBuilder.append("]");
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * Replaces this lazy tag with an ordinary tag during serialization.
+	 * 
+	 * @return an equal tag with a decoded value.
+	 */
+	private Object writeReplace() {
+		return new Tag(this.key, getValue());
+	}
+}
@@ -26,13 +26,29 @@ public class Tag implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * @param key
+	 *            the key of a tag.
+	 * @param value
+	 *            the value of a tag.
+	 * @return the hash code of a tag with the given key and value.
+	 */
+	static int calculateHashCode(String key, String value) {
+		int result = 7;
+		result = 31 * result + ((key == null) ? 0 : key.hashCode());
+		result = 31 * result + ((value == null) ? 0 : value.hashCode());
+		return result;
+	}
+
 	/**
 	 * The key of this tag.
 	 */
 	public final String key;
 
 	/**
-	 * The value of this tag.
+	 * The value of this tag, always null for a {@link LazyTag}.
+	 * 
+	 * @see #getValue()
 	 */
 	public final String value;
 
@@ -69,18 +85,35 @@ public class Tag implements Serializable {
 			return false;
 		}
 		Tag other = (Tag) obj;
+		String thisValue = this.value;
+		String otherValue = other.value;
+		if (thisValue == null || otherValue == null) {
+			// only a lazy tag or a tag without value needs to be compared via its decoded value
+			thisValue = getValue();
+			otherValue = other.getValue();
+		}
 		if (this.key == null && other.key != null) {
 			return false;
 		} else if (this.key != null && !this.key.equals(other.key)) {
 			return false;
-		} else if (this.value == null && other.value != null) {
+		} else if (thisValue == null && otherValue != null) {
 			return false;
-		} else if (this.value != null && !this.value.equals(other.value)) {
+		} else if (thisValue != null && !thisValue.equals(otherValue)) {
 			return false;
 		}
 		return true;
 	}
 
+	/**
+	 * Returns the value of this tag. In contrast to the {@link #value} field, this method also returns the value of a
+	 * {@link LazyTag}, which is decoded on the first call.
+	 * 
+	 * @return the value of this tag.
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
 	@Override
 	public int hashCode() {
 		return this.hashCodeValue;
@@ -101,10 +134,7 @@ public class Tag implements Serializable {
 	 * @return the hash code of this object.
 	 */
 	private int calculateHashCode() {
-		int result = 7;
-		result = 31 * result + ((this.key == null) ? 0 : this.key.hashCode());
-		result = 31 * result + ((this.value == null) ? 0 : this.value.hashCode());
-		return result;
+		return calculateHashCode(this.key, this.value);
 	}
 
 	private void readObject(ObjectInputStream objectInputStream) throws IOException, ClassNotFoundException {
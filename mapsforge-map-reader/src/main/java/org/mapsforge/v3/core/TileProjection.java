@@ -0,0 +1,207 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+/**
+ * Converts coordinates in microdegrees to pixel coordinates relative to the upper left corner of a tile.
+ * <p>
+ * The pixel X coordinate is a linear function of the longitude. The pixel Y coordinate is taken from a table with
+ * the exact values at equally spaced latitudes around the tile, which is interpolated linearly with an error of at
+ * most {@value #MAXIMUM_ERROR} pixels. Latitudes outside of the table are converted with the exact formula.
+ * <p>
+ * A TileProjection is immutable and may be shared between threads.
+ */
+public final class TileProjection {
+	/**
+	 * Maximum error of the interpolated pixel Y coordinates in pixels.
+	 */
+	public static final double MAXIMUM_ERROR = 0.01;
+
+	private static final double CONVERSION_FACTOR = 1000000d;
+
+	/**
+	 * Maximum distance between two latitudes in the table in microdegrees.
+	 */
+	private static final int MAXIMUM_STEP = 1 << 24;
+
+	/**
+	 * Minimum number of steps in the table, so that small tiles at high zoom levels are covered as well.
+	 */
+	private static final int MINIMUM_STEPS = 16;
+
+	/**
+	 * Number of tiles beyond each edge of the tile which are covered by the table.
+	 */
+	private static final int TABLE_MARGIN = 1;
+
+	/**
+	 * Calculates the largest distance between two latitudes in the table for which the error of the linear
+	 * interpolation stays below {@link #MAXIMUM_ERROR} and the table has at least {@link #MINIMUM_STEPS} steps.
+	 * 
+	 * @param minimumLatitude
+	 *            the minimum latitude of the table in microdegrees.
+	 * @param maximumLatitude
+	 *            the maximum latitude of the table in microdegrees.
+	 * @param mapSize
+	 *            the size of the map in pixels at the zoom level of the tile.
+	 * @return the binary logarithm of the distance in microdegrees.
+	 */
+	private static int calculateShift(int minimumLatitude, int maximumLatitude, long mapSize) {
+		double radiansPerMicrodegree = Math.PI / (180 * CONVERSION_FACTOR);
+
+		// the curvature of the projection is largest at the latitude with the largest absolute value
+		double latitude = Math.max(Math.abs(minimumLatitude), Math.abs(maximumLatitude)) * radiansPerMicrodegree;
+		double secondDerivative = mapSize / (2 * Math.PI) * Math.tan(latitude) / Math.cos(latitude)
+				* radiansPerMicrodegree * radiansPerMicrodegree;
+
+		// the error of a linear interpolation over the distance h is at most h * h / 8 * secondDerivative
+		double step = Math.min(Math.sqrt(8 * MAXIMUM_ERROR / secondDerivative), MAXIMUM_STEP);
+		step = Math.min(step, (maximumLatitude - minimumLatitude) / (double) MINIMUM_STEPS);
+		if (step < 1) {
+			return 0;
+		}
+		return 31 - Integer.numberOfLeadingZeros((int) step);
+	}
+
+	private final int minimumLatitude;
+	private final double pixelXOffset;
+	private final double pixelXPerMicrodegree;
+	private final float[] pixelYs;
+	private final int shift;
+	private final float[] slopes;
+	private final int stepMask;
+	private final int tableLength;
+	private final Tile tile;
+
+	/**
+	 * Creates the table for the given tile.
+	 * 
+	 * @param tile
+	 *            the tile to which the pixel coordinates are relative.
+	 */
+	public TileProjection(Tile tile) {
+		this.tile = tile;
+		long mapSize = (long) Tile.TILE_SIZE << tile.zoomLevel;
+		this.pixelXPerMicrodegree = mapSize / (360 * CONVERSION_FACTOR);
+		this.pixelXOffset = mapSize / 2d - tile.getPixelX();
+
+		// the table covers the tile and a margin around it, limited to the map
+		long pixelYTop = Math.max(tile.getPixelY() - TABLE_MARGIN * Tile.TILE_SIZE, 0);
+		long pixelYBottom = Math.min(tile.getPixelY() + (TABLE_MARGIN + 1) * Tile.TILE_SIZE, mapSize);
+		int maximumLatitude = (int) Math.floor(MercatorProjection.pixelYToLatitude(pixelYTop, tile.zoomLevel)
+				* CONVERSION_FACTOR);
+		this.minimumLatitude = (int) Math.ceil(MercatorProjection.pixelYToLatitude(pixelYBottom, tile.zoomLevel)
+				* CONVERSION_FACTOR);
+
+		this.shift = calculateShift(this.minimumLatitude, maximumLatitude, mapSize);
+		this.stepMask = (1 << this.shift) - 1;
+		int steps = Math.max((maximumLatitude - this.minimumLatitude) >> this.shift, 0);
+		this.tableLength = steps << this.shift;
+
+		this.pixelYs = new float[steps + 1];
+		this.slopes = new float[steps];
+		double previousPixelY = 0;
+		for (int i = 0; i <= steps; ++i) {
+			double pixelY = exactPixelY(this.minimumLatitude + (i << this.shift));
+			this.pixelYs[i] = (float) pixelY;
+			if (i > 0) {
+				this.slopes[i - 1] = (float) ((pixelY - previousPixelY) / (1 << this.shift));
+			}
+			previousPixelY = pixelY;
+		}
+	}
+
+	/**
+	 * @param longitude
+	 *            the longitude in microdegrees.
+	 * @return the pixel X coordinate relative to the left edge of the tile.
+	 */
+	public float getPixelX(int longitude) {
+		return (float) (longitude * this.pixelXPerMicrodegree + this.pixelXOffset);
+	}
+
+	/**
+	 * @param latitude
+	 *            the latitude in microdegrees.
+	 * @return the pixel Y coordinate relative to the upper edge of the tile.
+	 */
+	public float getPixelY(int latitude) {
+		int offset = latitude - this.minimumLatitude;
+		if (offset < 0 || offset >= this.tableLength) {
+			return (float) exactPixelY(latitude);
+		}
+		int index = offset >>> this.shift;
+		return this.pixelYs[index] + this.slopes[index] * (offset & this.stepMask);
+	}
+
+	/**
+	 * @return the tile to which the pixel coordinates are relative.
+	 */
+	public Tile getTile() {
+		return this.tile;
+	}
+
+	/**
+	 * Converts a sequence of coordinates in the order longitude/latitude to pixel coordinates in the order X/Y.
+	 * 
+	 * @param coordinates
+	 *            the coordinates in microdegrees.
+	 * @param offset
+	 *            the index of the first coordinate.
+	 * @param length
+	 *            the number of coordinates, which is twice the number of points.
+	 * @param pixelCoordinates
+	 *            the array in which the pixel coordinates are stored at the same indices.
+	 */
+	public void project(int[] coordinates, int offset, int length, float[] pixelCoordinates) {
+		int end = offset + length;
+		for (int i = offset; i < end; i += 2) {
+			pixelCoordinates[i] = getPixelX(coordinates[i]);
+			pixelCoordinates[i + 1] = getPixelY(coordinates[i + 1]);
+		}
+	}
+
+	/**
+	 * Converts coordinates in microdegrees in the order longitude/latitude in place to pixel coordinates in the order
+	 * X/Y.
+	 * 
+	 * @param coordinates
+	 *            the coordinates which should be converted.
+	 */
+	public void project(float[] coordinates) {
+		for (int i = 1; i < coordinates.length; i += 2) {
+			coordinates[i - 1] = getPixelX((int) coordinates[i - 1]);
+			coordinates[i] = getPixelY((int) coordinates[i]);
+		}
+	}
+
+	/**
+	 * Converts multiple sequences of coordinates in microdegrees in the order longitude/latitude in place to pixel
+	 * coordinates in the order X/Y.
+	 * 
+	 * @param coordinates
+	 *            the coordinate sequences which should be converted.
+	 */
+	public void project(float[][] coordinates) {
+		for (int i = 0; i < coordinates.length; ++i) {
+			project(coordinates[i]);
+		}
+	}
+
+	private double exactPixelY(int latitude) {
+		return MercatorProjection.latitudeToPixelY(latitude / CONVERSION_FACTOR, this.tile.zoomLevel)
+				- this.tile.getPixelY();
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * Executes asynchronous tile queries of a {@link MapDatabase} on an external executor.
+ * <p>
+ * At most a given number of queries read from the map file at the same time, further queries wait for a permit in
+ * their executor thread. Concurrent requests for the same tile share a single query, but each caller receives its own
+ * future. The shared query is only cancelled when all of its callers have cancelled. This class is thread-safe.
+ */
+class AsyncQueryExecutor {
+	/**
+	 * A query for a single tile which stops between two blocks if it is cancelled. Its result is passed to the futures
+	 * of all callers which have requested the tile.
+	 */
+	private final class AsyncQuery extends FutureTask<TileData> {
+		private final List<CallerFuture> callerFutures;
+		private final AtomicBoolean cancelled;
+		private boolean finished;
+		private int remainingCallers;
+		private final Tile tile;
+
+		AsyncQuery(final Tile tile, final AtomicBoolean cancelled) {
+			super(new Callable<TileData>() {
+				@Override
+				public TileData call() throws InterruptedException {
+					AsyncQueryExecutor.this.permits.acquire();
+					try {
+						TileData tileData = new TileData(tile);
+						if (!cancelled.get()) {
+							AsyncQueryExecutor.this.mapDatabase.executeQuery(tile, tileData.createCallback(), null,
+									cancelled);
+						}
+						return tileData;
+					} finally {
+						AsyncQueryExecutor.this.permits.release();
+					}
+				}
+			});
+			this.tile = tile;
+			this.cancelled = cancelled;
+			this.callerFutures = new ArrayList<CallerFuture>();
+		}
+
+		/**
+		 * @return a new future for another caller of this query, or null if this query has already finished or has
+		 *         been cancelled.
+		 */
+		synchronized CallerFuture addCaller() {
+			if (this.finished || this.cancelled.get()) {
+				return null;
+			}
+			CallerFuture callerFuture = new CallerFuture(this);
+			this.callerFutures.add(callerFuture);
+			++this.remainingCallers;
+			return callerFuture;
+		}
+
+		/**
+		 * Removes a caller which has cancelled its future and cancels this query if it was the last caller.
+		 */
+		synchronized void removeCaller() {
+			--this.remainingCallers;
+			if (this.remainingCallers == 0 && !this.finished) {
+				// never interrupt the reading thread, as an interrupted read makes the whole query fail
+				this.cancelled.set(true);
+				cancel(false);
+			}
+		}
+
+		@Override
+		protected void done() {
+			AsyncQueryExecutor.this.runningQueries.remove(this.tile, this);
+			synchronized (this) {
+				// no callers are added after this point
+				this.finished = true;
+			}
+
+			try {
+				TileData tileData = get();
+				for (CallerFuture callerFuture : this.callerFutures) {
+					callerFuture.complete(tileData);
+				}
+			} catch (ExecutionException e) {
+				for (CallerFuture callerFuture : this.callerFutures) {
+					callerFuture.fail(e.getCause());
+				}
+			} catch (CancellationException e) {
+				// all callers have cancelled their futures
+			} catch (InterruptedException e) {
+				// cannot happen, as this query is already done
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * The future of a single caller, which receives the result of a shared {@link AsyncQuery}.
+	 */
+	private static final class CallerFuture extends FutureTask<TileData> {
+		private static final Runnable NO_TASK = new Runnable() {
+			@Override
+			public void run() {
+				// a caller future is never run, it is completed by its query
+			}
+		};
+
+		private final AsyncQuery asyncQuery;
+
+		CallerFuture(AsyncQuery asyncQuery) {
+			super(NO_TASK, null);
+			this.asyncQuery = asyncQuery;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			// the query keeps running as long as other callers wait for it
+			if (!super.cancel(false)) {
+				return false;
+			}
+			this.asyncQuery.removeCaller();
+			return true;
+		}
+
+		void complete(TileData tileData) {
+			set(tileData);
+		}
+
+		void fail(Throwable throwable) {
+			setException(throwable);
+		}
+	}
+
+	private final Executor executor;
+	private final MapDatabase mapDatabase;
+	private final Semaphore permits;
+	private final ConcurrentMap<Tile, AsyncQuery> runningQueries;
+
+	/**
+	 * @param mapDatabase
+	 *            the database which executes the queries.
+	 * @param executor
+	 *            the executor which runs the queries.
+	 * @param maximumConcurrentQueries
+	 *            the maximum number of queries which read from the map file at the same time.
+	 */
+	AsyncQueryExecutor(MapDatabase mapDatabase, Executor executor, int maximumConcurrentQueries) {
+		this.mapDatabase = mapDatabase;
+		this.executor = executor;
+		this.permits = new Semaphore(maximumConcurrentQueries);
+		this.runningQueries = new ConcurrentHashMap<Tile, AsyncQuery>();
+	}
+
+	/**
+	 * Submits a query for the given tile, unless a query for the same tile is already pending or running. In that case
+	 * the returned future receives the result of the existing query.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @return the future result of the query for this caller.
+	 * @throws RejectedExecutionException
+	 *             if the executor does not accept the query.
+	 */
+	Future<TileData> submit(Tile tile) {
+		while (true) {
+			AsyncQuery runningQuery = this.runningQueries.get(tile);
+			if (runningQuery != null) {
+				CallerFuture callerFuture = runningQuery.addCaller();
+				if (callerFuture != null) {
+					return callerFuture;
+				}
+			}
+
+			// a cancelled query may still be running until its next block, do not reuse it
+			AsyncQuery asyncQuery = new AsyncQuery(tile, new AtomicBoolean());
+			CallerFuture callerFuture = asyncQuery.addCaller();
+			boolean added;
+			if (runningQuery == null) {
+				added = this.runningQueries.putIfAbsent(tile, asyncQuery) == null;
+			} else {
+				added = this.runningQueries.replace(tile, runningQuery, asyncQuery);
+			}
+
+			if (added) {
+				try {
+					this.executor.execute(asyncQuery);
+				} catch (RejectedExecutionException e) {
+					this.runningQueries.remove(tile, asyncQuery);
+					throw e;
+				}
+				return callerFuture;
+			}
+		}
+	}
+}
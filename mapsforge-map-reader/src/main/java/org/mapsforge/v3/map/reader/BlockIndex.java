@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.logging.Logger;
+
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+
+/**
+ * Evaluates the index entries of the blocks which are covered by a query, without reading any block.
+ * <p>
+ * The size of a block is the difference between its pointer and the pointer of the next block. Blocks without map
+ * elements are not stored in the file, so their size is zero.
+ */
+final class BlockIndex {
+	private static final Logger LOG = Logger.getLogger(BlockIndex.class.getName());
+
+	/**
+	 * Sums up the sizes of the blocks of the given query via their index entries. Blocks with an invalid index entry
+	 * are ignored.
+	 * 
+	 * @param indexCache
+	 *            the index cache of the map file.
+	 * @param queryParameters
+	 *            the parameters of the query, with the blocks to evaluate.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file of the query.
+	 * @return the total size of the blocks in bytes.
+	 */
+	static long getDataSize(IndexCache indexCache, QueryParameters queryParameters, SubFileParameter subFileParameter) {
+		long dataSize = 0;
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+				long blockIndexEntry = indexCache.getIndexEntry(subFileParameter, blockNumber);
+				dataSize += Math.max(getBlockSize(indexCache, subFileParameter, blockNumber, blockIndexEntry), 0);
+			}
+		}
+		return dataSize;
+	}
+
+	/**
+	 * Classifies the blocks of the given query via their index entries.
+	 * 
+	 * @param indexCache
+	 *            the index cache of the map file.
+	 * @param queryParameters
+	 *            the parameters of the query, with the blocks to evaluate.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file of the query.
+	 * @return the content of the blocks, {@link TileContent#DATA} if the index is invalid.
+	 */
+	static TileContent getTileContent(IndexCache indexCache, QueryParameters queryParameters,
+			SubFileParameter subFileParameter) {
+		boolean queryIsWater = true;
+		boolean queryReadWaterInfo = false;
+
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+				long blockIndexEntry = indexCache.getIndexEntry(subFileParameter, blockNumber);
+				if (getBlockSize(indexCache, subFileParameter, blockNumber, blockIndexEntry) != 0) {
+					// the block contains map elements or the index is invalid
+					return TileContent.DATA;
+				}
+
+				queryIsWater &= (blockIndexEntry & ReadContext.BITMASK_INDEX_WATER) != 0;
+				queryReadWaterInfo = true;
+			}
+		}
+
+		if (queryIsWater && queryReadWaterInfo) {
+			return TileContent.WATER;
+		}
+		return TileContent.EMPTY;
+	}
+
+	/**
+	 * @return the size of the given block in bytes, or -1 if the index is invalid.
+	 */
+	private static long getBlockSize(IndexCache indexCache, SubFileParameter subFileParameter, long blockNumber,
+			long blockIndexEntry) {
+		long blockPointer = blockIndexEntry & ReadContext.BITMASK_INDEX_OFFSET;
+		long nextBlockPointer;
+		if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+			nextBlockPointer = subFileParameter.subFileSize;
+		} else {
+			nextBlockPointer = indexCache.getIndexEntry(subFileParameter, blockNumber + 1)
+					& ReadContext.BITMASK_INDEX_OFFSET;
+		}
+
+		if (blockPointer < 1 || nextBlockPointer < blockPointer || nextBlockPointer > subFileParameter.subFileSize) {
+			LOG.warning("invalid index entry for block " + blockNumber + ": " + blockPointer + ", "
+					+ nextBlockPointer);
+			return -1;
+		}
+		return nextBlockPointer - blockPointer;
+	}
+
+	private BlockIndex() {
+		throw new IllegalStateException();
+	}
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.IOException;
+
+/**
+ * A buffer which holds a range of a map file, usually one or more blocks, and decodes its data.
+ * <p>
+ * Ranges are only selected by their absolute position in the file, so implementations do not depend on a shared file
+ * pointer. A buffer is a cursor which must not be shared between threads.
+ * 
+ * @see ReadBuffer
+ * @see MappedReadBuffer
+ */
+abstract class BlockReadBuffer {
+	/**
+	 * Stores a decoded way node value in the coordinate array and resolves its delta encoding.
+	 * <p>
+	 * The values are read in the order latitude/longitude, the coordinates are stored in the order longitude/latitude.
+	 * The first way node is relative to the given position, each other one either to its predecessor (single-delta) or
+	 * to the position extrapolated from the two previous way nodes (double-delta). All previous coordinates of the
+	 * sequence must have been stored already.
+	 * 
+	 * @param coordinates
+	 *            the array in which the coordinates are stored.
+	 * @param offset
+	 *            the index of the first coordinate of the sequence.
+	 * @param valueIndex
+	 *            the index of the value within the sequence.
+	 * @param value
+	 *            the decoded value.
+	 * @param latitude
+	 *            the latitude to which the first way node is relative.
+	 * @param longitude
+	 *            the longitude to which the first way node is relative.
+	 * @param doubleDeltaEncoding
+	 *            true if the way nodes are double-delta encoded, false otherwise.
+	 */
+	static void storeWayNodeValue(int[] coordinates, int offset, int valueIndex, int value, int latitude,
+			int longitude, boolean doubleDeltaEncoding) {
+		// swap latitude and longitude
+		int index = offset + (valueIndex ^ 1);
+		if (valueIndex < 2) {
+			coordinates[index] = value + (valueIndex == 0 ? latitude : longitude);
+		} else if (doubleDeltaEncoding && valueIndex >= 4) {
+			// the value is the change of the offset between the two previous way nodes
+			coordinates[index] = value + 2 * coordinates[index - 2] - coordinates[index - 4];
+		} else {
+			coordinates[index] = value + coordinates[index - 2];
+		}
+	}
+
+	/**
+	 * Applies the sign bit of the last byte of a variable-byte encoded signed int without branching.
+	 * 
+	 * @param magnitude
+	 *            the absolute value of the int.
+	 * @param lastByte
+	 *            the last byte of the encoded int.
+	 * @return the signed int value.
+	 */
+	static int toSignedInt(int magnitude, int lastByte) {
+		int sign = (lastByte >> 6) & 1;
+		return (magnitude ^ -sign) + sign;
+	}
+
+	/**
+	 * Returns one signed byte from the read buffer.
+	 * 
+	 * @return the byte value.
+	 */
+	public abstract byte readByte();
+
+	/**
+	 * Makes the given range of the file available in the read buffer and resets the internal buffer position.
+	 * 
+	 * @param address
+	 *            the absolute position in the file from which the data should be read.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the whole data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	public abstract boolean readFromFile(long address, int length) throws IOException;
+
+	/**
+	 * Converts four bytes from the read buffer to a signed int.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readInt();
+
+	/**
+	 * Converts eight bytes from the read buffer to a signed long.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the long value.
+	 */
+	public abstract long readLong();
+
+	/**
+	 * Converts two bytes from the read buffer to a signed int.
+	 * <p>
+	 * The byte order is big-endian.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readShort();
+
+	/**
+	 * Converts a variable amount of bytes from the read buffer to a signed int.
+	 * <p>
+	 * The first bit is for continuation info, the other six (last byte) or seven (all other bytes) bits are for data.
+	 * The second bit in the last byte indicates the sign of the number.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readSignedInt();
+
+	/**
+	 * Converts the given number of variable-byte encoded signed ints from the read buffer, as if
+	 * {@link #readSignedInt()} was called for each of them.
+	 * <p>
+	 * Values with one or two bytes, which are the common case for coordinate offsets, are decoded without a loop and
+	 * with a branch-free sign. Longer values fall back to {@link #readSignedInt()}.
+	 * 
+	 * @param values
+	 *            the array in which the decoded values are stored.
+	 * @param offset
+	 *            the index of the first decoded value in the array.
+	 * @param count
+	 *            the number of values to decode.
+	 */
+	public abstract void readSignedInts(int[] values, int offset, int count);
+
+	/**
+	 * Converts a variable amount of bytes from the read buffer to an unsigned int.
+	 * <p>
+	 * The first bit is for continuation info, the other seven bits are for data.
+	 * 
+	 * @return the int value.
+	 */
+	public abstract int readUnsignedInt();
+
+	/**
+	 * Decodes a variable amount of bytes from the read buffer to a string.
+	 * 
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	public String readUTF8EncodedString() {
+		return readUTF8EncodedString(readUnsignedInt());
+	}
+
+	/**
+	 * Decodes the given amount of bytes from the read buffer to a string.
+	 * 
+	 * @param stringLength
+	 *            the length of the string in bytes.
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	public abstract String readUTF8EncodedString(int stringLength);
+
+	/**
+	 * Copies the given amount of bytes at the given position of the read buffer into a new array. The current buffer
+	 * position is not changed.
+	 * 
+	 * @param position
+	 *            the position of the first byte in the read buffer.
+	 * @param length
+	 *            the number of bytes to copy.
+	 * @return the copied bytes.
+	 */
+	abstract byte[] getBytes(int position, int length);
+
+	/**
+	 * @return the current buffer position.
+	 */
+	abstract int getBufferPosition();
+
+	/**
+	 * @return the current size of the read buffer.
+	 */
+	abstract int getBufferSize();
+
+	/**
+	 * Decodes the given amount of bytes at the given position of the read buffer to a string. The current buffer
+	 * position is not changed.
+	 * 
+	 * @param position
+	 *            the position of the first byte of the string in the read buffer.
+	 * @param stringLength
+	 *            the length of the string in bytes.
+	 * @return the UTF-8 decoded string (may be null).
+	 */
+	String getUTF8EncodedString(int position, int stringLength) {
+		int currentPosition = getBufferPosition();
+		setBufferPosition(position);
+		String string = readUTF8EncodedString(stringLength);
+		setBufferPosition(currentPosition);
+		return string;
+	}
+
+	/**
+	 * Makes the given range of the file available in the read buffer and sets the buffer position to its first byte.
+	 * Implementations may read more than the given range at once, so that consecutive ranges are read in a few large
+	 * chunks.
+	 * 
+	 * @param address
+	 *            the address of the first byte in the file.
+	 * @param length
+	 *            the number of bytes which are needed.
+	 * @param endAddress
+	 *            the address up to which the file may be read ahead.
+	 * @param readAheadSize
+	 *            the minimum size of the window in bytes.
+	 * @return true if the range could be read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	abstract boolean readAhead(long address, int length, long endAddress, int readAheadSize) throws IOException;
+
+	/**
+	 * Decodes a sequence of way nodes in a single pass, see {@link #storeWayNodeValue}.
+	 * 
+	 * @param coordinates
+	 *            the array in which the coordinates are stored in the order longitude/latitude.
+	 * @param offset
+	 *            the index of the first coordinate of the sequence.
+	 * @param length
+	 *            the number of values in the sequence, which is twice the number of way nodes.
+	 * @param latitude
+	 *            the latitude to which the first way node is relative.
+	 * @param longitude
+	 *            the longitude to which the first way node is relative.
+	 * @param doubleDeltaEncoding
+	 *            true if the way nodes are double-delta encoded, false otherwise.
+	 */
+	abstract void readWayNodes(int[] coordinates, int offset, int length, int latitude, int longitude,
+			boolean doubleDeltaEncoding);
+
+	/**
+	 * Sets the buffer position to the given offset.
+	 * 
+	 * @param bufferPosition
+	 *            the buffer position.
+	 */
+	abstract void setBufferPosition(int bufferPosition);
+
+	/**
+	 * Skips the given number of bytes in the read buffer.
+	 * 
+	 * @param bytes
+	 *            the number of bytes to skip.
+	 */
+	abstract void skipBytes(int bytes);
+}
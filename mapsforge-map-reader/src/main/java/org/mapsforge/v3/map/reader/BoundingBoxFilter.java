@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.mapsforge.v3.core.BoundingBox;
+
+/**
+ * Passes only those elements of a bounding box query to a {@link RawMapDatabaseCallback} which intersect the
+ * requested area.
+ * <p>
+ * POIs must lie inside the bounding box. Way data blocks are checked via the bounding box of their coordinates, so a
+ * way which only surrounds the requested area is passed as well.
+ */
+class BoundingBoxFilter implements RawMapDatabaseCallback {
+	private final BoundingBox boundingBox;
+	private final RawMapDatabaseCallback rawMapDatabaseCallback;
+
+	/**
+	 * @param boundingBox
+	 *            the requested area.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the elements inside the requested area.
+	 */
+	BoundingBoxFilter(BoundingBox boundingBox, RawMapDatabaseCallback rawMapDatabaseCallback) {
+		this.boundingBox = boundingBox;
+		this.rawMapDatabaseCallback = rawMapDatabaseCallback;
+	}
+
+	@Override
+	public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+		int latitude = pointOfInterest.getLatitude();
+		int longitude = pointOfInterest.getLongitude();
+		if (latitude >= this.boundingBox.minLatitudeE6 && latitude <= this.boundingBox.maxLatitudeE6
+				&& longitude >= this.boundingBox.minLongitudeE6 && longitude <= this.boundingBox.maxLongitudeE6) {
+			this.rawMapDatabaseCallback.renderPointOfInterest(pointOfInterest);
+		}
+	}
+
+	/**
+	 * Not used, a bounding box query does not evaluate the water flags.
+	 */
+	@Override
+	public void renderWaterBackground() {
+		// do nothing
+	}
+
+	@Override
+	public void renderWay(RawWay way) {
+		int minLatitude = Integer.MAX_VALUE;
+		int minLongitude = Integer.MAX_VALUE;
+		int maxLatitude = Integer.MIN_VALUE;
+		int maxLongitude = Integer.MIN_VALUE;
+
+		// calculate the bounding box of all segments, the coordinates are stored as longitude/latitude pairs
+		int[] coordinates = way.getCoordinates();
+		for (int segment = 0, n = way.getNumberOfSegments(); segment < n; ++segment) {
+			int end = way.getSegmentOffset(segment) + way.getSegmentLength(segment);
+			for (int i = way.getSegmentOffset(segment); i < end; i += 2) {
+				minLongitude = Math.min(minLongitude, coordinates[i]);
+				maxLongitude = Math.max(maxLongitude, coordinates[i]);
+				minLatitude = Math.min(minLatitude, coordinates[i + 1]);
+				maxLatitude = Math.max(maxLatitude, coordinates[i + 1]);
+			}
+		}
+
+		if (maxLatitude >= this.boundingBox.minLatitudeE6 && minLatitude <= this.boundingBox.maxLatitudeE6
+				&& maxLongitude >= this.boundingBox.minLongitudeE6 && minLongitude <= this.boundingBox.maxLongitudeE6) {
+			this.rawMapDatabaseCallback.renderWay(way);
+		}
+	}
+}
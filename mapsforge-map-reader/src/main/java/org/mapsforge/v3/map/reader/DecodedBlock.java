@@ -0,0 +1,258 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapsforge.v3.core.LazyTag;
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+
+/**
+ * All POIs and ways of a single block in decoded form, as stored in the block cache of a {@link SharedMapFile}.
+ * <p>
+ * A DecodedBlock contains the elements of all zoom levels of its sub-file, so it can answer queries for any tile
+ * inside the block. It is filled by the decoder as a {@link RawMapDatabaseCallback}, afterwards it is never modified
+ * and may be replayed by any number of threads.
+ * <p>
+ * The name, house number and reference are stored as {@link LazyTag LazyTags}, so their values are only decoded if a
+ * callback requests them. Callbacks which do not implement {@link LazyMapDatabaseCallback} receive decoded tags.
+ */
+class DecodedBlock implements RawMapDatabaseCallback {
+	/**
+	 * Estimated memory overhead of an array or any other object in bytes.
+	 */
+	private static final int BYTES_PER_OBJECT = 16;
+
+	/**
+	 * Estimated size of an object reference in bytes.
+	 */
+	private static final int BYTES_PER_REFERENCE = 8;
+
+	/**
+	 * Estimated memory footprint of a POI without its tags in bytes.
+	 */
+	private static final int BYTES_PER_POI = 9 + BYTES_PER_OBJECT + BYTES_PER_REFERENCE;
+
+	/**
+	 * Estimated memory footprint of a way without its tags and coordinates in bytes.
+	 */
+	private static final int BYTES_PER_WAY = 5 + 2 * BYTES_PER_OBJECT + 3 * BYTES_PER_REFERENCE;
+
+	private static void addTags(Tag[] tagArray, List<Tag> tags, boolean lazyTags) {
+		for (Tag tag : tagArray) {
+			if (!lazyTags && tag instanceof LazyTag) {
+				tags.add(new Tag(tag.key, tag.getValue()));
+			} else {
+				tags.add(tag);
+			}
+		}
+	}
+
+	private static float[] copy(float[] array) {
+		if (array == null) {
+			return null;
+		}
+		float[] copy = new float[array.length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+
+	private static Tag[] toArray(List<Tag> tags) {
+		return tags.toArray(new Tag[tags.size()]);
+	}
+
+	private static int[] toTagIds(RawMapElement rawMapElement) {
+		int[] tagIds = new int[rawMapElement.getNumberOfTags()];
+		System.arraycopy(rawMapElement.getTagIds(), 0, tagIds, 0, tagIds.length);
+		return tagIds;
+	}
+
+	private final MapFileInfo mapFileInfo;
+	private int numberOfPois;
+	private int numberOfWays;
+	private final int[] poiLatitudes;
+	private final byte[] poiLayers;
+	private final int[] poiLongitudes;
+	private final int[][] poiTagIds;
+	private final Tag[][] poiTags;
+	private int size;
+	private final List<Tag> tagList;
+	private final float[][] wayLabelPositions;
+	private final byte[] wayLayers;
+	private final float[][][][] wayNodes;
+	private final int[][] wayTagIds;
+	private final Tag[][] wayTags;
+	private final int[] wayTileBitmasks;
+	private final int[][] zoomTable;
+
+	/**
+	 * @param zoomTable
+	 *            the zoom table of the block with the cumulated number of POIs and ways per zoom level.
+	 * @param mapFileInfo
+	 *            the metadata of the map file with the tags which are referenced by the tag IDs.
+	 */
+	DecodedBlock(int[][] zoomTable, MapFileInfo mapFileInfo) {
+		this.zoomTable = zoomTable;
+		this.mapFileInfo = mapFileInfo;
+		this.tagList = new ArrayList<Tag>();
+
+		int[] lastRow = zoomTable[zoomTable.length - 1];
+		int pois = lastRow[0];
+		this.poiLayers = new byte[pois];
+		this.poiLatitudes = new int[pois];
+		this.poiLongitudes = new int[pois];
+		this.poiTagIds = new int[pois][];
+		this.poiTags = new Tag[pois][];
+
+		int ways = lastRow[1];
+		this.wayTileBitmasks = new int[ways];
+		this.wayLayers = new byte[ways];
+		this.wayLabelPositions = new float[ways][];
+		this.wayTagIds = new int[ways][];
+		this.wayTags = new Tag[ways][];
+		this.wayNodes = new float[ways][][][];
+
+		this.size = BYTES_PER_OBJECT * (zoomTable.length + 11) + zoomTable.length * 8;
+	}
+
+	@Override
+	public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+		this.tagList.clear();
+		pointOfInterest.addTags(this.mapFileInfo.poiTags, this.tagList, true);
+
+		int poi = this.numberOfPois++;
+		this.poiLayers[poi] = pointOfInterest.getLayer();
+		this.poiLatitudes[poi] = pointOfInterest.getLatitude();
+		this.poiLongitudes[poi] = pointOfInterest.getLongitude();
+		this.poiTagIds[poi] = toTagIds(pointOfInterest);
+		this.poiTags[poi] = toArray(this.tagList);
+		this.size += BYTES_PER_POI + this.tagList.size() * BYTES_PER_REFERENCE + this.poiTagIds[poi].length * 4;
+	}
+
+	@Override
+	public void renderWaterBackground() {
+		// the water flag is taken from the index, not from the block
+	}
+
+	@Override
+	public void renderWay(RawWay way) {
+		if (way.getWayDataBlock() == 0) {
+			// the first way data block starts a new way
+			this.tagList.clear();
+			way.addTags(this.mapFileInfo.wayTags, this.tagList, true);
+
+			int index = this.numberOfWays++;
+			this.wayTileBitmasks[index] = way.getTileBitmask();
+			this.wayLayers[index] = way.getLayer();
+			this.wayLabelPositions[index] = way.toLabelPosition();
+			this.wayTagIds[index] = toTagIds(way);
+			this.wayTags[index] = toArray(this.tagList);
+			this.wayNodes[index] = new float[way.getNumberOfWayDataBlocks()][][];
+
+			this.size += BYTES_PER_WAY + this.tagList.size() * BYTES_PER_REFERENCE + this.wayTagIds[index].length * 4;
+			if (way.hasLabelPosition()) {
+				this.size += BYTES_PER_OBJECT + 8;
+			}
+		}
+
+		float[][] wayDataBlock = way.toWayNodes();
+		this.wayNodes[this.numberOfWays - 1][way.getWayDataBlock()] = wayDataBlock;
+
+		this.size += BYTES_PER_OBJECT + wayDataBlock.length * BYTES_PER_REFERENCE;
+		for (float[] waySegment : wayDataBlock) {
+			this.size += BYTES_PER_OBJECT + waySegment.length * 4;
+		}
+	}
+
+	/**
+	 * @return the estimated memory footprint of this block in bytes.
+	 */
+	int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return true if all POIs and ways which are announced in the zoom table have been added, false otherwise.
+	 */
+	boolean isComplete() {
+		return this.numberOfPois == this.poiTags.length && this.numberOfWays == this.wayTags.length;
+	}
+
+	/**
+	 * Executes the callback functions on all elements of this block which are visible at the query zoom level,
+	 * accepted by the tag filter of the query and, if the query uses a tile bitmask, inside the requested tile. The
+	 * callback receives its own copies of all coordinate arrays, so it may modify them.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param zoomTableRow
+	 *            the row of the zoom table which belongs to the query zoom level.
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the elements.
+	 * @param queryMetrics
+	 *            the metrics of the current query to which the skipped elements are added (may be null).
+	 */
+	void replay(QueryParameters queryParameters, int zoomTableRow, MapDatabaseCallback mapDatabaseCallback,
+			QueryMetrics queryMetrics) {
+		TagFilter tagFilter = queryParameters.tagFilter;
+		List<Tag> tags = new ArrayList<Tag>();
+
+		int poisOnQueryZoomLevel = this.zoomTable[zoomTableRow][0];
+		for (int poi = 0; poi < poisOnQueryZoomLevel; ++poi) {
+			if (tagFilter != null && !tagFilter.isPoiAccepted(this.poiTagIds[poi])) {
+				if (queryMetrics != null) {
+					++queryMetrics.poisSkippedByTagFilter;
+				}
+				continue;
+			}
+
+			tags.clear();
+			addTags(this.poiTags[poi], tags, queryParameters.lazyTags);
+			mapDatabaseCallback.renderPointOfInterest(this.poiLayers[poi], this.poiLatitudes[poi],
+					this.poiLongitudes[poi], tags);
+		}
+
+		tags = new ArrayList<Tag>();
+
+		int waysOnQueryZoomLevel = this.zoomTable[zoomTableRow][1];
+		for (int way = 0; way < waysOnQueryZoomLevel; ++way) {
+			if (queryParameters.useTileBitmask && (queryParameters.queryTileBitmask & this.wayTileBitmasks[way]) == 0) {
+				if (queryMetrics != null) {
+					++queryMetrics.waysSkippedByTileBitmask;
+				}
+				continue;
+			} else if (tagFilter != null && !tagFilter.isWayAccepted(this.wayTagIds[way])) {
+				if (queryMetrics != null) {
+					++queryMetrics.waysSkippedByTagFilter;
+				}
+				continue;
+			}
+
+			tags.clear();
+			addTags(this.wayTags[way], tags, queryParameters.lazyTags);
+
+			float[] labelPosition = this.wayLabelPositions[way];
+			for (float[][] wayDataBlock : this.wayNodes[way]) {
+				float[][] wayNodesCopy = new float[wayDataBlock.length][];
+				for (int i = 0; i < wayDataBlock.length; ++i) {
+					wayNodesCopy[i] = copy(wayDataBlock[i]);
+				}
+				mapDatabaseCallback.renderWay(this.wayLayers[way], copy(labelPosition), tags, wayNodesCopy);
+			}
+		}
+	}
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.mapsforge.v3.core.BoundingBox;
+import org.mapsforge.v3.core.MercatorProjection;
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.FileOpenResult;
+
+/**
+ * Reads from multiple map files as if they were one, for example from regional extracts which together cover a
+ * continent.
+ * <p>
+ * The bounding boxes of all map files are kept in a spatial index with the tiles of a fixed zoom level as cells, so a
+ * query reads only from the files which intersect the requested tile. The results of all these files are passed to
+ * the same callback in the order in which the files were added. Elements in the overlapping area of two files are
+ * passed once per file.
+ * <p>
+ * At most a given number of map files is open at the same time. If another file must be opened, the least recently
+ * used file which is not read by a running query is closed. All methods are thread-safe.
+ */
+public class FederatedMapDatabase {
+	/**
+	 * Default maximum number of simultaneously open map files.
+	 */
+	public static final int DEFAULT_MAXIMUM_OPEN_FILES = 8;
+
+	private static final double CONVERSION_FACTOR = 1000000d;
+
+	/**
+	 * The zoom level whose tiles are the cells of the spatial index.
+	 */
+	private static final byte INDEX_ZOOM_LEVEL = 6;
+
+	private static final Logger LOG = Logger.getLogger(FederatedMapDatabase.class.getName());
+
+	private static Long getCellKey(long cellX, long cellY) {
+		return Long.valueOf((cellY << INDEX_ZOOM_LEVEL) | cellX);
+	}
+
+	private final Map<Long, List<FederatedMapFile>> cells;
+	private final List<FederatedMapFile> mapFiles;
+	private final int maximumOpenFiles;
+
+	/**
+	 * The open map files in the order of their last use, starting with the least recently used one.
+	 */
+	private final Map<FederatedMapFile, Boolean> openMapFiles;
+
+	/**
+	 * Constructs an empty federation with the {@link #DEFAULT_MAXIMUM_OPEN_FILES default} limit for open files.
+	 */
+	public FederatedMapDatabase() {
+		this(DEFAULT_MAXIMUM_OPEN_FILES);
+	}
+
+	/**
+	 * Constructs an empty federation.
+	 * 
+	 * @param maximumOpenFiles
+	 *            the maximum number of simultaneously open map files.
+	 * @throws IllegalArgumentException
+	 *             if the maximum number of open files is not positive.
+	 */
+	public FederatedMapDatabase(int maximumOpenFiles) {
+		if (maximumOpenFiles < 1) {
+			throw new IllegalArgumentException("maximum number of open files must be positive: " + maximumOpenFiles);
+		}
+		this.maximumOpenFiles = maximumOpenFiles;
+		this.cells = new HashMap<Long, List<FederatedMapFile>>();
+		this.mapFiles = new ArrayList<FederatedMapFile>();
+		this.openMapFiles = new LinkedHashMap<FederatedMapFile, Boolean>(16, 0.75f, true);
+	}
+
+	/**
+	 * Opens the given map file, reads its header data and adds it to the spatial index. The file may be closed again
+	 * at any time and is reopened on demand.
+	 * 
+	 * @param mapFile
+	 *            the map file.
+	 * @return a FileOpenResult containing an error message in case of a failure.
+	 * @throws IllegalArgumentException
+	 *             if the given map file is null.
+	 */
+	public synchronized FileOpenResult addFile(File mapFile) {
+		if (mapFile == null) {
+			throw new IllegalArgumentException("mapFile must not be null");
+		}
+
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		if (!fileOpenResult.isSuccess()) {
+			return fileOpenResult;
+		}
+
+		FederatedMapFile federatedMapFile = new FederatedMapFile(mapFile, this.mapFiles.size(), mapDatabase);
+		this.mapFiles.add(federatedMapFile);
+
+		BoundingBox boundingBox = federatedMapFile.boundingBox;
+		long minCellX = MercatorProjection.longitudeToTileX(boundingBox.getMinLongitude(), INDEX_ZOOM_LEVEL);
+		long maxCellX = MercatorProjection.longitudeToTileX(boundingBox.getMaxLongitude(), INDEX_ZOOM_LEVEL);
+		long minCellY = MercatorProjection.latitudeToTileY(boundingBox.getMaxLatitude(), INDEX_ZOOM_LEVEL);
+		long maxCellY = MercatorProjection.latitudeToTileY(boundingBox.getMinLatitude(), INDEX_ZOOM_LEVEL);
+		for (long cellY = minCellY; cellY <= maxCellY; ++cellY) {
+			for (long cellX = minCellX; cellX <= maxCellX; ++cellX) {
+				Long cellKey = getCellKey(cellX, cellY);
+				List<FederatedMapFile> cell = this.cells.get(cellKey);
+				if (cell == null) {
+					cell = new ArrayList<FederatedMapFile>(2);
+					this.cells.put(cellKey, cell);
+				}
+				cell.add(federatedMapFile);
+			}
+		}
+
+		this.openMapFiles.put(federatedMapFile, Boolean.TRUE);
+		closeLeastRecentlyUsedFiles();
+		return FileOpenResult.SUCCESS;
+	}
+
+	/**
+	 * Starts a database query on all map files which intersect the given tile.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the extracted map elements of all map files.
+	 */
+	public void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback) {
+		executeQuery(tile, mapDatabaseCallback, null);
+	}
+
+	/**
+	 * Starts a database query on all map files which intersect the given tile and passes only the map elements which
+	 * are accepted by the tag filter for their map file.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the extracted map elements of all map files.
+	 * @param tagFilterProvider
+	 *            the provider of the tag filter for each map file, or null if all elements should be passed.
+	 */
+	public void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback, TagFilterProvider tagFilterProvider) {
+		List<FederatedMapFile> intersectingMapFiles = acquireMapFiles(tile);
+		try {
+			for (int i = 0; i < intersectingMapFiles.size(); ++i) {
+				MapDatabase mapDatabase = intersectingMapFiles.get(i).mapDatabase;
+				TagFilter tagFilter = null;
+				if (tagFilterProvider != null) {
+					tagFilter = tagFilterProvider.getTagFilter(mapDatabase.getMapFileInfo(), tile.zoomLevel);
+				}
+				mapDatabase.executeQuery(tile, mapDatabaseCallback, tagFilter);
+			}
+		} finally {
+			releaseMapFiles(intersectingMapFiles);
+		}
+	}
+
+	/**
+	 * @return the smallest bounding box which contains all map files, or null if no map file has been added.
+	 */
+	public synchronized BoundingBox getBoundingBox() {
+		if (this.mapFiles.isEmpty()) {
+			return null;
+		}
+
+		BoundingBox first = this.mapFiles.get(0).boundingBox;
+		int minLatitudeE6 = first.minLatitudeE6;
+		int minLongitudeE6 = first.minLongitudeE6;
+		int maxLatitudeE6 = first.maxLatitudeE6;
+		int maxLongitudeE6 = first.maxLongitudeE6;
+		for (int i = 1; i < this.mapFiles.size(); ++i) {
+			BoundingBox boundingBox = this.mapFiles.get(i).boundingBox;
+			minLatitudeE6 = Math.min(minLatitudeE6, boundingBox.minLatitudeE6);
+			minLongitudeE6 = Math.min(minLongitudeE6, boundingBox.minLongitudeE6);
+			maxLatitudeE6 = Math.max(maxLatitudeE6, boundingBox.maxLatitudeE6);
+			maxLongitudeE6 = Math.max(maxLongitudeE6, boundingBox.maxLongitudeE6);
+		}
+		return new BoundingBox(minLatitudeE6, minLongitudeE6, maxLatitudeE6, maxLongitudeE6);
+	}
+
+	/**
+	 * @return the number of map files which have been added.
+	 */
+	public synchronized int getNumberOfFiles() {
+		return this.mapFiles.size();
+	}
+
+	/**
+	 * @return the number of map files which are currently open.
+	 */
+	public synchronized int getNumberOfOpenFiles() {
+		return this.openMapFiles.size();
+	}
+
+	/**
+	 * Closes and removes all map files. This method must not be called while queries are running.
+	 */
+	public synchronized void removeAllFiles() {
+		for (FederatedMapFile federatedMapFile : this.openMapFiles.keySet()) {
+			federatedMapFile.mapDatabase.closeFile();
+		}
+		this.openMapFiles.clear();
+		this.mapFiles.clear();
+		this.cells.clear();
+	}
+
+	/**
+	 * Finds all map files which intersect the given tile, opens them if necessary and marks them as used.
+	 * 
+	 * @param tile
+	 *            the tile of the query.
+	 * @return the open map files in the order in which they were added.
+	 */
+	private synchronized List<FederatedMapFile> acquireMapFiles(Tile tile) {
+		byte zoomLevel = tile.zoomLevel;
+		int minLatitudeE6 = (int) (MercatorProjection.tileYToLatitude(tile.tileY + 1, zoomLevel) * CONVERSION_FACTOR);
+		int maxLatitudeE6 = (int) (MercatorProjection.tileYToLatitude(tile.tileY, zoomLevel) * CONVERSION_FACTOR);
+		int minLongitudeE6 = (int) (MercatorProjection.tileXToLongitude(tile.tileX, zoomLevel) * CONVERSION_FACTOR);
+		int maxLongitudeE6 = (int) (MercatorProjection.tileXToLongitude(tile.tileX + 1, zoomLevel) * CONVERSION_FACTOR);
+
+		// find the cells of the spatial index which are covered by the tile
+		long minCellX;
+		long maxCellX;
+		long minCellY;
+		long maxCellY;
+		if (zoomLevel >= INDEX_ZOOM_LEVEL) {
+			int shift = zoomLevel - INDEX_ZOOM_LEVEL;
+			minCellX = maxCellX = tile.tileX >>> shift;
+			minCellY = maxCellY = tile.tileY >>> shift;
+		} else {
+			int shift = INDEX_ZOOM_LEVEL - zoomLevel;
+			minCellX = tile.tileX << shift;
+			maxCellX = ((tile.tileX + 1) << shift) - 1;
+			minCellY = tile.tileY << shift;
+			maxCellY = ((tile.tileY + 1) << shift) - 1;
+		}
+
+		// a map file may occur in multiple cells
+		BitSet intersecting = new BitSet(this.mapFiles.size());
+		for (long cellY = minCellY; cellY <= maxCellY; ++cellY) {
+			for (long cellX = minCellX; cellX <= maxCellX; ++cellX) {
+				List<FederatedMapFile> cell = this.cells.get(getCellKey(cellX, cellY));
+				if (cell == null) {
+					continue;
+				}
+				for (int i = 0; i < cell.size(); ++i) {
+					FederatedMapFile federatedMapFile = cell.get(i);
+					if (federatedMapFile.intersects(minLatitudeE6, minLongitudeE6, maxLatitudeE6, maxLongitudeE6)) {
+						intersecting.set(federatedMapFile.index);
+					}
+				}
+			}
+		}
+
+		List<FederatedMapFile> intersectingMapFiles = new ArrayList<FederatedMapFile>(intersecting.cardinality());
+		for (int i = intersecting.nextSetBit(0); i >= 0; i = intersecting.nextSetBit(i + 1)) {
+			FederatedMapFile federatedMapFile = this.mapFiles.get(i);
+			if (this.openMapFiles.get(federatedMapFile) == null) {
+				FileOpenResult fileOpenResult = federatedMapFile.mapDatabase.openFile(federatedMapFile.mapFile);
+				if (!fileOpenResult.isSuccess()) {
+					LOG.warning("cannot reopen map file " + federatedMapFile.mapFile + ": "
+							+ fileOpenResult.getErrorMessage());
+					continue;
+				}
+				this.openMapFiles.put(federatedMapFile, Boolean.TRUE);
+			}
+			++federatedMapFile.users;
+			intersectingMapFiles.add(federatedMapFile);
+		}
+
+		closeLeastRecentlyUsedFiles();
+		return intersectingMapFiles;
+	}
+
+	/**
+	 * Closes the least recently used map files which are not in use until the number of open files is within the
+	 * limit or no more files can be closed.
+	 */
+	private void closeLeastRecentlyUsedFiles() {
+		Iterator<FederatedMapFile> iterator = this.openMapFiles.keySet().iterator();
+		while (this.openMapFiles.size() > this.maximumOpenFiles && iterator.hasNext()) {
+			FederatedMapFile federatedMapFile = iterator.next();
+			if (federatedMapFile.users == 0) {
+				federatedMapFile.mapDatabase.closeFile();
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Marks the given map files as no longer used by a query.
+	 * 
+	 * @param usedMapFiles
+	 *            the map files which have been returned by {@link #acquireMapFiles(Tile)}.
+	 */
+	private synchronized void releaseMapFiles(List<FederatedMapFile> usedMapFiles) {
+		for (int i = 0; i < usedMapFiles.size(); ++i) {
+			--usedMapFiles.get(i).users;
+		}
+		closeLeastRecentlyUsedFiles();
+	}
+}
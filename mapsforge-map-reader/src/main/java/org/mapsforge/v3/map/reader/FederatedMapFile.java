@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+
+import org.mapsforge.v3.core.BoundingBox;
+
+/**
+ * A single map file of a {@link FederatedMapDatabase}, which is opened on demand.
+ */
+class FederatedMapFile {
+	/**
+	 * The area which is covered by the map file.
+	 */
+	final BoundingBox boundingBox;
+
+	/**
+	 * The position of the map file in the order in which the files were added.
+	 */
+	final int index;
+
+	/**
+	 * The database which reads the map file while it is open.
+	 */
+	final MapDatabase mapDatabase;
+
+	/**
+	 * The map file.
+	 */
+	final File mapFile;
+
+	/**
+	 * The number of queries which currently read from the map file, guarded by the lock of the federation.
+	 */
+	int users;
+
+	/**
+	 * @param mapFile
+	 *            the map file.
+	 * @param index
+	 *            the position of the map file in the order in which the files were added.
+	 * @param mapDatabase
+	 *            the database which has opened the map file.
+	 */
+	FederatedMapFile(File mapFile, int index, MapDatabase mapDatabase) {
+		this.mapFile = mapFile;
+		this.index = index;
+		this.mapDatabase = mapDatabase;
+		this.boundingBox = mapDatabase.getMapFileInfo().boundingBox;
+	}
+
+	/**
+	 * @param minLatitudeE6
+	 *            the minimum latitude of the area in microdegrees.
+	 * @param minLongitudeE6
+	 *            the minimum longitude of the area in microdegrees.
+	 * @param maxLatitudeE6
+	 *            the maximum latitude of the area in microdegrees.
+	 * @param maxLongitudeE6
+	 *            the maximum longitude of the area in microdegrees.
+	 * @return true if the map file covers a part of the given area, false otherwise.
+	 */
+	boolean intersects(int minLatitudeE6, int minLongitudeE6, int maxLatitudeE6, int maxLongitudeE6) {
+		return this.boundingBox.minLatitudeE6 <= maxLatitudeE6 && this.boundingBox.maxLatitudeE6 >= minLatitudeE6
+				&& this.boundingBox.minLongitudeE6 <= maxLongitudeE6
+				&& this.boundingBox.maxLongitudeE6 >= minLongitudeE6;
+	}
+}
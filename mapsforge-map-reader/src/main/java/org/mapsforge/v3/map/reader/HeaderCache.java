@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+
+import org.mapsforge.v3.core.LRUCache;
+import org.mapsforge.v3.map.reader.header.MapFileHeader;
+
+/**
+ * A cache for the parsed headers of recently opened map files, so that reopening an unchanged file does not parse its
+ * header again.
+ * <p>
+ * A header is identified by the absolute path, the size and the modification time of its file. A file which is
+ * replaced by another one with the same size and modification time is therefore not detected. The cached headers are
+ * never modified. This class is thread-safe.
+ */
+class HeaderCache {
+	/**
+	 * The identity of a map file at a certain point in time.
+	 */
+	static final class Key {
+		private final long fileSize;
+		private final int hashCodeValue;
+		private final long lastModified;
+		private final String path;
+
+		/**
+		 * @param mapFile
+		 *            the map file.
+		 * @param fileSize
+		 *            the size of the map file in bytes.
+		 */
+		Key(File mapFile, long fileSize) {
+			this.path = mapFile.getAbsolutePath();
+			this.fileSize = fileSize;
+			this.lastModified = mapFile.lastModified();
+			this.hashCodeValue = calculateHashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			} else if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return this.fileSize == other.fileSize && this.lastModified == other.lastModified
+					&& this.path.equals(other.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hashCodeValue;
+		}
+
+		private int calculateHashCode() {
+			int result = 7;
+			result = 31 * result + (int) (this.fileSize ^ (this.fileSize >>> 32));
+			result = 31 * result + (int) (this.lastModified ^ (this.lastModified >>> 32));
+			result = 31 * result + this.path.hashCode();
+			return result;
+		}
+	}
+
+	private final LRUCache<Key, MapFileHeader> cache;
+
+	/**
+	 * @param capacity
+	 *            the maximum number of cached headers.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	HeaderCache(int capacity) {
+		this.cache = new LRUCache<Key, MapFileHeader>(capacity);
+	}
+
+	/**
+	 * @param key
+	 *            the identity of the map file.
+	 * @return the cached header of the map file, or null if it is not cached.
+	 */
+	synchronized MapFileHeader get(Key key) {
+		return this.cache.get(key);
+	}
+
+	/**
+	 * @param key
+	 *            the identity of the map file.
+	 * @param mapFileHeader
+	 *            the successfully parsed header of the map file.
+	 */
+	synchronized void put(Key key, MapFileHeader mapFileHeader) {
+		this.cache.put(key, mapFileHeader);
+	}
+}
@@ -15,16 +15,19 @@
 package org.mapsforge.v3.map.reader;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Map;
+import java.nio.ByteBuffer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.mapsforge.v3.core.LRUCache;
+import org.mapsforge.v3.core.CacheStatistics;
 import org.mapsforge.v3.map.reader.header.SubFileParameter;
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * A cache for database index blocks with a size limit in bytes and LRU policy.
+ * <p>
+ * This class is thread-safe. The cache is striped into independently locked segments and index blocks are read via
+ * positional reads outside of any lock, so concurrent misses never block cache hits of other threads. Each index block
+ * is identified by its absolute position in the map file, which is unique across all sub-files.
  */
 class IndexCache {
 	/**
@@ -34,32 +37,47 @@ class IndexCache {
 
 	private static final Logger LOG = Logger.getLogger(IndexCache.class.getName());
 
+	/**
+	 * Minimum number of index blocks per segment of the cache. Smaller caches use fewer segments, down to a single one
+	 * for the default size, so that striping does not reduce the hit rate.
+	 */
+	private static final int MINIMUM_BLOCKS_PER_SEGMENT = 64;
+
 	/**
 	 * Maximum size in bytes of one index block.
 	 */
-	private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK * SubFileParameter.BYTES_PER_INDEX_ENTRY;
+	static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-	private final Map<IndexCacheEntryKey, byte[]> map;
-	private final RandomAccessFile randomAccessFile;
+	private final StripedLRUCache<byte[]> cache;
+	private final MapFileChannel mapFileChannel;
+	private final SubFileMappings subFileMappings;
 
 	/**
-	 * @param randomAccessFile
+	 * @param mapFileChannel
 	 *            the map file from which the index should be read and cached.
+	 * @param subFileMappings
+	 *            the memory-mapped sub-files from which the index should be read instead (may be null).
 	 * @param capacity
-	 *            the maximum number of entries in the cache.
+	 *            the maximum size of the cache in bytes.
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
-		this.randomAccessFile = randomAccessFile;
-		this.map = new LRUCache<IndexCacheEntryKey, byte[]>(capacity);
+	IndexCache(MapFileChannel mapFileChannel, SubFileMappings subFileMappings, long capacity) {
+		this.mapFileChannel = mapFileChannel;
+		this.subFileMappings = subFileMappings;
+
+		// only split the cache into segments which can each hold a reasonable number of index blocks
+		long indexBlocks = capacity / SIZE_OF_INDEX_BLOCK;
+		int numberOfSegments = (int) Math.max(1,
+				Math.min(indexBlocks / MINIMUM_BLOCKS_PER_SEGMENT, StripedLRUCache.MAXIMUM_SEGMENTS));
+		this.cache = new StripedLRUCache<byte[]>(capacity, numberOfSegments);
 	}
 
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
 	void destroy() {
-		this.map.clear();
+		this.cache.clear();
 	}
 
 	/**
@@ -73,36 +91,54 @@ class IndexCache {
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
 	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		return getIndexEntry(subFileParameter, blockNumber, null);
+	}
+
+	/**
+	 * Returns the index entry of a block in the given map file and counts the cache hit or miss in the metrics of the
+	 * current query.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the map file for which the index entry is needed.
+	 * @param blockNumber
+	 *            the number of the block in the map file.
+	 * @param queryMetrics
+	 *            the metrics of the current query, or null if no metrics are recorded.
+	 * @return the index entry or -1 if the block number is invalid.
+	 */
+	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber, QueryMetrics queryMetrics) {
 		try {
 			// check if the block number is out of bounds
 			if (blockNumber >= subFileParameter.numberOfBlocks) {
 				return -1;
 			}
 
-			// calculate the index block number
+			// calculate the index block number and its position in the file
 			long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
-
-			// create the cache entry key for this request
-			IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter, indexBlockNumber);
+			long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
 
 			// check for cached index block
-			byte[] indexBlock = this.map.get(indexCacheEntryKey);
+			byte[] indexBlock = this.cache.get(indexBlockPosition);
+			if (queryMetrics != null) {
+				if (indexBlock == null) {
+					++queryMetrics.indexCacheMisses;
+				} else {
+					++queryMetrics.indexCacheHits;
+				}
+			}
 			if (indexBlock == null) {
-				// cache miss, seek to the correct index block in the file and read it
-				long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
-
+				// cache miss, read the index block from the file
 				int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
 				int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
 				indexBlock = new byte[indexBlockSize];
 
-				this.randomAccessFile.seek(indexBlockPosition);
-				if (this.randomAccessFile.read(indexBlock, 0, indexBlockSize) != indexBlockSize) {
+				if (!readIndexBlock(indexBlockPosition, indexBlock, indexBlockSize)) {
 					LOG.warning("reading the current index block has failed");
 					return -1;
 				}
 
-				// put the index block in the map
-				this.map.put(indexCacheEntryKey, indexBlock);
+				// put the index block in the cache
+				this.cache.put(indexBlockPosition, indexBlock, indexBlockSize);
 			}
 
 			// calculate the address of the index entry inside the index block
@@ -116,4 +152,24 @@ class IndexCache {
 			return -1;
 		}
 	}
+
+	/**
+	 * @return a snapshot of the usage counters of this cache, with size and capacity measured in bytes.
+	 */
+	CacheStatistics getStatistics() {
+		return this.cache.getStatistics();
+	}
+
+	private boolean readIndexBlock(long indexBlockPosition, byte[] indexBlock, int indexBlockSize) throws IOException {
+		if (this.subFileMappings != null) {
+			return this.subFileMappings.read(indexBlockPosition, indexBlock, indexBlockSize);
+		}
+		ByteBuffer byteBuffer = ByteBuffer.wrap(indexBlock, 0, indexBlockSize);
+		while (byteBuffer.hasRemaining()) {
+			if (this.mapFileChannel.read(byteBuffer, indexBlockPosition + byteBuffer.position()) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
 }
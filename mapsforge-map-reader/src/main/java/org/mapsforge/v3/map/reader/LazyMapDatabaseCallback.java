@@ -0,0 +1,27 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+/**
+ * A {@link MapDatabaseCallback} which accepts the name, house number and reference of map elements as
+ * {@link org.mapsforge.v3.core.LazyTag LazyTags}.
+ * <p>
+ * The values of these tags are only decoded when {@link org.mapsforge.v3.core.Tag#getValue()} is called, their
+ * {@link org.mapsforge.v3.core.Tag#value} field is always null. A callback which implements this interface must
+ * therefore read free text values only via {@code getValue()} and may only match these tags by their key.
+ */
+public interface LazyMapDatabaseCallback extends MapDatabaseCallback {
+	// no additional methods
+}
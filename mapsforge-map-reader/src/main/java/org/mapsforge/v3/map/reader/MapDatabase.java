@@ -16,14 +16,21 @@ package org.mapsforge.v3.map.reader;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.mapsforge.v3.core.MercatorProjection;
-import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.core.BoundingBox;
+import org.mapsforge.v3.core.CacheStatistics;
+import org.mapsforge.v3.core.IOUtils;
 import org.mapsforge.v3.core.Tile;
 import org.mapsforge.v3.map.reader.header.FileOpenResult;
 import org.mapsforge.v3.map.reader.header.MapFileHeader;
@@ -33,256 +40,502 @@ import org.mapsforge.v3.map.reader.header.SubFileParameter;
 /**
  * A class for reading binary map files.
  * <p>
- * This class is not thread-safe. Each thread should use its own instance.
+ * Queries are thread-safe: one instance with an opened map file can be shared by any number of threads, which read the
+ * file concurrently via positional reads. The header and the index cache are shared, while each thread decodes the
+ * blocks with its own {@link ReadContext}. An optional cache of decoded blocks can be enabled via
+ * {@link #setBlockCacheSize(long)}. Opening and closing a file must not happen concurrently with queries.
  * 
  * @see <a href="http://code.google.com/p/mapsforge/wiki/SpecificationBinaryMapFile">Specification</a>
  */
 public class MapDatabase {
 	/**
-	 * Bitmask to extract the block offset from an index entry.
+	 * Default size of the index cache in bytes, which is enough for 64 index blocks.
 	 */
-	private static final long BITMASK_INDEX_OFFSET = 0x7FFFFFFFFFL;
+	public static final long DEFAULT_INDEX_CACHE_SIZE = 64 * IndexCache.SIZE_OF_INDEX_BLOCK;
 
 	/**
-	 * Bitmask to extract the water information from an index entry.
+	 * Default number of bytes which are read from the file at once during a sequential scan.
 	 */
-	private static final long BITMASK_INDEX_WATER = 0x8000000000L;
+	public static final int DEFAULT_READ_AHEAD_SIZE = 4 * 1024 * 1024;
 
 	/**
-	 * Debug message prefix for the block signature.
+	 * Maximum number of map file headers which are kept in memory after their files have been closed.
 	 */
-	private static final String DEBUG_SIGNATURE_BLOCK = "block signature: ";
+	private static final int HEADER_CACHE_SIZE = 32;
 
 	/**
-	 * Debug message prefix for the POI signature.
+	 * The parsed headers of the recently opened map files of all instances.
 	 */
-	private static final String DEBUG_SIGNATURE_POI = "POI signature: ";
-
-	/**
-	 * Debug message prefix for the way signature.
-	 */
-	private static final String DEBUG_SIGNATURE_WAY = "way signature: ";
-
-	/**
-	 * Amount of cache blocks that the index cache should store.
-	 */
-	private static final int INDEX_CACHE_SIZE = 64;
-
-	/**
-	 * Error message for an invalid first way offset.
-	 */
-	private static final String INVALID_FIRST_WAY_OFFSET = "invalid first way offset: ";
+	private static final HeaderCache HEADER_CACHE = new HeaderCache(HEADER_CACHE_SIZE);
 
 	private static final Logger LOG = Logger.getLogger(MapDatabase.class.getName());
 
-	/**
-	 * Maximum way nodes sequence length which is considered as valid.
-	 */
-	private static final int MAXIMUM_WAY_NODES_SEQUENCE_LENGTH = 8192;
-
-	/**
-	 * Maximum number of map objects in the zoom table which is considered as valid.
-	 */
-	private static final int MAXIMUM_ZOOM_TABLE_OBJECTS = 65536;
+	private volatile AsyncQueryExecutor asyncQueryExecutor;
+	private long blockCacheSize;
+	private long indexCacheSize = DEFAULT_INDEX_CACHE_SIZE;
+	private volatile QueryMetricsListener queryMetricsListener;
+	private final ThreadLocal<ReadContext> readContexts = new ThreadLocal<ReadContext>();
+	private volatile SharedMapFile sharedMapFile;
 
 	/**
-	 * Bitmask for the optional POI feature "elevation".
+	 * Closes the map file and destroys all internal caches. This method has no effect if no map file is currently
+	 * opened.
 	 */
-	private static final int POI_FEATURE_ELEVATION = 0x20;
+	public synchronized void closeFile() {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile != null) {
+			this.sharedMapFile = null;
+			currentMapFile.close();
+		}
+	}
 
 	/**
-	 * Bitmask for the optional POI feature "house number".
+	 * Starts a database query with the given parameters.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
 	 */
-	private static final int POI_FEATURE_HOUSE_NUMBER = 0x40;
+	public void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback) {
+		executeQuery(tile, mapDatabaseCallback, null);
+	}
 
 	/**
-	 * Bitmask for the optional POI feature "name".
+	 * Starts a database query with the given parameters and passes only the map elements which are accepted by the
+	 * given tag filter.
+	 * <p>
+	 * The tag IDs of each element are checked before its coordinates are decoded. Ways without an accepted tag are
+	 * skipped via their data size, so a filter which contains only the tags that the caller actually uses, for example
+	 * those of the active render theme at the zoom level of the tile, saves most of the decoding work.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 * @param tagFilter
+	 *            the filter for the tags of the elements, or null if all elements should be passed.
+	 * @throws IllegalArgumentException
+	 *             if the tag filter was created for another map file.
 	 */
-	private static final int POI_FEATURE_NAME = 0x80;
+	public void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback, TagFilter tagFilter) {
+		executeQuery(tile, mapDatabaseCallback, tagFilter, null);
+	}
 
 	/**
-	 * Bitmask for the POI layer.
-	 */
-	private static final int POI_LAYER_BITMASK = 0xf0;
+	 * Reads all map elements which are visible at the given zoom level and intersect the given bounding box, for
+	 * example for searches which do not render any tiles.
+	 * <p>
+	 * Each block which intersects the bounding box is read only once. If a tag filter is given, the tag IDs of each
+	 * element are checked first and ways without an accepted tag are skipped via their data size, without decoding
+	 * their coordinates. POIs must lie inside the bounding box, ways must intersect it with the bounding box of their
+	 * coordinates. The water flags are not evaluated and the block cache is not used. As the query is not bound to a
+	 * tile, the map elements provide no pixel coordinates.
+	 * 
+	 * @param boundingBox
+	 *            the area to read.
+	 * @param zoomLevel
+	 *            the zoom level at which the elements must be visible.
+	 * @param tagFilter
+	 *            the filter for the tags of the elements, or null if all elements should be passed.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 * @throws IllegalArgumentException
+	 *             if the bounding box is null, the zoom level is negative or the tag filter was created for another
+	 *             map file.
+	 */
+	public void executeQuery(BoundingBox boundingBox, byte zoomLevel, TagFilter tagFilter,
+			RawMapDatabaseCallback rawMapDatabaseCallback) {
+		if (boundingBox == null) {
+			throw new IllegalArgumentException("boundingBox must not be null");
+		} else if (zoomLevel < 0) {
+			throw new IllegalArgumentException("zoom level must not be negative: " + zoomLevel);
+		}
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			return;
+		}
+		checkTagFilter(currentMapFile, tagFilter);
 
-	/**
-	 * Bit shift for calculating the POI layer.
-	 */
-	private static final int POI_LAYER_SHIFT = 4;
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.queryZoomLevel = currentMapFile.mapFileHeader.getQueryZoomLevel(zoomLevel);
+			queryParameters.tagFilter = tagFilter;
 
-	/**
-	 * Bitmask for the number of POI tags.
-	 */
-	private static final int POI_NUMBER_OF_TAGS_BITMASK = 0x0f;
+			// get and check the sub-file for the query zoom level
+			SubFileParameter subFileParameter = currentMapFile.mapFileHeader
+					.getSubFileParameter(queryParameters.queryZoomLevel);
+			if (subFileParameter == null) {
+				LOG.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+				return;
+			}
 
-	private static final String READ_ONLY_MODE = "r";
+			QueryCalculations.calculateBaseTiles(queryParameters, boundingBox, subFileParameter);
+			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+			ReadContext readContext = getReadContext(currentMapFile);
+			readContext.setProjectionTile(null);
+			readContext.startQuery(this.queryMetricsListener, null);
+			try {
+				readContext.processBlocks(new BoundingBoxFilter(boundingBox, rawMapDatabaseCallback),
+						queryParameters, subFileParameter);
+			} finally {
+				readContext.finishQuery();
+			}
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+		}
+	}
 
 	/**
-	 * Length of the debug signature at the beginning of each block.
+	 * Starts a batch of database queries, for example for all visible tiles of a map view.
+	 * <p>
+	 * The result is the same as for a separate query per tile, but each block of the map file is read and decoded only
+	 * once, even if it is covered by multiple tiles. The blocks are read in file order and adjacent blocks are read at
+	 * once. Each callback receives the elements of its own tile, ways are filtered by their tile bitmask.
+	 * 
+	 * @param tileCallbacks
+	 *            the tiles to read, each with the callback which handles its extracted map elements.
 	 */
-	private static final byte SIGNATURE_LENGTH_BLOCK = 32;
+	public void executeQuery(Map<Tile, ? extends MapDatabaseCallback> tileCallbacks) {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			return;
+		}
 
-	/**
-	 * Length of the debug signature at the beginning of each POI.
-	 */
-	private static final byte SIGNATURE_LENGTH_POI = 32;
+		// all tiles of a batch must have the same zoom level and therefore use the same sub-file
+		SortedMap<Byte, List<Tile>> tilesPerZoomLevel = new TreeMap<Byte, List<Tile>>();
+		for (Tile tile : tileCallbacks.keySet()) {
+			Byte zoomLevel = Byte.valueOf(tile.zoomLevel);
+			List<Tile> tiles = tilesPerZoomLevel.get(zoomLevel);
+			if (tiles == null) {
+				tiles = new ArrayList<Tile>();
+				tilesPerZoomLevel.put(zoomLevel, tiles);
+			}
+			tiles.add(tile);
+		}
 
-	/**
-	 * Length of the debug signature at the beginning of each way.
-	 */
-	private static final byte SIGNATURE_LENGTH_WAY = 32;
+		try {
+			ReadContext readContext = getReadContext(currentMapFile);
+			for (List<Tile> tiles : tilesPerZoomLevel.values()) {
+				int numberOfTiles = tiles.size();
+				MapDatabaseCallback[] mapDatabaseCallbacks = new MapDatabaseCallback[numberOfTiles];
+				QueryParameters[] queryParameters = new QueryParameters[numberOfTiles];
+				SubFileParameter subFileParameter = null;
+				for (int i = 0; i < numberOfTiles; ++i) {
+					Tile tile = tiles.get(i);
+					mapDatabaseCallbacks[i] = tileCallbacks.get(tile);
+					queryParameters[i] = new QueryParameters();
+					subFileParameter = prepareQuery(currentMapFile, tile, queryParameters[i]);
+					if (subFileParameter == null) {
+						break;
+					}
+				}
 
-	/**
-	 * The key of the elevation OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_ELE = "ele";
+				if (subFileParameter != null) {
+					readContext.startQuery(this.queryMetricsListener, null);
+					try {
+						readContext.processBlocks(mapDatabaseCallbacks, queryParameters, subFileParameter);
+					} finally {
+						readContext.finishQuery();
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+		}
+	}
 
 	/**
-	 * The key of the house number OpenStreetMap tag.
+	 * Starts a database query with the given parameters and passes all map elements as reusable views.
+	 * <p>
+	 * Apart from the query itself, no objects are allocated for the POIs and ways: their coordinates and tag IDs are
+	 * passed in reused primitive arrays and their string values are only decoded if requested. The coordinates are
+	 * available in microdegrees and, projected on demand, as pixel coordinates relative to the given tile. The block
+	 * cache is not used by this method.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
 	 */
-	private static final String TAG_KEY_HOUSE_NUMBER = "addr:housenumber";
+	public void executeQuery(Tile tile, RawMapDatabaseCallback rawMapDatabaseCallback) {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			return;
+		}
 
-	/**
-	 * The key of the name OpenStreetMap tag.
-	 */
-	private static final String TAG_KEY_NAME = "name";
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			SubFileParameter subFileParameter = prepareQuery(currentMapFile, tile, queryParameters);
+			if (subFileParameter == null) {
+				return;
+			}
+			ReadContext readContext = getReadContext(currentMapFile);
+			readContext.setProjectionTile(tile);
+			readContext.startQuery(this.queryMetricsListener, tile);
+			try {
+				readContext.processBlocks(rawMapDatabaseCallback, queryParameters, subFileParameter);
+			} finally {
+				readContext.finishQuery();
+			}
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+		}
+	}
 
 	/**
-	 * The key of the reference OpenStreetMap tag.
+	 * Starts a database query for the given tile on the executor which has been set via
+	 * {@link #setQueryExecutor(Executor, int)} and returns immediately.
+	 * <p>
+	 * If a query for the same tile is already pending or running, no other query is started and all callers share its
+	 * result. Each caller receives its own future, so cancelling it does not affect the other callers. The query is
+	 * stopped before its next block once all of its callers have cancelled; the reading thread is never interrupted.
+	 * 
+	 * @param tile
+	 *            the tile to read.
+	 * @return the future map elements of the tile.
+	 * @throws IllegalArgumentException
+	 *             if the tile is null.
+	 * @throws IllegalStateException
+	 *             if no query executor has been set.
+	 * @throws RejectedExecutionException
+	 *             if the executor does not accept the query.
 	 */
-	private static final String TAG_KEY_REF = "ref";
+	public Future<TileData> executeQueryAsync(Tile tile) {
+		if (tile == null) {
+			throw new IllegalArgumentException("tile must not be null");
+		}
+		AsyncQueryExecutor currentQueryExecutor = this.asyncQueryExecutor;
+		if (currentQueryExecutor == null) {
+			throw new IllegalStateException("no query executor has been set");
+		}
+		return currentQueryExecutor.submit(tile);
+	}
 
 	/**
-	 * Bitmask for the optional way data blocks byte.
-	 */
-	private static final int WAY_FEATURE_DATA_BLOCKS_BYTE = 0x08;
+	 * Reads all blocks of the sub-file for the given zoom level in file order, for example to export the whole map or
+	 * to pre-fill a tile cache.
+	 * <p>
+	 * Instead of one read per block, the file is read sequentially in large chunks of the given size and the block
+	 * boundaries are taken from the index. Each block is passed as its base tile, followed by all map elements which
+	 * are visible at the given zoom level, regardless of their tile bitmask. The scan uses its own read buffer, which
+	 * is released afterwards. The block cache is not used.
+	 * 
+	 * @param zoomLevel
+	 *            the zoom level at which the elements must be visible.
+	 * @param readAheadSize
+	 *            the number of bytes which are read from the file at once, for example
+	 *            {@link #DEFAULT_READ_AHEAD_SIZE}.
+	 * @param tagFilter
+	 *            the filter for the tags of the elements, or null if all elements should be passed.
+	 * @param scanCallback
+	 *            the callback which handles the blocks and the extracted map elements.
+	 * @throws IllegalArgumentException
+	 *             if the zoom level is negative, the read-ahead size is not positive or the tag filter was created for
+	 *             another map file.
+	 */
+	public void executeScan(byte zoomLevel, int readAheadSize, TagFilter tagFilter, ScanCallback scanCallback) {
+		if (zoomLevel < 0) {
+			throw new IllegalArgumentException("zoom level must not be negative: " + zoomLevel);
+		} else if (readAheadSize <= 0) {
+			throw new IllegalArgumentException("read-ahead size must be positive: " + readAheadSize);
+		}
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			return;
+		}
+		checkTagFilter(currentMapFile, tagFilter);
 
-	/**
-	 * Bitmask for the optional way double delta encoding.
-	 */
-	private static final int WAY_FEATURE_DOUBLE_DELTA_ENCODING = 0x04;
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.queryZoomLevel = currentMapFile.mapFileHeader.getQueryZoomLevel(zoomLevel);
+			queryParameters.tagFilter = tagFilter;
 
-	/**
-	 * Bitmask for the optional way feature "house number".
-	 */
-	private static final int WAY_FEATURE_HOUSE_NUMBER = 0x40;
+			// get and check the sub-file for the query zoom level
+			SubFileParameter subFileParameter = currentMapFile.mapFileHeader
+					.getSubFileParameter(queryParameters.queryZoomLevel);
+			if (subFileParameter == null) {
+				LOG.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+				return;
+			}
 
-	/**
-	 * Bitmask for the optional way feature "label position".
-	 */
-	private static final int WAY_FEATURE_LABEL_POSITION = 0x10;
+			// do not keep the large read-ahead buffer in the read context of the calling thread
+			ReadContext readContext = new ReadContext(currentMapFile);
+			readContext.startQuery(this.queryMetricsListener, null);
+			try {
+				readContext.scanBlocks(scanCallback, queryParameters, subFileParameter, readAheadSize);
+			} finally {
+				readContext.finishQuery();
+			}
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
+		}
+	}
 
 	/**
-	 * Bitmask for the optional way feature "name".
+	 * @return a snapshot of the usage counters of the decoded block cache, with size and capacity measured in
+	 *         estimated bytes, or null if the block cache is disabled.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	private static final int WAY_FEATURE_NAME = 0x80;
+	public CacheStatistics getBlockCacheStatistics() {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		} else if (currentMapFile.blockCache == null) {
+			return null;
+		}
+		return currentMapFile.blockCache.getStatistics();
+	}
 
 	/**
-	 * Bitmask for the optional way feature "reference".
+	 * @return a snapshot of the usage counters of the index cache, with size and capacity measured in bytes.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	private static final int WAY_FEATURE_REF = 0x20;
+	public CacheStatistics getIndexCacheStatistics() {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
+		return currentMapFile.indexCache.getStatistics();
+	}
 
 	/**
-	 * Bitmask for the way layer.
+	 * @return the metadata for the current map file.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	private static final int WAY_LAYER_BITMASK = 0xf0;
+	public MapFileInfo getMapFileInfo() {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
+		return currentMapFile.mapFileHeader.getMapFileInfo();
+	}
 
 	/**
-	 * Bit shift for calculating the way layer.
+	 * Determines whether the given tile contains map elements, only water or nothing at all, for example to skip the
+	 * rendering of trivial tiles. Only the index of the map file is evaluated, no block is read.
+	 * 
+	 * @param tile
+	 *            the tile to classify.
+	 * @return the content of the tile.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	private static final int WAY_LAYER_SHIFT = 4;
+	public TileContent getTileContent(Tile tile) {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
 
-	/**
-	 * Bitmask for the number of way tags.
-	 */
-	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
-
-	private IndexCache databaseIndexCache;
-	private long fileSize;
-	private RandomAccessFile inputFile;
-	private MapFileHeader mapFileHeader;
-	private ReadBuffer readBuffer;
-	private String signatureBlock;
-	private String signaturePoi;
-	private String signatureWay;
-	private int tileLatitude;
-	private int tileLongitude;
+		QueryParameters queryParameters = new QueryParameters();
+		SubFileParameter subFileParameter = prepareQuery(currentMapFile, tile, queryParameters);
+		if (subFileParameter == null) {
+			return TileContent.EMPTY;
+		}
+		return BlockIndex.getTileContent(currentMapFile.indexCache, queryParameters, subFileParameter);
+	}
 
 	/**
-	 * Closes the map file and destroys all internal caches. This method has no effect if no map file is currently
-	 * opened.
+	 * Determines the content of all tiles in the given range, as described for {@link #getTileContent(Tile)}.
+	 * 
+	 * @param zoomLevel
+	 *            the zoom level of the tiles.
+	 * @param fromTileX
+	 *            the X number of the leftmost tile.
+	 * @param fromTileY
+	 *            the Y number of the topmost tile.
+	 * @param toTileX
+	 *            the X number of the rightmost tile.
+	 * @param toTileY
+	 *            the Y number of the bottommost tile.
+	 * @return the content of each tile, indexed by row and column relative to the first tile.
+	 * @throws IllegalArgumentException
+	 *             if the zoom level is negative or the tile range is empty or too large.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	public void closeFile() {
-		try {
-			this.mapFileHeader = null;
-
-			if (this.databaseIndexCache != null) {
-				this.databaseIndexCache.destroy();
-				this.databaseIndexCache = null;
-			}
-
-			if (this.inputFile != null) {
-				this.inputFile.close();
-				this.inputFile = null;
+	public TileContent[][] getTileContents(byte zoomLevel, long fromTileX, long fromTileY, long toTileX,
+			long toTileY) {
+		checkTileRange(zoomLevel, fromTileX, fromTileY, toTileX, toTileY);
+		int rows = (int) (toTileY - fromTileY + 1);
+		int columns = (int) (toTileX - fromTileX + 1);
+		TileContent[][] tileContents = new TileContent[rows][columns];
+		for (int row = 0; row < rows; ++row) {
+			for (int column = 0; column < columns; ++column) {
+				tileContents[row][column] = getTileContent(new Tile(fromTileX + column, fromTileY + row, zoomLevel));
 			}
-
-			this.readBuffer = null;
-		} catch (IOException e) {
-			LOG.log(Level.SEVERE, null, e);
 		}
+		return tileContents;
 	}
 
 	/**
-	 * Starts a database query with the given parameters.
+	 * Estimates the amount of data in the given tile as the number of bytes which a query for the tile must read, for
+	 * example to prioritise expensive tiles. The sizes of all blocks which cover the tile are summed up from the index
+	 * of the map file, no block is read. Tiles with a zoom level above the base zoom level of their sub-file share the
+	 * size of their block.
 	 * 
 	 * @param tile
-	 *            the tile to read.
-	 * @param mapDatabaseCallback
-	 *            the callback which handles the extracted map elements.
+	 *            the tile to estimate.
+	 * @return the estimated data size of the tile in bytes, zero if the tile is empty.
+	 * @throws IllegalStateException
+	 *             if no map is currently opened.
 	 */
-	public void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback) {
-		try {
-			prepareExecution();
-			// We haven't got a File
-			if (mapFileHeader == null) {
-				return;
-			}
-			QueryParameters queryParameters = new QueryParameters();
-			queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
-
-			// get and check the sub-file for the query zoom level
-			SubFileParameter subFileParameter = this.mapFileHeader.getSubFileParameter(queryParameters.queryZoomLevel);
-			if (subFileParameter == null) {
-				LOG.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
-				return;
-			}
-
-			QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
-			QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+	public long getTileDataSize(Tile tile) {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		if (currentMapFile == null) {
+			throw new IllegalStateException("no map file is currently opened");
+		}
 
-			processBlocks(mapDatabaseCallback, queryParameters, subFileParameter);
-		} catch (IOException e) {
-			LOG.log(Level.SEVERE, null, e);
+		QueryParameters queryParameters = new QueryParameters();
+		SubFileParameter subFileParameter = prepareQuery(currentMapFile, tile, queryParameters);
+		if (subFileParameter == null) {
+			return 0;
 		}
+		return BlockIndex.getDataSize(currentMapFile.indexCache, queryParameters, subFileParameter);
 	}
 
 	/**
-	 * @return the metadata for the current map file.
+	 * Estimates the amount of data in all tiles of the given range, as described for {@link #getTileDataSize(Tile)},
+	 * for example for a density map. The range which covers the whole map file at a zoom level can be calculated from
+	 * the bounding box in its {@link #getMapFileInfo() metadata}.
+	 * 
+	 * @param zoomLevel
+	 *            the zoom level of the tiles.
+	 * @param fromTileX
+	 *            the X number of the leftmost tile.
+	 * @param fromTileY
+	 *            the Y number of the topmost tile.
+	 * @param toTileX
+	 *            the X number of the rightmost tile.
+	 * @param toTileY
+	 *            the Y number of the bottommost tile.
+	 * @return the estimated data size of each tile in bytes, indexed by row and column relative to the first tile.
+	 * @throws IllegalArgumentException
+	 *             if the zoom level is negative or the tile range is empty or too large.
 	 * @throws IllegalStateException
 	 *             if no map is currently opened.
 	 */
-	public MapFileInfo getMapFileInfo() {
-		if (this.mapFileHeader == null) {
-			throw new IllegalStateException("no map file is currently opened");
+	public long[][] getTileDataSizes(byte zoomLevel, long fromTileX, long fromTileY, long toTileX, long toTileY) {
+		checkTileRange(zoomLevel, fromTileX, fromTileY, toTileX, toTileY);
+		int rows = (int) (toTileY - fromTileY + 1);
+		int columns = (int) (toTileX - fromTileX + 1);
+		long[][] tileDataSizes = new long[rows][columns];
+		for (int row = 0; row < rows; ++row) {
+			for (int column = 0; column < columns; ++column) {
+				tileDataSizes[row][column] = getTileDataSize(new Tile(fromTileX + column, fromTileY + row, zoomLevel));
+			}
 		}
-		return this.mapFileHeader.getMapFileInfo();
+		return tileDataSizes;
 	}
 
 	/**
 	 * @return true if a map file is currently opened, false otherwise.
 	 */
 	public boolean hasOpenFile() {
-		return this.inputFile != null;
+		return this.sharedMapFile != null;
 	}
 
 	/**
@@ -295,6 +548,30 @@ public class MapDatabase {
 	 *             if the given map file is null.
 	 */
 	public FileOpenResult openFile(File mapFile) {
+		return openFile(mapFile, false);
+	}
+
+	/**
+	 * Opens the given map file, reads its header data and validates them.
+	 * <p>
+	 * The parsed headers of recently opened files are cached, so reopening a file whose size and modification time
+	 * have not changed does not read its header again and keeps its {@link MapFileInfo} and tag filters valid.
+	 * <p>
+	 * If memory mapping is enabled, each sub-file is mapped into memory and all blocks are decoded directly from the
+	 * mapping. This avoids copying the data and the system calls for seeking and reading, but requires enough virtual
+	 * address space for the whole file and is therefore not recommended on 32-bit devices. Sub-files which are larger
+	 * than 2 GB cannot be mapped.
+	 * 
+	 * @param mapFile
+	 *            the map file.
+	 * @param memoryMapped
+	 *            true if the sub-files should be memory-mapped, false if all data should be read via seek and read.
+	 * @return a FileOpenResult containing an error message in case of a failure.
+	 * @throws IllegalArgumentException
+	 *             if the given map file is null.
+	 */
+	public synchronized FileOpenResult openFile(File mapFile, boolean memoryMapped) {
+		MapFileChannel inputFile = null;
 		try {
 			if (mapFile == null) {
 				throw new IllegalArgumentException("mapFile must not be null");
@@ -313,570 +590,218 @@ public class MapDatabase {
 			}
 
 			// open the file in read only mode
-			this.inputFile = new RandomAccessFile(mapFile, READ_ONLY_MODE);
-			this.fileSize = this.inputFile.length();
-
-			this.readBuffer = new ReadBuffer(this.inputFile);
-			this.mapFileHeader = new MapFileHeader();
-			FileOpenResult fileOpenResult = this.mapFileHeader.readHeader(this.readBuffer, this.fileSize);
-			if (!fileOpenResult.isSuccess()) {
-				closeFile();
-				return fileOpenResult;
+			inputFile = new MapFileChannel(mapFile);
+			long fileSize = inputFile.size();
+
+			// parse the header only if the file has changed since it was opened last
+			HeaderCache.Key headerCacheKey = new HeaderCache.Key(mapFile, fileSize);
+			MapFileHeader mapFileHeader = HEADER_CACHE.get(headerCacheKey);
+			if (mapFileHeader == null) {
+				ReadBuffer readBuffer = new ReadBuffer(inputFile);
+				mapFileHeader = new MapFileHeader();
+				FileOpenResult fileOpenResult = mapFileHeader.readHeader(readBuffer, fileSize);
+				if (!fileOpenResult.isSuccess()) {
+					IOUtils.closeQuietly(inputFile);
+					return fileOpenResult;
+				}
+				HEADER_CACHE.put(headerCacheKey, mapFileHeader);
 			}
 
+			SubFileMappings subFileMappings = null;
+			if (memoryMapped) {
+				FileOpenResult fileOpenResult = checkSubFileSizes(mapFileHeader);
+				if (!fileOpenResult.isSuccess()) {
+					IOUtils.closeQuietly(inputFile);
+					return fileOpenResult;
+				}
+				subFileMappings = new SubFileMappings(inputFile.getFileChannel(), mapFileHeader.getSubFileParameters());
+			}
+
+			this.sharedMapFile = new SharedMapFile(inputFile, fileSize, mapFileHeader, subFileMappings,
+					this.indexCacheSize, this.blockCacheSize);
 			return FileOpenResult.SUCCESS;
 		} catch (IOException e) {
 			LOG.log(Level.SEVERE, null, e);
 			// make sure that the file is closed
-			closeFile();
+			IOUtils.closeQuietly(inputFile);
 			return new FileOpenResult(e.getMessage());
 		}
 	}
 
-	private void decodeWayNodesDoubleDelta(float[] waySegment) {
-		// get the first way node latitude offset (VBE-S)
-		int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-		// get the first way node longitude offset (VBE-S)
-		int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-		// store the first way node
-		waySegment[1] = wayNodeLatitude;
-		waySegment[0] = wayNodeLongitude;
-
-		int previousSingleDeltaLatitude = 0;
-		int previousSingleDeltaLongitude = 0;
-
-		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-			// get the way node latitude double-delta offset (VBE-S)
-			int doubleDeltaLatitude = this.readBuffer.readSignedInt();
-
-			// get the way node longitude double-delta offset (VBE-S)
-			int doubleDeltaLongitude = this.readBuffer.readSignedInt();
-
-			int singleDeltaLatitude = doubleDeltaLatitude + previousSingleDeltaLatitude;
-			int singleDeltaLongitude = doubleDeltaLongitude + previousSingleDeltaLongitude;
-
-			wayNodeLatitude = wayNodeLatitude + singleDeltaLatitude;
-			wayNodeLongitude = wayNodeLongitude + singleDeltaLongitude;
-
-			waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-			waySegment[wayNodesIndex] = wayNodeLongitude;
-
-			previousSingleDeltaLatitude = singleDeltaLatitude;
-			previousSingleDeltaLongitude = singleDeltaLongitude;
+	/**
+	 * Sets the maximum size of the decoded block cache for all map files which are opened afterwards. The block cache
+	 * is disabled by default.
+	 * <p>
+	 * If enabled, each block is decoded completely once and kept in memory with all its POIs and ways. Queries for
+	 * neighbouring tiles and for other zoom levels of the same sub-file are then answered from the cache, filtered by
+	 * zoom level and tile bitmask, without reading and decoding the block again. The callback receives copies of all
+	 * coordinate arrays, so it may still modify them.
+	 * 
+	 * @param blockCacheSize
+	 *            the maximum estimated size of the decoded blocks in bytes, zero to disable the cache.
+	 * @throws IllegalArgumentException
+	 *             if the block cache size is negative.
+	 */
+	public synchronized void setBlockCacheSize(long blockCacheSize) {
+		if (blockCacheSize < 0) {
+			throw new IllegalArgumentException("block cache size must not be negative: " + blockCacheSize);
 		}
+		this.blockCacheSize = blockCacheSize;
 	}
 
-	private void decodeWayNodesSingleDelta(float[] waySegment) {
-		// get the first way node latitude single-delta offset (VBE-S)
-		int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-		// get the first way node longitude single-delta offset (VBE-S)
-		int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-		// store the first way node
-		waySegment[1] = wayNodeLatitude;
-		waySegment[0] = wayNodeLongitude;
-
-		for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-			// get the way node latitude offset (VBE-S)
-			wayNodeLatitude = wayNodeLatitude + this.readBuffer.readSignedInt();
-
-			// get the way node longitude offset (VBE-S)
-			wayNodeLongitude = wayNodeLongitude + this.readBuffer.readSignedInt();
-
-			waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-			waySegment[wayNodesIndex] = wayNodeLongitude;
+	/**
+	 * Sets the maximum size of the index cache for all map files which are opened afterwards. Each index block which is
+	 * read from a map file occupies 640 bytes. Large files with many blocks in the queried area profit from a larger
+	 * cache.
+	 * 
+	 * @param indexCacheSize
+	 *            the maximum size of the index cache in bytes.
+	 * @throws IllegalArgumentException
+	 *             if the index cache size is negative.
+	 */
+	public synchronized void setIndexCacheSize(long indexCacheSize) {
+		if (indexCacheSize < 0) {
+			throw new IllegalArgumentException("index cache size must not be negative: " + indexCacheSize);
 		}
+		this.indexCacheSize = indexCacheSize;
 	}
 
 	/**
-	 * Logs the debug signatures of the current way and block.
-	 */
-	private void logDebugSignatures() {
-		if (this.mapFileHeader.getMapFileInfo().debugFile) {
-			LOG.warning(DEBUG_SIGNATURE_WAY + this.signatureWay);
-			LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+	 * Sets the executor for all queries which are started via {@link #executeQueryAsync(Tile)}.
+	 * 
+	 * @param executor
+	 *            the executor which runs the asynchronous queries.
+	 * @param maximumConcurrentQueries
+	 *            the maximum number of asynchronous queries which read from the map file at the same time.
+	 * @throws IllegalArgumentException
+	 *             if the executor is null or the maximum number of concurrent queries is not positive.
+	 */
+	public synchronized void setQueryExecutor(Executor executor, int maximumConcurrentQueries) {
+		if (executor == null) {
+			throw new IllegalArgumentException("executor must not be null");
+		} else if (maximumConcurrentQueries < 1) {
+			throw new IllegalArgumentException("maximum number of concurrent queries must be positive: "
+					+ maximumConcurrentQueries);
 		}
+		this.asyncQueryExecutor = new AsyncQueryExecutor(this, executor, maximumConcurrentQueries);
 	}
 
-	private void prepareExecution() {
-		if (this.databaseIndexCache == null) {
-			this.databaseIndexCache = new IndexCache(this.inputFile, INDEX_CACHE_SIZE);
-		}
+	/**
+	 * Sets the listener which receives the metrics of each subsequent query, such as index cache hits, blocks and
+	 * bytes read, decoded and skipped elements and the time spent in I/O, decoding and the callback.
+	 * <p>
+	 * Metrics are disabled by default. Without a listener, the queries only check for its absence and allocate
+	 * nothing. The listener is called by the thread which executed the query.
+	 * 
+	 * @param queryMetricsListener
+	 *            the listener for the metrics of all queries, or null to disable the metrics.
+	 */
+	public synchronized void setQueryMetricsListener(QueryMetricsListener queryMetricsListener) {
+		this.queryMetricsListener = queryMetricsListener;
 	}
 
 	/**
-	 * Processes a single block and executes the callback functions on all map elements.
+	 * Starts a database query with the given parameters which stops between two blocks if it is cancelled.
 	 * 
-	 * @param queryParameters
-	 *            the parameters of the current query.
-	 * @param subFileParameter
-	 *            the parameters of the current map file.
+	 * @param tile
+	 *            the tile to read.
 	 * @param mapDatabaseCallback
 	 *            the callback which handles the extracted map elements.
+	 * @param tagFilter
+	 *            the filter for the tags of the elements, or null if all elements should be passed.
+	 * @param cancelled
+	 *            the flag which is set if the query is cancelled, or null if the query cannot be cancelled.
+	 * @throws IllegalArgumentException
+	 *             if the tag filter was created for another map file.
 	 */
-	private void processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
-			MapDatabaseCallback mapDatabaseCallback) {
-		if (!processBlockSignature()) {
+	void executeQuery(Tile tile, MapDatabaseCallback mapDatabaseCallback, TagFilter tagFilter,
+			AtomicBoolean cancelled) {
+		SharedMapFile currentMapFile = this.sharedMapFile;
+		// We haven't got a File
+		if (currentMapFile == null) {
 			return;
 		}
+		checkTagFilter(currentMapFile, tagFilter);
 
-		int[][] zoomTable = readZoomTable(subFileParameter);
-		if (zoomTable == null) {
-			return;
-		}
-		int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
-		int poisOnQueryZoomLevel = zoomTable[zoomTableRow][0];
-		int waysOnQueryZoomLevel = zoomTable[zoomTableRow][1];
-
-		// get the relative offset to the first stored way in the block
-		int firstWayOffset = this.readBuffer.readUnsignedInt();
-		if (firstWayOffset < 0) {
-			LOG.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+		try {
+			QueryParameters queryParameters = new QueryParameters();
+			queryParameters.tagFilter = tagFilter;
+			queryParameters.cancelled = cancelled;
+			SubFileParameter subFileParameter = prepareQuery(currentMapFile, tile, queryParameters);
+			if (subFileParameter == null) {
+				return;
 			}
-			return;
-		}
-
-		// add the current buffer position to the relative first way offset
-		firstWayOffset += this.readBuffer.getBufferPosition();
-		if (firstWayOffset > this.readBuffer.getBufferSize()) {
-			LOG.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+			ReadContext readContext = getReadContext(currentMapFile);
+			readContext.startQuery(this.queryMetricsListener, tile);
+			try {
+				readContext.processBlocks(mapDatabaseCallback, queryParameters, subFileParameter);
+			} finally {
+				readContext.finishQuery();
 			}
-			return;
-		}
-
-		if (!processPOIs(mapDatabaseCallback, poisOnQueryZoomLevel)) {
-			return;
-		}
-
-		// finished reading POIs, check if the current buffer position is valid
-		if (this.readBuffer.getBufferPosition() > firstWayOffset) {
-			LOG.warning("invalid buffer position: " + this.readBuffer.getBufferPosition());
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-			}
-			return;
-		}
-
-		// move the pointer to the first way
-		this.readBuffer.setBufferPosition(firstWayOffset);
-
-		if (!processWays(queryParameters, mapDatabaseCallback, waysOnQueryZoomLevel)) {
-			return;
+		} catch (IOException e) {
+			LOG.log(Level.SEVERE, null, e);
 		}
 	}
 
-	private void processBlocks(MapDatabaseCallback mapDatabaseCallback, QueryParameters queryParameters,
-			SubFileParameter subFileParameter) throws IOException {
-		boolean queryIsWater = true;
-		boolean queryReadWaterInfo = false;
-
-		// read and process all blocks from top to bottom and from left to right
-		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
-			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
-
-				// calculate the actual block number of the needed block in the file
-				long blockNumber = row * subFileParameter.blocksWidth + column;
-
-				// get the current index entry
-				long currentBlockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
-
-				// check if the current query would still return a water tile
-				if (queryIsWater) {
-					// check the water flag of the current block in its index entry
-					queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
-					queryReadWaterInfo = true;
-				}
-
-				// get and check the current block pointer
-				long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
-				if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
-					LOG.warning("invalid current block pointer: " + currentBlockPointer);
-					LOG.warning("subFileSize: " + subFileParameter.subFileSize);
-					return;
-				}
-
-				long nextBlockPointer;
-				// check if the current block is the last block in the file
-				if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
-					// set the next block pointer to the end of the file
-					nextBlockPointer = subFileParameter.subFileSize;
-				} else {
-					// get and check the next block pointer
-					nextBlockPointer = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber + 1)
-							& BITMASK_INDEX_OFFSET;
-					if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
-						LOG.warning("invalid next block pointer: " + nextBlockPointer);
-						LOG.warning("sub-file size: " + subFileParameter.subFileSize);
-						return;
-					}
-				}
-
-				// calculate the size of the current block
-				int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
-				if (currentBlockSize < 0) {
-					LOG.warning("current block size must not be negative: " + currentBlockSize);
-					return;
-				} else if (currentBlockSize == 0) {
-					// the current block is empty, continue with the next block
-					continue;
-				} else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
-					// the current block is too large, continue with the next block
-					LOG.warning("current block size too large: " + currentBlockSize);
-					continue;
-				} else if (currentBlockPointer + currentBlockSize > this.fileSize) {
-					LOG.warning("current block largher than file size: " + currentBlockSize);
-					return;
-				}
-
-				// seek to the current block in the map file
-				this.inputFile.seek(subFileParameter.startAddress + currentBlockPointer);
-
-				// read the current block into the buffer
-				if (!this.readBuffer.readFromFile(currentBlockSize)) {
-					// skip the current block
-					LOG.warning("reading current block has failed: " + currentBlockSize);
-					return;
-				}
-
-				// calculate the top-left coordinates of the underlying tile
-				double tileLatitudeDeg = MercatorProjection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
-						subFileParameter.baseZoomLevel);
-				double tileLongitudeDeg = MercatorProjection.tileXToLongitude(subFileParameter.boundaryTileLeft
-						+ column, subFileParameter.baseZoomLevel);
-				this.tileLatitude = (int) (tileLatitudeDeg * 1000000);
-				this.tileLongitude = (int) (tileLongitudeDeg * 1000000);
-
-				try {
-					processBlock(queryParameters, subFileParameter, mapDatabaseCallback);
-				} catch (ArrayIndexOutOfBoundsException e) {
-					LOG.log(Level.SEVERE, null, e);
-				}
+	private static FileOpenResult checkSubFileSizes(MapFileHeader mapFileHeader) {
+		SubFileParameter[] subFileParameters = mapFileHeader.getSubFileParameters();
+		for (int i = 0; i < subFileParameters.length; ++i) {
+			if (subFileParameters[i].subFileSize > SubFileMappings.MAXIMUM_MAPPING_SIZE) {
+				return new FileOpenResult("sub-file too large for memory mapping: " + subFileParameters[i].subFileSize);
 			}
 		}
+		return FileOpenResult.SUCCESS;
+	}
 
-		// the query is finished, was the water flag set for all blocks?
-		if (queryIsWater && queryReadWaterInfo) {
-			mapDatabaseCallback.renderWaterBackground();
+	private static void checkTagFilter(SharedMapFile currentMapFile, TagFilter tagFilter) {
+		if (tagFilter != null && !tagFilter.belongsTo(currentMapFile.mapFileHeader.getMapFileInfo())) {
+			throw new IllegalArgumentException("tag filter belongs to another map file");
 		}
 	}
 
-	/**
-	 * Processes the block signature, if present.
-	 * 
-	 * @return true if the block signature could be processed successfully, false otherwise.
-	 */
-	private boolean processBlockSignature() {
-		if (this.mapFileHeader.getMapFileInfo().debugFile) {
-			// get and check the block signature
-			this.signatureBlock = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
-			if (!this.signatureBlock.startsWith("###TileStart")) {
-				LOG.warning("invalid block signature: " + this.signatureBlock);
-				return false;
-			}
+	private static void checkTileRange(byte zoomLevel, long fromTileX, long fromTileY, long toTileX, long toTileY) {
+		if (zoomLevel < 0) {
+			throw new IllegalArgumentException("zoom level must not be negative: " + zoomLevel);
+		} else if (fromTileX > toTileX || fromTileY > toTileY) {
+			throw new IllegalArgumentException("empty tile range: " + fromTileX + ", " + fromTileY + ", " + toTileX
+					+ ", " + toTileY);
+		} else if (toTileX - fromTileX >= Integer.MAX_VALUE || toTileY - fromTileY >= Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("tile range too large: " + fromTileX + ", " + fromTileY + ", "
+					+ toTileX + ", " + toTileY);
 		}
-		return true;
 	}
 
 	/**
-	 * Processes the given number of POIs.
+	 * Calculates the query zoom level, the base tiles and the blocks of a query for the given tile.
 	 * 
-	 * @param mapDatabaseCallback
-	 *            the callback which handles the extracted POIs.
-	 * @param numberOfPois
-	 *            how many POIs should be processed.
-	 * @return true if the POIs could be processed successfully, false otherwise.
+	 * @return the sub-file for the query zoom level or null if no such sub-file exists.
 	 */
-	private boolean processPOIs(MapDatabaseCallback mapDatabaseCallback, int numberOfPois) {
-		List<Tag> tags = new ArrayList<Tag>();
-		Tag[] poiTags = this.mapFileHeader.getMapFileInfo().poiTags;
-
-		for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				// get and check the POI signature
-				this.signaturePoi = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
-				if (!this.signaturePoi.startsWith("***POIStart")) {
-					LOG.warning("invalid POI signature: " + this.signaturePoi);
-					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-					return false;
-				}
-			}
-
-			// get the POI latitude offset (VBE-S)
-			int latitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-			// get the POI longitude offset (VBE-S)
-			int longitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-			// get the special byte which encodes multiple flags
-			byte specialByte = this.readBuffer.readByte();
-
-			// bit 1-4 represent the layer
-			byte layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
-			// bit 5-8 represent the number of tag IDs
-			byte numberOfTags = (byte) (specialByte & POI_NUMBER_OF_TAGS_BITMASK);
-
-			tags.clear();
-
-			// get the tag IDs (VBE-U)
-			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-				int tagId = this.readBuffer.readUnsignedInt();
-				if (tagId < 0 || tagId >= poiTags.length) {
-					LOG.warning("invalid POI tag ID: " + tagId);
-					if (this.mapFileHeader.getMapFileInfo().debugFile) {
-						LOG.warning(DEBUG_SIGNATURE_POI + this.signaturePoi);
-						LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-					}
-					return false;
-				}
-				tags.add(poiTags[tagId]);
-			}
-
-			// get the feature bitmask (1 byte)
-			byte featureByte = this.readBuffer.readByte();
+	private static SubFileParameter prepareQuery(SharedMapFile currentMapFile, Tile tile,
+			QueryParameters queryParameters) {
+		queryParameters.queryZoomLevel = currentMapFile.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
 
-			// bit 1-3 enable optional features
-			boolean featureName = (featureByte & POI_FEATURE_NAME) != 0;
-			boolean featureHouseNumber = (featureByte & POI_FEATURE_HOUSE_NUMBER) != 0;
-			boolean featureElevation = (featureByte & POI_FEATURE_ELEVATION) != 0;
-
-			// check if the POI has a name
-			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
-			}
-
-			// check if the POI has a house number
-			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
-			}
-
-			// check if the POI has an elevation
-			if (featureElevation) {
-				tags.add(new Tag(TAG_KEY_ELE, Integer.toString(this.readBuffer.readSignedInt())));
-			}
-
-			mapDatabaseCallback.renderPointOfInterest(layer, latitude, longitude, tags);
-		}
-
-		return true;
-	}
-
-	private float[][] processWayDataBlock(boolean doubleDeltaEncoding) {
-		// get and check the number of way coordinate blocks (VBE-U)
-		int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
-		if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
-			LOG.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
-			logDebugSignatures();
+		// get and check the sub-file for the query zoom level
+		SubFileParameter subFileParameter = currentMapFile.mapFileHeader
+				.getSubFileParameter(queryParameters.queryZoomLevel);
+		if (subFileParameter == null) {
+			LOG.warning("no sub-file for zoom level: " + queryParameters.queryZoomLevel);
 			return null;
 		}
 
-		// create the array which will store the different way coordinate blocks
-		float[][] wayCoordinates = new float[numberOfWayCoordinateBlocks][];
-
-		// read the way coordinate blocks
-		for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
-			// get and check the number of way nodes (VBE-U)
-			int numberOfWayNodes = this.readBuffer.readUnsignedInt();
-			if (numberOfWayNodes < 2 || numberOfWayNodes > MAXIMUM_WAY_NODES_SEQUENCE_LENGTH) {
-				LOG.warning("invalid number of way nodes: " + numberOfWayNodes);
-				logDebugSignatures();
-				return null;
-			}
-
-			// each way node consists of latitude and longitude
-			int wayNodesSequenceLength = numberOfWayNodes * 2;
-
-			// create the array which will store the current way segment
-			float[] waySegment = new float[wayNodesSequenceLength];
-
-			if (doubleDeltaEncoding) {
-				decodeWayNodesDoubleDelta(waySegment);
-			} else {
-				decodeWayNodesSingleDelta(waySegment);
-			}
-
-			wayCoordinates[coordinateBlock] = waySegment;
-		}
-
-		return wayCoordinates;
+		QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+		QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+		return subFileParameter;
 	}
 
 	/**
-	 * Processes the given number of ways.
-	 * 
-	 * @param queryParameters
-	 *            the parameters of the current query.
-	 * @param mapDatabaseCallback
-	 *            the callback which handles the extracted ways.
-	 * @param numberOfWays
-	 *            how many ways should be processed.
-	 * @return true if the ways could be processed successfully, false otherwise.
+	 * Returns the read context of the calling thread for the given map file, creating a new one if necessary.
 	 */
-	private boolean processWays(QueryParameters queryParameters, MapDatabaseCallback mapDatabaseCallback,
-			int numberOfWays) {
-		List<Tag> tags = new ArrayList<Tag>();
-		Tag[] wayTags = this.mapFileHeader.getMapFileInfo().wayTags;
-
-		for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
-			if (this.mapFileHeader.getMapFileInfo().debugFile) {
-				// get and check the way signature
-				this.signatureWay = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
-				if (!this.signatureWay.startsWith("---WayStart")) {
-					LOG.warning("invalid way signature: " + this.signatureWay);
-					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-					return false;
-				}
-			}
-
-			// get the size of the way (VBE-U)
-			int wayDataSize = this.readBuffer.readUnsignedInt();
-			if (wayDataSize < 0) {
-				LOG.warning("invalid way data size: " + wayDataSize);
-				if (this.mapFileHeader.getMapFileInfo().debugFile) {
-					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-				}
-				return false;
-			}
-
-			if (queryParameters.useTileBitmask) {
-				// get the way tile bitmask (2 bytes)
-				int tileBitmask = this.readBuffer.readShort();
-				// check if the way is inside the requested tile
-				if ((queryParameters.queryTileBitmask & tileBitmask) == 0) {
-					// skip the rest of the way and continue with the next way
-					this.readBuffer.skipBytes(wayDataSize - 2);
-					continue;
-				}
-			} else {
-				// ignore the way tile bitmask (2 bytes)
-				this.readBuffer.skipBytes(2);
-			}
-
-			// get the special byte which encodes multiple flags
-			byte specialByte = this.readBuffer.readByte();
-
-			// bit 1-4 represent the layer
-			byte layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
-			// bit 5-8 represent the number of tag IDs
-			byte numberOfTags = (byte) (specialByte & WAY_NUMBER_OF_TAGS_BITMASK);
-
-			tags.clear();
-
-			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-				int tagId = this.readBuffer.readUnsignedInt();
-				if (tagId < 0 || tagId >= wayTags.length) {
-					LOG.warning("invalid way tag ID: " + tagId);
-					logDebugSignatures();
-					return false;
-				}
-				tags.add(wayTags[tagId]);
-			}
-
-			// get the feature bitmask (1 byte)
-			byte featureByte = this.readBuffer.readByte();
-
-			// bit 1-6 enable optional features
-			boolean featureName = (featureByte & WAY_FEATURE_NAME) != 0;
-			boolean featureHouseNumber = (featureByte & WAY_FEATURE_HOUSE_NUMBER) != 0;
-			boolean featureRef = (featureByte & WAY_FEATURE_REF) != 0;
-			boolean featureLabelPosition = (featureByte & WAY_FEATURE_LABEL_POSITION) != 0;
-			boolean featureWayDataBlocksByte = (featureByte & WAY_FEATURE_DATA_BLOCKS_BYTE) != 0;
-			boolean featureWayDoubleDeltaEncoding = (featureByte & WAY_FEATURE_DOUBLE_DELTA_ENCODING) != 0;
-
-			// check if the way has a name
-			if (featureName) {
-				tags.add(new Tag(TAG_KEY_NAME, this.readBuffer.readUTF8EncodedString()));
-			}
-
-			// check if the way has a house number
-			if (featureHouseNumber) {
-				tags.add(new Tag(TAG_KEY_HOUSE_NUMBER, this.readBuffer.readUTF8EncodedString()));
-			}
-
-			// check if the way has a reference
-			if (featureRef) {
-				tags.add(new Tag(TAG_KEY_REF, this.readBuffer.readUTF8EncodedString()));
-			}
-
-			float[] labelPosition = readOptionalLabelPosition(featureLabelPosition);
-
-			int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte);
-			if (wayDataBlocks < 1) {
-				LOG.warning("invalid number of way data blocks: " + wayDataBlocks);
-				logDebugSignatures();
-				return false;
-			}
-
-			for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; ++wayDataBlock) {
-				float[][] wayNodes = processWayDataBlock(featureWayDoubleDeltaEncoding);
-				if (wayNodes == null) {
-					return false;
-				}
-				mapDatabaseCallback.renderWay(layer, labelPosition, tags, wayNodes);
-			}
-		}
-
-		return true;
-	}
-
-	private float[] readOptionalLabelPosition(boolean featureLabelPosition) {
-		float[] labelPosition = null;
-		if (featureLabelPosition) {
-			labelPosition = new float[2];
-
-			// get the label position latitude offset (VBE-S)
-			labelPosition[1] = this.tileLatitude + this.readBuffer.readSignedInt();
-
-			// get the label position longitude offset (VBE-S)
-			labelPosition[0] = this.tileLongitude + this.readBuffer.readSignedInt();
-		}
-		return labelPosition;
-	}
-
-	private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte) {
-		if (featureWayDataBlocksByte) {
-			// get and check the number of way data blocks (VBE-U)
-			return this.readBuffer.readUnsignedInt();
+	private ReadContext getReadContext(SharedMapFile currentMapFile) {
+		ReadContext readContext = this.readContexts.get();
+		if (readContext == null || readContext.getSharedMapFile() != currentMapFile) {
+			readContext = new ReadContext(currentMapFile);
+			this.readContexts.set(readContext);
 		}
-		// only one way data block exists
-		return 1;
-	}
-
-	private int[][] readZoomTable(SubFileParameter subFileParameter) {
-		int rows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
-		int[][] zoomTable = new int[rows][2];
-
-		int cumulatedNumberOfPois = 0;
-		int cumulatedNumberOfWays = 0;
-
-		for (int row = 0; row < rows; ++row) {
-			cumulatedNumberOfPois += this.readBuffer.readUnsignedInt();
-			cumulatedNumberOfWays += this.readBuffer.readUnsignedInt();
-
-			if (cumulatedNumberOfPois < 0 || cumulatedNumberOfPois > MAXIMUM_ZOOM_TABLE_OBJECTS) {
-				LOG.warning("invalid cumulated number of POIs in row " + row + ' ' + cumulatedNumberOfPois);
-				if (this.mapFileHeader.getMapFileInfo().debugFile) {
-					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-				}
-				return null;
-			} else if (cumulatedNumberOfWays < 0 || cumulatedNumberOfWays > MAXIMUM_ZOOM_TABLE_OBJECTS) {
-				LOG.warning("invalid cumulated number of ways in row " + row + ' ' + cumulatedNumberOfWays);
-				if (this.mapFileHeader.getMapFileInfo().debugFile) {
-					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-				}
-				return null;
-			}
-
-			zoomTable[row][0] = cumulatedNumberOfPois;
-			zoomTable[row][1] = cumulatedNumberOfWays;
-		}
-
-		return zoomTable;
+		return readContext;
 	}
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+
+/**
+ * Converts the reusable views of a {@link RawMapDatabaseCallback} into the tag lists and coordinate arrays of a
+ * {@link MapDatabaseCallback}.
+ */
+class MapDatabaseCallbackAdapter implements RawMapDatabaseCallback {
+	private final boolean lazyTags;
+	private final MapDatabaseCallback mapDatabaseCallback;
+	private final MapFileInfo mapFileInfo;
+	private final List<Tag> poiTags;
+	private final List<Tag> wayTags;
+
+	/**
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the converted map elements.
+	 * @param mapFileInfo
+	 *            the metadata of the map file with the tags which are referenced by the tag IDs.
+	 * @param lazyTags
+	 *            true if the callback accepts the name, house number and reference as lazy tags, false otherwise.
+	 */
+	MapDatabaseCallbackAdapter(MapDatabaseCallback mapDatabaseCallback, MapFileInfo mapFileInfo, boolean lazyTags) {
+		this.lazyTags = lazyTags;
+		this.mapDatabaseCallback = mapDatabaseCallback;
+		this.mapFileInfo = mapFileInfo;
+		this.poiTags = new ArrayList<Tag>();
+		this.wayTags = new ArrayList<Tag>();
+	}
+
+	@Override
+	public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+		this.poiTags.clear();
+		pointOfInterest.addTags(this.mapFileInfo.poiTags, this.poiTags, this.lazyTags);
+		this.mapDatabaseCallback.renderPointOfInterest(pointOfInterest.getLayer(), pointOfInterest.getLatitude(),
+				pointOfInterest.getLongitude(), this.poiTags);
+	}
+
+	@Override
+	public void renderWaterBackground() {
+		this.mapDatabaseCallback.renderWaterBackground();
+	}
+
+	@Override
+	public void renderWay(RawWay way) {
+		this.wayTags.clear();
+		way.addTags(this.mapFileInfo.wayTags, this.wayTags, this.lazyTags);
+		this.mapDatabaseCallback.renderWay(way.getLayer(), way.toLabelPosition(), this.wayTags, way.toWayNodes());
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+import org.mapsforge.v3.core.IOUtils;
+
+/**
+ * The read-only channel of a map file, which may be shared by any number of threads and survives their interrupts.
+ * <p>
+ * A {@link FileChannel} is closed for all threads as soon as one thread is interrupted during an operation on it.
+ * Threads are interrupted for example when a map view is destroyed or paused. If this happens during a read, the file
+ * is opened again: only the read of the interrupted thread fails with a {@link ClosedByInterruptException}, all other
+ * threads repeat their read with the new channel.
+ */
+class MapFileChannel implements Closeable {
+	private static final Logger LOG = Logger.getLogger(MapFileChannel.class.getName());
+	private static final String READ_ONLY_MODE = "r";
+
+	private boolean closed;
+	private final File file;
+	private volatile FileChannel fileChannel;
+	private RandomAccessFile randomAccessFile;
+
+	/**
+	 * Opens the given file in read-only mode.
+	 *
+	 * @param file
+	 *            the map file.
+	 * @throws FileNotFoundException
+	 *             if the file cannot be opened for reading.
+	 */
+	MapFileChannel(File file) throws FileNotFoundException {
+		this.file = file;
+		this.randomAccessFile = new RandomAccessFile(file, READ_ONLY_MODE);
+		this.fileChannel = this.randomAccessFile.getChannel();
+	}
+
+	/**
+	 * Closes the file. Reads which are started afterwards fail with a {@link ClosedChannelException}.
+	 */
+	@Override
+	public synchronized void close() {
+		this.closed = true;
+		IOUtils.closeQuietly(this.randomAccessFile);
+	}
+
+	/**
+	 * @return the current channel of the file, which must not be used by other threads than the calling one and only
+	 *         until the file is opened again.
+	 */
+	FileChannel getFileChannel() {
+		return this.fileChannel;
+	}
+
+	/**
+	 * Reads a sequence of bytes from the given position of the file into the given buffer, like
+	 * {@link FileChannel#read(ByteBuffer, long)}.
+	 *
+	 * @param byteBuffer
+	 *            the buffer into which the bytes are to be transferred.
+	 * @param position
+	 *            the position in the file at which the transfer is to begin.
+	 * @return the number of bytes read, possibly zero, or -1 if the given position is greater than or equal to the
+	 *         file's current size.
+	 * @throws ClosedByInterruptException
+	 *             if the calling thread has been interrupted during the read.
+	 * @throws ClosedChannelException
+	 *             if the file has been closed.
+	 * @throws IOException
+	 *             if any other I/O error occurs.
+	 */
+	int read(ByteBuffer byteBuffer, long position) throws IOException {
+		while (true) {
+			FileChannel currentFileChannel = this.fileChannel;
+			try {
+				return currentFileChannel.read(byteBuffer, position);
+			} catch (ClosedByInterruptException e) {
+				// only the read of the interrupted thread fails, all other threads can continue
+				reopen(currentFileChannel);
+				throw e;
+			} catch (ClosedChannelException e) {
+				// the channel has been closed due to an interrupt of another thread
+				reopen(currentFileChannel);
+			}
+		}
+	}
+
+	/**
+	 * @return the size of the file in bytes.
+	 * @throws IOException
+	 *             if an I/O error occurs.
+	 */
+	long size() throws IOException {
+		return this.fileChannel.size();
+	}
+
+	/**
+	 * Opens the file again, unless this has already been done by another thread.
+	 *
+	 * @param closedFileChannel
+	 *            the channel which has been found closed.
+	 * @throws ClosedChannelException
+	 *             if the file has been closed on purpose.
+	 * @throws FileNotFoundException
+	 *             if the file cannot be opened any more.
+	 */
+	private synchronized void reopen(FileChannel closedFileChannel) throws ClosedChannelException,
+			FileNotFoundException {
+		if (this.closed) {
+			throw new ClosedChannelException();
+		} else if (this.fileChannel != closedFileChannel) {
+			return;
+		}
+
+		LOG.warning("reopening map file after an interrupted read: " + this.file);
+		IOUtils.closeQuietly(this.randomAccessFile);
+		this.randomAccessFile = new RandomAccessFile(this.file, READ_ONLY_MODE);
+		this.fileChannel = this.randomAccessFile.getChannel();
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.logging.Logger;
+
+/**
+ * A {@link BlockReadBuffer} which decodes the data directly from memory-mapped sub-files instead of copying it into an
+ * array first.
+ * <p>
+ * Reading a block only selects the mapped range, no data is copied and no system call is made. All reads are limited to
+ * the selected range, so the data of a corrupt block can never be decoded from its neighbours.
+ */
+class MappedReadBuffer extends BlockReadBuffer {
+	private static final String CHARSET_UTF8 = "UTF-8";
+	private static final Logger LOG = Logger.getLogger(MappedReadBuffer.class.getName());
+
+	/**
+	 * The selected range of the mapped sub-file, reading outside of it throws an IndexOutOfBoundsException.
+	 */
+	private ByteBuffer data;
+
+	/**
+	 * Read position in the selected range.
+	 */
+	private int dataPosition;
+
+	private byte[] stringBuffer;
+	private final SubFileMappings subFileMappings;
+
+	/**
+	 * @param subFileMappings
+	 *            the memory-mapped sub-files from which the data should be read.
+	 */
+	MappedReadBuffer(SubFileMappings subFileMappings) {
+		this.subFileMappings = subFileMappings;
+	}
+
+	@Override
+	public byte readByte() {
+		return this.data.get(this.dataPosition++);
+	}
+
+	/**
+	 * Selects the given range of the memory-mapped file as the current block and resets the internal buffer
+	 * position.
+	 * 
+	 * @param address
+	 *            the absolute position in the file from which the data should be read.
+	 * @param length
+	 *            the amount of bytes to read from the file.
+	 * @return true if the range is covered by a memory-mapped sub-file, false otherwise.
+	 */
+	@Override
+	public boolean readFromFile(long address, int length) {
+		int mapping = this.subFileMappings.findMapping(address, length);
+		if (mapping < 0) {
+			LOG.warning("invalid read range: " + address + ' ' + length);
+			return false;
+		}
+
+		// select the range via a view, the mapped buffer itself is shared with other threads
+		ByteBuffer range = this.subFileMappings.getBuffer(mapping).duplicate();
+		int offset = (int) (address - this.subFileMappings.getStartAddress(mapping));
+		range.limit(offset + length);
+		range.position(offset);
+		this.data = range.slice();
+		this.dataPosition = 0;
+		return true;
+	}
+
+	@Override
+	public int readInt() {
+		this.dataPosition += 4;
+		return this.data.getInt(this.dataPosition - 4);
+	}
+
+	@Override
+	public long readLong() {
+		this.dataPosition += 8;
+		return this.data.getLong(this.dataPosition - 8);
+	}
+
+	@Override
+	public int readShort() {
+		this.dataPosition += 2;
+		return this.data.getShort(this.dataPosition - 2);
+	}
+
+	@Override
+	public int readSignedInt() {
+		int variableByteDecode = 0;
+		byte variableByteShift = 0;
+		byte currentByte;
+
+		// check if the continuation bit is set
+		while (((currentByte = this.data.get(this.dataPosition++)) & 0x80) != 0) {
+			variableByteDecode |= (currentByte & 0x7f) << variableByteShift;
+			variableByteShift += 7;
+		}
+
+		// read the six data bits from the last byte
+		if ((currentByte & 0x40) != 0) {
+			// negative
+			return -(variableByteDecode | ((currentByte & 0x3f) << variableByteShift));
+		}
+		// positive
+		return variableByteDecode | ((currentByte & 0x3f) << variableByteShift);
+	}
+
+	@Override
+	public void readSignedInts(int[] values, int offset, int count) {
+		ByteBuffer buffer = this.data;
+		int position = this.dataPosition;
+		int end = offset + count;
+		for (int i = offset; i < end; ++i) {
+			int firstByte = buffer.get(position);
+			if (firstByte >= 0) {
+				values[i] = toSignedInt(firstByte & 0x3f, firstByte);
+				++position;
+				continue;
+			}
+
+			int secondByte = buffer.get(position + 1);
+			if (secondByte >= 0) {
+				values[i] = toSignedInt((firstByte & 0x7f) | ((secondByte & 0x3f) << 7), secondByte);
+				position += 2;
+			} else {
+				this.dataPosition = position;
+				values[i] = readSignedInt();
+				position = this.dataPosition;
+			}
+		}
+		this.dataPosition = position;
+	}
+
+	@Override
+	public int readUnsignedInt() {
+		int variableByteDecode = 0;
+		byte variableByteShift = 0;
+		byte currentByte;
+
+		// check if the continuation bit is set
+		while (((currentByte = this.data.get(this.dataPosition++)) & 0x80) != 0) {
+			variableByteDecode |= (currentByte & 0x7f) << variableByteShift;
+			variableByteShift += 7;
+		}
+
+		// read the seven data bits from the last byte
+		return variableByteDecode | (currentByte << variableByteShift);
+	}
+
+	@Override
+	public String readUTF8EncodedString(int stringLength) {
+		if (stringLength > 0 && this.dataPosition + stringLength <= this.data.capacity()) {
+			if (this.stringBuffer == null || this.stringBuffer.length < stringLength) {
+				this.stringBuffer = new byte[stringLength];
+			}
+			for (int i = 0; i < stringLength; ++i) {
+				this.stringBuffer[i] = this.data.get(this.dataPosition++);
+			}
+			try {
+				return new String(this.stringBuffer, 0, stringLength, CHARSET_UTF8);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		LOG.warning("invalid string length: " + stringLength);
+		return null;
+	}
+
+	@Override
+	byte[] getBytes(int position, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; ++i) {
+			bytes[i] = this.data.get(position + i);
+		}
+		return bytes;
+	}
+
+	@Override
+	int getBufferPosition() {
+		return this.dataPosition;
+	}
+
+	@Override
+	int getBufferSize() {
+		return this.data.capacity();
+	}
+
+	@Override
+	boolean readAhead(long address, int length, long endAddress, int readAheadSize) {
+		// the whole sub-file is already mapped into memory
+		return readFromFile(address, length);
+	}
+
+	@Override
+	void readWayNodes(int[] coordinates, int offset, int length, int latitude, int longitude,
+			boolean doubleDeltaEncoding) {
+		ByteBuffer buffer = this.data;
+		int position = this.dataPosition;
+		for (int i = 0; i < length; ++i) {
+			int value;
+			int firstByte = buffer.get(position);
+			if (firstByte >= 0) {
+				value = toSignedInt(firstByte & 0x3f, firstByte);
+				++position;
+			} else {
+				int secondByte = buffer.get(position + 1);
+				if (secondByte >= 0) {
+					value = toSignedInt((firstByte & 0x7f) | ((secondByte & 0x3f) << 7), secondByte);
+					position += 2;
+				} else {
+					this.dataPosition = position;
+					value = readSignedInt();
+					position = this.dataPosition;
+				}
+			}
+			storeWayNodeValue(coordinates, offset, i, value, latitude, longitude, doubleDeltaEncoding);
+		}
+		this.dataPosition = position;
+	}
+
+	@Override
+	void setBufferPosition(int bufferPosition) {
+		this.dataPosition = bufferPosition;
+	}
+
+	@Override
+	void skipBytes(int bytes) {
+		this.dataPosition += bytes;
+	}
+}
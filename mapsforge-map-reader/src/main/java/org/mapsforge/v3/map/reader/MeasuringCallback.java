@@ -0,0 +1,104 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.List;
+
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * A callback which forwards all calls to another callback and adds the number of passed elements and the time spent
+ * in the other callback to the metrics of the current query.
+ */
+class MeasuringCallback implements MapDatabaseCallback, ScanCallback {
+	private final MapDatabaseCallback mapDatabaseCallback;
+	private final QueryMetrics queryMetrics;
+	private final RawMapDatabaseCallback rawMapDatabaseCallback;
+
+	/**
+	 * @param mapDatabaseCallback
+	 *            the callback to which all calls are forwarded.
+	 * @param queryMetrics
+	 *            the metrics of the current query.
+	 */
+	MeasuringCallback(MapDatabaseCallback mapDatabaseCallback, QueryMetrics queryMetrics) {
+		this.mapDatabaseCallback = mapDatabaseCallback;
+		this.rawMapDatabaseCallback = null;
+		this.queryMetrics = queryMetrics;
+	}
+
+	/**
+	 * @param rawMapDatabaseCallback
+	 *            the callback to which all calls are forwarded, which may also be a {@link ScanCallback}.
+	 * @param queryMetrics
+	 *            the metrics of the current query.
+	 */
+	MeasuringCallback(RawMapDatabaseCallback rawMapDatabaseCallback, QueryMetrics queryMetrics) {
+		this.mapDatabaseCallback = null;
+		this.rawMapDatabaseCallback = rawMapDatabaseCallback;
+		this.queryMetrics = queryMetrics;
+	}
+
+	@Override
+	public void renderPointOfInterest(byte layer, int latitude, int longitude, List<Tag> tags) {
+		long startNanos = System.nanoTime();
+		this.mapDatabaseCallback.renderPointOfInterest(layer, latitude, longitude, tags);
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+		++this.queryMetrics.poisDecoded;
+	}
+
+	@Override
+	public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+		long startNanos = System.nanoTime();
+		this.rawMapDatabaseCallback.renderPointOfInterest(pointOfInterest);
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+		++this.queryMetrics.poisDecoded;
+	}
+
+	@Override
+	public void renderWaterBackground() {
+		long startNanos = System.nanoTime();
+		if (this.mapDatabaseCallback != null) {
+			this.mapDatabaseCallback.renderWaterBackground();
+		} else {
+			this.rawMapDatabaseCallback.renderWaterBackground();
+		}
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+	}
+
+	@Override
+	public void renderWay(byte layer, float[] labelPosition, List<Tag> tags, float[][] wayNodes) {
+		long startNanos = System.nanoTime();
+		this.mapDatabaseCallback.renderWay(layer, labelPosition, tags, wayNodes);
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+		++this.queryMetrics.waysDecoded;
+	}
+
+	@Override
+	public void renderWay(RawWay way) {
+		long startNanos = System.nanoTime();
+		this.rawMapDatabaseCallback.renderWay(way);
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+		++this.queryMetrics.waysDecoded;
+	}
+
+	@Override
+	public void startTile(Tile tile) {
+		long startNanos = System.nanoTime();
+		((ScanCallback) this.rawMapDatabaseCallback).startTile(tile);
+		this.queryMetrics.callbackNanos += System.nanoTime() - startNanos;
+	}
+}
@@ -14,6 +14,8 @@
  */
 package org.mapsforge.v3.map.reader;
 
+import org.mapsforge.v3.core.BoundingBox;
+import org.mapsforge.v3.core.MercatorProjection;
 import org.mapsforge.v3.core.Tile;
 import org.mapsforge.v3.map.reader.header.SubFileParameter;
 
@@ -98,6 +100,20 @@ final class QueryCalculations {
 		}
 	}
 
+	static void calculateBaseTiles(QueryParameters queryParameters, BoundingBox boundingBox,
+			SubFileParameter subFileParameter) {
+		// calculate the XY numbers of all base tiles which intersect the bounding box
+		byte baseZoomLevel = subFileParameter.baseZoomLevel;
+		double minLatitude = MercatorProjection.limitLatitude(boundingBox.getMinLatitude());
+		double maxLatitude = MercatorProjection.limitLatitude(boundingBox.getMaxLatitude());
+		queryParameters.fromBaseTileX = MercatorProjection.longitudeToTileX(boundingBox.getMinLongitude(),
+				baseZoomLevel);
+		queryParameters.fromBaseTileY = MercatorProjection.latitudeToTileY(maxLatitude, baseZoomLevel);
+		queryParameters.toBaseTileX = MercatorProjection.longitudeToTileX(boundingBox.getMaxLongitude(), baseZoomLevel);
+		queryParameters.toBaseTileY = MercatorProjection.latitudeToTileY(minLatitude, baseZoomLevel);
+		queryParameters.useTileBitmask = false;
+	}
+
 	static void calculateBaseTiles(QueryParameters queryParameters, Tile tile, SubFileParameter subFileParameter) {
 		if (tile.zoomLevel < subFileParameter.baseZoomLevel) {
 			// calculate the XY numbers of the upper left and lower right sub-tiles
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * The counters and timings of a single query of a {@link MapDatabase}.
+ * <p>
+ * A way is counted once per way data block which is passed to the callback. All timings are measured in nanoseconds
+ * via {@link System#nanoTime()}.
+ */
+public final class QueryMetrics {
+	long blockCacheHits;
+	long blocksRead;
+	long bytesRead;
+	long callbackNanos;
+	long indexCacheHits;
+	long indexCacheMisses;
+	long ioNanos;
+	long poisDecoded;
+	long poisSkippedByTagFilter;
+	private final long startNanos;
+	private final Tile tile;
+	private long totalNanos;
+	long waysDecoded;
+	long waysSkippedByTagFilter;
+	long waysSkippedByTileBitmask;
+
+	QueryMetrics(Tile tile) {
+		this.tile = tile;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * @return the number of blocks which have been taken from the decoded block cache.
+	 */
+	public long getBlockCacheHits() {
+		return this.blockCacheHits;
+	}
+
+	/**
+	 * @return the number of blocks which have been read from the map file.
+	 */
+	public long getBlocksRead() {
+		return this.blocksRead;
+	}
+
+	/**
+	 * @return the number of bytes which have been read from the map file, without the index.
+	 */
+	public long getBytesRead() {
+		return this.bytesRead;
+	}
+
+	/**
+	 * @return the time which has been spent in the methods of the callback.
+	 */
+	public long getCallbackNanos() {
+		return this.callbackNanos;
+	}
+
+	/**
+	 * @return the time which has been spent neither in I/O nor in the callback, mainly for decoding the blocks.
+	 */
+	public long getDecodingNanos() {
+		return Math.max(this.totalNanos - this.ioNanos - this.callbackNanos, 0);
+	}
+
+	/**
+	 * @return the number of index entries which have been found in the index cache.
+	 */
+	public long getIndexCacheHits() {
+		return this.indexCacheHits;
+	}
+
+	/**
+	 * @return the number of index entries whose index block had to be read from the map file.
+	 */
+	public long getIndexCacheMisses() {
+		return this.indexCacheMisses;
+	}
+
+	/**
+	 * @return the time which has been spent for reading blocks from the map file.
+	 */
+	public long getIoNanos() {
+		return this.ioNanos;
+	}
+
+	/**
+	 * @return the number of POIs which have been passed to the callback.
+	 */
+	public long getPoisDecoded() {
+		return this.poisDecoded;
+	}
+
+	/**
+	 * @return the number of POIs which have been skipped because their tags were not accepted by the tag filter.
+	 */
+	public long getPoisSkippedByTagFilter() {
+		return this.poisSkippedByTagFilter;
+	}
+
+	/**
+	 * @return the tile of the query, or null if the query is not bound to a single tile.
+	 */
+	public Tile getTile() {
+		return this.tile;
+	}
+
+	/**
+	 * @return the total duration of the query.
+	 */
+	public long getTotalNanos() {
+		return this.totalNanos;
+	}
+
+	/**
+	 * @return the number of way data blocks which have been passed to the callback.
+	 */
+	public long getWaysDecoded() {
+		return this.waysDecoded;
+	}
+
+	/**
+	 * @return the number of ways which have been skipped because their tags were not accepted by the tag filter.
+	 */
+	public long getWaysSkippedByTagFilter() {
+		return this.waysSkippedByTagFilter;
+	}
+
+	/**
+	 * @return the number of ways which have been skipped because they do not cover the tile of the query.
+	 */
+	public long getWaysSkippedByTileBitmask() {
+		return this.waysSkippedByTileBitmask;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("QueryMetrics [tile=");
+		stringBuilder.append(this.tile);
+		stringBuilder.append(", indexCacheHits=");
+		stringBuilder.append(this.indexCacheHits);
+		stringBuilder.append(", indexCacheMisses=");
+		stringBuilder.append(this.indexCacheMisses);
+		stringBuilder.append(", blocksRead=");
+		stringBuilder.append(this.blocksRead);
+		stringBuilder.append(", blockCacheHits=");
+		stringBuilder.append(this.blockCacheHits);
+		stringBuilder.append(", bytesRead=");
+		stringBuilder.append(this.bytesRead);
+		stringBuilder.append(", poisDecoded=");
+		stringBuilder.append(this.poisDecoded);
+		stringBuilder.append(", poisSkippedByTagFilter=");
+		stringBuilder.append(this.poisSkippedByTagFilter);
+		stringBuilder.append(", waysDecoded=");
+		stringBuilder.append(this.waysDecoded);
+		stringBuilder.append(", waysSkippedByTagFilter=");
+		stringBuilder.append(this.waysSkippedByTagFilter);
+		stringBuilder.append(", waysSkippedByTileBitmask=");
+		stringBuilder.append(this.waysSkippedByTileBitmask);
+		stringBuilder.append(", ioNanos=");
+		stringBuilder.append(this.ioNanos);
+		stringBuilder.append(", callbackNanos=");
+		stringBuilder.append(this.callbackNanos);
+		stringBuilder.append(", totalNanos=");
+		stringBuilder.append(this.totalNanos);
+		stringBuilder.append("]");
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * Stops the measurement of the total duration.
+	 */
+	void finish() {
+		this.totalNanos = System.nanoTime() - this.startNanos;
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+/**
+ * Receives the metrics of each query of a {@link MapDatabase}, for example to export them to a monitoring system.
+ * 
+ * @see MapDatabase#setQueryMetricsListener(QueryMetricsListener)
+ */
+public interface QueryMetricsListener {
+	/**
+	 * Called at the end of each query on the thread which has executed it. Implementations should return quickly.
+	 * 
+	 * @param queryMetrics
+	 *            the metrics of the finished query, which are not modified afterwards.
+	 */
+	void queryFinished(QueryMetrics queryMetrics);
+}
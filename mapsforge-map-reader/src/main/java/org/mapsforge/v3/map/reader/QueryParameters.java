@@ -14,13 +14,18 @@
  */
 package org.mapsforge.v3.map.reader;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 class QueryParameters {
+	AtomicBoolean cancelled;
 	long fromBaseTileX;
 	long fromBaseTileY;
 	long fromBlockX;
 	long fromBlockY;
+	boolean lazyTags;
 	int queryTileBitmask;
 	int queryZoomLevel;
+	TagFilter tagFilter;
 	long toBaseTileX;
 	long toBaseTileY;
 	long toBlockX;
@@ -30,7 +35,9 @@ class QueryParameters {
 	@Override
 	public String toString() {
 		StringBuilder stringBuilder = new StringBuilder();
-		stringBuilder.append("QueryParameters [fromBaseTileX=");
+		stringBuilder.append("QueryParameters [cancelled=");
+		stringBuilder.append(this.cancelled);
+		stringBuilder.append(", fromBaseTileX=");
 		stringBuilder.append(this.fromBaseTileX);
 		stringBuilder.append(", fromBaseTileY=");
 		stringBuilder.append(this.fromBaseTileY);
@@ -38,10 +45,14 @@ class QueryParameters {
 		stringBuilder.append(this.fromBlockX);
 		stringBuilder.append(", fromBlockY=");
 		stringBuilder.append(this.fromBlockY);
+		stringBuilder.append(", lazyTags=");
+		stringBuilder.append(this.lazyTags);
 		stringBuilder.append(", queryTileBitmask=");
 		stringBuilder.append(this.queryTileBitmask);
 		stringBuilder.append(", queryZoomLevel=");
 		stringBuilder.append(this.queryZoomLevel);
+		stringBuilder.append(", tagFilter=");
+		stringBuilder.append(this.tagFilter);
 		stringBuilder.append(", toBaseTileX=");
 		stringBuilder.append(this.toBaseTileX);
 		stringBuilder.append(", toBaseTileY=");
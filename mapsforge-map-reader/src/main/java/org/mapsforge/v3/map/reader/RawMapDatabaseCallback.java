@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+/**
+ * Callback methods which can be triggered from the {@link MapDatabase} without allocating objects for each element.
+ * <p>
+ * In contrast to the {@link MapDatabaseCallback}, all map elements are passed as reusable views with primitive
+ * coordinates and tag IDs. The coordinates can be read in microdegrees or as pixel coordinates relative to the tile
+ * of the query, which are projected only on request. Names, house numbers and references are only decoded if they are
+ * requested. The views and their arrays must not be used after the callback method has returned.
+ */
+public interface RawMapDatabaseCallback {
+	/**
+	 * Renders a single point of interest node (POI).
+	 * 
+	 * @param pointOfInterest
+	 *            the reused view of the POI.
+	 */
+	void renderPointOfInterest(RawPointOfInterest pointOfInterest);
+
+	/**
+	 * Renders water background for the current tile.
+	 */
+	void renderWaterBackground();
+
+	/**
+	 * Renders a single way data block of a way or area (closed way).
+	 * 
+	 * @param way
+	 *            the reused view of the way data block.
+	 */
+	void renderWay(RawWay way);
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.mapsforge.v3.core.LazyTag;
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.core.TileProjection;
+
+/**
+ * The common properties of a POI or a way as passed to a {@link RawMapDatabaseCallback}.
+ * <p>
+ * Instances are reused for all elements of a query. Their content, including the arrays returned by any method, is
+ * only valid during the callback method which received it. String values are decoded from the current block only if
+ * they are requested.
+ */
+public abstract class RawMapElement {
+	/**
+	 * Offset value for a string which is not present.
+	 */
+	private static final int ABSENT = -1;
+
+	/**
+	 * Offset value for a string whose length is invalid.
+	 */
+	private static final int INVALID = -2;
+
+	private static final Logger LOG = Logger.getLogger(RawMapElement.class.getName());
+
+	/**
+	 * Maximum number of tag IDs of a single element, limited by the four bits in the special byte.
+	 */
+	private static final int MAXIMUM_TAG_IDS = 15;
+
+	private static final int NUMBER_OF_STRINGS = 3;
+
+	/**
+	 * Index of the lazily decoded house number.
+	 */
+	static final int STRING_HOUSE_NUMBER = 0;
+
+	/**
+	 * Index of the lazily decoded name.
+	 */
+	static final int STRING_NAME = 1;
+
+	/**
+	 * Index of the lazily decoded reference.
+	 */
+	static final int STRING_REF = 2;
+
+	/**
+	 * The key of the house number OpenStreetMap tag.
+	 */
+	static final String TAG_KEY_HOUSE_NUMBER = "addr:housenumber";
+
+	/**
+	 * The key of the name OpenStreetMap tag.
+	 */
+	static final String TAG_KEY_NAME = "name";
+
+	private byte layer;
+	private int numberOfTags;
+	private final BlockReadBuffer readBuffer;
+	private final int[] stringLengths;
+	private final int[] stringOffsets;
+	private final String[] strings;
+	private final int[] tagIds;
+	private TileProjection tileProjection;
+
+	RawMapElement(BlockReadBuffer readBuffer) {
+		this.readBuffer = readBuffer;
+		this.tagIds = new int[MAXIMUM_TAG_IDS];
+		this.stringOffsets = new int[NUMBER_OF_STRINGS];
+		this.stringLengths = new int[NUMBER_OF_STRINGS];
+		this.strings = new String[NUMBER_OF_STRINGS];
+	}
+
+	/**
+	 * Adds all tags of this element, including those for the optional string values, to the given list. In contrast to
+	 * the other methods of this class, the added tags stay valid after the callback method returns.
+	 * <p>
+	 * The name, house number and reference are added as {@link LazyTag LazyTags}, which keep a copy of the encoded
+	 * bytes and decode them only on the first call to {@link Tag#getValue()}. The {@link Tag#value} field of these tags
+	 * is null.
+	 * 
+	 * @param tagTable
+	 *            the tags of the map file which are referenced by the tag IDs, see {@link #getTagIds()}.
+	 * @param tags
+	 *            the list to which the tags should be added.
+	 */
+	public void addLazyTags(Tag[] tagTable, List<Tag> tags) {
+		addTags(tagTable, tags, true);
+	}
+
+	/**
+	 * @return the house number of this element (may be null).
+	 */
+	public String getHouseNumber() {
+		return getString(STRING_HOUSE_NUMBER);
+	}
+
+	/**
+	 * @return the layer of this element.
+	 */
+	public byte getLayer() {
+		return this.layer;
+	}
+
+	/**
+	 * @return the name of this element (may be null).
+	 */
+	public String getName() {
+		return getString(STRING_NAME);
+	}
+
+	/**
+	 * @return the number of valid entries in the array returned by {@link #getTagIds()}.
+	 */
+	public int getNumberOfTags() {
+		return this.numberOfTags;
+	}
+
+	/**
+	 * Returns the IDs of the tags of this element. For POIs they refer to the POI tags of the map file, for ways to its
+	 * way tags. Only the first {@link #getNumberOfTags()} entries are valid.
+	 * 
+	 * @return the reused array with the tag IDs.
+	 * @see org.mapsforge.v3.map.reader.header.MapFileInfo#poiTags
+	 * @see org.mapsforge.v3.map.reader.header.MapFileInfo#wayTags
+	 */
+	public int[] getTagIds() {
+		return this.tagIds;
+	}
+
+	/**
+	 * @return the projection for the tile to which the pixel coordinates of this element are relative, or null if
+	 *         the query is not bound to a tile.
+	 */
+	public TileProjection getTileProjection() {
+		return this.tileProjection;
+	}
+
+	/**
+	 * @return true if this element has a house number, false otherwise.
+	 */
+	public boolean hasHouseNumber() {
+		return hasString(STRING_HOUSE_NUMBER);
+	}
+
+	/**
+	 * @return true if this element has a name, false otherwise.
+	 */
+	public boolean hasName() {
+		return hasString(STRING_NAME);
+	}
+
+	/**
+	 * Adds the tag with the given ID.
+	 * 
+	 * @param tagId
+	 *            the ID of the tag.
+	 */
+	void addTagId(int tagId) {
+		this.tagIds[this.numberOfTags++] = tagId;
+	}
+
+	/**
+	 * Adds all tags of this element, including those for the optional string values, to the given list.
+	 * 
+	 * @param tagTable
+	 *            the tags of the map file which are referenced by the tag IDs.
+	 * @param tags
+	 *            the list to which the tags should be added.
+	 * @param lazy
+	 *            true if the string values should be added as {@link LazyTag LazyTags}, false if they should be
+	 *            decoded immediately.
+	 */
+	void addTags(Tag[] tagTable, List<Tag> tags, boolean lazy) {
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			tags.add(tagTable[this.tagIds[i]]);
+		}
+		if (hasName()) {
+			tags.add(getStringTag(TAG_KEY_NAME, STRING_NAME, lazy));
+		}
+		if (hasHouseNumber()) {
+			tags.add(getStringTag(TAG_KEY_HOUSE_NUMBER, STRING_HOUSE_NUMBER, lazy));
+		}
+	}
+
+	/**
+	 * @return the projection for the tile to which the pixel coordinates of this element are relative.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	TileProjection getRequiredTileProjection() {
+		if (this.tileProjection == null) {
+			throw new IllegalStateException("pixel coordinates are only available for queries of a tile");
+		}
+		return this.tileProjection;
+	}
+
+	/**
+	 * @param index
+	 *            the index of the string value.
+	 * @return the decoded string value (may be null).
+	 */
+	String getString(int index) {
+		int offset = this.stringOffsets[index];
+		if (offset < 0) {
+			return null;
+		} else if (this.strings[index] == null) {
+			this.strings[index] = this.readBuffer.getUTF8EncodedString(offset, this.stringLengths[index]);
+		}
+		return this.strings[index];
+	}
+
+	/**
+	 * Creates a tag for a string value. A lazy tag keeps a copy of the encoded bytes and decodes them only on request.
+	 * 
+	 * @param key
+	 *            the key of the tag.
+	 * @param index
+	 *            the index of the string value.
+	 * @param lazy
+	 *            true if a {@link LazyTag} should be created for a string which has not been decoded yet, false if the
+	 *            string should be decoded immediately.
+	 * @return the new tag.
+	 */
+	Tag getStringTag(String key, int index, boolean lazy) {
+		int offset = this.stringOffsets[index];
+		if (lazy && offset >= 0 && this.strings[index] == null) {
+			return new LazyTag(key, this.readBuffer.getBytes(offset, this.stringLengths[index]));
+		}
+		return new Tag(key, getString(index));
+	}
+
+	/**
+	 * @param index
+	 *            the index of the string value.
+	 * @return true if the string value is present, false otherwise.
+	 */
+	boolean hasString(int index) {
+		return this.stringOffsets[index] != ABSENT;
+	}
+
+	/**
+	 * Reads the length of a string value at the current buffer position and skips the string. Its content is decoded
+	 * only if it is requested.
+	 * 
+	 * @param index
+	 *            the index of the string value.
+	 */
+	void readString(int index) {
+		int stringLength = this.readBuffer.readUnsignedInt();
+		int offset = this.readBuffer.getBufferPosition();
+		if (stringLength > 0 && offset + stringLength <= this.readBuffer.getBufferSize()) {
+			this.stringOffsets[index] = offset;
+			this.stringLengths[index] = stringLength;
+			this.readBuffer.skipBytes(stringLength);
+		} else {
+			LOG.warning("invalid string length: " + stringLength);
+			this.stringOffsets[index] = INVALID;
+		}
+	}
+
+	/**
+	 * Clears all properties for the next element.
+	 * 
+	 * @param newLayer
+	 *            the layer of the next element.
+	 */
+	void reset(byte newLayer) {
+		this.layer = newLayer;
+		this.numberOfTags = 0;
+		Arrays.fill(this.stringOffsets, ABSENT);
+		Arrays.fill(this.strings, null);
+	}
+
+	/**
+	 * @param newTileProjection
+	 *            the projection for the tile of the current query, or null if the query is not bound to a tile.
+	 */
+	void setTileProjection(TileProjection newTileProjection) {
+		this.tileProjection = newTileProjection;
+	}
+}
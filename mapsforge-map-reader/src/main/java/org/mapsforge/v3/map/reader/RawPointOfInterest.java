@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.List;
+
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * A reusable view of a single point of interest (POI) as passed to a {@link RawMapDatabaseCallback}.
+ */
+public class RawPointOfInterest extends RawMapElement {
+	/**
+	 * The key of the elevation OpenStreetMap tag.
+	 */
+	private static final String TAG_KEY_ELE = "ele";
+
+	private int elevation;
+	private boolean hasElevation;
+	private int latitude;
+	private int longitude;
+
+	RawPointOfInterest(BlockReadBuffer readBuffer) {
+		super(readBuffer);
+	}
+
+	/**
+	 * @return the elevation of this POI in meters, only valid if {@link #hasElevation()} returns true.
+	 */
+	public int getElevation() {
+		return this.elevation;
+	}
+
+	/**
+	 * @return the latitude of this POI in microdegrees.
+	 */
+	public int getLatitude() {
+		return this.latitude;
+	}
+
+	/**
+	 * @return the longitude of this POI in microdegrees.
+	 */
+	public int getLongitude() {
+		return this.longitude;
+	}
+
+	/**
+	 * @return the pixel X coordinate of this POI relative to the tile of the query.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	public float getPixelX() {
+		return getRequiredTileProjection().getPixelX(this.longitude);
+	}
+
+	/**
+	 * @return the pixel Y coordinate of this POI relative to the tile of the query.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	public float getPixelY() {
+		return getRequiredTileProjection().getPixelY(this.latitude);
+	}
+
+	/**
+	 * @return true if this POI has an elevation, false otherwise.
+	 */
+	public boolean hasElevation() {
+		return this.hasElevation;
+	}
+
+	@Override
+	void addTags(Tag[] tagTable, List<Tag> tags, boolean lazy) {
+		super.addTags(tagTable, tags, lazy);
+		if (this.hasElevation) {
+			tags.add(new Tag(TAG_KEY_ELE, Integer.toString(this.elevation)));
+		}
+	}
+
+	/**
+	 * Clears all properties for the next POI.
+	 * 
+	 * @param newLayer
+	 *            the layer of the next POI.
+	 * @param newLatitude
+	 *            the latitude of the next POI in microdegrees.
+	 * @param newLongitude
+	 *            the longitude of the next POI in microdegrees.
+	 */
+	void reset(byte newLayer, int newLatitude, int newLongitude) {
+		reset(newLayer);
+		this.latitude = newLatitude;
+		this.longitude = newLongitude;
+		this.hasElevation = false;
+	}
+
+	/**
+	 * @param newElevation
+	 *            the elevation of the POI in meters.
+	 */
+	void setElevation(int newElevation) {
+		this.elevation = newElevation;
+		this.hasElevation = true;
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.List;
+
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * A reusable view of a single way data block as passed to a {@link RawMapDatabaseCallback}.
+ * <p>
+ * A way may consist of multiple way data blocks, each of which is passed separately. All coordinates of the current
+ * way data block are stored in one reused array in microdegrees and in the order longitude/latitude. The array is
+ * divided into segments, each of which is a separate sequence of way nodes.
+ */
+public class RawWay extends RawMapElement {
+	private static final int INITIAL_COORDINATES = 1024;
+	private static final int INITIAL_SEGMENTS = 16;
+
+	/**
+	 * The key of the reference OpenStreetMap tag.
+	 */
+	private static final String TAG_KEY_REF = "ref";
+
+	private int[] coordinates;
+	private boolean hasLabelPosition;
+	private int labelLatitude;
+	private int labelLongitude;
+	private int numberOfCoordinates;
+	private int numberOfSegments;
+	private int numberOfWayDataBlocks;
+	private float[] pixelCoordinates;
+	private boolean pixelCoordinatesValid;
+	private int[] segmentOffsets;
+	private int tileBitmask;
+	private int wayDataBlock;
+
+	RawWay(BlockReadBuffer readBuffer) {
+		super(readBuffer);
+		this.coordinates = new int[INITIAL_COORDINATES];
+		this.pixelCoordinates = new float[INITIAL_COORDINATES];
+		this.segmentOffsets = new int[INITIAL_SEGMENTS + 1];
+	}
+
+	/**
+	 * Returns the coordinates of all segments of the current way data block in microdegrees and in the order
+	 * longitude/latitude.
+	 * 
+	 * @return the reused coordinate array, which may be larger than the actual data.
+	 */
+	public int[] getCoordinates() {
+		return this.coordinates;
+	}
+
+	/**
+	 * @return the latitude of the label position in microdegrees, only valid if {@link #hasLabelPosition()} returns
+	 *         true.
+	 */
+	public int getLabelLatitude() {
+		return this.labelLatitude;
+	}
+
+	/**
+	 * @return the longitude of the label position in microdegrees, only valid if {@link #hasLabelPosition()} returns
+	 *         true.
+	 */
+	public int getLabelLongitude() {
+		return this.labelLongitude;
+	}
+
+	/**
+	 * @return the pixel X coordinate of the label position relative to the tile of the query, only valid if
+	 *         {@link #hasLabelPosition()} returns true.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	public float getLabelPixelX() {
+		return getRequiredTileProjection().getPixelX(this.labelLongitude);
+	}
+
+	/**
+	 * @return the pixel Y coordinate of the label position relative to the tile of the query, only valid if
+	 *         {@link #hasLabelPosition()} returns true.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	public float getLabelPixelY() {
+		return getRequiredTileProjection().getPixelY(this.labelLatitude);
+	}
+
+	/**
+	 * @return the number of segments in the current way data block.
+	 */
+	public int getNumberOfSegments() {
+		return this.numberOfSegments;
+	}
+
+	/**
+	 * @return the number of way data blocks of this way.
+	 */
+	public int getNumberOfWayDataBlocks() {
+		return this.numberOfWayDataBlocks;
+	}
+
+	/**
+	 * Returns the coordinates of all segments of the current way data block as pixel coordinates relative to the tile
+	 * of the query, in the order X/Y and at the same indices as in {@link #getCoordinates()}. They are calculated only
+	 * once per way data block and only if this method is called.
+	 * 
+	 * @return the reused pixel coordinate array, which may be larger than the actual data.
+	 * @throws IllegalStateException
+	 *             if the query is not bound to a tile.
+	 */
+	public float[] getPixelCoordinates() {
+		if (!this.pixelCoordinatesValid) {
+			if (this.pixelCoordinates.length < this.coordinates.length) {
+				this.pixelCoordinates = new float[this.coordinates.length];
+			}
+			getRequiredTileProjection().project(this.coordinates, 0, this.numberOfCoordinates, this.pixelCoordinates);
+			this.pixelCoordinatesValid = true;
+		}
+		return this.pixelCoordinates;
+	}
+
+	/**
+	 * @return the reference of this way (may be null).
+	 */
+	public String getRef() {
+		return getString(STRING_REF);
+	}
+
+	/**
+	 * @param segment
+	 *            the index of the segment.
+	 * @return the number of coordinate values of the given segment, which is twice the number of its way nodes.
+	 */
+	public int getSegmentLength(int segment) {
+		return this.segmentOffsets[segment + 1] - this.segmentOffsets[segment];
+	}
+
+	/**
+	 * @param segment
+	 *            the index of the segment.
+	 * @return the index of the first coordinate value of the given segment in the coordinate array.
+	 */
+	public int getSegmentOffset(int segment) {
+		return this.segmentOffsets[segment];
+	}
+
+	/**
+	 * @return the tile bitmask of this way, which marks the covered sub-tiles of its block.
+	 */
+	public int getTileBitmask() {
+		return this.tileBitmask;
+	}
+
+	/**
+	 * @return the index of the current way data block, between zero and {@link #getNumberOfWayDataBlocks()} - 1.
+	 */
+	public int getWayDataBlock() {
+		return this.wayDataBlock;
+	}
+
+	/**
+	 * @return true if this way has a label position, false otherwise.
+	 */
+	public boolean hasLabelPosition() {
+		return this.hasLabelPosition;
+	}
+
+	/**
+	 * @return true if this way has a reference, false otherwise.
+	 */
+	public boolean hasRef() {
+		return hasString(STRING_REF);
+	}
+
+	/**
+	 * Adds a new segment to the current way data block and ensures that the coordinate array can hold its way nodes.
+	 * 
+	 * @param numberOfWayNodes
+	 *            the number of way nodes in the new segment.
+	 * @return the index in the coordinate array at which the coordinates of the new segment must be stored.
+	 */
+	int addSegment(int numberOfWayNodes) {
+		int offset = this.numberOfCoordinates;
+		this.numberOfCoordinates += numberOfWayNodes * 2;
+		if (this.numberOfCoordinates > this.coordinates.length) {
+			int[] newCoordinates = new int[Math.max(this.numberOfCoordinates, this.coordinates.length * 2)];
+			System.arraycopy(this.coordinates, 0, newCoordinates, 0, offset);
+			this.coordinates = newCoordinates;
+		}
+
+		if (this.numberOfSegments + 2 > this.segmentOffsets.length) {
+			int[] newSegmentOffsets = new int[this.segmentOffsets.length * 2];
+			System.arraycopy(this.segmentOffsets, 0, newSegmentOffsets, 0, this.numberOfSegments + 1);
+			this.segmentOffsets = newSegmentOffsets;
+		}
+		this.segmentOffsets[this.numberOfSegments] = offset;
+		this.segmentOffsets[++this.numberOfSegments] = this.numberOfCoordinates;
+		return offset;
+	}
+
+	@Override
+	void addTags(Tag[] tagTable, List<Tag> tags, boolean lazy) {
+		super.addTags(tagTable, tags, lazy);
+		if (hasRef()) {
+			tags.add(getStringTag(TAG_KEY_REF, STRING_REF, lazy));
+		}
+	}
+
+	/**
+	 * Clears all properties for the next way.
+	 * 
+	 * @param newLayer
+	 *            the layer of the next way.
+	 * @param newTileBitmask
+	 *            the tile bitmask of the next way.
+	 */
+	void reset(byte newLayer, int newTileBitmask) {
+		reset(newLayer);
+		this.tileBitmask = newTileBitmask;
+		this.hasLabelPosition = false;
+		this.numberOfWayDataBlocks = 1;
+	}
+
+	/**
+	 * Clears all coordinates for the next way data block.
+	 * 
+	 * @param newWayDataBlock
+	 *            the index of the next way data block.
+	 */
+	void resetWayDataBlock(int newWayDataBlock) {
+		this.wayDataBlock = newWayDataBlock;
+		this.numberOfSegments = 0;
+		this.numberOfCoordinates = 0;
+		this.pixelCoordinatesValid = false;
+	}
+
+	/**
+	 * @param latitude
+	 *            the latitude of the label position in microdegrees.
+	 * @param longitude
+	 *            the longitude of the label position in microdegrees.
+	 */
+	void setLabelPosition(int latitude, int longitude) {
+		this.labelLatitude = latitude;
+		this.labelLongitude = longitude;
+		this.hasLabelPosition = true;
+	}
+
+	/**
+	 * @param newNumberOfWayDataBlocks
+	 *            the number of way data blocks of the way.
+	 */
+	void setNumberOfWayDataBlocks(int newNumberOfWayDataBlocks) {
+		this.numberOfWayDataBlocks = newNumberOfWayDataBlocks;
+	}
+
+	/**
+	 * @return a new array with the label position in the order longitude/latitude, or null if this way has no label
+	 *         position.
+	 */
+	float[] toLabelPosition() {
+		if (!this.hasLabelPosition) {
+			return null;
+		}
+		return new float[] { this.labelLongitude, this.labelLatitude };
+	}
+
+	/**
+	 * @return new arrays with the coordinates of all segments of the current way data block in the order
+	 *         longitude/latitude.
+	 */
+	float[][] toWayNodes() {
+		float[][] wayNodes = new float[this.numberOfSegments][];
+		for (int segment = 0; segment < this.numberOfSegments; ++segment) {
+			int offset = this.segmentOffsets[segment];
+			float[] waySegment = new float[this.segmentOffsets[segment + 1] - offset];
+			for (int i = 0; i < waySegment.length; ++i) {
+				waySegment[i] = this.coordinates[offset + i];
+			}
+			wayNodes[segment] = waySegment;
+		}
+		return wayNodes;
+	}
+}
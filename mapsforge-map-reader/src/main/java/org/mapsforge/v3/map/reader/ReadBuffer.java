@@ -15,14 +15,18 @@
 package org.mapsforge.v3.map.reader;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
 /**
- * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ * Reads from a {@link MapFileChannel} into a buffer and decodes the data.
+ * <p>
+ * A ReadBuffer is a cursor which must not be shared between threads. All reads are done at an absolute position of the
+ * file, so multiple ReadBuffers may read from the same channel concurrently. In contrast to a {@link MappedReadBuffer},
+ * the data may also be read sequentially, starting at the beginning of the file.
  */
-public class ReadBuffer {
+public class ReadBuffer extends BlockReadBuffer {
 	private static final String CHARSET_UTF8 = "UTF-8";
 	private static final Logger LOG = Logger.getLogger(ReadBuffer.class.getName());
 
@@ -33,17 +37,17 @@ public class ReadBuffer {
 
 	private byte[] bufferData;
 	private int bufferPosition;
-	private final RandomAccessFile inputFile;
+	private ByteBuffer byteBuffer;
+	private final MapFileChannel mapFileChannel;
+	private long readAheadAddress;
+	private int readAheadLength;
+	private long sequentialAddress;
 
-	ReadBuffer(RandomAccessFile inputFile) {
-		this.inputFile = inputFile;
+	ReadBuffer(MapFileChannel mapFileChannel) {
+		this.mapFileChannel = mapFileChannel;
 	}
 
-	/**
-	 * Returns one signed byte from the read buffer.
-	 * 
-	 * @return the byte value.
-	 */
+	@Override
 	public byte readByte() {
 		return this.bufferData[this.bufferPosition++];
 	}
@@ -51,6 +55,9 @@ public class ReadBuffer {
 	/**
 	 * Reads the given amount of bytes from the file into the read buffer and resets the internal buffer position. If
 	 * the capacity of the read buffer is too small, a larger one is created automatically.
+	 * <p>
+	 * The first call reads from the beginning of the file, each further call continues after the data of the previous
+	 * one.
 	 * 
 	 * @param length
 	 *            the amount of bytes to read from the file.
@@ -59,65 +66,46 @@ public class ReadBuffer {
 	 *             if an error occurs while reading the file.
 	 */
 	public boolean readFromFile(int length) throws IOException {
-		// ensure that the read buffer is large enough
-		if (this.bufferData == null || this.bufferData.length < length) {
-			// ensure that the read buffer is not too large
-			if (length > MAXIMUM_BUFFER_SIZE) {
-				LOG.warning("invalid read length: " + length);
+		// continue after the data of the previous sequential read
+		boolean success = readFromFile(this.sequentialAddress, length);
+		this.sequentialAddress += length;
+		return success;
+	}
+
+	@Override
+	public boolean readFromFile(long address, int length) throws IOException {
+		if (!prepareBuffer(length)) {
+			return false;
+		}
+
+		// read the data into the buffer
+		while (this.byteBuffer.hasRemaining()) {
+			if (this.mapFileChannel.read(this.byteBuffer, address + this.byteBuffer.position()) < 0) {
 				return false;
 			}
-			this.bufferData = new byte[length];
 		}
-
-		// reset the buffer position and read the data into the buffer
-		this.bufferPosition = 0;
-		return this.inputFile.read(this.bufferData, 0, length) == length;
+		return true;
 	}
 
-	/**
-	 * Converts four bytes from the read buffer to a signed int.
-	 * <p>
-	 * The byte order is big-endian.
-	 * 
-	 * @return the int value.
-	 */
+	@Override
 	public int readInt() {
 		this.bufferPosition += 4;
 		return Deserializer.getInt(this.bufferData, this.bufferPosition - 4);
 	}
 
-	/**
-	 * Converts eight bytes from the read buffer to a signed long.
-	 * <p>
-	 * The byte order is big-endian.
-	 * 
-	 * @return the long value.
-	 */
+	@Override
 	public long readLong() {
 		this.bufferPosition += 8;
 		return Deserializer.getLong(this.bufferData, this.bufferPosition - 8);
 	}
 
-	/**
-	 * Converts two bytes from the read buffer to a signed int.
-	 * <p>
-	 * The byte order is big-endian.
-	 * 
-	 * @return the int value.
-	 */
+	@Override
 	public int readShort() {
 		this.bufferPosition += 2;
 		return Deserializer.getShort(this.bufferData, this.bufferPosition - 2);
 	}
 
-	/**
-	 * Converts a variable amount of bytes from the read buffer to a signed int.
-	 * <p>
-	 * The first bit is for continuation info, the other six (last byte) or seven (all other bytes) bits are for data.
-	 * The second bit in the last byte indicates the sign of the number.
-	 * 
-	 * @return the int value.
-	 */
+	@Override
 	public int readSignedInt() {
 		int variableByteDecode = 0;
 		byte variableByteShift = 0;
@@ -137,13 +125,33 @@ public class ReadBuffer {
 		return variableByteDecode | ((this.bufferData[this.bufferPosition++] & 0x3f) << variableByteShift);
 	}
 
-	/**
-	 * Converts a variable amount of bytes from the read buffer to an unsigned int.
-	 * <p>
-	 * The first bit is for continuation info, the other seven bits are for data.
-	 * 
-	 * @return the int value.
-	 */
+	@Override
+	public void readSignedInts(int[] values, int offset, int count) {
+		byte[] data = this.bufferData;
+		int position = this.bufferPosition;
+		int end = offset + count;
+		for (int i = offset; i < end; ++i) {
+			int firstByte = data[position];
+			if (firstByte >= 0) {
+				values[i] = toSignedInt(firstByte & 0x3f, firstByte);
+				++position;
+				continue;
+			}
+
+			int secondByte = data[position + 1];
+			if (secondByte >= 0) {
+				values[i] = toSignedInt((firstByte & 0x7f) | ((secondByte & 0x3f) << 7), secondByte);
+				position += 2;
+			} else {
+				this.bufferPosition = position;
+				values[i] = readSignedInt();
+				position = this.bufferPosition;
+			}
+		}
+		this.bufferPosition = position;
+	}
+
+	@Override
 	public int readUnsignedInt() {
 		int variableByteDecode = 0;
 		byte variableByteShift = 0;
@@ -158,22 +166,7 @@ public class ReadBuffer {
 		return variableByteDecode | (this.bufferData[this.bufferPosition++] << variableByteShift);
 	}
 
-	/**
-	 * Decodes a variable amount of bytes from the read buffer to a string.
-	 * 
-	 * @return the UTF-8 decoded string (may be null).
-	 */
-	public String readUTF8EncodedString() {
-		return readUTF8EncodedString(readUnsignedInt());
-	}
-
-	/**
-	 * Decodes the given amount of bytes from the read buffer to a string.
-	 * 
-	 * @param stringLength
-	 *            the length of the string in bytes.
-	 * @return the UTF-8 decoded string (may be null).
-	 */
+	@Override
 	public String readUTF8EncodedString(int stringLength) {
 		if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.length) {
 			this.bufferPosition += stringLength;
@@ -187,37 +180,140 @@ public class ReadBuffer {
 		return null;
 	}
 
-	/**
-	 * @return the current buffer position.
-	 */
+	@Override
+	byte[] getBytes(int position, int length) {
+		byte[] bytes = new byte[length];
+		System.arraycopy(this.bufferData, position, bytes, 0, length);
+		return bytes;
+	}
+
+	@Override
 	int getBufferPosition() {
 		return this.bufferPosition;
 	}
 
-	/**
-	 * @return the current size of the read buffer.
-	 */
+	@Override
 	int getBufferSize() {
 		return this.bufferData.length;
 	}
 
 	/**
-	 * Sets the buffer position to the given offset.
-	 * 
-	 * @param bufferPosition
-	 *            the buffer position.
+	 * Makes the given range of the file available in the read buffer and sets the buffer position to its first byte.
+	 * <p>
+	 * The buffer keeps a window of the file which is at least as large as the read-ahead size. If the range is already
+	 * inside the window, no data is read at all. Otherwise the window is moved to the start of the range: bytes which
+	 * have already been read are moved to the front of the buffer and the rest of the window is filled with one large
+	 * read, so that consecutive ranges are read sequentially in a few large chunks.
 	 */
+	@Override
+	boolean readAhead(long address, int length, long endAddress, int readAheadSize) throws IOException {
+		long windowEnd = this.readAheadAddress + this.readAheadLength;
+		if (address >= this.readAheadAddress && address + length <= windowEnd) {
+			this.bufferPosition = (int) (address - this.readAheadAddress);
+			return true;
+		}
+
+		int windowLength = (int) Math.min(Math.max(readAheadSize, length), endAddress - address);
+		if (windowLength < length) {
+			LOG.warning("invalid read-ahead range: " + address + ' ' + length);
+			return false;
+		}
+
+		// keep the part of the current window which overlaps with the new one
+		int retainedOffset = 0;
+		int retainedLength = 0;
+		if (address >= this.readAheadAddress && address < windowEnd) {
+			retainedOffset = (int) (address - this.readAheadAddress);
+			retainedLength = (int) (windowEnd - address);
+		}
+		if (this.bufferData == null || this.bufferData.length < windowLength) {
+			byte[] newBufferData = new byte[windowLength];
+			if (retainedLength > 0) {
+				System.arraycopy(this.bufferData, retainedOffset, newBufferData, 0, retainedLength);
+			}
+			this.bufferData = newBufferData;
+			this.byteBuffer = ByteBuffer.wrap(this.bufferData);
+		} else if (retainedLength > 0) {
+			System.arraycopy(this.bufferData, retainedOffset, this.bufferData, 0, retainedLength);
+		}
+
+		// fill the rest of the window
+		this.readAheadAddress = address;
+		this.readAheadLength = 0;
+		this.byteBuffer.clear();
+		this.byteBuffer.position(retainedLength);
+		this.byteBuffer.limit(windowLength);
+		while (this.byteBuffer.hasRemaining()) {
+			if (this.mapFileChannel.read(this.byteBuffer, address + this.byteBuffer.position()) < 0) {
+				return false;
+			}
+		}
+		this.readAheadLength = windowLength;
+		this.bufferPosition = 0;
+		return true;
+	}
+
+	@Override
+	void readWayNodes(int[] coordinates, int offset, int length, int latitude, int longitude,
+			boolean doubleDeltaEncoding) {
+		byte[] data = this.bufferData;
+		int position = this.bufferPosition;
+		for (int i = 0; i < length; ++i) {
+			int value;
+			int firstByte = data[position];
+			if (firstByte >= 0) {
+				value = toSignedInt(firstByte & 0x3f, firstByte);
+				++position;
+			} else {
+				int secondByte = data[position + 1];
+				if (secondByte >= 0) {
+					value = toSignedInt((firstByte & 0x7f) | ((secondByte & 0x3f) << 7), secondByte);
+					position += 2;
+				} else {
+					this.bufferPosition = position;
+					value = readSignedInt();
+					position = this.bufferPosition;
+				}
+			}
+			storeWayNodeValue(coordinates, offset, i, value, latitude, longitude, doubleDeltaEncoding);
+		}
+		this.bufferPosition = position;
+	}
+
+	@Override
 	void setBufferPosition(int bufferPosition) {
 		this.bufferPosition = bufferPosition;
 	}
 
+	@Override
+	void skipBytes(int bytes) {
+		this.bufferPosition += bytes;
+	}
+
 	/**
-	 * Skips the given number of bytes in the read buffer.
+	 * Ensures that the read buffer can hold the given amount of bytes and resets the internal buffer position.
 	 * 
-	 * @param bytes
-	 *            the number of bytes to skip.
+	 * @param length
+	 *            the amount of bytes which will be read into the buffer.
+	 * @return true if the buffer is ready, false if the length is invalid.
 	 */
-	void skipBytes(int bytes) {
-		this.bufferPosition += bytes;
+	private boolean prepareBuffer(int length) {
+		// ensure that the read buffer is large enough
+		if (this.bufferData == null || this.bufferData.length < length) {
+			// ensure that the read buffer is not too large
+			if (length > MAXIMUM_BUFFER_SIZE) {
+				LOG.warning("invalid read length: " + length);
+				return false;
+			}
+			this.bufferData = new byte[length];
+			this.byteBuffer = ByteBuffer.wrap(this.bufferData);
+		}
+
+		// reset the buffer position and limit the transfer to the requested length
+		this.bufferPosition = 0;
+		this.readAheadLength = 0;
+		this.byteBuffer.clear();
+		this.byteBuffer.limit(length);
+		return true;
 	}
 }
@@ -0,0 +1,1311 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.mapsforge.v3.core.MercatorProjection;
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.core.TileProjection;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+
+/**
+ * The per-query state of a {@link MapDatabase}, which reads and decodes the blocks of a {@link SharedMapFile}.
+ * <p>
+ * A ReadContext is a lightweight cursor which must only be used by one thread at a time. It can be reused for any
+ * number of queries on the same map file.
+ */
+class ReadContext {
+	/**
+	 * Bitmask to extract the block offset from an index entry.
+	 */
+	static final long BITMASK_INDEX_OFFSET = 0x7FFFFFFFFFL;
+
+	/**
+	 * Bitmask to extract the water information from an index entry.
+	 */
+	static final long BITMASK_INDEX_WATER = 0x8000000000L;
+
+	/**
+	 * Debug message prefix for the block signature.
+	 */
+	private static final String DEBUG_SIGNATURE_BLOCK = "block signature: ";
+
+	/**
+	 * Debug message prefix for the POI signature.
+	 */
+	private static final String DEBUG_SIGNATURE_POI = "POI signature: ";
+
+	/**
+	 * Debug message prefix for the way signature.
+	 */
+	private static final String DEBUG_SIGNATURE_WAY = "way signature: ";
+
+	/**
+	 * Error message for an invalid first way offset.
+	 */
+	private static final String INVALID_FIRST_WAY_OFFSET = "invalid first way offset: ";
+
+	private static final Logger LOG = Logger.getLogger(ReadContext.class.getName());
+
+	/**
+	 * Maximum number of bytes which are read at once when adjacent blocks of a batch query are coalesced.
+	 */
+	private static final int MAXIMUM_COALESCED_READ_SIZE = 1024 * 1024;
+
+	/**
+	 * Maximum way nodes sequence length which is considered as valid.
+	 */
+	private static final int MAXIMUM_WAY_NODES_SEQUENCE_LENGTH = 8192;
+
+	/**
+	 * Maximum number of map objects in the zoom table which is considered as valid.
+	 */
+	private static final int MAXIMUM_ZOOM_TABLE_OBJECTS = 65536;
+
+	/**
+	 * Bitmask for the optional POI feature "elevation".
+	 */
+	private static final int POI_FEATURE_ELEVATION = 0x20;
+
+	/**
+	 * Bitmask for the optional POI feature "house number".
+	 */
+	private static final int POI_FEATURE_HOUSE_NUMBER = 0x40;
+
+	/**
+	 * Bitmask for the optional POI feature "name".
+	 */
+	private static final int POI_FEATURE_NAME = 0x80;
+
+	/**
+	 * Bitmask for the POI layer.
+	 */
+	private static final int POI_LAYER_BITMASK = 0xf0;
+
+	/**
+	 * Bit shift for calculating the POI layer.
+	 */
+	private static final int POI_LAYER_SHIFT = 4;
+
+	/**
+	 * Bitmask for the number of POI tags.
+	 */
+	private static final int POI_NUMBER_OF_TAGS_BITMASK = 0x0f;
+
+	/**
+	 * Length of the debug signature at the beginning of each block.
+	 */
+	private static final byte SIGNATURE_LENGTH_BLOCK = 32;
+
+	/**
+	 * Length of the debug signature at the beginning of each POI.
+	 */
+	private static final byte SIGNATURE_LENGTH_POI = 32;
+
+	/**
+	 * Length of the debug signature at the beginning of each way.
+	 */
+	private static final byte SIGNATURE_LENGTH_WAY = 32;
+
+	/**
+	 * Bitmask for the optional way data blocks byte.
+	 */
+	private static final int WAY_FEATURE_DATA_BLOCKS_BYTE = 0x08;
+
+	/**
+	 * Bitmask for the optional way double delta encoding.
+	 */
+	private static final int WAY_FEATURE_DOUBLE_DELTA_ENCODING = 0x04;
+
+	/**
+	 * Bitmask for the optional way feature "house number".
+	 */
+	private static final int WAY_FEATURE_HOUSE_NUMBER = 0x40;
+
+	/**
+	 * Bitmask for the optional way feature "label position".
+	 */
+	private static final int WAY_FEATURE_LABEL_POSITION = 0x10;
+
+	/**
+	 * Bitmask for the optional way feature "name".
+	 */
+	private static final int WAY_FEATURE_NAME = 0x80;
+
+	/**
+	 * Bitmask for the optional way feature "reference".
+	 */
+	private static final int WAY_FEATURE_REF = 0x20;
+
+	/**
+	 * Bitmask for the way layer.
+	 */
+	private static final int WAY_LAYER_BITMASK = 0xf0;
+
+	/**
+	 * Bit shift for calculating the way layer.
+	 */
+	private static final int WAY_LAYER_SHIFT = 4;
+
+	/**
+	 * Bitmask for the number of way tags.
+	 */
+	private static final int WAY_NUMBER_OF_TAGS_BITMASK = 0x0f;
+
+	private static int[][] copyZoomTable(int[][] zoomTable) {
+		int[][] copy = new int[zoomTable.length][];
+		for (int row = 0; row < zoomTable.length; ++row) {
+			copy[row] = new int[] { zoomTable[row][0], zoomTable[row][1] };
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the pointer to the block of the given index entry, relative to its sub-file, or -1 if it is invalid.
+	 */
+	private static long getBlockPointer(long indexEntry, SubFileParameter subFileParameter) {
+		long blockPointer = indexEntry & BITMASK_INDEX_OFFSET;
+		if (blockPointer < 1 || blockPointer > subFileParameter.subFileSize) {
+			LOG.warning("invalid current block pointer: " + blockPointer);
+			LOG.warning("subFileSize: " + subFileParameter.subFileSize);
+			return -1;
+		}
+		return blockPointer;
+	}
+
+	private static int getZoomTableRow(QueryParameters queryParameters, SubFileParameter subFileParameter) {
+		return queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+	}
+
+	/**
+	 * Replays a decoded block for the given tiles of a batch query.
+	 */
+	private static void replay(DecodedBlock decodedBlock, int[] tiles, MapDatabaseCallback[] mapDatabaseCallbacks,
+			QueryParameters[] queryParameters, int zoomTableRow, QueryMetrics queryMetrics) {
+		for (int tile : tiles) {
+			decodedBlock.replay(queryParameters[tile], zoomTableRow, mapDatabaseCallbacks[tile], queryMetrics);
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; ++i) {
+			array[i] = list.get(i).intValue();
+		}
+		return array;
+	}
+
+	private final MapFileInfo mapFileInfo;
+	private QueryMetrics queryMetrics;
+	private QueryMetricsListener queryMetricsListener;
+	private final RawPointOfInterest rawPointOfInterest;
+	private final RawWay rawWay;
+	private final BlockReadBuffer readBuffer;
+	private final SharedMapFile sharedMapFile;
+	private String signatureBlock;
+	private String signaturePoi;
+	private String signatureWay;
+	private int tileLatitude;
+	private int tileLongitude;
+	private TileProjection tileProjection;
+	private int[][] zoomTable;
+
+	/**
+	 * @param sharedMapFile
+	 *            the opened map file from which the blocks should be read.
+	 */
+	ReadContext(SharedMapFile sharedMapFile) {
+		this.sharedMapFile = sharedMapFile;
+		this.mapFileInfo = sharedMapFile.mapFileHeader.getMapFileInfo();
+		if (sharedMapFile.subFileMappings != null) {
+			this.readBuffer = new MappedReadBuffer(sharedMapFile.subFileMappings);
+		} else {
+			this.readBuffer = new ReadBuffer(sharedMapFile.mapFileChannel);
+		}
+		this.rawPointOfInterest = new RawPointOfInterest(this.readBuffer);
+		this.rawWay = new RawWay(this.readBuffer);
+	}
+
+	/**
+	 * Finishes the current query and passes its metrics to the listener, if any.
+	 */
+	void finishQuery() {
+		QueryMetrics currentQueryMetrics = this.queryMetrics;
+		if (currentQueryMetrics != null) {
+			this.queryMetrics = null;
+			currentQueryMetrics.finish();
+			this.queryMetricsListener.queryFinished(currentQueryMetrics);
+		}
+		this.queryMetricsListener = null;
+	}
+
+	/**
+	 * @return the opened map file which is read by this context.
+	 */
+	SharedMapFile getSharedMapFile() {
+		return this.sharedMapFile;
+	}
+
+	/**
+	 * Reads and processes all blocks which are covered by the given query. Decoded blocks are taken from and added to
+	 * the block cache of the map file, if it is enabled.
+	 * 
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	void processBlocks(MapDatabaseCallback mapDatabaseCallback, QueryParameters queryParameters,
+			SubFileParameter subFileParameter) throws IOException {
+		queryParameters.lazyTags = mapDatabaseCallback instanceof LazyMapDatabaseCallback;
+		MapDatabaseCallback measuredCallback = mapDatabaseCallback;
+		if (this.queryMetrics != null) {
+			measuredCallback = new MeasuringCallback(mapDatabaseCallback, this.queryMetrics);
+		}
+		RawMapDatabaseCallback rawMapDatabaseCallback = new MapDatabaseCallbackAdapter(measuredCallback,
+				this.mapFileInfo, queryParameters.lazyTags);
+		if (this.sharedMapFile.blockCache == null) {
+			processBlocks(queryParameters, subFileParameter, rawMapDatabaseCallback, null);
+		} else {
+			processBlocks(queryParameters, subFileParameter, rawMapDatabaseCallback, measuredCallback);
+		}
+	}
+
+	/**
+	 * Reads and processes all blocks which are covered by the given batch of tiles. Each block is read and decoded only
+	 * once, its elements are dispatched to the callbacks of all tiles which it covers. Adjacent blocks are read from
+	 * the file at once. Decoded blocks are taken from and added to the block cache of the map file, if it is enabled.
+	 * 
+	 * @param mapDatabaseCallbacks
+	 *            the callbacks of all tiles in the batch.
+	 * @param queryParameters
+	 *            the query parameters of all tiles in the batch, which must have the same query zoom level.
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	void processBlocks(MapDatabaseCallback[] mapDatabaseCallbacks, QueryParameters[] queryParameters,
+			SubFileParameter subFileParameter) throws IOException {
+		int numberOfTiles = mapDatabaseCallbacks.length;
+		MapDatabaseCallback[] measuredCallbacks = mapDatabaseCallbacks;
+		if (this.queryMetrics != null) {
+			measuredCallbacks = new MapDatabaseCallback[numberOfTiles];
+			for (int tile = 0; tile < numberOfTiles; ++tile) {
+				measuredCallbacks[tile] = new MeasuringCallback(mapDatabaseCallbacks[tile], this.queryMetrics);
+			}
+		}
+		RawMapDatabaseCallback[] rawMapDatabaseCallbacks = new RawMapDatabaseCallback[numberOfTiles];
+		for (int tile = 0; tile < numberOfTiles; ++tile) {
+			queryParameters[tile].lazyTags = mapDatabaseCallbacks[tile] instanceof LazyMapDatabaseCallback;
+			rawMapDatabaseCallbacks[tile] = new MapDatabaseCallbackAdapter(measuredCallbacks[tile], this.mapFileInfo,
+					queryParameters[tile].lazyTags);
+		}
+
+		// collect the union of all needed blocks, sorted by block number and therefore in file order
+		SortedMap<Long, List<Integer>> tilesPerBlock = new TreeMap<Long, List<Integer>>();
+		for (int tile = 0; tile < numberOfTiles; ++tile) {
+			QueryParameters tileQueryParameters = queryParameters[tile];
+			for (long row = tileQueryParameters.fromBlockY; row <= tileQueryParameters.toBlockY; ++row) {
+				for (long column = tileQueryParameters.fromBlockX; column <= tileQueryParameters.toBlockX; ++column) {
+					Long blockNumber = Long.valueOf(row * subFileParameter.blocksWidth + column);
+					List<Integer> tiles = tilesPerBlock.get(blockNumber);
+					if (tiles == null) {
+						tiles = new ArrayList<Integer>();
+						tilesPerBlock.put(blockNumber, tiles);
+					}
+					tiles.add(Integer.valueOf(tile));
+				}
+			}
+		}
+
+		int numberOfBlocks = tilesPerBlock.size();
+		long[] blockNumbers = new long[numberOfBlocks];
+		long[] blockPointers = new long[numberOfBlocks];
+		int[] blockSizes = new int[numberOfBlocks];
+		int[][] blockTiles = new int[numberOfBlocks][];
+		boolean[] tileIsWater = new boolean[numberOfTiles];
+		Arrays.fill(tileIsWater, true);
+		boolean[] tileReadWaterInfo = new boolean[numberOfTiles];
+
+		// read all index entries first, a tile is water if all of its blocks are water
+		int block = 0;
+		for (Map.Entry<Long, List<Integer>> entry : tilesPerBlock.entrySet()) {
+			long blockNumber = entry.getKey().longValue();
+			long blockIndexEntry = this.sharedMapFile.indexCache.getIndexEntry(subFileParameter, blockNumber,
+					this.queryMetrics);
+			boolean blockIsWater = (blockIndexEntry & BITMASK_INDEX_WATER) != 0;
+
+			int[] tiles = toArray(entry.getValue());
+			for (int tile : tiles) {
+				tileIsWater[tile] &= blockIsWater;
+				tileReadWaterInfo[tile] = true;
+			}
+
+			long blockPointer = getBlockPointer(blockIndexEntry, subFileParameter);
+			if (blockPointer < 0) {
+				return;
+			}
+			int blockSize = getBlockSize(subFileParameter, blockNumber, blockPointer);
+			if (blockSize < 0) {
+				return;
+			}
+
+			blockNumbers[block] = blockNumber;
+			blockPointers[block] = blockPointer;
+			blockSizes[block] = blockSize;
+			blockTiles[block] = tiles;
+			++block;
+		}
+
+		// replay all cached blocks without reading them
+		StripedLRUCache<DecodedBlock> blockCache = this.sharedMapFile.blockCache;
+		DecodedBlock[] decodedBlocks = new DecodedBlock[numberOfBlocks];
+		if (blockCache != null) {
+			for (block = 0; block < numberOfBlocks; ++block) {
+				if (blockSizes[block] > 0) {
+					decodedBlocks[block] = blockCache.get(subFileParameter.startAddress + blockPointers[block]);
+				}
+			}
+		}
+
+		TileDispatcher tileDispatcher = new TileDispatcher(rawMapDatabaseCallbacks, queryParameters,
+				this.queryMetrics);
+		int zoomTableRow = getZoomTableRow(queryParameters[0], subFileParameter);
+		boolean coalesceReads = this.sharedMapFile.subFileMappings == null;
+
+		for (block = 0; block < numberOfBlocks; ++block) {
+			if (decodedBlocks[block] != null) {
+				replay(decodedBlocks[block], blockTiles[block], measuredCallbacks, queryParameters, zoomTableRow,
+						this.queryMetrics);
+				if (this.queryMetrics != null) {
+					++this.queryMetrics.blockCacheHits;
+				}
+				continue;
+			} else if (blockSizes[block] == 0) {
+				// the block is empty or too large
+				continue;
+			}
+
+			// extend the read to all directly following blocks which are not cached, mapped blocks are selected one
+			// by one as they cost no read and the decoding of each one is then limited to its own range
+			int lastBlock = block;
+			int readLength = blockSizes[block];
+			while (coalesceReads && lastBlock + 1 < numberOfBlocks && decodedBlocks[lastBlock + 1] == null
+					&& blockPointers[lastBlock + 1] == blockPointers[block] + readLength
+					&& readLength + blockSizes[lastBlock + 1] <= MAXIMUM_COALESCED_READ_SIZE) {
+				++lastBlock;
+				readLength += blockSizes[lastBlock];
+			}
+
+			if (!readBlocks(subFileParameter.startAddress + blockPointers[block], readLength, lastBlock - block + 1)) {
+				LOG.warning("reading current block has failed: " + readLength);
+				return;
+			}
+
+			for (int currentBlock = block; currentBlock <= lastBlock; ++currentBlock) {
+				if (blockSizes[currentBlock] == 0) {
+					continue;
+				}
+
+				long row = blockNumbers[currentBlock] / subFileParameter.blocksWidth;
+				long column = blockNumbers[currentBlock] % subFileParameter.blocksWidth;
+				this.readBuffer.setBufferPosition((int) (blockPointers[currentBlock] - blockPointers[block]));
+				setTileCoordinates(subFileParameter, row, column);
+
+				try {
+					if (blockCache == null) {
+						tileDispatcher.setCurrentTiles(blockTiles[currentBlock]);
+						processBlock(tileDispatcher.getBlockQueryParameters(), subFileParameter, tileDispatcher);
+					} else {
+						DecodedBlock decodedBlock = decodeBlock(subFileParameter);
+						if (decodedBlock != null) {
+							blockCache.put(subFileParameter.startAddress + blockPointers[currentBlock], decodedBlock,
+									decodedBlock.getSize());
+							replay(decodedBlock, blockTiles[currentBlock], measuredCallbacks, queryParameters,
+									zoomTableRow, this.queryMetrics);
+						}
+					}
+				} catch (IndexOutOfBoundsException e) {
+					LOG.log(Level.SEVERE, null, e);
+				}
+			}
+			block = lastBlock;
+		}
+
+		// the query is finished, was the water flag set for all blocks of a tile?
+		for (int tile = 0; tile < numberOfTiles; ++tile) {
+			if (tileIsWater[tile] && tileReadWaterInfo[tile]) {
+				rawMapDatabaseCallbacks[tile].renderWaterBackground();
+			}
+		}
+	}
+
+	/**
+	 * Reads and processes all blocks which are covered by the given query without allocating objects for the single
+	 * map elements. The block cache is not used.
+	 * 
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	void processBlocks(RawMapDatabaseCallback rawMapDatabaseCallback, QueryParameters queryParameters,
+			SubFileParameter subFileParameter) throws IOException {
+		if (this.queryMetrics == null) {
+			processBlocks(queryParameters, subFileParameter, rawMapDatabaseCallback, null);
+		} else {
+			processBlocks(queryParameters, subFileParameter,
+					new MeasuringCallback(rawMapDatabaseCallback, this.queryMetrics), null);
+		}
+	}
+
+	/**
+	 * Reads and processes all blocks of the given sub-file in file order. The blocks are read via the read-ahead window
+	 * of the read buffer, so the whole sub-file is read sequentially in chunks of the given size instead of one read
+	 * per block. The block cache is not used.
+	 * 
+	 * @param scanCallback
+	 *            the callback which handles the blocks and the extracted map elements.
+	 * @param queryParameters
+	 *            the parameters of the scan, with the query zoom level and the optional tag filter.
+	 * @param subFileParameter
+	 *            the parameters of the sub-file to scan.
+	 * @param readAheadSize
+	 *            the minimum number of bytes which are read from the file at once.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	void scanBlocks(ScanCallback scanCallback, QueryParameters queryParameters, SubFileParameter subFileParameter,
+			int readAheadSize) throws IOException {
+		if (this.queryMetrics != null) {
+			scanCallback = new MeasuringCallback(scanCallback, this.queryMetrics);
+		}
+		IndexCache indexCache = this.sharedMapFile.indexCache;
+		long endAddress = subFileParameter.startAddress + subFileParameter.subFileSize;
+
+		// the blocks are stored row by row, so the block numbers follow the file order
+		for (long blockNumber = 0; blockNumber < subFileParameter.numberOfBlocks; ++blockNumber) {
+			long row = blockNumber / subFileParameter.blocksWidth;
+			long column = blockNumber % subFileParameter.blocksWidth;
+			Tile tile = new Tile(subFileParameter.boundaryTileLeft + column, subFileParameter.boundaryTileTop + row,
+					subFileParameter.baseZoomLevel);
+			setProjectionTile(tile);
+			scanCallback.startTile(tile);
+
+			long blockIndexEntry = indexCache.getIndexEntry(subFileParameter, blockNumber, this.queryMetrics);
+			long blockPointer = getBlockPointer(blockIndexEntry, subFileParameter);
+			if (blockPointer < 0) {
+				return;
+			}
+			int blockSize = getBlockSize(subFileParameter, blockNumber, blockPointer);
+			if (blockSize < 0) {
+				return;
+			} else if (blockSize > 0) {
+				long blockAddress = subFileParameter.startAddress + blockPointer;
+				if (!readAhead(blockAddress, blockSize, endAddress, readAheadSize)) {
+					LOG.warning("reading current block has failed: " + blockSize);
+					return;
+				}
+
+				setTileCoordinates(subFileParameter, row, column);
+				try {
+					processBlock(queryParameters, subFileParameter, scanCallback);
+				} catch (IndexOutOfBoundsException e) {
+					LOG.log(Level.SEVERE, null, e);
+				}
+			}
+
+			if ((blockIndexEntry & BITMASK_INDEX_WATER) != 0) {
+				scanCallback.renderWaterBackground();
+			}
+		}
+	}
+
+	/**
+	 * Sets the tile to which the pixel coordinates of the map elements are relative. The projection of the previous
+	 * tile is reused if the tile has not changed.
+	 * 
+	 * @param tile
+	 *            the tile of the current query, or null if the query is not bound to a tile.
+	 */
+	void setProjectionTile(Tile tile) {
+		if (tile == null) {
+			this.tileProjection = null;
+			this.rawPointOfInterest.setTileProjection(null);
+			this.rawWay.setTileProjection(null);
+		} else if (this.tileProjection == null || !this.tileProjection.getTile().equals(tile)) {
+			this.tileProjection = new TileProjection(tile);
+			this.rawPointOfInterest.setTileProjection(this.tileProjection);
+			this.rawWay.setTileProjection(this.tileProjection);
+		}
+	}
+
+	/**
+	 * Starts a new query whose metrics are passed to the given listener by {@link #finishQuery()}.
+	 * 
+	 * @param listener
+	 *            the listener for the metrics of the query, or null if no metrics should be recorded.
+	 * @param tile
+	 *            the tile of the query, or null if the query is not bound to a single tile.
+	 */
+	void startQuery(QueryMetricsListener listener, Tile tile) {
+		this.queryMetricsListener = listener;
+		if (listener == null) {
+			this.queryMetrics = null;
+		} else {
+			this.queryMetrics = new QueryMetrics(tile);
+		}
+	}
+
+	/**
+	 * Adds a way which has been skipped by its tile bitmask to the metrics of the current query. A way which is skipped
+	 * while decoding a block for a batch query is skipped for each tile which is covered by that block.
+	 * 
+	 * @param rawMapDatabaseCallback
+	 *            the callback of the current block.
+	 */
+	private void countWaySkippedByTileBitmask(RawMapDatabaseCallback rawMapDatabaseCallback) {
+		if (rawMapDatabaseCallback instanceof TileDispatcher) {
+			this.queryMetrics.waysSkippedByTileBitmask += ((TileDispatcher) rawMapDatabaseCallback)
+					.getNumberOfCurrentTiles();
+		} else {
+			++this.queryMetrics.waysSkippedByTileBitmask;
+		}
+	}
+
+	/**
+	 * Decodes all POIs and ways of the current block, regardless of the query zoom level and the tile bitmask.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @return the decoded block or null if the block could not be decoded completely.
+	 */
+	private DecodedBlock decodeBlock(SubFileParameter subFileParameter) {
+		if (!processBlockSignature()) {
+			return null;
+		}
+
+		int[][] currentZoomTable = readZoomTable(subFileParameter);
+		if (currentZoomTable == null) {
+			return null;
+		}
+		int[] lastZoomTableRow = currentZoomTable[currentZoomTable.length - 1];
+
+		DecodedBlock decodedBlock = new DecodedBlock(copyZoomTable(currentZoomTable), this.mapFileInfo);
+		if (!processBlockElements(null, decodedBlock, lastZoomTableRow[0], lastZoomTableRow[1])
+				|| !decodedBlock.isComplete()) {
+			return null;
+		}
+		return decodedBlock;
+	}
+
+	/**
+	 * Calculates the size of a block from its own and the next index entry.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @param blockNumber
+	 *            the number of the block in the sub-file.
+	 * @param currentBlockPointer
+	 *            the pointer to the block, relative to the sub-file.
+	 * @return the size of the block in bytes, zero if the block is empty or too large and should be skipped, or -1 if
+	 *         the index is invalid.
+	 * @throws IOException
+	 *             if an error occurs while reading the index.
+	 */
+	private int getBlockSize(SubFileParameter subFileParameter, long blockNumber, long currentBlockPointer)
+			throws IOException {
+		long nextBlockPointer;
+		// check if the current block is the last block in the file
+		if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+			// set the next block pointer to the end of the file
+			nextBlockPointer = subFileParameter.subFileSize;
+		} else {
+			// get and check the next block pointer
+			nextBlockPointer = this.sharedMapFile.indexCache.getIndexEntry(subFileParameter, blockNumber + 1,
+					this.queryMetrics) & BITMASK_INDEX_OFFSET;
+			if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
+				LOG.warning("invalid next block pointer: " + nextBlockPointer);
+				LOG.warning("sub-file size: " + subFileParameter.subFileSize);
+				return -1;
+			}
+		}
+
+		// calculate the size of the current block
+		int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
+		if (currentBlockSize < 0) {
+			LOG.warning("current block size must not be negative: " + currentBlockSize);
+			return -1;
+		} else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
+			// the current block is too large, continue with the next block
+			LOG.warning("current block size too large: " + currentBlockSize);
+			return 0;
+		} else if (currentBlockPointer + currentBlockSize > this.sharedMapFile.fileSize) {
+			LOG.warning("current block largher than file size: " + currentBlockSize);
+			return -1;
+		}
+		return currentBlockSize;
+	}
+
+	/**
+	 * Logs the debug signatures of the current way and block.
+	 */
+	private void logDebugSignatures() {
+		if (this.mapFileInfo.debugFile) {
+			LOG.warning(DEBUG_SIGNATURE_WAY + this.signatureWay);
+			LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+		}
+	}
+
+	/**
+	 * Checks the current buffer position after all POIs have been read and moves the pointer to the first way.
+	 * 
+	 * @param firstWayOffset
+	 *            the absolute offset of the first way in the block.
+	 * @return true if the buffer position is valid, false otherwise.
+	 */
+	private boolean moveToFirstWay(int firstWayOffset) {
+		// finished reading POIs, check if the current buffer position is valid
+		if (this.readBuffer.getBufferPosition() > firstWayOffset) {
+			LOG.warning("invalid buffer position: " + this.readBuffer.getBufferPosition());
+			if (this.mapFileInfo.debugFile) {
+				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+			}
+			return false;
+		}
+
+		// move the pointer to the first way
+		this.readBuffer.setBufferPosition(firstWayOffset);
+		return true;
+	}
+
+	/**
+	 * Processes a single block and executes the callback functions on all map elements.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 */
+	private void processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			RawMapDatabaseCallback rawMapDatabaseCallback) {
+		if (!processBlockSignature()) {
+			return;
+		}
+
+		int[][] currentZoomTable = readZoomTable(subFileParameter);
+		if (currentZoomTable == null) {
+			return;
+		}
+		int zoomTableRow = getZoomTableRow(queryParameters, subFileParameter);
+		int poisOnQueryZoomLevel = currentZoomTable[zoomTableRow][0];
+		int waysOnQueryZoomLevel = currentZoomTable[zoomTableRow][1];
+
+		processBlockElements(queryParameters, rawMapDatabaseCallback, poisOnQueryZoomLevel, waysOnQueryZoomLevel);
+	}
+
+	/**
+	 * Processes the given number of POIs and ways of the current block, starting after its zoom table.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query, or null if all elements should be processed regardless of their
+	 *            tile bitmask and tags.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements.
+	 * @param numberOfPois
+	 *            how many POIs should be processed.
+	 * @param numberOfWays
+	 *            how many ways should be processed.
+	 * @return true if the elements could be processed successfully, false otherwise.
+	 */
+	private boolean processBlockElements(QueryParameters queryParameters,
+			RawMapDatabaseCallback rawMapDatabaseCallback, int numberOfPois, int numberOfWays) {
+		int firstWayOffset = readFirstWayOffset();
+		if (firstWayOffset < 0) {
+			return false;
+		}
+
+		TagFilter tagFilter = queryParameters == null ? null : queryParameters.tagFilter;
+		if (!processPOIs(rawMapDatabaseCallback, tagFilter, numberOfPois)) {
+			return false;
+		}
+
+		if (!moveToFirstWay(firstWayOffset)) {
+			return false;
+		}
+
+		return processWays(queryParameters, rawMapDatabaseCallback, numberOfWays);
+	}
+
+	/**
+	 * Reads and processes all blocks which are covered by the given query.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query.
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted map elements and the water background.
+	 * @param cachedMapDatabaseCallback
+	 *            the callback to which the map elements are passed via the block cache, or null if the block cache
+	 *            should not be used.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	private void processBlocks(QueryParameters queryParameters, SubFileParameter subFileParameter,
+			RawMapDatabaseCallback rawMapDatabaseCallback, MapDatabaseCallback cachedMapDatabaseCallback)
+			throws IOException {
+		IndexCache indexCache = this.sharedMapFile.indexCache;
+		StripedLRUCache<DecodedBlock> blockCache = this.sharedMapFile.blockCache;
+		boolean queryIsWater = true;
+		boolean queryReadWaterInfo = false;
+
+		// read and process all blocks from top to bottom and from left to right
+		for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+			for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+
+				// stop between two blocks if the query has been cancelled
+				if (queryParameters.cancelled != null && queryParameters.cancelled.get()) {
+					return;
+				}
+
+				// calculate the actual block number of the needed block in the file
+				long blockNumber = row * subFileParameter.blocksWidth + column;
+
+				// get the current index entry
+				long currentBlockIndexEntry = indexCache.getIndexEntry(subFileParameter, blockNumber,
+						this.queryMetrics);
+
+				// check if the current query would still return a water tile
+				if (queryIsWater) {
+					// check the water flag of the current block in its index entry
+					queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
+					queryReadWaterInfo = true;
+				}
+
+				// get and check the current block pointer and size
+				long currentBlockPointer = getBlockPointer(currentBlockIndexEntry, subFileParameter);
+				if (currentBlockPointer < 0) {
+					return;
+				}
+				int currentBlockSize = getBlockSize(subFileParameter, blockNumber, currentBlockPointer);
+				if (currentBlockSize < 0) {
+					return;
+				} else if (currentBlockSize == 0) {
+					// the current block is empty or too large, continue with the next block
+					continue;
+				}
+
+				long blockAddress = subFileParameter.startAddress + currentBlockPointer;
+
+				// check if the decoded block is already cached
+				DecodedBlock decodedBlock = null;
+				if (cachedMapDatabaseCallback != null) {
+					decodedBlock = blockCache.get(blockAddress);
+					if (decodedBlock != null && this.queryMetrics != null) {
+						++this.queryMetrics.blockCacheHits;
+					}
+				}
+
+				if (decodedBlock == null) {
+					// read the current block into the buffer
+					if (!readBlocks(blockAddress, currentBlockSize, 1)) {
+						// skip the current block
+						LOG.warning("reading current block has failed: " + currentBlockSize);
+						return;
+					}
+
+					setTileCoordinates(subFileParameter, row, column);
+
+					try {
+						if (cachedMapDatabaseCallback == null) {
+							processBlock(queryParameters, subFileParameter, rawMapDatabaseCallback);
+						} else {
+							decodedBlock = decodeBlock(subFileParameter);
+							if (decodedBlock != null) {
+								blockCache.put(blockAddress, decodedBlock, decodedBlock.getSize());
+							}
+						}
+					} catch (IndexOutOfBoundsException e) {
+						LOG.log(Level.SEVERE, null, e);
+					}
+				}
+
+				if (decodedBlock != null) {
+					decodedBlock.replay(queryParameters, getZoomTableRow(queryParameters, subFileParameter),
+							cachedMapDatabaseCallback, this.queryMetrics);
+				}
+			}
+		}
+
+		// the query is finished, was the water flag set for all blocks?
+		if (queryIsWater && queryReadWaterInfo) {
+			rawMapDatabaseCallback.renderWaterBackground();
+		}
+	}
+
+	/**
+	 * Processes the block signature, if present.
+	 * 
+	 * @return true if the block signature could be processed successfully, false otherwise.
+	 */
+	private boolean processBlockSignature() {
+		if (this.mapFileInfo.debugFile) {
+			// get and check the block signature
+			this.signatureBlock = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
+			if (!this.signatureBlock.startsWith("###TileStart")) {
+				LOG.warning("invalid block signature: " + this.signatureBlock);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Processes the given number of POIs.
+	 * 
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted POIs.
+	 * @param tagFilter
+	 *            the filter for the tag IDs of the POIs (may be null).
+	 * @param numberOfPois
+	 *            how many POIs should be processed.
+	 * @return true if the POIs could be processed successfully, false otherwise.
+	 */
+	private boolean processPOIs(RawMapDatabaseCallback rawMapDatabaseCallback, TagFilter tagFilter, int numberOfPois) {
+		RawPointOfInterest pointOfInterest = this.rawPointOfInterest;
+		int numberOfPoiTags = this.mapFileInfo.poiTags.length;
+
+		for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
+			if (this.mapFileInfo.debugFile) {
+				// get and check the POI signature
+				this.signaturePoi = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
+				if (!this.signaturePoi.startsWith("***POIStart")) {
+					LOG.warning("invalid POI signature: " + this.signaturePoi);
+					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+					return false;
+				}
+			}
+
+			// get the POI latitude offset (VBE-S)
+			int latitude = this.tileLatitude + this.readBuffer.readSignedInt();
+
+			// get the POI longitude offset (VBE-S)
+			int longitude = this.tileLongitude + this.readBuffer.readSignedInt();
+
+			// get the special byte which encodes multiple flags
+			byte specialByte = this.readBuffer.readByte();
+
+			// bit 1-4 represent the layer
+			byte layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
+			// bit 5-8 represent the number of tag IDs
+			byte numberOfTags = (byte) (specialByte & POI_NUMBER_OF_TAGS_BITMASK);
+
+			pointOfInterest.reset(layer, latitude, longitude);
+			boolean accepted = tagFilter == null || tagFilter.isAllPoisAccepted();
+
+			// get the tag IDs (VBE-U)
+			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
+				int tagId = this.readBuffer.readUnsignedInt();
+				if (tagId < 0 || tagId >= numberOfPoiTags) {
+					LOG.warning("invalid POI tag ID: " + tagId);
+					if (this.mapFileInfo.debugFile) {
+						LOG.warning(DEBUG_SIGNATURE_POI + this.signaturePoi);
+						LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+					}
+					return false;
+				}
+				pointOfInterest.addTagId(tagId);
+				accepted = accepted || tagFilter.isPoiTagIdAccepted(tagId);
+			}
+
+			// get the feature bitmask (1 byte)
+			byte featureByte = this.readBuffer.readByte();
+
+			// bit 1-3 enable optional features
+			boolean featureName = (featureByte & POI_FEATURE_NAME) != 0;
+			boolean featureHouseNumber = (featureByte & POI_FEATURE_HOUSE_NUMBER) != 0;
+			boolean featureElevation = (featureByte & POI_FEATURE_ELEVATION) != 0;
+
+			// check if the POI has a name
+			if (featureName) {
+				pointOfInterest.readString(RawMapElement.STRING_NAME);
+			}
+
+			// check if the POI has a house number
+			if (featureHouseNumber) {
+				pointOfInterest.readString(RawMapElement.STRING_HOUSE_NUMBER);
+			}
+
+			// check if the POI has an elevation
+			if (featureElevation) {
+				pointOfInterest.setElevation(this.readBuffer.readSignedInt());
+			}
+
+			if (accepted) {
+				rawMapDatabaseCallback.renderPointOfInterest(pointOfInterest);
+			} else if (this.queryMetrics != null) {
+				++this.queryMetrics.poisSkippedByTagFilter;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decodes all way coordinate blocks of the current way data block into the coordinate array of the given way.
+	 * 
+	 * @param way
+	 *            the way which stores the coordinates.
+	 * @param doubleDeltaEncoding
+	 *            true if the way nodes are double-delta encoded, false otherwise.
+	 * @return true if the way data block could be processed successfully, false otherwise.
+	 */
+	private boolean processWayDataBlock(RawWay way, boolean doubleDeltaEncoding) {
+		// get and check the number of way coordinate blocks (VBE-U)
+		int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
+		if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
+			LOG.warning("invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
+			logDebugSignatures();
+			return false;
+		}
+
+		// read the way coordinate blocks
+		for (int coordinateBlock = 0; coordinateBlock < numberOfWayCoordinateBlocks; ++coordinateBlock) {
+			// get and check the number of way nodes (VBE-U)
+			int numberOfWayNodes = this.readBuffer.readUnsignedInt();
+			if (numberOfWayNodes < 2 || numberOfWayNodes > MAXIMUM_WAY_NODES_SEQUENCE_LENGTH) {
+				LOG.warning("invalid number of way nodes: " + numberOfWayNodes);
+				logDebugSignatures();
+				return false;
+			}
+
+			// each way node consists of latitude and longitude
+			int wayNodesSequenceLength = numberOfWayNodes * 2;
+
+			// reserve the space for the current way segment
+			int offset = way.addSegment(numberOfWayNodes);
+
+			// decode the way nodes (VBE-S) and resolve their offsets in one pass
+			this.readBuffer.readWayNodes(way.getCoordinates(), offset, wayNodesSequenceLength, this.tileLatitude,
+					this.tileLongitude, doubleDeltaEncoding);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Processes the given number of ways.
+	 * 
+	 * @param queryParameters
+	 *            the parameters of the current query, or null if all ways should be processed regardless of their
+	 *            tile bitmask and tags.
+	 * @param rawMapDatabaseCallback
+	 *            the callback which handles the extracted ways.
+	 * @param numberOfWays
+	 *            how many ways should be processed.
+	 * @return true if the ways could be processed successfully, false otherwise.
+	 */
+	private boolean processWays(QueryParameters queryParameters, RawMapDatabaseCallback rawMapDatabaseCallback,
+			int numberOfWays) {
+		RawWay way = this.rawWay;
+		int numberOfWayTags = this.mapFileInfo.wayTags.length;
+		TagFilter tagFilter = queryParameters == null ? null : queryParameters.tagFilter;
+
+		for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
+			if (this.mapFileInfo.debugFile) {
+				// get and check the way signature
+				this.signatureWay = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
+				if (!this.signatureWay.startsWith("---WayStart")) {
+					LOG.warning("invalid way signature: " + this.signatureWay);
+					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+					return false;
+				}
+			}
+
+			// get the size of the way (VBE-U)
+			int wayDataSize = this.readBuffer.readUnsignedInt();
+			if (wayDataSize < 0) {
+				LOG.warning("invalid way data size: " + wayDataSize);
+				if (this.mapFileInfo.debugFile) {
+					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+				}
+				return false;
+			}
+			int wayEnd = this.readBuffer.getBufferPosition() + wayDataSize;
+
+			// get the way tile bitmask (2 bytes)
+			int tileBitmask = this.readBuffer.readShort();
+			if (queryParameters != null && queryParameters.useTileBitmask) {
+				// check if the way is inside the requested tile
+				if ((queryParameters.queryTileBitmask & tileBitmask) == 0) {
+					if (this.queryMetrics != null) {
+						countWaySkippedByTileBitmask(rawMapDatabaseCallback);
+					}
+					// skip the rest of the way and continue with the next way
+					this.readBuffer.skipBytes(wayDataSize - 2);
+					continue;
+				}
+			}
+
+			// get the special byte which encodes multiple flags
+			byte specialByte = this.readBuffer.readByte();
+
+			// bit 1-4 represent the layer
+			byte layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
+			// bit 5-8 represent the number of tag IDs
+			byte numberOfTags = (byte) (specialByte & WAY_NUMBER_OF_TAGS_BITMASK);
+
+			way.reset(layer, tileBitmask);
+			boolean accepted = tagFilter == null || tagFilter.isAllWaysAccepted();
+
+			for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
+				int tagId = this.readBuffer.readUnsignedInt();
+				if (tagId < 0 || tagId >= numberOfWayTags) {
+					LOG.warning("invalid way tag ID: " + tagId);
+					logDebugSignatures();
+					return false;
+				}
+				way.addTagId(tagId);
+				accepted = accepted || tagFilter.isWayTagIdAccepted(tagId);
+			}
+
+			if (!accepted) {
+				if (this.queryMetrics != null) {
+					++this.queryMetrics.waysSkippedByTagFilter;
+				}
+				// skip the rest of the way without decoding its coordinates
+				this.readBuffer.setBufferPosition(wayEnd);
+				continue;
+			}
+
+			// get the feature bitmask (1 byte)
+			byte featureByte = this.readBuffer.readByte();
+
+			// bit 1-6 enable optional features
+			boolean featureName = (featureByte & WAY_FEATURE_NAME) != 0;
+			boolean featureHouseNumber = (featureByte & WAY_FEATURE_HOUSE_NUMBER) != 0;
+			boolean featureRef = (featureByte & WAY_FEATURE_REF) != 0;
+			boolean featureLabelPosition = (featureByte & WAY_FEATURE_LABEL_POSITION) != 0;
+			boolean featureWayDataBlocksByte = (featureByte & WAY_FEATURE_DATA_BLOCKS_BYTE) != 0;
+			boolean featureWayDoubleDeltaEncoding = (featureByte & WAY_FEATURE_DOUBLE_DELTA_ENCODING) != 0;
+
+			// check if the way has a name
+			if (featureName) {
+				way.readString(RawMapElement.STRING_NAME);
+			}
+
+			// check if the way has a house number
+			if (featureHouseNumber) {
+				way.readString(RawMapElement.STRING_HOUSE_NUMBER);
+			}
+
+			// check if the way has a reference
+			if (featureRef) {
+				way.readString(RawMapElement.STRING_REF);
+			}
+
+			// check if the way has a label position
+			if (featureLabelPosition) {
+				// get the label position latitude offset (VBE-S)
+				int labelLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
+
+				// get the label position longitude offset (VBE-S)
+				int labelLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
+
+				way.setLabelPosition(labelLatitude, labelLongitude);
+			}
+
+			int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte);
+			if (wayDataBlocks < 1) {
+				LOG.warning("invalid number of way data blocks: " + wayDataBlocks);
+				logDebugSignatures();
+				return false;
+			}
+			way.setNumberOfWayDataBlocks(wayDataBlocks);
+
+			for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; ++wayDataBlock) {
+				way.resetWayDataBlock(wayDataBlock);
+				if (!processWayDataBlock(way, featureWayDoubleDeltaEncoding)) {
+					return false;
+				}
+				rawMapDatabaseCallback.renderWay(way);
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reads a block via the read-ahead window of the buffer and records the time and the size in the current metrics.
+	 * 
+	 * @see BlockReadBuffer#readAhead(long, int, long, int)
+	 */
+	private boolean readAhead(long address, int length, long endAddress, int readAheadSize) throws IOException {
+		if (this.queryMetrics == null) {
+			return this.readBuffer.readAhead(address, length, endAddress, readAheadSize);
+		}
+		long startNanos = System.nanoTime();
+		boolean success = this.readBuffer.readAhead(address, length, endAddress, readAheadSize);
+		this.queryMetrics.ioNanos += System.nanoTime() - startNanos;
+		++this.queryMetrics.blocksRead;
+		this.queryMetrics.bytesRead += length;
+		return success;
+	}
+
+	/**
+	 * Reads one or more adjacent blocks into the buffer and records the time and the size in the current metrics.
+	 * 
+	 * @param address
+	 *            the absolute address of the first block in the map file.
+	 * @param length
+	 *            the total amount of bytes to read.
+	 * @param numberOfBlocks
+	 *            the number of blocks within the read range.
+	 * @return true if the data was read successfully, false otherwise.
+	 * @throws IOException
+	 *             if an error occurs while reading the file.
+	 */
+	private boolean readBlocks(long address, int length, int numberOfBlocks) throws IOException {
+		if (this.queryMetrics == null) {
+			return this.readBuffer.readFromFile(address, length);
+		}
+		long startNanos = System.nanoTime();
+		boolean success = this.readBuffer.readFromFile(address, length);
+		this.queryMetrics.ioNanos += System.nanoTime() - startNanos;
+		this.queryMetrics.blocksRead += numberOfBlocks;
+		this.queryMetrics.bytesRead += length;
+		return success;
+	}
+
+	/**
+	 * Reads the relative offset to the first way in the current block and converts it into an absolute buffer
+	 * position.
+	 * 
+	 * @return the absolute offset of the first way or -1 if the offset is invalid.
+	 */
+	private int readFirstWayOffset() {
+		// get the relative offset to the first stored way in the block
+		int firstWayOffset = this.readBuffer.readUnsignedInt();
+		if (firstWayOffset < 0) {
+			LOG.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
+			if (this.mapFileInfo.debugFile) {
+				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+			}
+			return -1;
+		}
+
+		// add the current buffer position to the relative first way offset
+		firstWayOffset += this.readBuffer.getBufferPosition();
+		if (firstWayOffset > this.readBuffer.getBufferSize()) {
+			LOG.warning(INVALID_FIRST_WAY_OFFSET + firstWayOffset);
+			if (this.mapFileInfo.debugFile) {
+				LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+			}
+			return -1;
+		}
+		return firstWayOffset;
+	}
+
+	private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte) {
+		if (featureWayDataBlocksByte) {
+			// get and check the number of way data blocks (VBE-U)
+			return this.readBuffer.readUnsignedInt();
+		}
+		// only one way data block exists
+		return 1;
+	}
+
+	/**
+	 * Reads the zoom table of the current block into a reused array.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @return the zoom table with the cumulated number of POIs and ways per zoom level, or null if it is invalid.
+	 */
+	private int[][] readZoomTable(SubFileParameter subFileParameter) {
+		int rows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
+		if (this.zoomTable == null || this.zoomTable.length != rows) {
+			this.zoomTable = new int[rows][2];
+		}
+
+		int cumulatedNumberOfPois = 0;
+		int cumulatedNumberOfWays = 0;
+
+		for (int row = 0; row < rows; ++row) {
+			cumulatedNumberOfPois += this.readBuffer.readUnsignedInt();
+			cumulatedNumberOfWays += this.readBuffer.readUnsignedInt();
+
+			if (cumulatedNumberOfPois < 0 || cumulatedNumberOfPois > MAXIMUM_ZOOM_TABLE_OBJECTS) {
+				LOG.warning("invalid cumulated number of POIs in row " + row + ' ' + cumulatedNumberOfPois);
+				if (this.mapFileInfo.debugFile) {
+					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+				}
+				return null;
+			} else if (cumulatedNumberOfWays < 0 || cumulatedNumberOfWays > MAXIMUM_ZOOM_TABLE_OBJECTS) {
+				LOG.warning("invalid cumulated number of ways in row " + row + ' ' + cumulatedNumberOfWays);
+				if (this.mapFileInfo.debugFile) {
+					LOG.warning(DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+				}
+				return null;
+			}
+
+			this.zoomTable[row][0] = cumulatedNumberOfPois;
+			this.zoomTable[row][1] = cumulatedNumberOfWays;
+		}
+
+		return this.zoomTable;
+	}
+
+	/**
+	 * Calculates the top-left coordinates of the base tile which belongs to the given block.
+	 * 
+	 * @param subFileParameter
+	 *            the parameters of the current map file.
+	 * @param row
+	 *            the row of the block in the sub-file.
+	 * @param column
+	 *            the column of the block in the sub-file.
+	 */
+	private void setTileCoordinates(SubFileParameter subFileParameter, long row, long column) {
+		double tileLatitudeDeg = MercatorProjection.tileYToLatitude(subFileParameter.boundaryTileTop + row,
+				subFileParameter.baseZoomLevel);
+		double tileLongitudeDeg = MercatorProjection.tileXToLongitude(subFileParameter.boundaryTileLeft + column,
+				subFileParameter.baseZoomLevel);
+		this.tileLatitude = (int) (tileLatitudeDeg * 1000000);
+		this.tileLongitude = (int) (tileLongitudeDeg * 1000000);
+	}
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * Callback methods which are triggered by a sequential scan of a sub-file via
+ * {@link MapDatabase#executeScan(byte, int, TagFilter, ScanCallback)}.
+ * <p>
+ * The blocks of the sub-file are passed in file order. Each block starts with a call to {@link #startTile(Tile)},
+ * followed by its map elements and, if the block is marked as water in the index, by a call to
+ * {@link #renderWaterBackground()}.
+ */
+public interface ScanCallback extends RawMapDatabaseCallback {
+	/**
+	 * Starts a new block. All following map elements belong to this block until the next call of this method, their
+	 * pixel coordinates are relative to the given tile.
+	 * 
+	 * @param tile
+	 *            the base tile of the block at the base zoom level of the sub-file.
+	 */
+	void startTile(Tile tile);
+}
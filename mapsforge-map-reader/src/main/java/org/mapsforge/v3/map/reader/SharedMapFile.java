@@ -0,0 +1,100 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.mapsforge.v3.map.reader.header.MapFileHeader;
+
+/**
+ * An opened map file which can be shared by any number of threads.
+ * <p>
+ * All fields are immutable. The file is only accessed via positional reads or memory mappings, which do not depend on
+ * a shared file pointer, and stays readable if a reading thread is interrupted. The per-query state is kept in a
+ * {@link ReadContext}.
+ */
+class SharedMapFile {
+	/**
+	 * The number of independently locked segments of the block cache.
+	 */
+	private static final int BLOCK_CACHE_CONCURRENCY_LEVEL = 4;
+
+	/**
+	 * The cache for the decoded blocks of all sub-files (may be null).
+	 */
+	final StripedLRUCache<DecodedBlock> blockCache;
+
+	/**
+	 * The size of the map file in bytes.
+	 */
+	final long fileSize;
+
+	/**
+	 * The cache for the index entries of all sub-files.
+	 */
+	final IndexCache indexCache;
+
+	/**
+	 * The header of the map file.
+	 */
+	final MapFileHeader mapFileHeader;
+
+	/**
+	 * The channel of the map file.
+	 */
+	final MapFileChannel mapFileChannel;
+
+	/**
+	 * The memory mappings of all sub-files (may be null).
+	 */
+	final SubFileMappings subFileMappings;
+
+	/**
+	 * @param mapFileChannel
+	 *            the opened map file.
+	 * @param fileSize
+	 *            the size of the map file in bytes.
+	 * @param mapFileHeader
+	 *            the header of the map file.
+	 * @param subFileMappings
+	 *            the memory mappings of all sub-files (may be null).
+	 * @param indexCacheSize
+	 *            the maximum size of the index cache in bytes.
+	 * @param blockCacheSize
+	 *            the maximum estimated size of the decoded block cache in bytes, zero to disable the cache.
+	 */
+	SharedMapFile(MapFileChannel mapFileChannel, long fileSize, MapFileHeader mapFileHeader,
+			SubFileMappings subFileMappings, long indexCacheSize, long blockCacheSize) {
+		this.mapFileChannel = mapFileChannel;
+		this.fileSize = fileSize;
+		this.mapFileHeader = mapFileHeader;
+		this.subFileMappings = subFileMappings;
+		this.indexCache = new IndexCache(mapFileChannel, subFileMappings, indexCacheSize);
+		if (blockCacheSize > 0) {
+			this.blockCache = new StripedLRUCache<DecodedBlock>(blockCacheSize, BLOCK_CACHE_CONCURRENCY_LEVEL);
+		} else {
+			this.blockCache = null;
+		}
+	}
+
+	/**
+	 * Closes the map file and destroys all caches.
+	 */
+	void close() {
+		this.indexCache.destroy();
+		if (this.blockCache != null) {
+			this.blockCache.clear();
+		}
+		this.mapFileChannel.close();
+	}
+}
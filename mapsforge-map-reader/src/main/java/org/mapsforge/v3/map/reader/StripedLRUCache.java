@@ -0,0 +1,324 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.Arrays;
+
+import org.mapsforge.v3.core.CacheStatistics;
+
+/**
+ * A thread-safe cache with primitive long keys, a size bound measured in arbitrary units and LRU policy.
+ * <p>
+ * The cache is split into independently locked segments, each of which evicts its least recently used entries. Keys
+ * are stored in primitive arrays, so neither lookups nor insertions allocate key objects.
+ * 
+ * @param <V>
+ *            the type of the cached values.
+ */
+class StripedLRUCache<V> {
+	/**
+	 * A single segment of the cache with its own lock, hash table and LRU list.
+	 */
+	private static final class Segment {
+		private static final int INITIAL_ENTRIES = 16;
+		private static final int NONE = -1;
+
+		/**
+		 * The first entry of each hash bucket, or {@link #NONE}.
+		 */
+		private int[] buckets;
+		private final long capacity;
+		private long evictions;
+		private int freeEntry = NONE;
+		private long hits;
+		private long[] keys;
+		private int leastRecentlyUsed = NONE;
+		private long misses;
+		private int mostRecentlyUsed = NONE;
+		private int[] nextInBucket;
+		private int[] newer;
+		private int[] older;
+		private int usedEntries;
+		private Object[] values;
+		private long weight;
+		private int[] weights;
+
+		Segment(long capacity) {
+			this.capacity = capacity;
+			allocate(INITIAL_ENTRIES);
+		}
+
+		void clear() {
+			allocate(INITIAL_ENTRIES);
+			this.freeEntry = NONE;
+			this.leastRecentlyUsed = NONE;
+			this.mostRecentlyUsed = NONE;
+			this.usedEntries = 0;
+			this.weight = 0;
+		}
+
+		Object get(long key, int hash) {
+			int entry = find(key, hash);
+			if (entry == NONE) {
+				++this.misses;
+				return null;
+			}
+			++this.hits;
+			unlink(entry);
+			linkAsMostRecentlyUsed(entry);
+			return this.values[entry];
+		}
+
+		void put(long key, int hash, Object value, int valueWeight) {
+			if (valueWeight > this.capacity) {
+				// the value would never fit into this segment
+				return;
+			}
+
+			int entry = find(key, hash);
+			if (entry != NONE) {
+				// replace the existing value
+				this.weight += valueWeight - this.weights[entry];
+				this.values[entry] = value;
+				this.weights[entry] = valueWeight;
+				unlink(entry);
+				linkAsMostRecentlyUsed(entry);
+			} else {
+				entry = newEntry();
+				this.keys[entry] = key;
+				this.values[entry] = value;
+				this.weights[entry] = valueWeight;
+				this.weight += valueWeight;
+
+				int bucket = hash & (this.buckets.length - 1);
+				this.nextInBucket[entry] = this.buckets[bucket];
+				this.buckets[bucket] = entry;
+				linkAsMostRecentlyUsed(entry);
+			}
+
+			while (this.weight > this.capacity) {
+				remove(this.leastRecentlyUsed);
+				++this.evictions;
+			}
+		}
+
+		private void allocate(int entries) {
+			this.buckets = new int[entries * 2];
+			Arrays.fill(this.buckets, NONE);
+			this.keys = new long[entries];
+			this.nextInBucket = new int[entries];
+			this.newer = new int[entries];
+			this.older = new int[entries];
+			this.values = new Object[entries];
+			this.weights = new int[entries];
+		}
+
+		private int find(long key, int hash) {
+			int entry = this.buckets[hash & (this.buckets.length - 1)];
+			while (entry != NONE && this.keys[entry] != key) {
+				entry = this.nextInBucket[entry];
+			}
+			return entry;
+		}
+
+		private void grow() {
+			long[] oldKeys = this.keys;
+			int[] oldNewer = this.newer;
+			Object[] oldValues = this.values;
+			int[] oldWeights = this.weights;
+			int oldLeastRecentlyUsed = this.leastRecentlyUsed;
+
+			allocate(oldKeys.length * 2);
+			this.freeEntry = NONE;
+			this.leastRecentlyUsed = NONE;
+			this.mostRecentlyUsed = NONE;
+			this.usedEntries = 0;
+
+			// re-insert all entries from the least to the most recently used one to keep their order
+			for (int entry = oldLeastRecentlyUsed; entry != NONE; entry = oldNewer[entry]) {
+				int newEntry = this.usedEntries++;
+				long key = oldKeys[entry];
+				this.keys[newEntry] = key;
+				this.values[newEntry] = oldValues[entry];
+				this.weights[newEntry] = oldWeights[entry];
+
+				int bucket = hash(key) & (this.buckets.length - 1);
+				this.nextInBucket[newEntry] = this.buckets[bucket];
+				this.buckets[bucket] = newEntry;
+				linkAsMostRecentlyUsed(newEntry);
+			}
+		}
+
+		private void linkAsMostRecentlyUsed(int entry) {
+			this.older[entry] = this.mostRecentlyUsed;
+			this.newer[entry] = NONE;
+			if (this.mostRecentlyUsed != NONE) {
+				this.newer[this.mostRecentlyUsed] = entry;
+			} else {
+				this.leastRecentlyUsed = entry;
+			}
+			this.mostRecentlyUsed = entry;
+		}
+
+		private int newEntry() {
+			if (this.freeEntry != NONE) {
+				int entry = this.freeEntry;
+				this.freeEntry = this.nextInBucket[entry];
+				return entry;
+			}
+			if (this.usedEntries == this.keys.length) {
+				grow();
+			}
+			return this.usedEntries++;
+		}
+
+		private void remove(int entry) {
+			// unlink the entry from its hash bucket
+			int bucket = hash(this.keys[entry]) & (this.buckets.length - 1);
+			if (this.buckets[bucket] == entry) {
+				this.buckets[bucket] = this.nextInBucket[entry];
+			} else {
+				int previous = this.buckets[bucket];
+				while (this.nextInBucket[previous] != entry) {
+					previous = this.nextInBucket[previous];
+				}
+				this.nextInBucket[previous] = this.nextInBucket[entry];
+			}
+
+			unlink(entry);
+			this.weight -= this.weights[entry];
+			this.values[entry] = null;
+
+			// put the entry on the free list
+			this.nextInBucket[entry] = this.freeEntry;
+			this.freeEntry = entry;
+		}
+
+		private void unlink(int entry) {
+			int olderEntry = this.older[entry];
+			int newerEntry = this.newer[entry];
+			if (olderEntry != NONE) {
+				this.newer[olderEntry] = newerEntry;
+			} else {
+				this.leastRecentlyUsed = newerEntry;
+			}
+			if (newerEntry != NONE) {
+				this.older[newerEntry] = olderEntry;
+			} else {
+				this.mostRecentlyUsed = olderEntry;
+			}
+		}
+	}
+
+	/**
+	 * Maximum number of segments of a cache.
+	 */
+	static final int MAXIMUM_SEGMENTS = 16;
+
+	private static int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private final long capacity;
+	private final int segmentMask;
+	private final Segment[] segments;
+
+	/**
+	 * @param capacity
+	 *            the maximum total weight of all entries in the cache.
+	 * @param concurrencyLevel
+	 *            the expected number of threads which access the cache concurrently, rounded down to a power of two
+	 *            between one and {@link #MAXIMUM_SEGMENTS}.
+	 * @throws IllegalArgumentException
+	 *             if the capacity is negative.
+	 */
+	StripedLRUCache(long capacity, int concurrencyLevel) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.capacity = capacity;
+
+		int numberOfSegments = Integer.highestOneBit(Math.max(1, Math.min(concurrencyLevel, MAXIMUM_SEGMENTS)));
+		this.segmentMask = numberOfSegments - 1;
+		this.segments = new Segment[numberOfSegments];
+		for (int i = 0; i < numberOfSegments; ++i) {
+			this.segments[i] = new Segment(capacity / numberOfSegments);
+		}
+	}
+
+	/**
+	 * Removes all entries from the cache. The statistics are not reset.
+	 */
+	void clear() {
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * @param key
+	 *            the key of the entry.
+	 * @return the cached value or null if the cache contains no entry for the key.
+	 */
+	@SuppressWarnings("unchecked")
+	V get(long key) {
+		int hash = hash(key);
+		Segment segment = this.segments[(hash >>> 24) & this.segmentMask];
+		synchronized (segment) {
+			return (V) segment.get(key, hash);
+		}
+	}
+
+	/**
+	 * @return a snapshot of the usage counters of this cache, with size and capacity in units of the entry weights.
+	 */
+	CacheStatistics getStatistics() {
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+		long weight = 0;
+		for (Segment segment : this.segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+				misses += segment.misses;
+				evictions += segment.evictions;
+				weight += segment.weight;
+			}
+		}
+		return new CacheStatistics(hits, misses, evictions, weight, this.capacity);
+	}
+
+	/**
+	 * Adds the given value to the cache and evicts the least recently used entries of its segment if necessary. Values
+	 * which are heavier than a whole segment are not cached.
+	 * 
+	 * @param key
+	 *            the key of the entry.
+	 * @param value
+	 *            the value of the entry.
+	 * @param weight
+	 *            the weight of the value, for example its size in bytes.
+	 */
+	void put(long key, V value, int weight) {
+		int hash = hash(key);
+		Segment segment = this.segments[(hash >>> 24) & this.segmentMask];
+		synchronized (segment) {
+			segment.put(key, hash, value, weight);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.mapsforge.v3.map.reader.header.SubFileParameter;
+
+/**
+ * Read-only memory mappings of all sub-files in a map file.
+ * <p>
+ * The mappings are only accessed via absolute get methods, which do not modify the state of the underlying buffers.
+ * Mapped memory is released by the garbage collector once the mappings are no longer referenced.
+ */
+class SubFileMappings {
+	/**
+	 * Maximum size in bytes of a sub-file which can be memory-mapped.
+	 */
+	static final long MAXIMUM_MAPPING_SIZE = Integer.MAX_VALUE;
+
+	private final ByteBuffer[] buffers;
+	private final long[] startAddresses;
+
+	/**
+	 * @param fileChannel
+	 *            the channel of the map file.
+	 * @param subFileParameters
+	 *            the parameters of all sub-files in the map file.
+	 * @throws IOException
+	 *             if an error occurs while mapping the file.
+	 * @throws IllegalArgumentException
+	 *             if a sub-file is larger than {@link #MAXIMUM_MAPPING_SIZE}.
+	 */
+	SubFileMappings(FileChannel fileChannel, SubFileParameter[] subFileParameters) throws IOException {
+		this.buffers = new ByteBuffer[subFileParameters.length];
+		this.startAddresses = new long[subFileParameters.length];
+
+		for (int i = 0; i < subFileParameters.length; ++i) {
+			SubFileParameter subFileParameter = subFileParameters[i];
+			if (subFileParameter.subFileSize > MAXIMUM_MAPPING_SIZE) {
+				throw new IllegalArgumentException("sub-file too large for memory mapping: "
+						+ subFileParameter.subFileSize);
+			}
+			this.startAddresses[i] = subFileParameter.startAddress;
+			this.buffers[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, subFileParameter.startAddress,
+					subFileParameter.subFileSize);
+		}
+	}
+
+	/**
+	 * Finds the mapped sub-file which contains the given range of the map file.
+	 * 
+	 * @param address
+	 *            the absolute start address of the range in the map file.
+	 * @param length
+	 *            the length of the range in bytes.
+	 * @return the index of the mapping or -1 if no mapping contains the whole range.
+	 */
+	int findMapping(long address, int length) {
+		for (int i = 0; i < this.buffers.length; ++i) {
+			long offset = address - this.startAddresses[i];
+			if (offset >= 0 && offset + length <= this.buffers[i].capacity()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param mapping
+	 *            the index of the mapping.
+	 * @return the memory-mapped sub-file.
+	 */
+	ByteBuffer getBuffer(int mapping) {
+		return this.buffers[mapping];
+	}
+
+	/**
+	 * @param mapping
+	 *            the index of the mapping.
+	 * @return the absolute start address of the memory-mapped sub-file.
+	 */
+	long getStartAddress(int mapping) {
+		return this.startAddresses[mapping];
+	}
+
+	/**
+	 * Copies the given range of the map file into a byte array.
+	 * 
+	 * @param address
+	 *            the absolute start address of the range in the map file.
+	 * @param destination
+	 *            the array into which the bytes are copied.
+	 * @param length
+	 *            the number of bytes to copy.
+	 * @return true if the whole range could be copied, false otherwise.
+	 */
+	boolean read(long address, byte[] destination, int length) {
+		int mapping = findMapping(address, length);
+		if (mapping < 0) {
+			return false;
+		}
+
+		// use a duplicate to leave the position of the shared buffer untouched
+		ByteBuffer byteBuffer = this.buffers[mapping].duplicate();
+		byteBuffer.position((int) (address - this.startAddresses[mapping]));
+		byteBuffer.get(destination, 0, length);
+		return true;
+	}
+}
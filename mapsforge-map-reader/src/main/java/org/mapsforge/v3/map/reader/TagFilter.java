@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.BitSet;
+
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+
+/**
+ * A precomputed set of accepted tag IDs of one map file, which allows a query to skip POIs and ways before their
+ * coordinates are decoded.
+ * <p>
+ * An element is accepted if at least one of its tag IDs is accepted or if all elements of its type are accepted.
+ * Elements without any accepted tag ID are skipped, ways via their data size without reading their remaining data. A
+ * new filter accepts no elements at all. A filter must only be used for queries on the map file from which it was
+ * created.
+ */
+public class TagFilter {
+	private boolean allPoisAccepted;
+	private boolean allWaysAccepted;
+	private final Tag[] poiTags;
+	private final BitSet poiTagIds;
+	private final Tag[] wayTags;
+	private final BitSet wayTagIds;
+
+	/**
+	 * @param mapFileInfo
+	 *            the metadata of the map file whose tags should be filtered.
+	 * @throws IllegalArgumentException
+	 *             if the given metadata is null.
+	 */
+	public TagFilter(MapFileInfo mapFileInfo) {
+		if (mapFileInfo == null) {
+			throw new IllegalArgumentException("mapFileInfo must not be null");
+		}
+		this.poiTags = mapFileInfo.poiTags;
+		this.wayTags = mapFileInfo.wayTags;
+		this.poiTagIds = new BitSet(this.poiTags.length);
+		this.wayTagIds = new BitSet(this.wayTags.length);
+	}
+
+	/**
+	 * Accepts all POIs, including those without any tag ID.
+	 */
+	public void acceptAllPois() {
+		this.allPoisAccepted = true;
+	}
+
+	/**
+	 * Accepts all ways, including those without any tag ID.
+	 */
+	public void acceptAllWays() {
+		this.allWaysAccepted = true;
+	}
+
+	/**
+	 * Accepts all POIs with a tag of the given key, regardless of its value.
+	 * 
+	 * @param key
+	 *            the key of the accepted tags.
+	 */
+	public void acceptPoiKey(String key) {
+		acceptKey(this.poiTags, this.poiTagIds, key);
+	}
+
+	/**
+	 * Accepts all POIs with the given tag.
+	 * 
+	 * @param tag
+	 *            the accepted tag.
+	 */
+	public void acceptPoiTag(Tag tag) {
+		acceptTag(this.poiTags, this.poiTagIds, tag);
+	}
+
+	/**
+	 * Accepts all POIs with the given tag ID.
+	 * 
+	 * @param tagId
+	 *            the accepted index in {@link MapFileInfo#poiTags}.
+	 * @throws IllegalArgumentException
+	 *             if the tag ID is invalid.
+	 */
+	public void acceptPoiTagId(int tagId) {
+		acceptTagId(this.poiTags, this.poiTagIds, tagId);
+	}
+
+	/**
+	 * Accepts all ways with a tag of the given key, regardless of its value.
+	 * 
+	 * @param key
+	 *            the key of the accepted tags.
+	 */
+	public void acceptWayKey(String key) {
+		acceptKey(this.wayTags, this.wayTagIds, key);
+	}
+
+	/**
+	 * Accepts all ways with the given tag.
+	 * 
+	 * @param tag
+	 *            the accepted tag.
+	 */
+	public void acceptWayTag(Tag tag) {
+		acceptTag(this.wayTags, this.wayTagIds, tag);
+	}
+
+	/**
+	 * Accepts all ways with the given tag ID.
+	 * 
+	 * @param tagId
+	 *            the accepted index in {@link MapFileInfo#wayTags}.
+	 * @throws IllegalArgumentException
+	 *             if the tag ID is invalid.
+	 */
+	public void acceptWayTagId(int tagId) {
+		acceptTagId(this.wayTags, this.wayTagIds, tagId);
+	}
+
+	/**
+	 * @return true if all POIs are accepted, false otherwise.
+	 */
+	public boolean isAllPoisAccepted() {
+		return this.allPoisAccepted;
+	}
+
+	/**
+	 * @return true if all ways are accepted, false otherwise.
+	 */
+	public boolean isAllWaysAccepted() {
+		return this.allWaysAccepted;
+	}
+
+	/**
+	 * @param tagId
+	 *            the index in {@link MapFileInfo#poiTags}.
+	 * @return true if POIs with the given tag ID are accepted, false otherwise.
+	 */
+	public boolean isPoiTagIdAccepted(int tagId) {
+		return this.poiTagIds.get(tagId);
+	}
+
+	/**
+	 * @param tagId
+	 *            the index in {@link MapFileInfo#wayTags}.
+	 * @return true if ways with the given tag ID are accepted, false otherwise.
+	 */
+	public boolean isWayTagIdAccepted(int tagId) {
+		return this.wayTagIds.get(tagId);
+	}
+
+	/**
+	 * @param mapFileInfo
+	 *            the metadata of the queried map file.
+	 * @return true if this filter was created for the given map file, false otherwise.
+	 */
+	boolean belongsTo(MapFileInfo mapFileInfo) {
+		return this.poiTags == mapFileInfo.poiTags && this.wayTags == mapFileInfo.wayTags;
+	}
+
+	/**
+	 * @param tagIds
+	 *            all tag IDs of a POI.
+	 * @return true if the POI is accepted, false otherwise.
+	 */
+	boolean isPoiAccepted(int[] tagIds) {
+		return this.allPoisAccepted || isAccepted(this.poiTagIds, tagIds);
+	}
+
+	/**
+	 * @param tagIds
+	 *            all tag IDs of a way.
+	 * @return true if the way is accepted, false otherwise.
+	 */
+	boolean isWayAccepted(int[] tagIds) {
+		return this.allWaysAccepted || isAccepted(this.wayTagIds, tagIds);
+	}
+
+	private static void acceptKey(Tag[] tags, BitSet tagIds, String key) {
+		for (int tagId = 0; tagId < tags.length; ++tagId) {
+			if (tags[tagId].key.equals(key)) {
+				tagIds.set(tagId);
+			}
+		}
+	}
+
+	private static void acceptTag(Tag[] tags, BitSet tagIds, Tag tag) {
+		for (int tagId = 0; tagId < tags.length; ++tagId) {
+			if (tags[tagId].equals(tag)) {
+				tagIds.set(tagId);
+			}
+		}
+	}
+
+	private static void acceptTagId(Tag[] tags, BitSet tagIds, int tagId) {
+		if (tagId < 0 || tagId >= tags.length) {
+			throw new IllegalArgumentException("invalid tag ID: " + tagId);
+		}
+		tagIds.set(tagId);
+	}
+
+	private static boolean isAccepted(BitSet acceptedTagIds, int[] tagIds) {
+		for (int tagId : tagIds) {
+			if (acceptedTagIds.get(tagId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
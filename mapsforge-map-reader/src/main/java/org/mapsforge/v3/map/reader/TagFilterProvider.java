@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+
+/**
+ * Supplies the tag filters for queries which read from multiple map files, such as those of a
+ * {@link FederatedMapDatabase}. Each map file has its own tag IDs and therefore needs its own filter.
+ */
+public interface TagFilterProvider {
+	/**
+	 * @param mapFileInfo
+	 *            the metadata of the map file which is queried next.
+	 * @param zoomLevel
+	 *            the zoom level of the query.
+	 * @return the filter for the tags of the elements in the given map file, or null if all elements should be passed.
+	 */
+	TagFilter getTagFilter(MapFileInfo mapFileInfo, byte zoomLevel);
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+/**
+ * Enumeration of the possible contents of a tile as far as they can be determined from the index of a map file,
+ * without reading any block.
+ * 
+ * @see MapDatabase#getTileContent(org.mapsforge.v3.core.Tile)
+ */
+public enum TileContent {
+	/**
+	 * At least one block which covers the tile contains map elements. The elements may belong to other zoom levels of
+	 * the same sub-file or lie in other parts of the block, so the tile must be queried to know what to render.
+	 */
+	DATA,
+
+	/**
+	 * No block which covers the tile contains map elements and not all of them are water, or the tile lies outside of
+	 * the map file. A query for the tile would return nothing.
+	 */
+	EMPTY,
+
+	/**
+	 * No block which covers the tile contains map elements and all of them are water. A query for the tile would
+	 * return only the water background.
+	 */
+	WATER;
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * All map elements of a single tile in decoded form, as returned by {@link MapDatabase#executeQueryAsync(Tile)}.
+ * <p>
+ * A TileData is completely filled before it is passed to the caller and never modified afterwards.
+ */
+public final class TileData {
+	/**
+	 * A single point of interest node (POI).
+	 */
+	public static final class PointOfInterest {
+		/**
+		 * The latitude of the node in microdegrees.
+		 */
+		public final int latitude;
+
+		/**
+		 * The layer of the node.
+		 */
+		public final byte layer;
+
+		/**
+		 * The longitude of the node in microdegrees.
+		 */
+		public final int longitude;
+
+		/**
+		 * The tags of the node.
+		 */
+		public final List<Tag> tags;
+
+		PointOfInterest(byte layer, int latitude, int longitude, List<Tag> tags) {
+			this.layer = layer;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.tags = tags;
+		}
+	}
+
+	/**
+	 * A single way data block of a way or area (closed way).
+	 */
+	public static final class Way {
+		/**
+		 * The position of the area label in the order longitude/latitude (may be null).
+		 */
+		public final float[] labelPosition;
+
+		/**
+		 * The layer of the way.
+		 */
+		public final byte layer;
+
+		/**
+		 * The tags of the way.
+		 */
+		public final List<Tag> tags;
+
+		/**
+		 * The geographical coordinates of the way nodes in the order longitude/latitude.
+		 */
+		public final float[][] wayNodes;
+
+		Way(byte layer, float[] labelPosition, List<Tag> tags, float[][] wayNodes) {
+			this.layer = layer;
+			this.labelPosition = labelPosition;
+			this.tags = tags;
+			this.wayNodes = wayNodes;
+		}
+	}
+
+	private final List<PointOfInterest> pointsOfInterest;
+	private final Tile tile;
+	private boolean water;
+	private final List<Way> ways;
+
+	TileData(Tile tile) {
+		this.tile = tile;
+		this.pointsOfInterest = new ArrayList<PointOfInterest>();
+		this.ways = new ArrayList<Way>();
+	}
+
+	/**
+	 * @return an unmodifiable list of all POIs of the tile in the order in which they were read.
+	 */
+	public List<PointOfInterest> getPointsOfInterest() {
+		return Collections.unmodifiableList(this.pointsOfInterest);
+	}
+
+	/**
+	 * @return the tile to which the map elements belong.
+	 */
+	public Tile getTile() {
+		return this.tile;
+	}
+
+	/**
+	 * @return an unmodifiable list of all ways of the tile in the order in which they were read.
+	 */
+	public List<Way> getWays() {
+		return Collections.unmodifiableList(this.ways);
+	}
+
+	/**
+	 * @return true if the tile has a water background, false otherwise.
+	 */
+	public boolean isWater() {
+		return this.water;
+	}
+
+	/**
+	 * Executes the callback functions on all map elements of the tile in the same order as the original query. The
+	 * callback receives the arrays and lists of this object and must therefore not modify them.
+	 * 
+	 * @param mapDatabaseCallback
+	 *            the callback which handles the map elements.
+	 */
+	public void render(MapDatabaseCallback mapDatabaseCallback) {
+		for (int i = 0; i < this.pointsOfInterest.size(); ++i) {
+			PointOfInterest pointOfInterest = this.pointsOfInterest.get(i);
+			mapDatabaseCallback.renderPointOfInterest(pointOfInterest.layer, pointOfInterest.latitude,
+					pointOfInterest.longitude, pointOfInterest.tags);
+		}
+		for (int i = 0; i < this.ways.size(); ++i) {
+			Way way = this.ways.get(i);
+			mapDatabaseCallback.renderWay(way.layer, way.labelPosition, way.tags, way.wayNodes);
+		}
+		if (this.water) {
+			mapDatabaseCallback.renderWaterBackground();
+		}
+	}
+
+	/**
+	 * @return a callback which adds all map elements of a query to this object. The tag lists of the query are
+	 *         reused, so they are copied.
+	 */
+	MapDatabaseCallback createCallback() {
+		return new MapDatabaseCallback() {
+			@Override
+			public void renderPointOfInterest(byte layer, int latitude, int longitude, List<Tag> tags) {
+				TileData.this.pointsOfInterest.add(new PointOfInterest(layer, latitude, longitude,
+						new ArrayList<Tag>(tags)));
+			}
+
+			@Override
+			public void renderWaterBackground() {
+				TileData.this.water = true;
+			}
+
+			@Override
+			public void renderWay(byte layer, float[] labelPosition, List<Tag> tags, float[][] wayNodes) {
+				TileData.this.ways.add(new Way(layer, labelPosition, new ArrayList<Tag>(tags),
+						wayNodes));
+			}
+		};
+	}
+}
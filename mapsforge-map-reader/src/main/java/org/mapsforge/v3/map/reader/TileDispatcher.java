@@ -0,0 +1,107 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+/**
+ * Dispatches the elements of a block, which is decoded only once for a batch query, to the callbacks of all tiles
+ * which are covered by that block.
+ * <p>
+ * POIs are passed to every tile of the block, ways only to those tiles whose tile bitmask they intersect.
+ */
+class TileDispatcher implements RawMapDatabaseCallback {
+	private final QueryParameters blockQueryParameters;
+	private int[] currentTiles;
+	private final QueryMetrics queryMetrics;
+	private final QueryParameters[] queryParameters;
+	private final RawMapDatabaseCallback[] rawMapDatabaseCallbacks;
+
+	/**
+	 * @param rawMapDatabaseCallbacks
+	 *            the callbacks of all tiles in the batch.
+	 * @param queryParameters
+	 *            the query parameters of all tiles in the batch, which must have the same query zoom level.
+	 * @param queryMetrics
+	 *            the metrics of the batch to which the skipped ways of each tile are added (may be null).
+	 */
+	TileDispatcher(RawMapDatabaseCallback[] rawMapDatabaseCallbacks, QueryParameters[] queryParameters,
+			QueryMetrics queryMetrics) {
+		this.rawMapDatabaseCallbacks = rawMapDatabaseCallbacks;
+		this.queryParameters = queryParameters;
+		this.queryMetrics = queryMetrics;
+		this.blockQueryParameters = new QueryParameters();
+		this.blockQueryParameters.queryZoomLevel = queryParameters[0].queryZoomLevel;
+	}
+
+	@Override
+	public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+		for (int tile : this.currentTiles) {
+			this.rawMapDatabaseCallbacks[tile].renderPointOfInterest(pointOfInterest);
+		}
+	}
+
+	/**
+	 * Not used, the water flag of each tile is evaluated separately.
+	 */
+	@Override
+	public void renderWaterBackground() {
+		// do nothing
+	}
+
+	@Override
+	public void renderWay(RawWay way) {
+		for (int tile : this.currentTiles) {
+			QueryParameters tileQueryParameters = this.queryParameters[tile];
+			if (!tileQueryParameters.useTileBitmask
+					|| (tileQueryParameters.queryTileBitmask & way.getTileBitmask()) != 0) {
+				this.rawMapDatabaseCallbacks[tile].renderWay(way);
+			} else if (this.queryMetrics != null) {
+				++this.queryMetrics.waysSkippedByTileBitmask;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of tiles which are covered by the current block.
+	 */
+	int getNumberOfCurrentTiles() {
+		return this.currentTiles.length;
+	}
+
+	/**
+	 * @return the query parameters for decoding the current block, whose tile bitmask covers all current tiles.
+	 */
+	QueryParameters getBlockQueryParameters() {
+		return this.blockQueryParameters;
+	}
+
+	/**
+	 * Selects the tiles which receive the elements of the next block.
+	 * 
+	 * @param tiles
+	 *            the indices of the tiles which are covered by the next block.
+	 */
+	void setCurrentTiles(int[] tiles) {
+		this.currentTiles = tiles;
+
+		// ways can only be skipped if none of the tiles needs all ways of the block
+		this.blockQueryParameters.useTileBitmask = true;
+		this.blockQueryParameters.queryTileBitmask = 0;
+		for (int tile : tiles) {
+			QueryParameters tileQueryParameters = this.queryParameters[tile];
+			this.blockQueryParameters.useTileBitmask &= tileQueryParameters.useTileBitmask;
+			this.blockQueryParameters.queryTileBitmask |= tileQueryParameters.queryTileBitmask;
+		}
+	}
+}
@@ -44,6 +44,7 @@ public class MapFileHeader {
 
 	private MapFileInfo mapFileInfo;
 	private SubFileParameter[] subFileParameters;
+	private SubFileParameter[] subFileParametersInFile;
 	private byte zoomLevelMaximum;
 	private byte zoomLevelMinimum;
 
@@ -77,6 +78,13 @@ public class MapFileHeader {
 		return this.subFileParameters[queryZoomLevel];
 	}
 
+	/**
+	 * @return the parameters of all sub-files in the order in which they are stored in the map file.
+	 */
+	public SubFileParameter[] getSubFileParameters() {
+		return this.subFileParametersInFile.clone();
+	}
+
 	/**
 	 * Reads and validates the header block from the map file.
 	 * 
@@ -227,6 +235,8 @@ public class MapFileHeader {
 			updateZoomLevelInformation(tempSubFileParameters[currentSubFile]);
 		}
 
+		this.subFileParametersInFile = tempSubFileParameters;
+
 		// create and fill the lookup table for the sub-files
 		this.subFileParameters = new SubFileParameter[this.zoomLevelMaximum + 1];
 		for (int currentMapFile = 0; currentMapFile < numberOfSubFiles; ++currentMapFile) {
@@ -168,7 +168,7 @@ final class RequiredFields {
 			if (tag == null) {
 				return new FileOpenResult("POI tag must not be null: " + currentTagId);
 			}
-			poiTags[currentTagId] = new Tag(tag);
+			poiTags[currentTagId] = TagPool.intern(tag);
 		}
 		mapFileInfoBuilder.poiTags = poiTags;
 		return FileOpenResult.SUCCESS;
@@ -223,7 +223,7 @@ final class RequiredFields {
 			if (tag == null) {
 				return new FileOpenResult("way tag must not be null: " + currentTagId);
 			}
-			wayTags[currentTagId] = new Tag(tag);
+			wayTags[currentTagId] = TagPool.intern(tag);
 		}
 		mapFileInfoBuilder.wayTags = wayTags;
 		return FileOpenResult.SUCCESS;
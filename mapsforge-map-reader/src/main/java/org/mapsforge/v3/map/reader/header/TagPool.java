@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader.header;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * A pool of the tags of all map files which have been read, so that equal tags share a single instance. Tags which are
+ * no longer referenced by any map file are removed automatically.
+ */
+final class TagPool {
+	private static final Map<Tag, WeakReference<Tag>> TAGS = new WeakHashMap<Tag, WeakReference<Tag>>();
+
+	/**
+	 * @param tag
+	 *            the textual representation of the tag.
+	 * @return the pooled instance of the tag.
+	 */
+	static Tag intern(String tag) {
+		Tag newTag = new Tag(tag);
+		synchronized (TAGS) {
+			WeakReference<Tag> reference = TAGS.get(newTag);
+			if (reference != null) {
+				Tag pooledTag = reference.get();
+				if (pooledTag != null) {
+					return pooledTag;
+				}
+			}
+			TAGS.put(newTag, new WeakReference<Tag>(newTag));
+			return newTag;
+		}
+	}
+
+	private TagPool() {
+		throw new IllegalStateException();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link LazyTag} class.
+ */
+public class LazyTagTest {
+	private static final String KEY = "name";
+	private static final String LAZY_TAG_TO_STRING = "LazyTag [key=name, value=Stra\u00dfe]";
+	private static final String VALUE = "Stra\u00dfe";
+
+	private static LazyTag createLazyTag() throws UnsupportedEncodingException {
+		return new LazyTag(KEY, VALUE.getBytes("UTF-8"));
+	}
+
+	/**
+	 * Tests the {@link LazyTag#equals(Object)} and the {@link LazyTag#hashCode()} method.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *             if the UTF-8 charset is not supported.
+	 */
+	@Test
+	public void equalsTest() throws UnsupportedEncodingException {
+		LazyTag lazyTag1 = createLazyTag();
+		LazyTag lazyTag2 = createLazyTag();
+		Tag tag1 = new Tag(KEY, VALUE);
+		Tag tag2 = new Tag(KEY, KEY);
+
+		TestUtils.equalsTest(lazyTag1, lazyTag2);
+		TestUtils.equalsTest(lazyTag1, tag1);
+
+		Assert.assertFalse(lazyTag1.equals(tag2));
+		Assert.assertFalse(tag2.equals(lazyTag1));
+		Assert.assertFalse(lazyTag1.equals(new Object()));
+	}
+
+	/**
+	 * Tests that the value is decoded only on request.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *             if the UTF-8 charset is not supported.
+	 */
+	@Test
+	public void getValueTest() throws UnsupportedEncodingException {
+		LazyTag lazyTag = createLazyTag();
+
+		Assert.assertEquals(KEY, lazyTag.key);
+		Assert.assertNull(lazyTag.value);
+		Assert.assertFalse(lazyTag.isDecoded());
+
+		Assert.assertEquals(VALUE, lazyTag.getValue());
+		Assert.assertTrue(lazyTag.isDecoded());
+		Assert.assertSame(lazyTag.getValue(), lazyTag.getValue());
+	}
+
+	/**
+	 * Tests the serialization and deserialization methods.
+	 * 
+	 * @throws IOException
+	 *             see {@link ObjectOutputStream#writeObject(Object)}
+	 * @throws ClassNotFoundException
+	 *             see {@link ObjectInputStream#readObject()}
+	 */
+	@Test
+	public void serializeTest() throws IOException, ClassNotFoundException {
+		LazyTag lazyTag = createLazyTag();
+		TestUtils.serializeTest(lazyTag);
+	}
+
+	/**
+	 * Tests the {@link LazyTag#toString()} method.
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *             if the UTF-8 charset is not supported.
+	 */
+	@Test
+	public void toStringTest() throws UnsupportedEncodingException {
+		LazyTag lazyTag = createLazyTag();
+		Assert.assertEquals(LAZY_TAG_TO_STRING, lazyTag.toString());
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.core;
+
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+/**
+ * Tests the {@link TileProjection} class.
+ */
+public class TileProjectionTest {
+	private static final double CONVERSION_FACTOR = 1000000d;
+
+	/**
+	 * Tolerance for the rounding of the float results.
+	 */
+	private static final double FLOAT_DELTA = 0.001;
+
+	private static final double[] LATITUDES = { -85, -60, -30, 0, 30, 52.5, 60, 85 };
+	private static final double LONGITUDE = 13.4;
+	private static final int NUMBER_OF_POINTS = 1000;
+	private static final byte ZOOM_LEVEL_MAX = 22;
+	private static final byte ZOOM_LEVEL_MIN = 0;
+
+	private static double getExactPixelX(int longitude, Tile tile) {
+		return MercatorProjection.longitudeToPixelX(longitude / CONVERSION_FACTOR, tile.zoomLevel) - tile.getPixelX();
+	}
+
+	private static double getExactPixelY(int latitude, Tile tile) {
+		return MercatorProjection.latitudeToPixelY(latitude / CONVERSION_FACTOR, tile.zoomLevel) - tile.getPixelY();
+	}
+
+	private static int getLatitude(Tile tile, double pixelY) {
+		long mapSize = (long) Tile.TILE_SIZE << tile.zoomLevel;
+		double limitedPixelY = Math.max(Math.min(tile.getPixelY() + pixelY, mapSize), 0);
+		return (int) Math.round(MercatorProjection.pixelYToLatitude(limitedPixelY, tile.zoomLevel) * CONVERSION_FACTOR);
+	}
+
+	private static int getLongitude(Tile tile, double pixelX) {
+		long mapSize = (long) Tile.TILE_SIZE << tile.zoomLevel;
+		double limitedPixelX = Math.max(Math.min(tile.getPixelX() + pixelX, mapSize), 0);
+		return (int) Math.round(MercatorProjection.pixelXToLongitude(limitedPixelX, tile.zoomLevel)
+				* CONVERSION_FACTOR);
+	}
+
+	private static Tile getTile(double latitude, byte zoomLevel) {
+		long tileX = MercatorProjection.longitudeToTileX(LONGITUDE, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(latitude, zoomLevel);
+		return new Tile(tileX, tileY, zoomLevel);
+	}
+
+	/**
+	 * Compares the {@link TileProjection#getPixelX(int)} and the {@link TileProjection#getPixelY(int)} method with
+	 * the exact formula for random points on and around tiles at all zoom levels.
+	 */
+	@Test
+	public void accuracyTest() {
+		Random random = new Random(NUMBER_OF_POINTS);
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			for (double tileLatitude : LATITUDES) {
+				Tile tile = getTile(tileLatitude, zoomLevel);
+				TileProjection tileProjection = new TileProjection(tile);
+
+				for (int i = 0; i < NUMBER_OF_POINTS; ++i) {
+					// points on the tile and on its neighbours
+					double pixelX = (random.nextDouble() * 3 - 1) * Tile.TILE_SIZE;
+					double pixelY = (random.nextDouble() * 3 - 1) * Tile.TILE_SIZE;
+					int longitude = getLongitude(tile, pixelX);
+					int latitude = getLatitude(tile, pixelY);
+
+					double delta = TileProjection.MAXIMUM_ERROR + FLOAT_DELTA;
+					Assert.assertEquals(getExactPixelX(longitude, tile), tileProjection.getPixelX(longitude), delta);
+					Assert.assertEquals(getExactPixelY(latitude, tile), tileProjection.getPixelY(latitude), delta);
+				}
+
+				// points far away from the tile are converted with the exact formula
+				for (double latitude : LATITUDES) {
+					int latitudeE6 = (int) (latitude * CONVERSION_FACTOR);
+					double expected = getExactPixelY(latitudeE6, tile);
+					double delta = Math.abs(expected) * 1e-6 + TileProjection.MAXIMUM_ERROR + FLOAT_DELTA;
+					Assert.assertEquals(expected, tileProjection.getPixelY(latitudeE6), delta);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tests the batch methods {@link TileProjection#project(float[])},
+	 * {@link TileProjection#project(float[][])} and {@link TileProjection#project(int[], int, int, float[])}.
+	 */
+	@Test
+	public void projectTest() {
+		Tile tile = getTile(LATITUDES[5], (byte) 14);
+		TileProjection tileProjection = new TileProjection(tile);
+		Assert.assertSame(tile, tileProjection.getTile());
+
+		Random random = new Random(NUMBER_OF_POINTS);
+		int[] coordinates = new int[NUMBER_OF_POINTS * 2];
+		for (int i = 0; i < coordinates.length; i += 2) {
+			coordinates[i] = getLongitude(tile, random.nextDouble() * Tile.TILE_SIZE);
+			coordinates[i + 1] = getLatitude(tile, random.nextDouble() * Tile.TILE_SIZE);
+		}
+
+		float[] floatCoordinates = new float[coordinates.length];
+		for (int i = 0; i < coordinates.length; ++i) {
+			floatCoordinates[i] = coordinates[i];
+		}
+		float[][] floatCoordinateSequences = new float[][] { floatCoordinates.clone(), new float[0] };
+		tileProjection.project(floatCoordinates);
+		tileProjection.project(floatCoordinateSequences);
+
+		float[] pixelCoordinates = new float[coordinates.length];
+		tileProjection.project(coordinates, 2, coordinates.length - 2, pixelCoordinates);
+		Assert.assertEquals(0, pixelCoordinates[0], 0);
+		Assert.assertEquals(0, pixelCoordinates[1], 0);
+
+		for (int i = 0; i < coordinates.length; i += 2) {
+			float pixelX = tileProjection.getPixelX((int) (float) coordinates[i]);
+			float pixelY = tileProjection.getPixelY((int) (float) coordinates[i + 1]);
+			Assert.assertEquals(pixelX, floatCoordinates[i], 0);
+			Assert.assertEquals(pixelY, floatCoordinates[i + 1], 0);
+			Assert.assertEquals(pixelX, floatCoordinateSequences[0][i], 0);
+			Assert.assertEquals(pixelY, floatCoordinateSequences[0][i + 1], 0);
+			if (i > 0) {
+				Assert.assertEquals(tileProjection.getPixelX(coordinates[i]), pixelCoordinates[i], 0);
+				Assert.assertEquals(tileProjection.getPixelY(coordinates[i + 1]), pixelCoordinates[i + 1], 0);
+			}
+		}
+	}
+}
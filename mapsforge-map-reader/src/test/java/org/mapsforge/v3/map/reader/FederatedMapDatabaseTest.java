@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.v3.core.BoundingBox;
+import org.mapsforge.v3.core.MercatorProjection;
+import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.map.reader.header.FileOpenResult;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
+
+/**
+ * Tests the {@link FederatedMapDatabase} class.
+ */
+public class FederatedMapDatabaseTest {
+	private static final File MAP_FILE_SINGLE_DELTA = new File(
+			"src/test/resources/way_node_encoding/single_delta.map");
+	private static final File MAP_FILE_WITH_DATA = new File("src/test/resources/with_data/with_data.map");
+
+	private static DummyMapDatabaseCallback executeQuery(File mapFile, Tile tile) {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+		mapDatabase.closeFile();
+		return dummyMapDatabaseCallback;
+	}
+
+	private static FederatedMapDatabase openFederatedMapDatabase(int maximumOpenFiles) {
+		FederatedMapDatabase federatedMapDatabase = new FederatedMapDatabase(maximumOpenFiles);
+		FileOpenResult fileOpenResult = federatedMapDatabase.addFile(MAP_FILE_WITH_DATA);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		fileOpenResult = federatedMapDatabase.addFile(MAP_FILE_SINGLE_DELTA);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		return federatedMapDatabase;
+	}
+
+	private static void verifyQuery(FederatedMapDatabase federatedMapDatabase, Tile tile) {
+		DummyMapDatabaseCallback expectedWithData = executeQuery(MAP_FILE_WITH_DATA, tile);
+		DummyMapDatabaseCallback expectedSingleDelta = executeQuery(MAP_FILE_SINGLE_DELTA, tile);
+
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		federatedMapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+
+		Assert.assertEquals(expectedWithData.pointOfInterests.size() + expectedSingleDelta.pointOfInterests.size(),
+				dummyMapDatabaseCallback.pointOfInterests.size());
+		Assert.assertEquals(expectedWithData.ways.size() + expectedSingleDelta.ways.size(),
+				dummyMapDatabaseCallback.ways.size());
+	}
+
+	/**
+	 * Tests the {@link FederatedMapDatabase#addFile(File)} method.
+	 */
+	@Test
+	public void addFileTest() {
+		FederatedMapDatabase federatedMapDatabase = new FederatedMapDatabase();
+		Assert.assertNull(federatedMapDatabase.getBoundingBox());
+
+		FileOpenResult fileOpenResult = federatedMapDatabase.addFile(new File("src/test/resources/missing.map"));
+		Assert.assertFalse(fileOpenResult.isSuccess());
+		Assert.assertEquals(0, federatedMapDatabase.getNumberOfFiles());
+
+		try {
+			federatedMapDatabase.addFile(null);
+			Assert.fail();
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(0, federatedMapDatabase.getNumberOfFiles());
+		}
+
+		federatedMapDatabase = openFederatedMapDatabase(1);
+		Assert.assertEquals(2, federatedMapDatabase.getNumberOfFiles());
+		Assert.assertEquals(1, federatedMapDatabase.getNumberOfOpenFiles());
+		Assert.assertEquals(new BoundingBox(-1000000, 0, 80000, 1000000), federatedMapDatabase.getBoundingBox());
+
+		federatedMapDatabase.removeAllFiles();
+		Assert.assertEquals(0, federatedMapDatabase.getNumberOfFiles());
+		Assert.assertEquals(0, federatedMapDatabase.getNumberOfOpenFiles());
+		Assert.assertNull(federatedMapDatabase.getBoundingBox());
+	}
+
+	/**
+	 * Tests the {@link FederatedMapDatabase#FederatedMapDatabase(int)} constructor with an invalid limit.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void constructorTest() {
+		new FederatedMapDatabase(0);
+	}
+
+	/**
+	 * Tests the {@link FederatedMapDatabase#executeQuery(Tile, MapDatabaseCallback)} method.
+	 */
+	@Test
+	public void executeQueryTest() {
+		FederatedMapDatabase federatedMapDatabase = openFederatedMapDatabase(1);
+
+		for (byte zoomLevel = 2; zoomLevel <= 11; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			verifyQuery(federatedMapDatabase, new Tile(tileX, tileY, zoomLevel));
+
+			tileY = MercatorProjection.latitudeToTileY(-0.04, zoomLevel);
+			verifyQuery(federatedMapDatabase, new Tile(tileX, tileY, zoomLevel));
+			Assert.assertEquals(1, federatedMapDatabase.getNumberOfOpenFiles());
+		}
+
+		// a tile far away from both map files
+		byte zoomLevel = 8;
+		long tileX = MercatorProjection.longitudeToTileX(50, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(50, zoomLevel);
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		federatedMapDatabase.executeQuery(new Tile(tileX, tileY, zoomLevel), dummyMapDatabaseCallback);
+		Assert.assertTrue(dummyMapDatabaseCallback.pointOfInterests.isEmpty());
+		Assert.assertTrue(dummyMapDatabaseCallback.ways.isEmpty());
+
+		federatedMapDatabase.removeAllFiles();
+	}
+
+	/**
+	 * Tests the {@link FederatedMapDatabase#executeQuery(Tile, MapDatabaseCallback, TagFilterProvider)} method.
+	 */
+	@Test
+	public void executeQueryTagFilterProviderTest() {
+		FederatedMapDatabase federatedMapDatabase = openFederatedMapDatabase(1);
+
+		byte zoomLevel = 11;
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		Tile tile = new Tile(tileX, tileY, zoomLevel);
+		DummyMapDatabaseCallback expected = executeQuery(MAP_FILE_WITH_DATA, tile);
+		Assert.assertFalse(expected.pointOfInterests.isEmpty());
+
+		// accept only POIs, the filter must belong to the currently opened map file
+		TagFilterProvider tagFilterProvider = new TagFilterProvider() {
+			@Override
+			public TagFilter getTagFilter(MapFileInfo mapFileInfo, byte queryZoomLevel) {
+				TagFilter tagFilter = new TagFilter(mapFileInfo);
+				tagFilter.acceptAllPois();
+				return tagFilter;
+			}
+		};
+
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		federatedMapDatabase.executeQuery(tile, dummyMapDatabaseCallback, tagFilterProvider);
+		Assert.assertEquals(expected.pointOfInterests.size(), dummyMapDatabaseCallback.pointOfInterests.size());
+		Assert.assertTrue(dummyMapDatabaseCallback.ways.isEmpty());
+
+		federatedMapDatabase.removeAllFiles();
+	}
+}
@@ -15,11 +15,18 @@
 package org.mapsforge.v3.map.reader;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.mapsforge.v3.core.BoundingBox;
 import org.mapsforge.v3.core.GeoPoint;
+import org.mapsforge.v3.core.IOUtils;
+import org.mapsforge.v3.core.Tag;
 import org.mapsforge.v3.map.reader.MapDatabase;
 import org.mapsforge.v3.map.reader.header.FileOpenResult;
 import org.mapsforge.v3.map.reader.header.MapFileInfo;
@@ -42,6 +49,32 @@ public class MapDatabaseFileHeaderTest {
 	private static final Byte START_ZOOM_LEVEL = Byte.valueOf((byte) 16);
 	private static final int TILE_PIXEL_SIZE = 256;
 
+	private static void copy(File source, File destination) throws IOException {
+		InputStream inputStream = null;
+		OutputStream outputStream = null;
+		try {
+			inputStream = new FileInputStream(source);
+			outputStream = new FileOutputStream(destination);
+			byte[] buffer = new byte[4096];
+			int length;
+			while ((length = inputStream.read(buffer)) > 0) {
+				outputStream.write(buffer, 0, length);
+			}
+		} finally {
+			IOUtils.closeQuietly(inputStream);
+			IOUtils.closeQuietly(outputStream);
+		}
+	}
+
+	private static MapFileInfo getMapFileInfo(File mapFile) {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(mapFile);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
+		mapDatabase.closeFile();
+		return mapFileInfo;
+	}
+
 	/**
 	 * Tests the {@link MapDatabase#getMapFileInfo()} method.
 	 */
@@ -75,4 +108,53 @@ public class MapDatabaseFileHeaderTest {
 		Assert.assertEquals(COMMENT, mapFileInfo.comment);
 		Assert.assertEquals(CREATED_BY, mapFileInfo.createdBy);
 	}
+
+	/**
+	 * Tests that the header of an unchanged map file is parsed only once.
+	 * 
+	 * @throws IOException
+	 *             if the map file cannot be copied.
+	 */
+	@Test
+	public void headerCacheTest() throws IOException {
+		MapFileInfo mapFileInfo = getMapFileInfo(MAP_FILE);
+		Assert.assertSame(mapFileInfo, getMapFileInfo(MAP_FILE));
+
+		File copiedMapFile = File.createTempFile("file_header", ".map");
+		try {
+			copy(MAP_FILE, copiedMapFile);
+			Assert.assertTrue(copiedMapFile.setLastModified(100000000000L));
+			MapFileInfo copiedMapFileInfo = getMapFileInfo(copiedMapFile);
+			Assert.assertNotSame(mapFileInfo, copiedMapFileInfo);
+			Assert.assertEquals(mapFileInfo.boundingBox, copiedMapFileInfo.boundingBox);
+			Assert.assertSame(copiedMapFileInfo, getMapFileInfo(copiedMapFile));
+
+			// a modified file must be parsed again
+			Assert.assertTrue(copiedMapFile.setLastModified(200000000000L));
+			Assert.assertNotSame(copiedMapFileInfo, getMapFileInfo(copiedMapFile));
+		} finally {
+			Assert.assertTrue(copiedMapFile.delete());
+		}
+	}
+
+	/**
+	 * Tests that equal tags of different map files share a single instance.
+	 */
+	@Test
+	public void tagPoolTest() {
+		MapFileInfo mapFileInfo1 = getMapFileInfo(new File("src/test/resources/way_node_encoding/single_delta.map"));
+		MapFileInfo mapFileInfo2 = getMapFileInfo(new File("src/test/resources/way_node_encoding/double_delta.map"));
+		Assert.assertNotSame(mapFileInfo1, mapFileInfo2);
+
+		int sharedTags = 0;
+		for (Tag tag1 : mapFileInfo1.wayTags) {
+			for (Tag tag2 : mapFileInfo2.wayTags) {
+				if (tag1.equals(tag2)) {
+					Assert.assertSame(tag1, tag2);
+					++sharedTags;
+				}
+			}
+		}
+		Assert.assertTrue(sharedTags > 0);
+	}
 }
@@ -15,9 +15,19 @@
 package org.mapsforge.v3.map.reader;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.mapsforge.v3.core.BoundingBox;
+import org.mapsforge.v3.core.CacheStatistics;
+import org.mapsforge.v3.core.LazyTag;
 import org.mapsforge.v3.core.MercatorProjection;
 import org.mapsforge.v3.core.Tag;
 import org.mapsforge.v3.core.Tile;
@@ -32,11 +42,40 @@ import org.mapsforge.v3.map.reader.header.MapFileInfo;
  * Tests the {@link MapDatabase} class.
  */
 public class MapDatabaseWithDataTest {
+	private static final long BLOCK_CACHE_SIZE = 1024 * 1024;
+	private static final int CONCURRENT_QUERIES = 50;
 	private static final File MAP_FILE = new File("src/test/resources/with_data/with_data.map");
+	private static final int NUMBER_OF_THREADS = 8;
+	private static final float PIXEL_DELTA = 0.01f;
 	private static final byte ZOOM_LEVEL_MAX = 11;
 	private static final int ZOOM_LEVEL_MIN = 6;
 
-	private static void checkPointOfInterest(PointOfInterest pointOfInterest) {
+	/**
+	 * Checks that exactly the tags with the given keys are lazy tags.
+	 */
+	private static void checkLazyTags(List<Tag> tags, String... lazyKeys) {
+		List<String> keys = Arrays.asList(lazyKeys);
+		for (Tag tag : tags) {
+			if (keys.contains(tag.key)) {
+				Assert.assertTrue(tag instanceof LazyTag);
+				Assert.assertNull(tag.value);
+			} else {
+				Assert.assertFalse(tag instanceof LazyTag);
+				Assert.assertNotNull(tag.value);
+			}
+		}
+	}
+
+	private static void checkNotDecoded(List<Tag> tags) {
+		for (Tag tag : tags) {
+			if (tag instanceof LazyTag) {
+				Assert.assertFalse(((LazyTag) tag).isDecoded());
+			}
+		}
+	}
+
+	private static void checkPointOfInterest(PointOfInterest pointOfInterest, String... lazyKeys) {
+		checkLazyTags(pointOfInterest.tags, lazyKeys);
 		Assert.assertEquals(7, pointOfInterest.layer);
 		Assert.assertEquals(40000, pointOfInterest.latitude);
 		Assert.assertEquals(80000, pointOfInterest.longitude);
@@ -47,7 +86,15 @@ public class MapDatabaseWithDataTest {
 		Assert.assertTrue(pointOfInterest.tags.contains(new Tag("ele=25")));
 	}
 
-	private static void checkWay(Way way) {
+	private static void checkTagValues(List<Tag> tags) {
+		for (Tag tag : tags) {
+			Assert.assertFalse(tag instanceof LazyTag);
+			Assert.assertNotNull(tag.value);
+		}
+	}
+
+	private static void checkWay(Way way, String... lazyKeys) {
+		checkLazyTags(way.tags, lazyKeys);
 		Assert.assertEquals(4, way.layer);
 		Assert.assertNull(way.labelPosition);
 		float[][] wayNodesExpected = new float[][] { { 0, 0, 80000, 40000, 0, 80000 } };
@@ -58,35 +105,925 @@ public class MapDatabaseWithDataTest {
 		Assert.assertTrue(way.tags.contains(new Tag("ref=äöü")));
 	}
 
+	private static long[] getElementCounters(QueryMetrics queryMetrics) {
+		return new long[] { queryMetrics.getPoisDecoded(), queryMetrics.getPoisSkippedByTagFilter(),
+				queryMetrics.getWaysDecoded(), queryMetrics.getWaysSkippedByTagFilter(),
+				queryMetrics.getWaysSkippedByTileBitmask() };
+	}
+
+	private static double getPixelX(int longitude, Tile tile) {
+		return MercatorProjection.longitudeToPixelX(longitude / 1000000d, tile.zoomLevel) - tile.getPixelX();
+	}
+
+	private static double getPixelY(int latitude, Tile tile) {
+		return MercatorProjection.latitudeToPixelY(latitude / 1000000d, tile.zoomLevel) - tile.getPixelY();
+	}
+
+	private static TagFilter[] createTagFilters(MapDatabase mapDatabase) {
+		TagFilter poiFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		poiFilter.acceptAllPois();
+		TagFilter wayFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		wayFilter.acceptWayTag(new Tag("highway=motorway"));
+		return new TagFilter[] { null, poiFilter, wayFilter };
+	}
+
+	private static void runBatchTest(boolean memoryMapped, long blockCacheSize) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockCacheSize(blockCacheSize);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE, memoryMapped);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		// query the tile with the data and its neighbours on all zoom levels in a single batch
+		Map<Tile, DummyMapDatabaseCallback> tileCallbacks = new HashMap<Tile, DummyMapDatabaseCallback>();
+		List<Tile> dataTiles = new ArrayList<Tile>();
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+			dataTiles.add(new Tile(tileX, tileY, zoomLevel));
+			for (long y = tileY - 1; y <= tileY + 1; ++y) {
+				for (long x = tileX - 1; x <= tileX + 1; ++x) {
+					tileCallbacks.put(new Tile(x, y, zoomLevel), new DummyMapDatabaseCallback());
+				}
+			}
+		}
+		mapDatabase.executeQuery(tileCallbacks);
+
+		for (Map.Entry<Tile, DummyMapDatabaseCallback> entry : tileCallbacks.entrySet()) {
+			DummyMapDatabaseCallback expected = new DummyMapDatabaseCallback();
+			mapDatabase.executeQuery(entry.getKey(), expected);
+
+			DummyMapDatabaseCallback actual = entry.getValue();
+			Assert.assertEquals(expected.pointOfInterests.size(), actual.pointOfInterests.size());
+			Assert.assertEquals(expected.ways.size(), actual.ways.size());
+		}
+
+		for (Tile dataTile : dataTiles) {
+			DummyMapDatabaseCallback dummyMapDatabaseCallback = tileCallbacks.get(dataTile);
+			Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+			Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+			checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+			checkWay(dummyMapDatabaseCallback.ways.get(0));
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	private static int[] runBoundingBoxQuery(MapDatabase mapDatabase, BoundingBox boundingBox, byte zoomLevel,
+			TagFilter tagFilter) {
+		final int[] counters = new int[2];
+		mapDatabase.executeQuery(boundingBox, zoomLevel, tagFilter, new RawMapDatabaseCallback() {
+			@Override
+			public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+				++counters[0];
+				Assert.assertEquals(40000, pointOfInterest.getLatitude());
+				Assert.assertEquals(80000, pointOfInterest.getLongitude());
+			}
+
+			@Override
+			public void renderWaterBackground() {
+				Assert.fail();
+			}
+
+			@Override
+			public void renderWay(RawWay way) {
+				++counters[1];
+				Assert.assertEquals(6, way.getSegmentLength(0));
+			}
+		});
+		return counters;
+	}
+
+	private static int[] runScan(MapDatabase mapDatabase, byte zoomLevel, int readAheadSize) {
+		final int[] counters = new int[4];
+		mapDatabase.executeScan(zoomLevel, readAheadSize, null, new ScanCallback() {
+			private Tile previousTile;
+
+			@Override
+			public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+				++counters[1];
+				Assert.assertEquals(40000, pointOfInterest.getLatitude());
+				Assert.assertEquals(80000, pointOfInterest.getLongitude());
+				Assert.assertEquals("\u0410\u0411\u0412\u0413\u0414\u0415\u0416\u0417", pointOfInterest.getName());
+			}
+
+			@Override
+			public void renderWaterBackground() {
+				++counters[3];
+			}
+
+			@Override
+			public void renderWay(RawWay way) {
+				++counters[2];
+			}
+
+			@Override
+			public void startTile(Tile tile) {
+				++counters[0];
+				if (this.previousTile != null) {
+					Assert.assertEquals(this.previousTile.zoomLevel, tile.zoomLevel);
+					Assert.assertTrue(tile.tileY > this.previousTile.tileY
+							|| (tile.tileY == this.previousTile.tileY && tile.tileX > this.previousTile.tileX));
+				}
+				this.previousTile = tile;
+			}
+		});
+		return counters;
+	}
+
+	private static void runLazyTagsTest(boolean memoryMapped, long blockCacheSize) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockCacheSize(blockCacheSize);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE, memoryMapped);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		// run all queries twice to check the replay of cached blocks as well
+		for (int pass = 0; pass < 2; ++pass) {
+			Map<Tile, DummyMapDatabaseCallback> tileCallbacks = new HashMap<Tile, DummyMapDatabaseCallback>();
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+				DummyMapDatabaseCallback dummyMapDatabaseCallback = new LazyDummyMapDatabaseCallback();
+				mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+				Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+				Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+				if (blockCacheSize == 0) {
+					// cached lazy tags keep their value once it has been decoded by an earlier query
+					checkNotDecoded(dummyMapDatabaseCallback.pointOfInterests.get(0).tags);
+					checkNotDecoded(dummyMapDatabaseCallback.ways.get(0).tags);
+				}
+				checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0), "addr:housenumber", "name");
+				checkWay(dummyMapDatabaseCallback.ways.get(0), "name", "ref");
+
+				// callbacks without support for lazy tags still receive the decoded values
+				dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+				mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+				checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+				checkWay(dummyMapDatabaseCallback.ways.get(0));
+
+				if (zoomLevel % 2 == 0) {
+					tileCallbacks.put(tile, new LazyDummyMapDatabaseCallback());
+				} else {
+					tileCallbacks.put(tile, new DummyMapDatabaseCallback());
+				}
+			}
+
+			// a batch may contain callbacks with and without support for lazy tags
+			mapDatabase.executeQuery(tileCallbacks);
+			for (Map.Entry<Tile, DummyMapDatabaseCallback> entry : tileCallbacks.entrySet()) {
+				DummyMapDatabaseCallback dummyMapDatabaseCallback = entry.getValue();
+				if (entry.getKey().zoomLevel % 2 == 0) {
+					checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0), "addr:housenumber", "name");
+					checkWay(dummyMapDatabaseCallback.ways.get(0), "name", "ref");
+				} else {
+					checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+					checkWay(dummyMapDatabaseCallback.ways.get(0));
+				}
+			}
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	private static void runTagFilterTest(long blockCacheSize) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockCacheSize(blockCacheSize);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		TagFilter poiFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		poiFilter.acceptAllPois();
+		TagFilter wayFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		wayFilter.acceptWayTag(new Tag("highway=motorway"));
+
+		// run all queries twice to check the replay of cached blocks as well
+		for (int pass = 0; pass < 2; ++pass) {
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+				DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+				mapDatabase.executeQuery(tile, dummyMapDatabaseCallback, poiFilter);
+				Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+				Assert.assertEquals(0, dummyMapDatabaseCallback.ways.size());
+				checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+
+				dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+				mapDatabase.executeQuery(tile, dummyMapDatabaseCallback, wayFilter);
+				Assert.assertEquals(0, dummyMapDatabaseCallback.pointOfInterests.size());
+				Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+				checkWay(dummyMapDatabaseCallback.ways.get(0));
+			}
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	private static void runTest(boolean memoryMapped) {
+		runTest(memoryMapped, 0, 1);
+	}
+
+	private static void runTest(boolean memoryMapped, long blockCacheSize, int passes) {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.setBlockCacheSize(blockCacheSize);
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE, memoryMapped);
+		Assert.assertTrue(mapDatabase.hasOpenFile());
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
+		Assert.assertTrue(mapFileInfo.debugFile);
+
+		for (int pass = 0; pass < passes; ++pass) {
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+				DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+				mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+
+				Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+				Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+
+				checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+				checkWay(dummyMapDatabaseCallback.ways.get(0));
+
+				// modifying the returned coordinates must not affect later queries
+				dummyMapDatabaseCallback.ways.get(0).wayNodes[0][0] = Float.NaN;
+			}
+		}
+
+		CacheStatistics blockCacheStatistics = mapDatabase.getBlockCacheStatistics();
+		if (blockCacheSize == 0) {
+			Assert.assertNull(blockCacheStatistics);
+		} else {
+			Assert.assertTrue(blockCacheStatistics.hits > 0);
+			Assert.assertTrue(blockCacheStatistics.size > 0);
+			Assert.assertTrue(blockCacheStatistics.size <= blockCacheSize);
+		}
+
+		mapDatabase.closeFile();
+		Assert.assertFalse(mapDatabase.hasOpenFile());
+	}
+
 	/**
 	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method.
 	 */
 	@Test
 	public void executeQueryTest() {
+		runTest(false);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method with a memory-mapped file.
+	 */
+	@Test
+	public void executeQueryMemoryMappedTest() {
+		runTest(true);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method with the decoded block cache.
+	 */
+	@Test
+	public void executeQueryBlockCacheTest() {
+		runTest(false, BLOCK_CACHE_SIZE, 2);
+		runTest(true, BLOCK_CACHE_SIZE, 2);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Map)} method.
+	 */
+	@Test
+	public void executeQueryBatchTest() {
+		runBatchTest(false, 0);
+		runBatchTest(true, 0);
+		runBatchTest(false, BLOCK_CACHE_SIZE);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} and the
+	 * {@link MapDatabase#executeQuery(Map)} method with a {@link LazyMapDatabaseCallback}.
+	 */
+	@Test
+	public void executeQueryLazyTagsTest() {
+		runLazyTagsTest(false, 0);
+		runLazyTagsTest(true, 0);
+		runLazyTagsTest(false, BLOCK_CACHE_SIZE);
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(BoundingBox, byte, TagFilter, RawMapDatabaseCallback)} method.
+	 */
+	@Test
+	public void executeQueryBoundingBoxTest() {
 		MapDatabase mapDatabase = new MapDatabase();
 		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
-		Assert.assertTrue(mapDatabase.hasOpenFile());
 		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
 
-		MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
-		Assert.assertTrue(mapFileInfo.debugFile);
+		BoundingBox dataBoundingBox = new BoundingBox(10000, 10000, 100000, 100000);
+		BoundingBox emptyBoundingBox = new BoundingBox(90000, 90000, 100000, 100000);
+
+		TagFilter poiFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		poiFilter.acceptPoiTag(new Tag("place=country"));
+		TagFilter wayFilter = new TagFilter(mapDatabase.getMapFileInfo());
+		wayFilter.acceptWayKey("highway");
+		Assert.assertTrue(wayFilter.isWayTagIdAccepted(0));
+		Assert.assertFalse(wayFilter.isPoiTagIdAccepted(0));
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			Assert.assertArrayEquals(new int[] { 1, 1 }, runBoundingBoxQuery(mapDatabase, dataBoundingBox, zoomLevel,
+					null));
+			Assert.assertArrayEquals(new int[] { 0, 0 }, runBoundingBoxQuery(mapDatabase, emptyBoundingBox,
+					zoomLevel, null));
+			Assert.assertArrayEquals(new int[] { 1, 0 }, runBoundingBoxQuery(mapDatabase, dataBoundingBox, zoomLevel,
+					poiFilter));
+			Assert.assertArrayEquals(new int[] { 0, 1 }, runBoundingBoxQuery(mapDatabase, dataBoundingBox, zoomLevel,
+					wayFilter));
+		}
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeScan(byte, int, TagFilter, ScanCallback)} method with different read-ahead
+	 * sizes and with memory mapping.
+	 */
+	@Test
+	public void executeScanTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		MapDatabase mappedMapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		fileOpenResult = mappedMapDatabase.openFile(MAP_FILE, true);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			int[] counters = runScan(mapDatabase, zoomLevel, MapDatabase.DEFAULT_READ_AHEAD_SIZE);
+			// the map file consists of two blocks, each of which contains one way
+			Assert.assertEquals(2, counters[0]);
+			Assert.assertEquals(1, counters[1]);
+			Assert.assertEquals(2, counters[2]);
+
+			// a read-ahead size smaller than any block must not change the result
+			Assert.assertArrayEquals(counters, runScan(mapDatabase, zoomLevel, 1));
+			Assert.assertArrayEquals(counters, runScan(mappedMapDatabase, zoomLevel, 1));
+		}
+
+		mapDatabase.closeFile();
+		mappedMapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback, TagFilter)} method.
+	 */
+	@Test
+	public void executeQueryTagFilterTest() {
+		runTagFilterTest(0);
+		runTagFilterTest(BLOCK_CACHE_SIZE);
+	}
+
+	/**
+	 * Tests that a {@link TagFilter} can only be used with the map file from which it was created.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void executeQueryTagFilterInvalidTest() {
+		MapDatabase mapDatabase1 = new MapDatabase();
+		mapDatabase1.openFile(MAP_FILE);
+		MapDatabase mapDatabase2 = new MapDatabase();
+		mapDatabase2.openFile(new File("src/test/resources/file_header/file_header.map"));
+
+		try {
+			TagFilter tagFilter = new TagFilter(mapDatabase1.getMapFileInfo());
+			mapDatabase2.executeQuery(new Tile(0, 0, (byte) 0), new DummyMapDatabaseCallback(), tagFilter);
+		} finally {
+			mapDatabase1.closeFile();
+			mapDatabase2.closeFile();
+		}
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, RawMapDatabaseCallback)} method.
+	 */
+	@Test
+	public void executeQueryRawTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		final MapFileInfo mapFileInfo = mapDatabase.getMapFileInfo();
 
 		for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
 			long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
 			long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
-			Tile tile = new Tile(tileX, tileY, zoomLevel);
+			final int[] counters = new int[2];
+			final Tile tile = new Tile(tileX, tileY, zoomLevel);
 
-			DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
-			mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+			mapDatabase.executeQuery(tile, new RawMapDatabaseCallback() {
+				@Override
+				public void renderPointOfInterest(RawPointOfInterest pointOfInterest) {
+					++counters[0];
+					Assert.assertEquals(7, pointOfInterest.getLayer());
+					Assert.assertEquals(40000, pointOfInterest.getLatitude());
+					Assert.assertEquals(80000, pointOfInterest.getLongitude());
+					Assert.assertEquals(getPixelX(80000, tile), pointOfInterest.getPixelX(), PIXEL_DELTA);
+					Assert.assertEquals(getPixelY(40000, tile), pointOfInterest.getPixelY(), PIXEL_DELTA);
+					Assert.assertEquals(1, pointOfInterest.getNumberOfTags());
+					Tag tag = mapFileInfo.poiTags[pointOfInterest.getTagIds()[0]];
+					Assert.assertEquals(new Tag("place=country"), tag);
 
-			Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
-			Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+					// the strings have not been decoded yet, so they are added as lazy tags
+					List<Tag> tags = new ArrayList<Tag>();
+					pointOfInterest.addLazyTags(mapFileInfo.poiTags, tags);
+					Assert.assertEquals(4, tags.size());
+					LazyTag nameTag = (LazyTag) tags.get(1);
+					Assert.assertNull(nameTag.value);
+					Assert.assertFalse(nameTag.isDecoded());
+					Assert.assertEquals(new Tag("name=АБВГДЕЖЗ"), nameTag);
+					Assert.assertTrue(tags.contains(new Tag("addr:housenumber=абвгдежз")));
+					Assert.assertTrue(tags.contains(new Tag("ele=25")));
 
-			checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
-			checkWay(dummyMapDatabaseCallback.ways.get(0));
+					Assert.assertEquals("АБВГДЕЖЗ", pointOfInterest.getName());
+					Assert.assertEquals("абвгдежз", pointOfInterest.getHouseNumber());
+					Assert.assertTrue(pointOfInterest.hasElevation());
+					Assert.assertEquals(25, pointOfInterest.getElevation());
+				}
+
+				@Override
+				public void renderWaterBackground() {
+					// do nothing
+				}
+
+				@Override
+				public void renderWay(RawWay way) {
+					++counters[1];
+					Assert.assertEquals(4, way.getLayer());
+					Assert.assertFalse(way.hasLabelPosition());
+					Assert.assertEquals(1, way.getNumberOfTags());
+					Assert.assertEquals(new Tag("highway=motorway"), mapFileInfo.wayTags[way.getTagIds()[0]]);
+					Assert.assertTrue(way.hasName());
+					Assert.assertTrue(way.hasRef());
+					Assert.assertFalse(way.hasHouseNumber());
+					// request the strings in reverse order to check that the buffer position is not disturbed
+					Assert.assertEquals("äöü", way.getRef());
+					Assert.assertEquals("ÄÖÜ", way.getName());
+
+					// the strings have already been decoded, so no lazy tags are needed
+					List<Tag> tags = new ArrayList<Tag>();
+					way.addLazyTags(mapFileInfo.wayTags, tags);
+					Assert.assertEquals(3, tags.size());
+					Assert.assertTrue(tags.contains(new Tag("ref=äöü")));
+					checkTagValues(tags);
+
+					Assert.assertEquals(1, way.getNumberOfWayDataBlocks());
+					Assert.assertEquals(1, way.getNumberOfSegments());
+					Assert.assertEquals(6, way.getSegmentLength(0));
+					int[] coordinates = new int[6];
+					System.arraycopy(way.getCoordinates(), way.getSegmentOffset(0), coordinates, 0, 6);
+					Assert.assertArrayEquals(new int[] { 0, 0, 80000, 40000, 0, 80000 }, coordinates);
+
+					float[] pixelCoordinates = way.getPixelCoordinates();
+					for (int i = 0; i < coordinates.length; i += 2) {
+						int index = way.getSegmentOffset(0) + i;
+						Assert.assertEquals(getPixelX(coordinates[i], tile), pixelCoordinates[index], PIXEL_DELTA);
+						Assert.assertEquals(getPixelY(coordinates[i + 1], tile), pixelCoordinates[index + 1],
+								PIXEL_DELTA);
+					}
+				}
+			});
+
+			Assert.assertEquals(1, counters[0]);
+			Assert.assertEquals(1, counters[1]);
 		}
 
 		mapDatabase.closeFile();
-		Assert.assertFalse(mapDatabase.hasOpenFile());
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQuery(Tile, MapDatabaseCallback)} method with one instance which is shared
+	 * by multiple threads.
+	 * 
+	 * @throws InterruptedException
+	 *             if the test is interrupted.
+	 */
+	@Test
+	public void executeQueryConcurrentTest() throws InterruptedException {
+		final MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		Thread[] threads = new Thread[NUMBER_OF_THREADS];
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int query = 0; query < CONCURRENT_QUERIES; ++query) {
+							byte zoomLevel = (byte) (ZOOM_LEVEL_MIN + query % (ZOOM_LEVEL_MAX - ZOOM_LEVEL_MIN + 1));
+							long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+							long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+
+							DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+							mapDatabase.executeQuery(new Tile(tileX, tileY, zoomLevel), dummyMapDatabaseCallback);
+
+							Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+							Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+							checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+							checkWay(dummyMapDatabaseCallback.ways.get(0));
+						}
+					} catch (Throwable t) {
+						synchronized (errors) {
+							errors.add(t);
+						}
+					}
+				}
+			};
+			threads[i].start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		mapDatabase.closeFile();
+
+		Assert.assertTrue(errors.toString(), errors.isEmpty());
+	}
+
+	/**
+	 * Tests that the map file can still be read after a query has been interrupted during a read.
+	 */
+	@Test
+	public void executeQueryInterruptedTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL_MAX);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL_MAX);
+		Tile tile = new Tile(tileX, tileY, ZOOM_LEVEL_MAX);
+
+		// the first read of the interrupted query closes the channel
+		Thread.currentThread().interrupt();
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+		Assert.assertTrue(Thread.interrupted());
+		Assert.assertEquals(0, dummyMapDatabaseCallback.pointOfInterests.size());
+
+		dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+		Assert.assertEquals(1, dummyMapDatabaseCallback.pointOfInterests.size());
+		Assert.assertEquals(1, dummyMapDatabaseCallback.ways.size());
+		checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+		checkWay(dummyMapDatabaseCallback.ways.get(0));
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#getTileContents(byte, long, long, long, long)} method against regular queries.
+	 */
+	@Test
+	public void getTileContentsTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		for (byte zoomLevel = 0; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long fromTileX = MercatorProjection.longitudeToTileX(-0.1, zoomLevel);
+			long fromTileY = MercatorProjection.latitudeToTileY(0.1, zoomLevel);
+			long toTileX = MercatorProjection.longitudeToTileX(0.1, zoomLevel);
+			long toTileY = MercatorProjection.latitudeToTileY(-0.1, zoomLevel);
+			TileContent[][] tileContents = mapDatabase.getTileContents(zoomLevel, fromTileX, fromTileY, toTileX,
+					toTileY);
+
+			boolean hasData = false;
+			for (int row = 0; row < tileContents.length; ++row) {
+				for (int column = 0; column < tileContents[row].length; ++column) {
+					Tile tile = new Tile(fromTileX + column, fromTileY + row, zoomLevel);
+					Assert.assertEquals(mapDatabase.getTileContent(tile), tileContents[row][column]);
+
+					DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+					mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+					boolean isEmpty = dummyMapDatabaseCallback.pointOfInterests.isEmpty()
+							&& dummyMapDatabaseCallback.ways.isEmpty();
+					if (tileContents[row][column] == TileContent.DATA) {
+						hasData = true;
+					} else {
+						Assert.assertTrue(isEmpty);
+						Assert.assertEquals(tileContents[row][column] == TileContent.WATER ? 1 : 0,
+								dummyMapDatabaseCallback.waterBackground);
+					}
+				}
+			}
+			Assert.assertTrue(hasData);
+		}
+
+		long tileX = MercatorProjection.longitudeToTileX(50, ZOOM_LEVEL_MAX);
+		long tileY = MercatorProjection.latitudeToTileY(50, ZOOM_LEVEL_MAX);
+		Assert.assertEquals(TileContent.EMPTY, mapDatabase.getTileContent(new Tile(tileX, tileY, ZOOM_LEVEL_MAX)));
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that {@link MapDatabase#getTileContents(byte, long, long, long, long)} rejects an empty tile range.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void getTileContentsInvalidTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		mapDatabase.openFile(MAP_FILE);
+		try {
+			mapDatabase.getTileContents(ZOOM_LEVEL_MAX, 1, 0, 0, 0);
+		} finally {
+			mapDatabase.closeFile();
+		}
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#getTileDataSizes(byte, long, long, long, long)} method.
+	 */
+	@Test
+	public void getTileDataSizesTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		for (byte zoomLevel = 0; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			long fromTileX = MercatorProjection.longitudeToTileX(-0.1, zoomLevel);
+			long fromTileY = MercatorProjection.latitudeToTileY(0.1, zoomLevel);
+			long toTileX = MercatorProjection.longitudeToTileX(0.1, zoomLevel);
+			long toTileY = MercatorProjection.latitudeToTileY(-0.1, zoomLevel);
+			long[][] tileDataSizes = mapDatabase.getTileDataSizes(zoomLevel, fromTileX, fromTileY, toTileX, toTileY);
+			TileContent[][] tileContents = mapDatabase.getTileContents(zoomLevel, fromTileX, fromTileY, toTileX,
+					toTileY);
+
+			for (int row = 0; row < tileDataSizes.length; ++row) {
+				for (int column = 0; column < tileDataSizes[row].length; ++column) {
+					Tile tile = new Tile(fromTileX + column, fromTileY + row, zoomLevel);
+					Assert.assertEquals(mapDatabase.getTileDataSize(tile), tileDataSizes[row][column]);
+					Assert.assertEquals(tileContents[row][column] == TileContent.DATA, tileDataSizes[row][column] > 0);
+				}
+			}
+		}
+
+		long tileX = MercatorProjection.longitudeToTileX(0.04, ZOOM_LEVEL_MAX);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, ZOOM_LEVEL_MAX);
+		long dataSize = mapDatabase.getTileDataSize(new Tile(tileX, tileY, ZOOM_LEVEL_MAX));
+		Assert.assertTrue(dataSize > 0);
+		Assert.assertTrue(dataSize < MAP_FILE.length());
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests the {@link MapDatabase#executeQueryAsync(Tile)} method.
+	 * 
+	 * @throws Exception
+	 *             if a query fails.
+	 */
+	@Test
+	public void executeQueryAsyncTest() throws Exception {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		// run the queries only on request
+		final List<Runnable> pendingQueries = new ArrayList<Runnable>();
+		mapDatabase.setQueryExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				pendingQueries.add(command);
+			}
+		}, 1);
+
+		byte zoomLevel = ZOOM_LEVEL_MAX;
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+		// concurrent requests for the same tile share one query, but each caller has its own future
+		Future<TileData> future1 = mapDatabase.executeQueryAsync(tile);
+		Future<TileData> future2 = mapDatabase.executeQueryAsync(new Tile(tileX, tileY, zoomLevel));
+		Assert.assertNotSame(future1, future2);
+		Assert.assertEquals(1, pendingQueries.size());
+
+		// a cancelled query is not reused
+		Future<TileData> future3 = mapDatabase.executeQueryAsync(new Tile(tileX + 1, tileY, zoomLevel));
+		Assert.assertTrue(future3.cancel(true));
+		Future<TileData> future4 = mapDatabase.executeQueryAsync(new Tile(tileX + 1, tileY, zoomLevel));
+		Assert.assertNotSame(future3, future4);
+		Assert.assertEquals(3, pendingQueries.size());
+
+		for (Runnable pendingQuery : pendingQueries) {
+			pendingQuery.run();
+		}
+		Assert.assertTrue(future3.isCancelled());
+		Assert.assertTrue(future4.isDone());
+
+		TileData tileData = future1.get();
+		Assert.assertSame(tileData, future2.get());
+		Assert.assertEquals(tile, tileData.getTile());
+		Assert.assertEquals(1, tileData.getPointsOfInterest().size());
+		Assert.assertEquals(1, tileData.getWays().size());
+
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		tileData.render(dummyMapDatabaseCallback);
+		checkPointOfInterest(dummyMapDatabaseCallback.pointOfInterests.get(0));
+		checkWay(dummyMapDatabaseCallback.ways.get(0));
+
+		// a finished query is not reused
+		Assert.assertFalse(mapDatabase.executeQueryAsync(tile).isDone());
+		Assert.assertEquals(4, pendingQueries.size());
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that cancelling the future of one caller of {@link MapDatabase#executeQueryAsync(Tile)} does not affect
+	 * the other callers of the same query.
+	 * 
+	 * @throws Exception
+	 *             if a query fails.
+	 */
+	@Test
+	public void executeQueryAsyncCancelTest() throws Exception {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		// run the queries only on request
+		final List<Runnable> pendingQueries = new ArrayList<Runnable>();
+		mapDatabase.setQueryExecutor(new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				pendingQueries.add(command);
+			}
+		}, 1);
+
+		byte zoomLevel = ZOOM_LEVEL_MAX;
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		Tile tile = new Tile(tileX, tileY, zoomLevel);
+
+		// the query keeps running for the remaining caller
+		Future<TileData> future1 = mapDatabase.executeQueryAsync(tile);
+		Future<TileData> future2 = mapDatabase.executeQueryAsync(tile);
+		Assert.assertTrue(future1.cancel(true));
+		Assert.assertFalse(future1.cancel(true));
+		Future<TileData> future3 = mapDatabase.executeQueryAsync(tile);
+		Assert.assertEquals(1, pendingQueries.size());
+
+		pendingQueries.get(0).run();
+		Assert.assertTrue(future1.isCancelled());
+		Assert.assertFalse(future2.isCancelled());
+		TileData tileData = future2.get();
+		Assert.assertEquals(1, tileData.getPointsOfInterest().size());
+		Assert.assertEquals(1, tileData.getWays().size());
+		Assert.assertSame(tileData, future3.get());
+
+		// the query is cancelled once all callers have cancelled, so it is not reused
+		future1 = mapDatabase.executeQueryAsync(tile);
+		future2 = mapDatabase.executeQueryAsync(tile);
+		Assert.assertEquals(2, pendingQueries.size());
+		Assert.assertTrue(future1.cancel(false));
+		Assert.assertTrue(future2.cancel(false));
+		future3 = mapDatabase.executeQueryAsync(tile);
+		Assert.assertEquals(3, pendingQueries.size());
+
+		pendingQueries.get(1).run();
+		pendingQueries.get(2).run();
+		Assert.assertTrue(future1.isCancelled());
+		Assert.assertTrue(future2.isCancelled());
+		Assert.assertEquals(1, future3.get().getPointsOfInterest().size());
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that {@link MapDatabase#executeQueryAsync(Tile)} requires a query executor.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void executeQueryAsyncInvalidTest() {
+		new MapDatabase().executeQueryAsync(new Tile(0, 0, (byte) 0));
+	}
+
+	/**
+	 * Tests that a {@link QueryMetricsListener} receives the metrics of each query until it is removed.
+	 */
+	@Test
+	public void queryMetricsTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		final List<QueryMetrics> queryMetricsList = new ArrayList<QueryMetrics>();
+		mapDatabase.setQueryMetricsListener(new QueryMetricsListener() {
+			@Override
+			public void queryFinished(QueryMetrics queryMetrics) {
+				queryMetricsList.add(queryMetrics);
+			}
+		});
+
+		byte zoomLevel = 8;
+		long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+		long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+		Tile tile = new Tile(tileX, tileY, zoomLevel);
+		DummyMapDatabaseCallback dummyMapDatabaseCallback = new DummyMapDatabaseCallback();
+		mapDatabase.executeQuery(tile, dummyMapDatabaseCallback);
+
+		Assert.assertEquals(1, queryMetricsList.size());
+		QueryMetrics queryMetrics = queryMetricsList.get(0);
+		Assert.assertEquals(tile, queryMetrics.getTile());
+		Assert.assertEquals(1, queryMetrics.getPoisDecoded());
+		Assert.assertEquals(1, queryMetrics.getWaysDecoded());
+		Assert.assertEquals(0, queryMetrics.getPoisSkippedByTagFilter());
+		Assert.assertTrue(queryMetrics.getBlocksRead() > 0);
+		Assert.assertTrue(queryMetrics.getBytesRead() > 0);
+		Assert.assertTrue(queryMetrics.getIndexCacheHits() + queryMetrics.getIndexCacheMisses() > 0);
+		Assert.assertTrue(queryMetrics.getTotalNanos() >= queryMetrics.getIoNanos() + queryMetrics.getCallbackNanos());
+
+		mapDatabase.setQueryMetricsListener(null);
+		mapDatabase.executeQuery(tile, new DummyMapDatabaseCallback());
+		Assert.assertEquals(1, queryMetricsList.size());
+
+		mapDatabase.closeFile();
+	}
+
+	/**
+	 * Tests that the block cache does not change the number of decoded and skipped elements in the query metrics.
+	 */
+	@Test
+	public void queryMetricsBlockCacheTest() {
+		MapDatabase mapDatabase = new MapDatabase();
+		FileOpenResult fileOpenResult = mapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+		MapDatabase cachedMapDatabase = new MapDatabase();
+		cachedMapDatabase.setBlockCacheSize(BLOCK_CACHE_SIZE);
+		fileOpenResult = cachedMapDatabase.openFile(MAP_FILE);
+		Assert.assertTrue(fileOpenResult.getErrorMessage(), fileOpenResult.isSuccess());
+
+		final List<QueryMetrics> queryMetricsList = new ArrayList<QueryMetrics>();
+		QueryMetricsListener queryMetricsListener = new QueryMetricsListener() {
+			@Override
+			public void queryFinished(QueryMetrics queryMetrics) {
+				queryMetricsList.add(queryMetrics);
+			}
+		};
+		mapDatabase.setQueryMetricsListener(queryMetricsListener);
+		cachedMapDatabase.setQueryMetricsListener(queryMetricsListener);
+
+		TagFilter[] tagFilters = createTagFilters(mapDatabase);
+		TagFilter[] cachedTagFilters = createTagFilters(cachedMapDatabase);
+		long[] totalCounters = new long[5];
+
+		// run all queries twice to compare the replay of cached blocks as well
+		for (int pass = 0; pass < 2; ++pass) {
+			for (byte zoomLevel = ZOOM_LEVEL_MIN; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+				long tileX = MercatorProjection.longitudeToTileX(0.04, zoomLevel);
+				long tileY = MercatorProjection.latitudeToTileY(0.04, zoomLevel);
+				Map<Tile, DummyMapDatabaseCallback> tileCallbacks = new HashMap<Tile, DummyMapDatabaseCallback>();
+				Map<Tile, DummyMapDatabaseCallback> cachedTileCallbacks = new HashMap<Tile, DummyMapDatabaseCallback>();
+
+				for (long y = tileY - 1; y <= tileY + 1; ++y) {
+					for (long x = tileX - 1; x <= tileX + 1; ++x) {
+						Tile tile = new Tile(x, y, zoomLevel);
+						tileCallbacks.put(tile, new DummyMapDatabaseCallback());
+						cachedTileCallbacks.put(tile, new DummyMapDatabaseCallback());
+
+						for (int i = 0; i < tagFilters.length; ++i) {
+							queryMetricsList.clear();
+							mapDatabase.executeQuery(tile, new DummyMapDatabaseCallback(), tagFilters[i]);
+							cachedMapDatabase.executeQuery(tile, new DummyMapDatabaseCallback(), cachedTagFilters[i]);
+							Assert.assertEquals(2, queryMetricsList.size());
+
+							long[] expectedCounters = getElementCounters(queryMetricsList.get(0));
+							Assert.assertArrayEquals(tile.toString(), expectedCounters,
+									getElementCounters(queryMetricsList.get(1)));
+							for (int j = 0; j < expectedCounters.length; ++j) {
+								totalCounters[j] += expectedCounters[j];
+							}
+						}
+					}
+				}
+
+				queryMetricsList.clear();
+				mapDatabase.executeQuery(tileCallbacks);
+				cachedMapDatabase.executeQuery(cachedTileCallbacks);
+				Assert.assertEquals(2, queryMetricsList.size());
+				Assert.assertArrayEquals(getElementCounters(queryMetricsList.get(0)),
+						getElementCounters(queryMetricsList.get(1)));
+			}
+		}
+
+		// each counter must have been checked with at least one element
+		for (long totalCounter : totalCounters) {
+			Assert.assertTrue(totalCounter > 0);
+		}
+		Assert.assertTrue(cachedMapDatabase.getBlockCacheStatistics().hits > 0);
+
+		mapDatabase.closeFile();
+		cachedMapDatabase.closeFile();
 	}
 }
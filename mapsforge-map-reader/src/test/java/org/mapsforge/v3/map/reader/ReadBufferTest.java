@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the {@link ReadBuffer} class.
+ */
+public class ReadBufferTest {
+	private static final int[] MAXIMUM_VALUES = { 63, 8191, 1048575, Integer.MAX_VALUE >> 1 };
+	private static final int NUMBER_OF_VALUES = 1000;
+
+	private static int[] createValues(Random random) {
+		int[] values = new int[NUMBER_OF_VALUES];
+		for (int i = 0; i < values.length; ++i) {
+			int maximumValue = MAXIMUM_VALUES[random.nextInt(MAXIMUM_VALUES.length)];
+			values[i] = random.nextInt(2 * maximumValue + 1) - maximumValue;
+		}
+		return values;
+	}
+
+	private static ReadBuffer createReadBuffer(int[] values, File file) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+		for (int value : values) {
+			writeSignedInt(byteArrayOutputStream, value);
+		}
+
+		OutputStream outputStream = new FileOutputStream(file);
+		try {
+			byteArrayOutputStream.writeTo(outputStream);
+		} finally {
+			outputStream.close();
+		}
+
+		MapFileChannel mapFileChannel = new MapFileChannel(file);
+		ReadBuffer readBuffer = new ReadBuffer(mapFileChannel);
+		Assert.assertTrue(readBuffer.readFromFile(0, byteArrayOutputStream.size()));
+		mapFileChannel.close();
+		return readBuffer;
+	}
+
+	private static void writeSignedInt(OutputStream outputStream, int value) throws IOException {
+		int remainder = Math.abs(value);
+		while (remainder > 0x3f) {
+			outputStream.write((remainder & 0x7f) | 0x80);
+			remainder >>>= 7;
+		}
+		outputStream.write(value < 0 ? remainder | 0x40 : remainder);
+	}
+
+	/**
+	 * Tests the {@link ReadBuffer#readSignedInts(int[], int, int)} method.
+	 * 
+	 * @throws IOException
+	 *             if the temporary file cannot be written or read.
+	 */
+	@Test
+	public void readSignedIntsTest() throws IOException {
+		int[] values = createValues(new Random(1));
+		File file = File.createTempFile("values", ".bin");
+		try {
+			ReadBuffer readBuffer = createReadBuffer(values, file);
+
+			int[] decodedValues = new int[values.length + 1];
+			readBuffer.readSignedInts(decodedValues, 1, values.length);
+			Assert.assertEquals(readBuffer.getBufferSize(), readBuffer.getBufferPosition());
+			for (int i = 0; i < values.length; ++i) {
+				Assert.assertEquals(values[i], decodedValues[i + 1]);
+			}
+
+			readBuffer.setBufferPosition(0);
+			for (int value : values) {
+				Assert.assertEquals(value, readBuffer.readSignedInt());
+			}
+		} finally {
+			Assert.assertTrue(file.delete());
+		}
+	}
+
+	/**
+	 * Tests the {@link ReadBuffer#readWayNodes} method with single-delta and double-delta encoding.
+	 * 
+	 * @throws IOException
+	 *             if the temporary file cannot be written or read.
+	 */
+	@Test
+	public void readWayNodesTest() throws IOException {
+		int[] values = createValues(new Random(2));
+		int latitude = 52500000;
+		int longitude = 13400000;
+		File file = File.createTempFile("values", ".bin");
+		try {
+			ReadBuffer readBuffer = createReadBuffer(values, file);
+
+			int[] coordinates = new int[values.length + 2];
+			readBuffer.readWayNodes(coordinates, 2, values.length, latitude, longitude, false);
+			int wayNodeLatitude = latitude;
+			int wayNodeLongitude = longitude;
+			for (int i = 0; i < values.length; i += 2) {
+				wayNodeLatitude += values[i];
+				wayNodeLongitude += values[i + 1];
+				Assert.assertEquals(wayNodeLongitude, coordinates[i + 2]);
+				Assert.assertEquals(wayNodeLatitude, coordinates[i + 3]);
+			}
+
+			readBuffer.setBufferPosition(0);
+			readBuffer.readWayNodes(coordinates, 2, values.length, latitude, longitude, true);
+			wayNodeLatitude = latitude + values[0];
+			wayNodeLongitude = longitude + values[1];
+			int singleDeltaLatitude = 0;
+			int singleDeltaLongitude = 0;
+			for (int i = 0; i < values.length; i += 2) {
+				if (i > 0) {
+					singleDeltaLatitude += values[i];
+					singleDeltaLongitude += values[i + 1];
+					wayNodeLatitude += singleDeltaLatitude;
+					wayNodeLongitude += singleDeltaLongitude;
+				}
+				Assert.assertEquals(wayNodeLongitude, coordinates[i + 2]);
+				Assert.assertEquals(wayNodeLatitude, coordinates[i + 3]);
+			}
+			Assert.assertEquals(readBuffer.getBufferSize(), readBuffer.getBufferPosition());
+		} finally {
+			Assert.assertTrue(file.delete());
+		}
+	}
+}
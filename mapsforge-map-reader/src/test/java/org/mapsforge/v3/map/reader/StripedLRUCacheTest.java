@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.map.reader;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mapsforge.v3.core.CacheStatistics;
+
+/**
+ * Tests the {@link StripedLRUCache} class.
+ */
+public class StripedLRUCacheTest {
+	private static final String VALUE1 = "bar1";
+	private static final String VALUE2 = "bar2";
+	private static final String VALUE3 = "bar3";
+
+	/**
+	 * Tests the LRU policy and the statistics of a cache with a single segment.
+	 */
+	@Test
+	public void lruCacheTest() {
+		StripedLRUCache<String> cache = new StripedLRUCache<String>(2, 1);
+
+		cache.put(1, VALUE1, 1);
+		cache.put(2, VALUE2, 1);
+		Assert.assertEquals(VALUE1, cache.get(1));
+
+		// the second entry is now the least recently used one
+		cache.put(3, VALUE3, 1);
+		Assert.assertNull(cache.get(2));
+		Assert.assertEquals(VALUE1, cache.get(1));
+		Assert.assertEquals(VALUE3, cache.get(3));
+
+		CacheStatistics cacheStatistics = cache.getStatistics();
+		Assert.assertEquals(3, cacheStatistics.hits);
+		Assert.assertEquals(1, cacheStatistics.misses);
+		Assert.assertEquals(1, cacheStatistics.evictions);
+		Assert.assertEquals(2, cacheStatistics.size);
+		Assert.assertEquals(2, cacheStatistics.capacity);
+	}
+
+	/**
+	 * Tests that the cache evicts entries according to their weight.
+	 */
+	@Test
+	public void weightTest() {
+		StripedLRUCache<String> cache = new StripedLRUCache<String>(10, 1);
+
+		cache.put(1, VALUE1, 4);
+		cache.put(2, VALUE2, 4);
+		cache.put(3, VALUE3, 4);
+		Assert.assertNull(cache.get(1));
+		Assert.assertEquals(VALUE2, cache.get(2));
+		Assert.assertEquals(VALUE3, cache.get(3));
+
+		// replacing an entry updates its weight
+		cache.put(2, VALUE1, 1);
+		Assert.assertEquals(5, cache.getStatistics().size);
+
+		// values which are heavier than the whole cache are ignored
+		cache.put(4, VALUE1, 11);
+		Assert.assertNull(cache.get(4));
+		Assert.assertEquals(VALUE3, cache.get(3));
+	}
+
+	/**
+	 * Tests a cache with many entries in multiple segments.
+	 */
+	@Test
+	public void manyEntriesTest() {
+		int entries = 10000;
+		StripedLRUCache<Long> cache = new StripedLRUCache<Long>(entries * 10, 16);
+
+		for (long key = 0; key < entries; ++key) {
+			cache.put(key * 640, Long.valueOf(key), 1);
+		}
+		for (long key = 0; key < entries; ++key) {
+			Assert.assertEquals(Long.valueOf(key), cache.get(key * 640));
+		}
+		Assert.assertEquals(0, cache.getStatistics().evictions);
+
+		cache.clear();
+		Assert.assertNull(cache.get(0));
+		Assert.assertEquals(0, cache.getStatistics().size);
+	}
+
+	/**
+	 * Tests the cache with capacity zero.
+	 */
+	@Test
+	public void capacityZeroTest() {
+		StripedLRUCache<String> cache = new StripedLRUCache<String>(0, 1);
+		cache.put(1, VALUE1, 1);
+		Assert.assertNull(cache.get(1));
+	}
+}
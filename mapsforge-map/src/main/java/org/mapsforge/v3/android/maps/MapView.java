@@ -32,7 +32,7 @@ import org.mapsforge.v3.android.maps.mapgenerator.JobTheme;
 import org.mapsforge.v3.android.maps.mapgenerator.MapGenerator;
 import org.mapsforge.v3.android.maps.mapgenerator.MapGeneratorFactory;
 import org.mapsforge.v3.android.maps.mapgenerator.MapGeneratorJob;
-import org.mapsforge.v3.android.maps.mapgenerator.MapWorker;
+import org.mapsforge.v3.android.maps.mapgenerator.MapWorkerPool;
 import org.mapsforge.v3.android.maps.mapgenerator.TileCache;
 import org.mapsforge.v3.android.maps.mapgenerator.databaserenderer.DatabaseRenderer;
 import org.mapsforge.v3.android.maps.mapgenerator.databaserenderer.ExternalRenderTheme;
@@ -78,6 +78,7 @@ public class MapView extends ViewGroup {
 	 */
 	public static final InternalRenderTheme DEFAULT_RENDER_THEME = InternalRenderTheme.OSMARENDER;
 
+	private static final int DEFAULT_NUMBER_OF_MAP_WORKERS = 1;
 	private static final float DEFAULT_TEXT_SCALE = 1;
 	private static final int DEFAULT_TILE_CACHE_SIZE_FILE_SYSTEM = 100;
 	private static final int DEFAULT_TILE_CACHE_SIZE_IN_MEMORY = 20;
@@ -96,7 +97,7 @@ public class MapView extends ViewGroup {
 	private final MapMover mapMover;
 	private final MapScaleBar mapScaleBar;
 	private final MapViewPosition mapViewPosition;
-	private final MapWorker mapWorker;
+	private final MapWorkerPool mapWorkerPool;
 	private final MapZoomControls mapZoomControls;
 	private final List<Overlay> overlays;
 	private final Projection projection;
@@ -166,8 +167,8 @@ public class MapView extends ViewGroup {
 		this.projection = new MapViewProjection(this);
 		this.touchEventHandler = TouchEventHandler.getInstance(mapActivity, this);
 
-		this.mapWorker = new MapWorker(this);
-		this.mapWorker.start();
+		this.mapWorkerPool = new MapWorkerPool(this, DEFAULT_NUMBER_OF_MAP_WORKERS);
+		this.mapWorkerPool.start();
 
 		this.mapMover = new MapMover(this);
 		this.mapMover.start();
@@ -297,6 +298,13 @@ public class MapView extends ViewGroup {
 		return this.mapZoomControls;
 	}
 
+	/**
+	 * @return the number of threads which generate map tiles in parallel.
+	 */
+	public int getNumberOfMapWorkers() {
+		return this.mapWorkerPool.getNumberOfMapWorkers();
+	}
+
 	/**
 	 * Returns a thread-safe list of overlays for this MapView. It is necessary to manually synchronize on this list
 	 * when iterating over it.
@@ -424,9 +432,7 @@ public class MapView extends ViewGroup {
 		invalidateOnUiThread();
 
 		this.jobQueue.requestSchedule();
-		synchronized (this.mapWorker) {
-			this.mapWorker.notify();
-		}
+		this.mapWorkerPool.notifyMapWorkers();
 	}
 
 	/**
@@ -482,18 +488,18 @@ public class MapView extends ViewGroup {
 		}
 
 		this.zoomAnimator.pause();
-		this.mapWorker.pause();
+		this.mapWorkerPool.pause();
 		this.mapMover.pause();
 
 		this.zoomAnimator.awaitPausing();
 		this.mapMover.awaitPausing();
-		this.mapWorker.awaitPausing();
+		this.mapWorkerPool.awaitPausing();
 
 		this.mapMover.stopMove();
 		this.jobQueue.clear();
 
 		this.zoomAnimator.proceed();
-		this.mapWorker.proceed();
+		this.mapWorkerPool.proceed();
 		this.mapMover.proceed();
 
 		this.mapDatabase.closeFile();
@@ -532,6 +538,22 @@ public class MapView extends ViewGroup {
 		}
 	}
 
+	/**
+	 * Sets the number of threads which generate map tiles in parallel. The default is one thread.
+	 * <p>
+	 * Each thread has its own tile bitmap. If the {@link DatabaseRenderer} is used, each additional thread also keeps
+	 * its own copy of the render theme, so more threads need more memory. All other MapGenerators use only one thread.
+	 * 
+	 * @param numberOfMapWorkers
+	 *            the number of threads which generate map tiles.
+	 * @throws IllegalArgumentException
+	 *             if the number of threads is not positive.
+	 */
+	public void setNumberOfMapWorkers(int numberOfMapWorkers) {
+		this.mapWorkerPool.setNumberOfMapWorkers(numberOfMapWorkers);
+		this.mapWorkerPool.notifyMapWorkers();
+	}
+
 	/**
 	 * Sets the XML file which is used for rendering the map.
 	 * 
@@ -654,7 +676,7 @@ public class MapView extends ViewGroup {
 			((DatabaseRenderer) mapGenerator).setMapDatabase(this.mapDatabase);
 		}
 		this.mapGenerator = mapGenerator;
-		this.mapWorker.setMapGenerator(this.mapGenerator);
+		this.mapWorkerPool.setMapGenerator(this.mapGenerator);
 	}
 
 	@Override
@@ -718,11 +740,10 @@ public class MapView extends ViewGroup {
 		this.overlays.clear();
 
 		this.mapMover.interrupt();
-		this.mapWorker.interrupt();
 		this.zoomAnimator.interrupt();
 
 		try {
-			this.mapWorker.join();
+			this.mapWorkerPool.finishAndJoin();
 		} catch (InterruptedException e) {
 			// restore the interrupted status
 			Thread.currentThread().interrupt();
@@ -764,13 +785,13 @@ public class MapView extends ViewGroup {
 	}
 
 	void onPause() {
-		this.mapWorker.pause();
+		this.mapWorkerPool.pause();
 		this.mapMover.pause();
 		this.zoomAnimator.pause();
 	}
 
 	void onResume() {
-		this.mapWorker.proceed();
+		this.mapWorkerPool.proceed();
 		this.mapMover.proceed();
 		this.zoomAnimator.proceed();
 	}
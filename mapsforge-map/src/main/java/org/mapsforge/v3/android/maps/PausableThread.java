@@ -18,6 +18,7 @@ package org.mapsforge.v3.android.maps;
  * An abstract base class for threads which support pausing and resuming.
  */
 public abstract class PausableThread extends Thread {
+	private volatile boolean finishing;
 	private boolean pausing;
 	private boolean shouldPause;
 
@@ -26,7 +27,7 @@ public abstract class PausableThread extends Thread {
 	 */
 	public final void awaitPausing() {
 		synchronized (this) {
-			while (!isInterrupted() && !isPausing()) {
+			while (!isInterrupted() && !this.finishing && !isPausing()) {
 				try {
 					wait(100);
 				} catch (InterruptedException e) {
@@ -37,6 +38,17 @@ public abstract class PausableThread extends Thread {
 		}
 	}
 
+	/**
+	 * The thread should terminate as soon as it has completed its current work. In contrast to {@link #interrupt()},
+	 * the current work is not aborted, so blocking I/O such as reading from a shared file channel is never disturbed.
+	 */
+	public final synchronized void finish() {
+		if (!this.finishing) {
+			this.finishing = true;
+			notify();
+		}
+	}
+
 	/**
 	 * @return true if this thread is currently pausing, false otherwise.
 	 */
@@ -71,9 +83,9 @@ public abstract class PausableThread extends Thread {
 		setName(getThreadName());
 		setPriority(getThreadPriority());
 
-		while (!isInterrupted()) {
+		while (!shouldStop()) {
 			synchronized (this) {
-				while (!isInterrupted() && (this.shouldPause || !hasWork())) {
+				while (!shouldStop() && (this.shouldPause || !hasWork())) {
 					try {
 						if (this.shouldPause) {
 							this.pausing = true;
@@ -86,7 +98,7 @@ public abstract class PausableThread extends Thread {
 				}
 			}
 
-			if (isInterrupted()) {
+			if (shouldStop()) {
 				break;
 			}
 
@@ -139,4 +151,11 @@ public abstract class PausableThread extends Thread {
 	 * @return true if this thread has some work to do, false otherwise.
 	 */
 	protected abstract boolean hasWork();
+
+	/**
+	 * @return true if this thread has been interrupted or should finish, false otherwise.
+	 */
+	private boolean shouldStop() {
+		return isInterrupted() || this.finishing;
+	}
 }
@@ -14,18 +14,22 @@
  */
 package org.mapsforge.v3.android.maps.mapgenerator;
 
+import java.util.HashSet;
 import java.util.PriorityQueue;
+import java.util.Set;
 
 import org.mapsforge.v3.android.maps.MapView;
 
 /**
- * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them.
+ * A JobQueue keeps the list of pending jobs for a MapView and prioritizes them. It also remembers the jobs which are
+ * currently executed by a {@link MapWorker}, so that multiple MapWorkers never execute the same job at the same time.
  */
 public class JobQueue {
 	private static final int INITIAL_CAPACITY = 128;
 
 	private final MapView mapView;
 	private PriorityQueue<MapGeneratorJob> priorityQueue;
+	private final Set<MapGeneratorJob> runningJobs;
 	private boolean scheduleNeeded;
 
 	/**
@@ -35,27 +39,38 @@ public class JobQueue {
 	public JobQueue(MapView mapView) {
 		this.mapView = mapView;
 		this.priorityQueue = new PriorityQueue<MapGeneratorJob>(INITIAL_CAPACITY);
+		this.runningJobs = new HashSet<MapGeneratorJob>();
 	}
 
 	/**
-	 * Adds the given job to this queue. Does nothing if the given job is already in this queue.
+	 * Adds the given job to this queue. Does nothing if the given job is already in this queue or currently executed.
 	 * 
 	 * @param mapGeneratorJob
 	 *            the job to be added to this queue.
 	 */
 	public synchronized void addJob(MapGeneratorJob mapGeneratorJob) {
-		if (!this.priorityQueue.contains(mapGeneratorJob)) {
+		if (!this.runningJobs.contains(mapGeneratorJob) && !this.priorityQueue.contains(mapGeneratorJob)) {
 			this.priorityQueue.offer(mapGeneratorJob);
 		}
 	}
 
 	/**
-	 * Removes all jobs from this queue.
+	 * Removes all pending jobs from this queue. Jobs which are currently executed are not affected.
 	 */
 	public synchronized void clear() {
 		this.priorityQueue.clear();
 	}
 
+	/**
+	 * Marks a job which has been returned by {@link #poll()} as finished, so that it may be added again.
+	 * 
+	 * @param mapGeneratorJob
+	 *            the finished job.
+	 */
+	public synchronized void finishJob(MapGeneratorJob mapGeneratorJob) {
+		this.runningJobs.remove(mapGeneratorJob);
+	}
+
 	/**
 	 * @return true if this queue contains no jobs, false otherwise.
 	 */
@@ -64,6 +79,9 @@ public class JobQueue {
 	}
 
 	/**
+	 * Removes the most important job from this queue. The job counts as running until
+	 * {@link #finishJob(MapGeneratorJob)} is called.
+	 * 
 	 * @return the most important job from this queue or null, if empty.
 	 */
 	public synchronized MapGeneratorJob poll() {
@@ -71,7 +89,11 @@ public class JobQueue {
 			this.scheduleNeeded = false;
 			schedule();
 		}
-		return this.priorityQueue.poll();
+		MapGeneratorJob mapGeneratorJob = this.priorityQueue.poll();
+		if (mapGeneratorJob != null) {
+			this.runningJobs.add(mapGeneratorJob);
+		}
+		return mapGeneratorJob;
 	}
 
 	/**
@@ -23,6 +23,9 @@ import android.graphics.Bitmap;
 /**
  * A MapWorker uses a {@link MapGenerator} to generate map tiles. It runs in a separate thread to avoid blocking the UI
  * thread.
+ * <p>
+ * Multiple MapWorkers may take their jobs from the same {@link JobQueue}, see {@link MapWorkerPool}. Each of them
+ * renders into its own tile bitmap and must have its own MapGenerator.
  */
 public class MapWorker extends PausableThread {
 	private static final String THREAD_NAME = "MapWorker";
@@ -30,7 +33,7 @@ public class MapWorker extends PausableThread {
 	private final TileCache fileSystemTileCache;
 	private final TileCache inMemoryTileCache;
 	private final JobQueue jobQueue;
-	private MapGenerator mapGenerator;
+	private volatile MapGenerator mapGenerator;
 	private final MapView mapView;
 	private final Bitmap tileBitmap;
 
@@ -49,7 +52,8 @@ public class MapWorker extends PausableThread {
 
 	/**
 	 * @param mapGenerator
-	 *            the MapGenerator which this MapWorker should use.
+	 *            the MapGenerator which this MapWorker should use, or null if this MapWorker should not execute any
+	 *            jobs.
 	 */
 	public void setMapGenerator(MapGenerator mapGenerator) {
 		this.mapGenerator = mapGenerator;
@@ -62,22 +66,35 @@ public class MapWorker extends PausableThread {
 
 	@Override
 	protected void doWork() {
-		MapGeneratorJob mapGeneratorJob = this.jobQueue.poll();
-
-		if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
+		MapGenerator currentMapGenerator = this.mapGenerator;
+		if (currentMapGenerator == null) {
 			return;
-		} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
+		}
+
+		MapGeneratorJob mapGeneratorJob = this.jobQueue.poll();
+		if (mapGeneratorJob == null) {
+			// another MapWorker has taken the last job
 			return;
 		}
 
-		boolean success = this.mapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
+		try {
+			if (this.inMemoryTileCache.containsKey(mapGeneratorJob)) {
+				return;
+			} else if (this.fileSystemTileCache.containsKey(mapGeneratorJob)) {
+				return;
+			}
+
+			boolean success = currentMapGenerator.executeJob(mapGeneratorJob, this.tileBitmap);
 
-		if (!isInterrupted() && success) {
-			if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, this.tileBitmap)) {
-				this.inMemoryTileCache.put(mapGeneratorJob, this.tileBitmap);
+			if (!isInterrupted() && success) {
+				if (this.mapView.getFrameBuffer().drawBitmap(mapGeneratorJob.tile, this.tileBitmap)) {
+					this.inMemoryTileCache.put(mapGeneratorJob, this.tileBitmap);
+				}
+				this.mapView.postInvalidate();
+				this.fileSystemTileCache.put(mapGeneratorJob, this.tileBitmap);
 			}
-			this.mapView.postInvalidate();
-			this.fileSystemTileCache.put(mapGeneratorJob, this.tileBitmap);
+		} finally {
+			this.jobQueue.finishJob(mapGeneratorJob);
 		}
 	}
 
@@ -93,6 +110,6 @@ public class MapWorker extends PausableThread {
 
 	@Override
 	protected boolean hasWork() {
-		return !this.jobQueue.isEmpty();
+		return this.mapGenerator != null && !this.jobQueue.isEmpty();
 	}
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.mapsforge.v3.android.maps.MapView;
+import org.mapsforge.v3.android.maps.mapgenerator.databaserenderer.DatabaseRenderer;
+
+/**
+ * A MapWorkerPool runs one or more {@link MapWorker MapWorkers} which take their jobs from the job queue of the same
+ * MapView and draw the generated tiles into its frame buffer and tile caches.
+ * <p>
+ * Each MapWorker needs its own MapGenerator. The first MapWorker uses the MapGenerator of the MapView. If it is a
+ * {@link DatabaseRenderer}, each additional MapWorker gets a copy with its own render theme, canvas and label
+ * placement, which reads from the same map database. Any other MapGenerator is used by the first MapWorker only.
+ */
+public class MapWorkerPool {
+	private static int checkNumberOfMapWorkers(int numberOfMapWorkers) {
+		if (numberOfMapWorkers < 1) {
+			throw new IllegalArgumentException("number of map workers must be positive: " + numberOfMapWorkers);
+		}
+		return numberOfMapWorkers;
+	}
+
+	private static MapGenerator copyMapGenerator(MapGenerator mapGenerator) {
+		if (mapGenerator instanceof DatabaseRenderer) {
+			return ((DatabaseRenderer) mapGenerator).copy();
+		}
+		return null;
+	}
+
+	private MapGenerator mapGenerator;
+	private final MapView mapView;
+	private final List<MapWorker> mapWorkers;
+	private boolean pausing;
+	private boolean started;
+
+	/**
+	 * @param mapView
+	 *            the MapView for which the MapWorkers generate map tiles.
+	 * @param numberOfMapWorkers
+	 *            the number of MapWorkers in this pool.
+	 * @throws IllegalArgumentException
+	 *             if the number of MapWorkers is not positive.
+	 */
+	public MapWorkerPool(MapView mapView, int numberOfMapWorkers) {
+		this.mapView = mapView;
+		this.mapWorkers = new ArrayList<MapWorker>();
+		for (int i = checkNumberOfMapWorkers(numberOfMapWorkers); i > 0; --i) {
+			this.mapWorkers.add(new MapWorker(mapView));
+		}
+	}
+
+	/**
+	 * Causes the current thread to wait until all MapWorkers are pausing.
+	 */
+	public void awaitPausing() {
+		List<MapWorker> pausingMapWorkers;
+		synchronized (this) {
+			pausingMapWorkers = new ArrayList<MapWorker>(this.mapWorkers);
+		}
+
+		for (int i = 0, n = pausingMapWorkers.size(); i < n; ++i) {
+			pausingMapWorkers.get(i).awaitPausing();
+		}
+	}
+
+	/**
+	 * Stops all MapWorkers and waits until they have terminated. Each MapWorker finishes its current job first, the
+	 * threads are not interrupted because an interrupt during a read would close the channel of the shared map file.
+	 * 
+	 * @throws InterruptedException
+	 *             if the current thread has been interrupted while waiting.
+	 */
+	public void finishAndJoin() throws InterruptedException {
+		List<MapWorker> stoppedMapWorkers;
+		synchronized (this) {
+			stoppedMapWorkers = new ArrayList<MapWorker>(this.mapWorkers);
+			this.mapWorkers.clear();
+		}
+
+		for (int i = 0, n = stoppedMapWorkers.size(); i < n; ++i) {
+			stoppedMapWorkers.get(i).finish();
+		}
+		for (int i = 0, n = stoppedMapWorkers.size(); i < n; ++i) {
+			stoppedMapWorkers.get(i).join();
+		}
+	}
+
+	/**
+	 * @return the number of MapWorkers in this pool.
+	 */
+	public synchronized int getNumberOfMapWorkers() {
+		return this.mapWorkers.size();
+	}
+
+	/**
+	 * Wakes up all MapWorkers after new jobs have been added to the job queue.
+	 */
+	public synchronized void notifyMapWorkers() {
+		for (int i = 0, n = this.mapWorkers.size(); i < n; ++i) {
+			MapWorker mapWorker = this.mapWorkers.get(i);
+			synchronized (mapWorker) {
+				mapWorker.notify();
+			}
+		}
+	}
+
+	/**
+	 * All MapWorkers should stop their work temporarily.
+	 */
+	public synchronized void pause() {
+		this.pausing = true;
+		for (int i = 0, n = this.mapWorkers.size(); i < n; ++i) {
+			this.mapWorkers.get(i).pause();
+		}
+	}
+
+	/**
+	 * The paused MapWorkers should continue with their work.
+	 */
+	public synchronized void proceed() {
+		this.pausing = false;
+		for (int i = 0, n = this.mapWorkers.size(); i < n; ++i) {
+			this.mapWorkers.get(i).proceed();
+		}
+	}
+
+	/**
+	 * Sets the MapGenerator of the MapView. Additional MapWorkers get their own copy of it if possible, as described
+	 * above.
+	 * 
+	 * @param mapGenerator
+	 *            the MapGenerator which the MapWorkers should use.
+	 */
+	public synchronized void setMapGenerator(MapGenerator mapGenerator) {
+		this.mapGenerator = mapGenerator;
+		for (int i = 0, n = this.mapWorkers.size(); i < n; ++i) {
+			if (i == 0) {
+				this.mapWorkers.get(i).setMapGenerator(mapGenerator);
+			} else {
+				this.mapWorkers.get(i).setMapGenerator(copyMapGenerator(mapGenerator));
+			}
+		}
+	}
+
+	/**
+	 * Changes the number of MapWorkers in this pool. New MapWorkers are started immediately if the pool is running,
+	 * surplus MapWorkers finish their current job and terminate.
+	 * 
+	 * @param numberOfMapWorkers
+	 *            the new number of MapWorkers.
+	 * @throws IllegalArgumentException
+	 *             if the number of MapWorkers is not positive.
+	 */
+	public synchronized void setNumberOfMapWorkers(int numberOfMapWorkers) {
+		checkNumberOfMapWorkers(numberOfMapWorkers);
+		while (this.mapWorkers.size() > numberOfMapWorkers) {
+			this.mapWorkers.remove(this.mapWorkers.size() - 1).finish();
+		}
+
+		while (this.mapWorkers.size() < numberOfMapWorkers) {
+			MapWorker mapWorker = new MapWorker(this.mapView);
+			if (this.mapWorkers.isEmpty()) {
+				mapWorker.setMapGenerator(this.mapGenerator);
+			} else {
+				mapWorker.setMapGenerator(copyMapGenerator(this.mapGenerator));
+			}
+			if (this.pausing) {
+				mapWorker.pause();
+			}
+			if (this.started) {
+				mapWorker.start();
+			}
+			this.mapWorkers.add(mapWorker);
+		}
+	}
+
+	/**
+	 * Starts all MapWorkers.
+	 */
+	public synchronized void start() {
+		this.started = true;
+		for (int i = 0, n = this.mapWorkers.size(); i < n; ++i) {
+			this.mapWorkers.get(i).start();
+		}
+	}
+}
@@ -17,6 +17,7 @@ package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,12 +29,17 @@ import org.mapsforge.v3.android.maps.mapgenerator.MapGeneratorJob;
 import org.mapsforge.v3.android.maps.rendertheme.RenderCallback;
 import org.mapsforge.v3.android.maps.rendertheme.RenderTheme;
 import org.mapsforge.v3.android.maps.rendertheme.RenderThemeHandler;
+import org.mapsforge.v3.core.BoundingBox;
 import org.mapsforge.v3.core.GeoPoint;
-import org.mapsforge.v3.core.MercatorProjection;
+import org.mapsforge.v3.core.LRUCache;
 import org.mapsforge.v3.core.Tag;
 import org.mapsforge.v3.core.Tile;
+import org.mapsforge.v3.core.TileProjection;
+import org.mapsforge.v3.map.reader.FederatedMapDatabase;
+import org.mapsforge.v3.map.reader.LazyMapDatabaseCallback;
 import org.mapsforge.v3.map.reader.MapDatabase;
-import org.mapsforge.v3.map.reader.MapDatabaseCallback;
+import org.mapsforge.v3.map.reader.TagFilter;
+import org.mapsforge.v3.map.reader.TagFilterProvider;
 import org.mapsforge.v3.map.reader.header.MapFileInfo;
 import org.xml.sax.SAXException;
 
@@ -42,9 +48,12 @@ import android.graphics.Color;
 import android.graphics.Paint;
 
 /**
- * A DatabaseRenderer renders map tiles by reading from a {@link MapDatabase}.
+ * A DatabaseRenderer renders map tiles by reading from a {@link MapDatabase} or a {@link FederatedMapDatabase}.
+ * <p>
+ * Names, house numbers and references are received as lazy tags and only decoded for the captions which are actually
+ * rendered. The rules of a render theme match these tags by their key only.
  */
-public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDatabaseCallback {
+public class DatabaseRenderer implements MapGenerator, RenderCallback, LazyMapDatabaseCallback, TagFilterProvider {
 	private static final Byte DEFAULT_START_ZOOM_LEVEL = Byte.valueOf((byte) 12);
 	private static final byte LAYERS = 11;
 	private static final Logger LOG = Logger.getLogger(DatabaseRenderer.class.getName());
@@ -52,6 +61,12 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	private static final double STROKE_INCREASE = 1.5;
 	private static final byte STROKE_MIN_ZOOM_LEVEL = 12;
 	private static final Tag TAG_NATURAL_WATER = new Tag("natural", "water");
+
+	/**
+	 * Maximum number of map files whose tag filters are cached.
+	 */
+	private static final int TAG_FILTER_CACHE_SIZE = 16;
+
 	private static final float[][] WATER_TILE_COORDINATES = new float[][] { { 0, 0, Tile.TILE_SIZE, 0, Tile.TILE_SIZE,
 			Tile.TILE_SIZE, 0, Tile.TILE_SIZE, 0, 0 } };
 	private static final byte ZOOM_MAX = 22;
@@ -84,6 +99,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	private float[][] coordinates;
 	private Tile currentTile;
 	private List<List<ShapePaintContainer>> drawingLayer;
+	private FederatedMapDatabase federatedMapDatabase;
 	private final LabelPlacement labelPlacement;
 	private MapDatabase mapDatabase;
 	private List<PointTextContainer> nodes;
@@ -96,6 +112,8 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	private RenderTheme renderTheme;
 	private ShapeContainer shapeContainer;
 	private final List<Tag> tagList;
+	private final Map<MapFileInfo, TagFilter[]> tagFilters;
+	private TileProjection tileProjection;
 	private final List<WayTextContainer> wayNames;
 	private final List<List<List<ShapePaintContainer>>> ways;
 	private final List<SymbolContainer> waySymbols;
@@ -114,6 +132,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		this.waySymbols = new ArrayList<SymbolContainer>(64);
 		this.pointSymbols = new ArrayList<SymbolContainer>(64);
 		this.tagList = new ArrayList<Tag>(2);
+		this.tagFilters = new LRUCache<MapFileInfo, TagFilter[]>(TAG_FILTER_CACHE_SIZE);
 
 		PAINT_WATER_TILE_HIGHTLIGHT.setStyle(Paint.Style.FILL);
 		PAINT_WATER_TILE_HIGHTLIGHT.setColor(Color.CYAN);
@@ -126,9 +145,26 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		}
 	}
 
+	/**
+	 * Creates a new DatabaseRenderer which reads from the same map database as this one. Both renderers may be used
+	 * by different threads at the same time, as each of them has its own render theme, canvas and label placement.
+	 * Later changes of the map database of this renderer are not passed to the copy.
+	 * 
+	 * @return the new DatabaseRenderer.
+	 */
+	public DatabaseRenderer copy() {
+		DatabaseRenderer databaseRenderer = new DatabaseRenderer();
+		databaseRenderer.mapDatabase = this.mapDatabase;
+		databaseRenderer.federatedMapDatabase = this.federatedMapDatabase;
+		return databaseRenderer;
+	}
+
 	@Override
 	public boolean executeJob(MapGeneratorJob mapGeneratorJob, Bitmap bitmap) {
 		this.currentTile = mapGeneratorJob.tile;
+		if (this.tileProjection == null || !this.tileProjection.getTile().equals(this.currentTile)) {
+			this.tileProjection = new TileProjection(this.currentTile);
+		}
 
 		JobTheme jobTheme = mapGeneratorJob.jobParameters.jobTheme;
 		if (!jobTheme.equals(this.previousJobTheme)) {
@@ -138,6 +174,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 				return false;
 			}
 			createWayLists();
+			this.tagFilters.clear();
 			this.previousJobTheme = jobTheme;
 			this.previousZoomLevel = Byte.MIN_VALUE;
 		}
@@ -155,7 +192,16 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		}
 
 		if (this.mapDatabase != null) {
-			this.mapDatabase.executeQuery(this.currentTile, this);
+			if (this.mapDatabase.hasOpenFile()) {
+				MapFileInfo mapFileInfo = this.mapDatabase.getMapFileInfo();
+				this.renderTheme.setMapFileInfo(mapFileInfo);
+				TagFilter tagFilter = getTagFilter(mapFileInfo, zoomLevel);
+				this.mapDatabase.executeQuery(this.currentTile, this, tagFilter);
+			}
+		} else if (this.federatedMapDatabase != null) {
+			// the elements may come from different map files
+			this.renderTheme.setMapFileInfo(null);
+			this.federatedMapDatabase.executeQuery(this.currentTile, this, this);
 		}
 
 		this.nodes = this.labelPlacement.placeLabels(this.nodes, this.pointSymbols, this.areaLabels, this.currentTile);
@@ -191,6 +237,11 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 			} else if (mapFileInfo.mapCenter != null) {
 				return mapFileInfo.mapCenter;
 			}
+		} else if (this.federatedMapDatabase != null) {
+			BoundingBox boundingBox = this.federatedMapDatabase.getBoundingBox();
+			if (boundingBox != null) {
+				return boundingBox.getCenterPoint();
+			}
 		}
 
 		return null;
@@ -208,6 +259,29 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		return DEFAULT_START_ZOOM_LEVEL;
 	}
 
+	/**
+	 * Returns the tag filter of the current render theme for the given map file and zoom level, which lets the map
+	 * database skip all elements that cannot be rendered. The filters are created lazily and cached until the theme
+	 * changes.
+	 */
+	@Override
+	public TagFilter getTagFilter(MapFileInfo mapFileInfo, byte zoomLevel) {
+		if (zoomLevel < 0) {
+			return null;
+		}
+
+		TagFilter[] mapFileTagFilters = this.tagFilters.get(mapFileInfo);
+		if (mapFileTagFilters == null) {
+			mapFileTagFilters = new TagFilter[Byte.MAX_VALUE + 1];
+			this.tagFilters.put(mapFileInfo, mapFileTagFilters);
+		}
+
+		if (mapFileTagFilters[zoomLevel] == null) {
+			mapFileTagFilters[zoomLevel] = this.renderTheme.createTagFilter(mapFileInfo, zoomLevel);
+		}
+		return mapFileTagFilters[zoomLevel];
+	}
+
 	@Override
 	public byte getZoomLevelMax() {
 		return ZOOM_MAX;
@@ -234,8 +308,8 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 	@Override
 	public void renderPointOfInterest(byte layer, int latitude, int longitude, List<Tag> tags) {
 		this.drawingLayer = this.ways.get(getValidLayer(layer));
-		this.poiX = scaleLongitude(longitude);
-		this.poiY = scaleLatitude(latitude);
+		this.poiX = this.tileProjection.getPixelX(longitude);
+		this.poiY = this.tileProjection.getPixelY(latitude);
 		this.renderTheme.matchNode(this, tags, this.currentTile.zoomLevel);
 	}
 
@@ -270,12 +344,7 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		// TODO what about the label position?
 
 		this.coordinates = wayNodes;
-		for (int i = 0; i < this.coordinates.length; ++i) {
-			for (int j = 0; j < this.coordinates[i].length; j += 2) {
-				this.coordinates[i][j] = scaleLongitude(this.coordinates[i][j]);
-				this.coordinates[i][j + 1] = scaleLatitude(this.coordinates[i][j + 1]);
-			}
-		}
+		this.tileProjection.project(this.coordinates);
 		this.shapeContainer = new WayContainer(this.coordinates);
 
 		if (GeometryUtils.isClosedWay(this.coordinates[0])) {
@@ -305,12 +374,24 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		return false;
 	}
 
+	/**
+	 * Sets multiple map files from which the map data will be read instead of a single {@link MapDatabase}.
+	 * 
+	 * @param federatedMapDatabase
+	 *            the FederatedMapDatabase from which the map data will be read.
+	 */
+	public void setFederatedMapDatabase(FederatedMapDatabase federatedMapDatabase) {
+		this.federatedMapDatabase = federatedMapDatabase;
+		this.mapDatabase = null;
+	}
+
 	/**
 	 * @param mapDatabase
 	 *            the MapDatabase from which the map data will be read.
 	 */
 	public void setMapDatabase(MapDatabase mapDatabase) {
 		this.mapDatabase = mapDatabase;
+		this.federatedMapDatabase = null;
 	}
 
 	private void clearLists() {
@@ -341,30 +422,6 @@ public class DatabaseRenderer implements MapGenerator, RenderCallback, MapDataba
 		}
 	}
 
-	/**
-	 * Converts a latitude value into an Y coordinate on the current tile.
-	 * 
-	 * @param latitude
-	 *            the latitude value.
-	 * @return the Y coordinate on the current tile.
-	 */
-	private float scaleLatitude(float latitude) {
-		return (float) (MercatorProjection.latitudeToPixelY(latitude / (double) 1000000, this.currentTile.zoomLevel) - this.currentTile
-				.getPixelY());
-	}
-
-	/**
-	 * Converts a longitude value into an X coordinate on the current tile.
-	 * 
-	 * @param longitude
-	 *            the longitude value.
-	 * @return the X coordinate on the current tile.
-	 */
-	private float scaleLongitude(float longitude) {
-		return (float) (MercatorProjection.longitudeToPixelX(longitude / (double) 1000000, this.currentTile.zoomLevel) - this.currentTile
-				.getPixelX());
-	}
-
 	/**
 	 * Sets the scale stroke factor for the given zoom level.
 	 * 
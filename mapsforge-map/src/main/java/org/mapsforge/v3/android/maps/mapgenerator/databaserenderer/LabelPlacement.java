@@ -14,17 +14,11 @@
  */
 package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
 
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 
 import org.mapsforge.v3.core.Tile;
 
-import android.graphics.Rect;
-
 /**
  * This class place the labels form POIs, area labels and normal labels. The main target is avoiding collisions of these
  * different labels.
@@ -51,96 +45,148 @@ class LabelPlacement {
 		}
 	}
 
-	static final class ReferencePositionHeightComparator implements Comparator<ReferencePosition>, Serializable {
-		private static final long serialVersionUID = 1L;
-		static final ReferencePositionHeightComparator INSTANCE = new ReferencePositionHeightComparator();
+	private static final int PLACEMENT_MODEL = 1;
 
-		private ReferencePositionHeightComparator() {
-			// do nothing
-		}
+	/**
+	 * Removes the reference positions from the given heap which overlap with the given placed reference position. The
+	 * candidates are taken from the sweep heap while their left edge is left of the right edge of the placed position,
+	 * all remaining candidates are added to the sweep heap again.
+	 */
+	private static void removeOverlappingReferencePositions(ReferencePosition[] refPos, ReferencePosition placed,
+			ReferencePositionHeap sweepHeap, ReferencePositionHeap otherHeap, int[] candidates) {
+		float right = placed.x + placed.width;
 
-		@Override
-		public int compare(ReferencePosition x, ReferencePosition y) {
-			if (x.y - x.height < y.y - y.height) {
-				return -1;
-			}
+		int numberOfCandidates = 0;
+		while (!sweepHeap.isEmpty() && refPos[sweepHeap.peek()].x < right) {
+			candidates[numberOfCandidates++] = sweepHeap.poll();
+		}
 
-			if (x.y - x.height > y.y - y.height) {
-				return 1;
+		for (int i = 0; i < numberOfCandidates; ++i) {
+			ReferencePosition candidate = refPos[candidates[i]];
+			if (candidate.x <= right && candidate.y >= placed.y - candidate.height
+					&& candidate.y <= placed.y + candidate.height) {
+				otherHeap.remove(candidates[i]);
+			} else {
+				sweepHeap.add(candidates[i]);
 			}
-			return 0;
 		}
 	}
 
-	static final class ReferencePositionWidthComparator implements Comparator<ReferencePosition>, Serializable {
-		private static final long serialVersionUID = 1L;
-		static final ReferencePositionWidthComparator INSTANCE = new ReferencePositionWidthComparator();
-
-		private ReferencePositionWidthComparator() {
-			// do nothing
+	/**
+	 * Removes all elements of the given list from the given index on.
+	 */
+	private static void removeTail(List<?> list, int fromIndex) {
+		if (fromIndex < list.size()) {
+			list.subList(fromIndex, list.size()).clear();
 		}
+	}
 
-		@Override
-		public int compare(ReferencePosition x, ReferencePosition y) {
-			if (x.x + x.width < y.x + y.width) {
-				return -1;
+	/**
+	 * Selects the label positions by the greedy strategy for the fixed four position model. The reference position
+	 * with the minimum y coordinate is placed first, then all other positions of its label and all positions that
+	 * overlap with it are removed.
+	 * 
+	 * @param refPos
+	 *            four reference positions per label, null for invalid positions.
+	 * @return the placed reference positions in the order of their placement.
+	 */
+	static List<ReferencePosition> selectFourPointGreedy(ReferencePosition[] refPos) {
+		List<ReferencePosition> placedPositions = new ArrayList<ReferencePosition>();
+
+		// the minimum heaps are sorted by the y position and by the top edge
+		float[] yPositions = new float[refPos.length];
+		float[] topEdges = new float[refPos.length];
+		for (int i = 0; i < refPos.length; ++i) {
+			if (refPos[i] != null) {
+				yPositions[i] = refPos[i].y;
+				topEdges[i] = refPos[i].y - refPos[i].height;
 			}
-
-			if (x.x + x.width > y.x + y.width) {
-				return 1;
+		}
+		ReferencePositionHeap priorUp = new ReferencePositionHeap(yPositions);
+		ReferencePositionHeap priorDown = new ReferencePositionHeap(topEdges);
+		for (int i = 0; i < refPos.length; ++i) {
+			if (refPos[i] != null) {
+				priorUp.add(i);
+				priorDown.add(i);
 			}
-
-			return 0;
 		}
-	}
 
-	static final class ReferencePositionXComparator implements Comparator<ReferencePosition>, Serializable {
-		private static final long serialVersionUID = 1L;
-		static final ReferencePositionXComparator INSTANCE = new ReferencePositionXComparator();
+		int[] candidates = new int[refPos.length];
+		while (!priorUp.isEmpty()) {
+			ReferencePosition placed = refPos[priorUp.poll()];
+			placedPositions.add(placed);
 
-		private ReferencePositionXComparator() {
-			// do nothing
-		}
-
-		@Override
-		public int compare(ReferencePosition x, ReferencePosition y) {
-			if (x.x < y.x) {
-				return -1;
+			if (priorUp.isEmpty()) {
+				break;
 			}
 
-			if (x.x > y.x) {
-				return 1;
+			for (int i = placed.nodeNumber * 4, n = i + 4; i < n; ++i) {
+				priorUp.remove(i);
+				priorDown.remove(i);
 			}
 
-			return 0;
+			removeOverlappingReferencePositions(refPos, placed, priorDown, priorUp, candidates);
 		}
-	}
 
-	static final class ReferencePositionYComparator implements Comparator<ReferencePosition>, Serializable {
-		private static final long serialVersionUID = 1L;
-		static final ReferencePositionYComparator INSTANCE = new ReferencePositionYComparator();
+		return placedPositions;
+	}
 
-		private ReferencePositionYComparator() {
-			// do nothing
+	/**
+	 * Selects the label positions by the greedy strategy for the fixed two position model. The reference position
+	 * with the minimum right edge is placed first, then the other position of its label and all positions that
+	 * overlap with it are removed.
+	 * 
+	 * @param refPos
+	 *            two reference positions per label, null for invalid positions.
+	 * @return the placed reference positions in the order of their placement.
+	 */
+	static List<ReferencePosition> selectTwoPointGreedy(ReferencePosition[] refPos) {
+		List<ReferencePosition> placedPositions = new ArrayList<ReferencePosition>();
+
+		// the minimum heaps are sorted by the right edge and by the left edge
+		float[] rightEdges = new float[refPos.length];
+		float[] leftEdges = new float[refPos.length];
+		for (int i = 0; i < refPos.length; ++i) {
+			if (refPos[i] != null) {
+				rightEdges[i] = refPos[i].x + refPos[i].width;
+				leftEdges[i] = refPos[i].x;
+			}
 		}
-
-		@Override
-		public int compare(ReferencePosition x, ReferencePosition y) {
-			if (x.y < y.y) {
-				return -1;
+		ReferencePositionHeap priorRight = new ReferencePositionHeap(rightEdges);
+		ReferencePositionHeap priorLeft = new ReferencePositionHeap(leftEdges);
+		for (int i = 0; i < refPos.length; ++i) {
+			if (refPos[i] != null) {
+				priorLeft.add(i);
+				priorRight.add(i);
 			}
+		}
+
+		int[] candidates = new int[refPos.length];
+		while (!priorRight.isEmpty()) {
+			int placedIndex = priorRight.poll();
+			ReferencePosition placed = refPos[placedIndex];
+			placedPositions.add(placed);
+
+			// removes the other position that is a possible position for the label of one point of interest
+			int otherIndex = placed.nodeNumber * 2 + 1;
+			priorRight.remove(otherIndex);
 
-			if (x.y > y.y) {
-				return 1;
+			if (priorRight.isEmpty()) {
+				break;
 			}
 
-			return 0;
+			priorLeft.remove(placedIndex);
+			priorLeft.remove(otherIndex);
+
+			removeOverlappingReferencePositions(refPos, placed, priorLeft, priorRight, candidates);
 		}
+
+		return placedPositions;
 	}
 
-	private static final int PLACEMENT_MODEL = 1;
 	private int labelDistanceToLabel = 2;
 	private int labelDistanceToSymbol = 2;
+	private final RectangleGrid rectangleGrid;
 	// You can choose between 2 Position and 4 Position
 	// placement Model 0 - 2-Position 1 - 4 Position
 	// distance adjustments
@@ -149,13 +195,12 @@ class LabelPlacement {
 
 	final DependencyCache dependencyCache;
 	PointTextContainer label;
-	Rect rect1;
-	Rect rect2;
 	ReferencePosition referencePosition;
 	SymbolContainer symbolContainer;
 
 	LabelPlacement() {
 		this.dependencyCache = new DependencyCache();
+		this.rectangleGrid = new RectangleGrid(-Tile.TILE_SIZE, 2 * Tile.TILE_SIZE);
 	}
 
 	/**
@@ -210,18 +255,9 @@ class LabelPlacement {
 	 */
 	private List<PointTextContainer> processFourPointGreedy(List<PointTextContainer> labels,
 			List<SymbolContainer> symbols, List<PointTextContainer> areaLabels) {
-		List<PointTextContainer> resolutionSet = new ArrayList<PointTextContainer>();
-
 		// Array for the generated reference positions around the points of interests
 		ReferencePosition[] refPos = new ReferencePosition[(labels.size()) * 4];
 
-		// lists that sorts the reference points after the minimum top edge y position
-		PriorityQueue<ReferencePosition> priorUp = new PriorityQueue<ReferencePosition>(labels.size() * 4 * 2
-				+ labels.size() / 10 * 2, ReferencePositionYComparator.INSTANCE);
-		// lists that sorts the reference points after the minimum bottom edge y position
-		PriorityQueue<ReferencePosition> priorDown = new PriorityQueue<ReferencePosition>(labels.size() * 4 * 2
-				+ labels.size() / 10 * 2, ReferencePositionHeightComparator.INSTANCE);
-
 		PointTextContainer tmp;
 		int dis = this.startDistanceToSymbols;
 
@@ -259,58 +295,14 @@ class LabelPlacement {
 
 		removeNonValidateReferencePosition(refPos, symbols, areaLabels);
 
-		// do while it gives reference positions
-		for (int i = 0; i < refPos.length; i++) {
-			this.referencePosition = refPos[i];
-			if (this.referencePosition != null) {
-				priorUp.add(this.referencePosition);
-				priorDown.add(this.referencePosition);
-			}
-		}
-
-		while (priorUp.size() != 0) {
-			this.referencePosition = priorUp.remove();
-
+		List<ReferencePosition> placedPositions = selectFourPointGreedy(refPos);
+		List<PointTextContainer> resolutionSet = new ArrayList<PointTextContainer>(placedPositions.size());
+		for (int i = 0, n = placedPositions.size(); i < n; ++i) {
+			this.referencePosition = placedPositions.get(i);
 			this.label = labels.get(this.referencePosition.nodeNumber);
 
 			resolutionSet.add(new PointTextContainer(this.label.text, this.referencePosition.x,
 					this.referencePosition.y, this.label.paintFront, this.label.paintBack, this.label.symbol));
-
-			if (priorUp.size() == 0) {
-				return resolutionSet;
-			}
-
-			priorUp.remove(refPos[this.referencePosition.nodeNumber * 4 + 0]);
-			priorUp.remove(refPos[this.referencePosition.nodeNumber * 4 + 1]);
-			priorUp.remove(refPos[this.referencePosition.nodeNumber * 4 + 2]);
-			priorUp.remove(refPos[this.referencePosition.nodeNumber * 4 + 3]);
-
-			priorDown.remove(refPos[this.referencePosition.nodeNumber * 4 + 0]);
-			priorDown.remove(refPos[this.referencePosition.nodeNumber * 4 + 1]);
-			priorDown.remove(refPos[this.referencePosition.nodeNumber * 4 + 2]);
-			priorDown.remove(refPos[this.referencePosition.nodeNumber * 4 + 3]);
-
-			LinkedList<ReferencePosition> linkedRef = new LinkedList<ReferencePosition>();
-
-			while (priorDown.size() != 0) {
-				if (priorDown.peek().x < this.referencePosition.x + this.referencePosition.width) {
-					linkedRef.add(priorDown.remove());
-				} else {
-					break;
-				}
-			}
-			// brute Force collision test (faster then sweep line for a small amount of
-			// objects)
-			for (int i = 0; i < linkedRef.size(); i++) {
-				if ((linkedRef.get(i).x <= this.referencePosition.x + this.referencePosition.width)
-						&& (linkedRef.get(i).y >= this.referencePosition.y - linkedRef.get(i).height)
-						&& (linkedRef.get(i).y <= this.referencePosition.y + linkedRef.get(i).height)) {
-					priorUp.remove(linkedRef.get(i));
-					linkedRef.remove(i);
-					i--;
-				}
-			}
-			priorDown.addAll(linkedRef);
 		}
 
 		return resolutionSet;
@@ -332,17 +324,9 @@ class LabelPlacement {
 	 */
 	private List<PointTextContainer> processTwoPointGreedy(List<PointTextContainer> labels,
 			List<SymbolContainer> symbols, List<PointTextContainer> areaLabels) {
-		List<PointTextContainer> resolutionSet = new ArrayList<PointTextContainer>();
 		// Array for the generated reference positions around the points of interests
 		ReferencePosition[] refPos = new ReferencePosition[labels.size() * 2];
 
-		// lists that sorts the reference points after the minimum right edge x position
-		PriorityQueue<ReferencePosition> priorRight = new PriorityQueue<ReferencePosition>(labels.size() * 2
-				+ labels.size() / 10 * 2, ReferencePositionWidthComparator.INSTANCE);
-		// lists that sorts the reference points after the minimum left edge x position
-		PriorityQueue<ReferencePosition> priorLeft = new PriorityQueue<ReferencePosition>(labels.size() * 2
-				+ labels.size() / 10 * 2, ReferencePositionXComparator.INSTANCE);
-
 		// creates the reference positions
 		for (int z = 0; z < labels.size(); z++) {
 			this.label = labels.get(z);
@@ -364,58 +348,15 @@ class LabelPlacement {
 		// removes reference positions that overlaps with other symbols or dependency objects
 		removeNonValidateReferencePosition(refPos, symbols, areaLabels);
 
-		for (int i = 0; i < refPos.length; i++) {
-			this.referencePosition = refPos[i];
-			if (this.referencePosition != null) {
-				priorLeft.add(this.referencePosition);
-				priorRight.add(this.referencePosition);
-			}
-		}
-
-		while (priorRight.size() != 0) {
-			this.referencePosition = priorRight.remove();
-
+		List<ReferencePosition> placedPositions = selectTwoPointGreedy(refPos);
+		List<PointTextContainer> resolutionSet = new ArrayList<PointTextContainer>(placedPositions.size());
+		for (int i = 0, n = placedPositions.size(); i < n; ++i) {
+			this.referencePosition = placedPositions.get(i);
 			this.label = labels.get(this.referencePosition.nodeNumber);
 
 			resolutionSet.add(new PointTextContainer(this.label.text, this.referencePosition.x,
 					this.referencePosition.y, this.label.paintFront, this.label.paintBack,
 					this.referencePosition.symbol));
-
-			// Removes the other position that is a possible position for the label of one point
-			// of interest
-
-			priorRight.remove(refPos[this.referencePosition.nodeNumber * 2 + 1]);
-
-			if (priorRight.size() == 0) {
-				return resolutionSet;
-			}
-
-			priorLeft.remove(this.referencePosition);
-			priorLeft.remove(refPos[this.referencePosition.nodeNumber * 2 + 1]);
-
-			// find overlapping labels and deletes the reference points and delete them
-			LinkedList<ReferencePosition> linkedRef = new LinkedList<ReferencePosition>();
-
-			while (priorLeft.size() != 0) {
-				if (priorLeft.peek().x < this.referencePosition.x + this.referencePosition.width) {
-					linkedRef.add(priorLeft.remove());
-				} else {
-					break;
-				}
-			}
-
-			// brute Force collision test (faster then sweep line for a small amount of
-			// objects)
-			for (int i = 0; i < linkedRef.size(); i++) {
-				if ((linkedRef.get(i).x <= this.referencePosition.x + this.referencePosition.width)
-						&& (linkedRef.get(i).y >= this.referencePosition.y - linkedRef.get(i).height)
-						&& (linkedRef.get(i).y <= this.referencePosition.y + linkedRef.get(i).height)) {
-					priorRight.remove(linkedRef.get(i));
-					linkedRef.remove(i);
-					i--;
-				}
-			}
-			priorLeft.addAll(linkedRef);
 		}
 
 		return resolutionSet;
@@ -444,45 +385,28 @@ class LabelPlacement {
 	 */
 	private void removeNonValidateReferencePosition(ReferencePosition[] refPos, List<SymbolContainer> symbols,
 			List<PointTextContainer> areaLabels) {
-		int dis = this.labelDistanceToSymbol;
+		RectangleGrid obstacles = this.rectangleGrid;
+		obstacles.clear();
 
+		int dis = this.labelDistanceToSymbol;
 		for (int i = 0; i < symbols.size(); i++) {
 			this.symbolContainer = symbols.get(i);
-			this.rect1 = new android.graphics.Rect((int) this.symbolContainer.x - dis, (int) this.symbolContainer.y
-					- dis, (int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth() + dis,
+			obstacles.add((int) this.symbolContainer.x - dis, (int) this.symbolContainer.y - dis,
+					(int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth() + dis,
 					(int) this.symbolContainer.y + this.symbolContainer.symbol.getHeight() + dis);
-
-			for (int y = 0; y < refPos.length; y++) {
-				if (refPos[y] != null) {
-
-					this.rect2 = new android.graphics.Rect((int) refPos[y].x, (int) (refPos[y].y - refPos[y].height),
-							(int) (refPos[y].x + refPos[y].width), (int) (refPos[y].y));
-
-					if (android.graphics.Rect.intersects(this.rect2, this.rect1)) {
-						refPos[y] = null;
-					}
-				}
-			}
 		}
 
 		dis = this.labelDistanceToLabel;
-
 		for (PointTextContainer areaLabel : areaLabels) {
+			obstacles.add((int) areaLabel.x - dis, (int) areaLabel.y - areaLabel.boundary.height() - dis,
+					(int) areaLabel.x + areaLabel.boundary.width() + dis, (int) areaLabel.y + dis);
+		}
 
-			this.rect1 = new android.graphics.Rect((int) areaLabel.x - dis, (int) areaLabel.y
-					- areaLabel.boundary.height() - dis, (int) areaLabel.x + areaLabel.boundary.width() + dis,
-					(int) areaLabel.y + dis);
-
-			for (int y = 0; y < refPos.length; y++) {
-				if (refPos[y] != null) {
-
-					this.rect2 = new android.graphics.Rect((int) refPos[y].x, (int) (refPos[y].y - refPos[y].height),
-							(int) (refPos[y].x + refPos[y].width), (int) (refPos[y].y));
-
-					if (android.graphics.Rect.intersects(this.rect2, this.rect1)) {
-						refPos[y] = null;
-					}
-				}
+		for (int y = 0; y < refPos.length; y++) {
+			if (refPos[y] != null
+					&& obstacles.intersects((int) refPos[y].x, (int) (refPos[y].y - refPos[y].height),
+							(int) (refPos[y].x + refPos[y].width), (int) (refPos[y].y))) {
+				refPos[y] = null;
 			}
 		}
 
@@ -578,29 +502,24 @@ class LabelPlacement {
 	 *            area labels from the actual tile
 	 */
 	private void removeOverlappingAreaLabels(List<PointTextContainer> areaLabels) {
-		int dis = this.labelDistanceToLabel;
+		RectangleGrid placedLabels = this.rectangleGrid;
+		placedLabels.clear();
 
+		// an area label is kept if it does not overlap with any of the kept area labels before it
+		int dis = this.labelDistanceToLabel;
+		int keptLabels = 0;
 		for (int x = 0; x < areaLabels.size(); x++) {
 			this.label = areaLabels.get(x);
-			this.rect1 = new android.graphics.Rect((int) this.label.x - dis, (int) this.label.y - dis,
-					(int) (this.label.x + this.label.boundary.width()) + dis, (int) (this.label.y
-							+ this.label.boundary.height() + dis));
-
-			for (int y = x + 1; y < areaLabels.size(); y++) {
-				if (y != x) {
-					this.label = areaLabels.get(y);
-					this.rect2 = new android.graphics.Rect((int) this.label.x, (int) this.label.y,
-							(int) (this.label.x + this.label.boundary.width()),
-							(int) (this.label.y + this.label.boundary.height()));
-
-					if (android.graphics.Rect.intersects(this.rect1, this.rect2)) {
-						areaLabels.remove(y);
-
-						y--;
-					}
-				}
+			if (!placedLabels.intersects((int) this.label.x, (int) this.label.y,
+					(int) (this.label.x + this.label.boundary.width()),
+					(int) (this.label.y + this.label.boundary.height()))) {
+				placedLabels.add((int) this.label.x - dis, (int) this.label.y - dis,
+						(int) (this.label.x + this.label.boundary.width()) + dis, (int) (this.label.y
+								+ this.label.boundary.height() + dis));
+				areaLabels.set(keptLabels++, this.label);
 			}
 		}
+		removeTail(areaLabels, keptLabels);
 	}
 
 	/**
@@ -612,28 +531,30 @@ class LabelPlacement {
 	 *            list of labels
 	 */
 	private void removeOverlappingSymbolsWithAreaLabels(List<SymbolContainer> symbols, List<PointTextContainer> pTC) {
-		int dis = this.labelDistanceToSymbol;
+		if (pTC.isEmpty()) {
+			return;
+		}
 
+		RectangleGrid labelAreas = this.rectangleGrid;
+		labelAreas.clear();
+
+		int dis = this.labelDistanceToSymbol;
 		for (int x = 0; x < pTC.size(); x++) {
 			this.label = pTC.get(x);
+			labelAreas.add((int) this.label.x - dis, (int) (this.label.y - this.label.boundary.height()) - dis,
+					(int) (this.label.x + this.label.boundary.width() + dis), (int) (this.label.y + dis));
+		}
 
-			this.rect1 = new android.graphics.Rect((int) this.label.x - dis,
-					(int) (this.label.y - this.label.boundary.height()) - dis, (int) (this.label.x
-							+ this.label.boundary.width() + dis), (int) (this.label.y + dis));
-
-			for (int y = 0; y < symbols.size(); y++) {
-				this.symbolContainer = symbols.get(y);
-
-				this.rect2 = new android.graphics.Rect((int) this.symbolContainer.x, (int) this.symbolContainer.y,
-						(int) (this.symbolContainer.x + this.symbolContainer.symbol.getWidth()),
-						(int) (this.symbolContainer.y + this.symbolContainer.symbol.getHeight()));
-
-				if (android.graphics.Rect.intersects(this.rect1, this.rect2)) {
-					symbols.remove(y);
-					y--;
-				}
+		int keptSymbols = 0;
+		for (int y = 0; y < symbols.size(); y++) {
+			this.symbolContainer = symbols.get(y);
+			if (!labelAreas.intersects((int) this.symbolContainer.x, (int) this.symbolContainer.y,
+					(int) (this.symbolContainer.x + this.symbolContainer.symbol.getWidth()),
+					(int) (this.symbolContainer.y + this.symbolContainer.symbol.getHeight()))) {
+				symbols.set(keptSymbols++, this.symbolContainer);
 			}
 		}
+		removeTail(symbols, keptSymbols);
 	}
 
 	int getLabelDistanceToLabel() {
@@ -713,28 +634,24 @@ class LabelPlacement {
 	 *            symbols from the actual tile
 	 */
 	void removeOverlappingSymbols(List<SymbolContainer> symbols) {
-		int dis = this.symbolDistanceToSymbol;
+		RectangleGrid placedSymbols = this.rectangleGrid;
+		placedSymbols.clear();
 
+		// a symbol is kept if it does not overlap with any of the kept symbols before it
+		int dis = this.symbolDistanceToSymbol;
+		int keptSymbols = 0;
 		for (int x = 0; x < symbols.size(); x++) {
 			this.symbolContainer = symbols.get(x);
-			this.rect1 = new android.graphics.Rect((int) this.symbolContainer.x - dis, (int) this.symbolContainer.y
-					- dis, (int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth() + dis,
-					(int) this.symbolContainer.y + this.symbolContainer.symbol.getHeight() + dis);
-
-			for (int y = x + 1; y < symbols.size(); y++) {
-				if (y != x) {
-					this.symbolContainer = symbols.get(y);
-					this.rect2 = new android.graphics.Rect((int) this.symbolContainer.x, (int) this.symbolContainer.y,
-							(int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth(),
-							(int) this.symbolContainer.y + this.symbolContainer.symbol.getHeight());
-
-					if (android.graphics.Rect.intersects(this.rect2, this.rect1)) {
-						symbols.remove(y);
-						y--;
-					}
-				}
+			if (!placedSymbols.intersects((int) this.symbolContainer.x, (int) this.symbolContainer.y,
+					(int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth(),
+					(int) this.symbolContainer.y + this.symbolContainer.symbol.getHeight())) {
+				placedSymbols.add((int) this.symbolContainer.x - dis, (int) this.symbolContainer.y - dis,
+						(int) this.symbolContainer.x + this.symbolContainer.symbol.getWidth() + dis,
+						(int) this.symbolContainer.y + this.symbolContainer.symbol.getHeight() + dis);
+				symbols.set(keptSymbols++, this.symbolContainer);
 			}
 		}
+		removeTail(symbols, keptSymbols);
 	}
 
 	void setLabelDistanceToLabel(int labelDistanceToLabel) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
+
+/**
+ * A uniform grid of rectangles, which finds the stored rectangles that intersect a given one without comparing all
+ * pairs. Two rectangles intersect under the same condition as in {@link android.graphics.Rect#intersects}.
+ * <p>
+ * Each rectangle is stored in all cells which it covers. Coordinates outside of the grid are assigned to the nearest
+ * border cells, so the results are correct for rectangles anywhere.
+ */
+final class RectangleGrid {
+	private static final int CELL_SIZE = 32;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int INITIAL_CELL_CAPACITY = 4;
+
+	private static int[] grow(int[] array, int minimumLength) {
+		int[] newArray = new int[Math.max(minimumLength, array.length * 2)];
+		System.arraycopy(array, 0, newArray, 0, array.length);
+		return newArray;
+	}
+
+	private int[] bottoms;
+	private final int[][] cells;
+	private final int[] cellSizes;
+	private final int columns;
+	private int[] lefts;
+	private final int minimum;
+	private int[] rights;
+	private int size;
+	private int[] tops;
+
+	/**
+	 * @param minimum
+	 *            the minimum coordinate on both axes which is covered by the grid cells.
+	 * @param maximum
+	 *            the maximum coordinate on both axes which is covered by the grid cells.
+	 */
+	RectangleGrid(int minimum, int maximum) {
+		this.minimum = minimum;
+		this.columns = (maximum - minimum) / CELL_SIZE + 1;
+		this.cells = new int[this.columns * this.columns][];
+		this.cellSizes = new int[this.columns * this.columns];
+		this.lefts = new int[INITIAL_CAPACITY];
+		this.tops = new int[INITIAL_CAPACITY];
+		this.rights = new int[INITIAL_CAPACITY];
+		this.bottoms = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Adds a rectangle to this grid.
+	 */
+	void add(int left, int top, int right, int bottom) {
+		if (this.size == this.lefts.length) {
+			this.lefts = grow(this.lefts, this.size + 1);
+			this.tops = grow(this.tops, this.size + 1);
+			this.rights = grow(this.rights, this.size + 1);
+			this.bottoms = grow(this.bottoms, this.size + 1);
+		}
+		int rectangle = this.size++;
+		this.lefts[rectangle] = left;
+		this.tops[rectangle] = top;
+		this.rights[rectangle] = right;
+		this.bottoms[rectangle] = bottom;
+
+		int columnMax = getCell(Math.max(left, right));
+		int rowMax = getCell(Math.max(top, bottom));
+		for (int row = getCell(Math.min(top, bottom)); row <= rowMax; ++row) {
+			for (int column = getCell(Math.min(left, right)); column <= columnMax; ++column) {
+				int cell = row * this.columns + column;
+				int[] cellRectangles = this.cells[cell];
+				if (cellRectangles == null) {
+					cellRectangles = new int[INITIAL_CELL_CAPACITY];
+					this.cells[cell] = cellRectangles;
+				} else if (this.cellSizes[cell] == cellRectangles.length) {
+					cellRectangles = grow(cellRectangles, cellRectangles.length + 1);
+					this.cells[cell] = cellRectangles;
+				}
+				cellRectangles[this.cellSizes[cell]++] = rectangle;
+			}
+		}
+	}
+
+	/**
+	 * Removes all rectangles from this grid.
+	 */
+	void clear() {
+		if (this.size > 0) {
+			for (int i = 0; i < this.cellSizes.length; ++i) {
+				this.cellSizes[i] = 0;
+			}
+			this.size = 0;
+		}
+	}
+
+	/**
+	 * @return true if the given rectangle intersects any rectangle of this grid, false otherwise.
+	 */
+	boolean intersects(int left, int top, int right, int bottom) {
+		if (this.size == 0) {
+			return false;
+		}
+
+		int columnMax = getCell(Math.max(left, right));
+		int rowMax = getCell(Math.max(top, bottom));
+		for (int row = getCell(Math.min(top, bottom)); row <= rowMax; ++row) {
+			for (int column = getCell(Math.min(left, right)); column <= columnMax; ++column) {
+				int cell = row * this.columns + column;
+				int[] cellRectangles = this.cells[cell];
+				for (int i = 0, n = this.cellSizes[cell]; i < n; ++i) {
+					int rectangle = cellRectangles[i];
+					if (left < this.rights[rectangle] && this.lefts[rectangle] < right
+							&& top < this.bottoms[rectangle] && this.tops[rectangle] < bottom) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the index of the grid cell on either axis which contains the given coordinate.
+	 */
+	private int getCell(int coordinate) {
+		int offset = coordinate - this.minimum;
+		if (offset < 0) {
+			return 0;
+		}
+		return Math.min(offset / CELL_SIZE, this.columns - 1);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
+
+import java.util.Arrays;
+
+/**
+ * A minimum heap of reference positions which are identified by their index in an array. In contrast to a
+ * {@link java.util.PriorityQueue}, the heap knows the position of each element, so that an arbitrary element can be
+ * removed in logarithmic time.
+ * <p>
+ * The elements are ordered by a precomputed key per index. Elements with equal keys leave the heap in the same order
+ * as from a {@link java.util.PriorityQueue} with the same sequence of operations, as both heaps move the elements in
+ * the same way.
+ */
+final class ReferencePositionHeap {
+	private final int[] heap;
+	private final float[] keys;
+	private final int[] positions;
+	private int size;
+
+	/**
+	 * @param keys
+	 *            the keys by which the elements are ordered, indexed by the element.
+	 */
+	ReferencePositionHeap(float[] keys) {
+		this.keys = keys;
+		this.heap = new int[keys.length];
+		this.positions = new int[keys.length];
+		Arrays.fill(this.positions, -1);
+	}
+
+	/**
+	 * @param element
+	 *            the element to be added, which must not be contained in this heap.
+	 */
+	void add(int element) {
+		siftUp(this.size++, element);
+	}
+
+	/**
+	 * @return true if this heap contains no elements, false otherwise.
+	 */
+	boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * @return the element with the minimum key, this heap must not be empty.
+	 */
+	int peek() {
+		return this.heap[0];
+	}
+
+	/**
+	 * Removes the element with the minimum key, this heap must not be empty.
+	 * 
+	 * @return the removed element.
+	 */
+	int poll() {
+		int result = this.heap[0];
+		int last = this.heap[--this.size];
+		if (this.size != 0) {
+			siftDown(0, last);
+		}
+		this.positions[result] = -1;
+		return result;
+	}
+
+	/**
+	 * Removes the given element if it is contained in this heap.
+	 * 
+	 * @param element
+	 *            the element to be removed.
+	 */
+	void remove(int element) {
+		int position = this.positions[element];
+		if (position < 0) {
+			return;
+		}
+
+		int last = this.heap[--this.size];
+		if (this.size != position) {
+			siftDown(position, last);
+			if (this.heap[position] == last) {
+				siftUp(position, last);
+			}
+		}
+		this.positions[element] = -1;
+	}
+
+	private int compare(int element1, int element2) {
+		if (this.keys[element1] < this.keys[element2]) {
+			return -1;
+		} else if (this.keys[element1] > this.keys[element2]) {
+			return 1;
+		}
+		return 0;
+	}
+
+	private void siftDown(int position, int element) {
+		int half = this.size >>> 1;
+		int current = position;
+		while (current < half) {
+			int child = 2 * current + 1;
+			int right = child + 1;
+			if (right < this.size && compare(this.heap[child], this.heap[right]) > 0) {
+				child = right;
+			}
+			if (compare(element, this.heap[child]) <= 0) {
+				break;
+			}
+			this.heap[current] = this.heap[child];
+			this.positions[this.heap[current]] = current;
+			current = child;
+		}
+		this.heap[current] = element;
+		this.positions[element] = current;
+	}
+
+	private void siftUp(int position, int element) {
+		int current = position;
+		while (current > 0) {
+			int parent = (current - 1) >>> 1;
+			if (compare(element, this.heap[parent]) >= 0) {
+				break;
+			}
+			this.heap[current] = this.heap[parent];
+			this.positions[this.heap[current]] = current;
+			current = parent;
+		}
+		this.heap[current] = element;
+		this.positions[element] = current;
+	}
+}
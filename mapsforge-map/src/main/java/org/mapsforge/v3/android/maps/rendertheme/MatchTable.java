@@ -0,0 +1,429 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * The rules of a render theme, precompiled for the tags of one map file.
+ * <p>
+ * All rules are numbered in the order of the render theme. For every tag ID of the map file, the table stores which
+ * rules accept the key and which rules accept the value of the tag. Matching an element ORs these bit sets over its
+ * tags, which yields all rules whose own conditions are fulfilled, so no strings need to be compared. Tags which are
+ * not part of the map file, such as names and house numbers, are looked up by their key and value.
+ * <p>
+ * The rules which are applicable to an element type at a zoom level are then visited in the order of the render
+ * theme, skipping the sub-rules of each rule that does not match. The bit sets of the tags and the applicable rules
+ * are created on first use. Matching uses reused bit sets and is therefore not thread-safe.
+ */
+final class MatchTable {
+	/**
+	 * The rules which are applicable to one element type at one zoom level, in the order of the render theme.
+	 */
+	private static final class RuleSequence {
+		/**
+		 * The position in this sequence after the sub-rules of the rule at each position.
+		 */
+		final int[] nextSiblings;
+
+		/**
+		 * The indices of the applicable rules.
+		 */
+		final int[] rules;
+
+		RuleSequence(int[] rules, int[] nextSiblings) {
+			this.rules = rules;
+			this.nextSiblings = nextSiblings;
+		}
+	}
+
+	/**
+	 * The tags of one element type of a map file with the lazily resolved bit sets of their tag IDs.
+	 */
+	private static final class TagTable {
+		final long[][] keyRules;
+		final Tag[] tags;
+		final long[][] valueRules;
+		private final int mask;
+		private final int[] slotTagIds;
+		private final Tag[] slots;
+
+		TagTable(Tag[] tags) {
+			this.tags = tags;
+			this.keyRules = new long[tags.length][];
+			this.valueRules = new long[tags.length][];
+
+			int capacity = 2;
+			while (capacity < tags.length * 2) {
+				capacity <<= 1;
+			}
+			this.mask = capacity - 1;
+			this.slots = new Tag[capacity];
+			this.slotTagIds = new int[capacity];
+			for (int tagId = 0; tagId < tags.length; ++tagId) {
+				int slot = System.identityHashCode(tags[tagId]) & this.mask;
+				while (this.slots[slot] != null && this.slots[slot] != tags[tagId]) {
+					slot = (slot + 1) & this.mask;
+				}
+				if (this.slots[slot] == null) {
+					this.slots[slot] = tags[tagId];
+					this.slotTagIds[slot] = tagId;
+				}
+			}
+		}
+
+		/**
+		 * @return the ID of the given tag instance, or -1 if it is not part of this table.
+		 */
+		int getTagId(Tag tag) {
+			int slot = System.identityHashCode(tag) & this.mask;
+			Tag slotTag;
+			while ((slotTag = this.slots[slot]) != null) {
+				if (slotTag == tag) {
+					return this.slotTagIds[slot];
+				}
+				slot = (slot + 1) & this.mask;
+			}
+			return -1;
+		}
+	}
+
+	private static final int BITS_PER_WORD = 64;
+	private static final int CLOSED_WAYS = 1;
+	private static final int LINEAR_WAYS = 2;
+	private static final int NODES = 0;
+
+	private static void addToIndex(Map<String, long[]> index, List<String> strings, int rule, int words) {
+		for (int i = 0, n = strings.size(); i < n; ++i) {
+			long[] bits = index.get(strings.get(i));
+			if (bits == null) {
+				bits = new long[words];
+				index.put(strings.get(i), bits);
+			}
+			setBit(bits, rule);
+		}
+	}
+
+	private static void addToList(List<Rule> rules, List<Integer> parents, List<Rule> ruleTree, int parent) {
+		for (int i = 0, n = ruleTree.size(); i < n; ++i) {
+			Rule rule = ruleTree.get(i);
+			int index = rules.size();
+			rules.add(rule);
+			parents.add(Integer.valueOf(parent));
+			addToList(rules, parents, rule.subRules, index);
+		}
+	}
+
+	private static boolean isBitSet(long[] bits, int index) {
+		return (bits[index / BITS_PER_WORD] & (1L << (index % BITS_PER_WORD))) != 0;
+	}
+
+	private static void or(long[] target, long[] bits) {
+		for (int i = 0; i < target.length; ++i) {
+			target[i] |= bits[i];
+		}
+	}
+
+	private static void setBit(long[] bits, int index) {
+		bits[index / BITS_PER_WORD] |= 1L << (index % BITS_PER_WORD);
+	}
+
+	private final long[] anyKeyRules;
+	private final long[] anyValueRules;
+	private final RuleSequence[][] applicableRules;
+	private final boolean[][] applicableRulesCreated;
+	private final Map<String, long[]> keyIndex;
+	private final long[] keyRules;
+	private final long[] matchingRules;
+	private final long[] negativeRules;
+	private final long[] noRules;
+	private final int[] parents;
+	private final TagTable poiTagTable;
+	private final RenderInstruction[][] renderInstructions;
+	private final Rule[] rules;
+	private final int[] subRulesEnds;
+	private final Map<String, long[]> valueIndex;
+	private final long[] valueRules;
+	private final TagTable wayTagTable;
+
+	/**
+	 * @param ruleTree
+	 *            the top-level rules of the render theme.
+	 * @param poiTags
+	 *            the POI tags of the map file.
+	 * @param wayTags
+	 *            the way tags of the map file.
+	 */
+	MatchTable(List<Rule> ruleTree, Tag[] poiTags, Tag[] wayTags) {
+		List<Rule> ruleList = new ArrayList<Rule>();
+		List<Integer> parentList = new ArrayList<Integer>();
+		addToList(ruleList, parentList, ruleTree, -1);
+
+		int numberOfRules = ruleList.size();
+		int words = (numberOfRules + BITS_PER_WORD - 1) / BITS_PER_WORD;
+		this.rules = ruleList.toArray(new Rule[numberOfRules]);
+		this.parents = new int[numberOfRules];
+		this.subRulesEnds = new int[numberOfRules];
+		this.renderInstructions = new RenderInstruction[numberOfRules][];
+		this.anyKeyRules = new long[words];
+		this.anyValueRules = new long[words];
+		this.negativeRules = new long[words];
+		this.keyIndex = new HashMap<String, long[]>();
+		this.valueIndex = new HashMap<String, long[]>();
+
+		for (int i = 0; i < numberOfRules; ++i) {
+			Rule rule = this.rules[i];
+			this.parents[i] = parentList.get(i).intValue();
+			this.subRulesEnds[i] = i + 1;
+			for (int parent = this.parents[i]; parent >= 0; parent = this.parents[parent]) {
+				this.subRulesEnds[parent] = i + 1;
+			}
+			this.renderInstructions[i] = rule.renderInstructions.toArray(new RenderInstruction[rule.renderInstructions
+					.size()]);
+
+			if (rule instanceof NegativeRule) {
+				// a negative rule matches if none of its keys or any of its values is present
+				NegativeMatcher negativeMatcher = (NegativeMatcher) ((NegativeRule) rule).attributeMatcher;
+				setBit(this.negativeRules, i);
+				addToIndex(this.keyIndex, negativeMatcher.getKeys(), i, words);
+				addToIndex(this.valueIndex, negativeMatcher.getValues(), i, words);
+				continue;
+			}
+
+			// a positive rule matches if any of its keys and any of its values is present
+			List<String> keys = rule.getIndexKeys();
+			if (keys == null) {
+				setBit(this.anyKeyRules, i);
+			} else {
+				addToIndex(this.keyIndex, keys, i, words);
+			}
+			List<String> values = rule.getIndexValues();
+			if (values == null) {
+				setBit(this.anyValueRules, i);
+			} else {
+				addToIndex(this.valueIndex, values, i, words);
+			}
+		}
+
+		this.applicableRules = new RuleSequence[LINEAR_WAYS + 1][Byte.MAX_VALUE + 1];
+		this.applicableRulesCreated = new boolean[LINEAR_WAYS + 1][Byte.MAX_VALUE + 1];
+		this.noRules = new long[words];
+		this.keyRules = new long[words];
+		this.valueRules = new long[words];
+		this.matchingRules = new long[words];
+		this.poiTagTable = new TagTable(poiTags);
+		this.wayTagTable = new TagTable(wayTags);
+	}
+
+	/**
+	 * Executes the render instructions of all rules which match the given node.
+	 * 
+	 * @param renderCallback
+	 *            the callback implementation which will be executed on each match.
+	 * @param tags
+	 *            the tags of the node.
+	 * @param zoomLevel
+	 *            the zoom level at which the node is matched.
+	 * @param matchingList
+	 *            the list to which all executed render instructions are added.
+	 */
+	void matchNode(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel,
+			List<RenderInstruction> matchingList) {
+		RuleSequence ruleSequence = findMatchingRules(tags, this.poiTagTable, NODES, zoomLevel);
+		if (ruleSequence == null) {
+			return;
+		}
+
+		int[] sequenceRules = ruleSequence.rules;
+		int position = 0;
+		while (position < sequenceRules.length) {
+			int rule = sequenceRules[position];
+			if (isBitSet(this.matchingRules, rule)) {
+				RenderInstruction[] ruleRenderInstructions = this.renderInstructions[rule];
+				for (int i = 0; i < ruleRenderInstructions.length; ++i) {
+					ruleRenderInstructions[i].renderNode(renderCallback, tags);
+					matchingList.add(ruleRenderInstructions[i]);
+				}
+				++position;
+			} else {
+				position = ruleSequence.nextSiblings[position];
+			}
+		}
+	}
+
+	/**
+	 * Executes the render instructions of all rules which match the given way.
+	 * 
+	 * @param renderCallback
+	 *            the callback implementation which will be executed on each match.
+	 * @param tags
+	 *            the tags of the way.
+	 * @param zoomLevel
+	 *            the zoom level at which the way is matched.
+	 * @param closed
+	 *            whether the way is closed.
+	 * @param matchingList
+	 *            the list to which all executed render instructions are added.
+	 */
+	void matchWay(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel, Closed closed,
+			List<RenderInstruction> matchingList) {
+		int elementType = closed == Closed.YES ? CLOSED_WAYS : LINEAR_WAYS;
+		RuleSequence ruleSequence = findMatchingRules(tags, this.wayTagTable, elementType, zoomLevel);
+		if (ruleSequence == null) {
+			return;
+		}
+
+		int[] sequenceRules = ruleSequence.rules;
+		int position = 0;
+		while (position < sequenceRules.length) {
+			int rule = sequenceRules[position];
+			if (isBitSet(this.matchingRules, rule)) {
+				RenderInstruction[] ruleRenderInstructions = this.renderInstructions[rule];
+				for (int i = 0; i < ruleRenderInstructions.length; ++i) {
+					ruleRenderInstructions[i].renderWay(renderCallback, tags);
+					matchingList.add(ruleRenderInstructions[i]);
+				}
+				++position;
+			} else {
+				position = ruleSequence.nextSiblings[position];
+			}
+		}
+	}
+
+	/**
+	 * Determines the rules which can trigger a render instruction for the given element type at the given zoom level.
+	 * 
+	 * @return the applicable rules, or null if there are none.
+	 */
+	private RuleSequence createRuleSequence(int elementType, byte zoomLevel) {
+		Element element = elementType == NODES ? Element.NODE : Element.WAY;
+		Closed closed = elementType == CLOSED_WAYS ? Closed.YES : Closed.NO;
+
+		// parents precede their sub-rules, so the reachability of a parent is known before its sub-rules
+		boolean[] applicable = new boolean[this.rules.length];
+		for (int i = 0; i < this.rules.length; ++i) {
+			Rule rule = this.rules[i];
+			if (this.parents[i] >= 0 && !applicable[this.parents[i]]) {
+				continue;
+			} else if (rule.zoomMin > zoomLevel || rule.zoomMax < zoomLevel || !rule.elementMatcher.matches(element)) {
+				continue;
+			} else if (element == Element.WAY && !rule.closedMatcher.matches(closed)) {
+				continue;
+			}
+			applicable[i] = true;
+		}
+
+		// rules without render instructions are only kept if one of their sub-rules is kept
+		boolean[] hasApplicableSubRule = new boolean[this.rules.length];
+		int numberOfRules = 0;
+		for (int i = this.rules.length - 1; i >= 0; --i) {
+			if (!applicable[i]) {
+				continue;
+			} else if (this.renderInstructions[i].length == 0 && !hasApplicableSubRule[i]) {
+				applicable[i] = false;
+				continue;
+			}
+			++numberOfRules;
+			if (this.parents[i] >= 0) {
+				hasApplicableSubRule[this.parents[i]] = true;
+			}
+		}
+
+		if (numberOfRules == 0) {
+			return null;
+		}
+
+		int[] sequenceRules = new int[numberOfRules];
+		for (int i = 0, position = 0; i < this.rules.length; ++i) {
+			if (applicable[i]) {
+				sequenceRules[position++] = i;
+			}
+		}
+
+		int[] nextSiblings = new int[numberOfRules];
+		for (int position = numberOfRules - 1; position >= 0; --position) {
+			int subRulesEnd = this.subRulesEnds[sequenceRules[position]];
+			int next = position + 1;
+			while (next < numberOfRules && sequenceRules[next] < subRulesEnd) {
+				next = nextSiblings[next];
+			}
+			nextSiblings[position] = next;
+		}
+		return new RuleSequence(sequenceRules, nextSiblings);
+	}
+
+	/**
+	 * Stores all rules whose own conditions are fulfilled by the given tags in the reused bit set. Whether their parent
+	 * rules match as well is checked while visiting the returned rules.
+	 * 
+	 * @return the applicable rules, or null if there are none.
+	 */
+	private RuleSequence findMatchingRules(List<Tag> tags, TagTable tagTable, int elementType, byte zoomLevel) {
+		if (zoomLevel < 0) {
+			return null;
+		}
+		if (!this.applicableRulesCreated[elementType][zoomLevel]) {
+			this.applicableRules[elementType][zoomLevel] = createRuleSequence(elementType, zoomLevel);
+			this.applicableRulesCreated[elementType][zoomLevel] = true;
+		}
+		RuleSequence ruleSequence = this.applicableRules[elementType][zoomLevel];
+		if (ruleSequence == null) {
+			return null;
+		}
+
+		long[] keys = this.keyRules;
+		long[] values = this.valueRules;
+		System.arraycopy(this.noRules, 0, keys, 0, keys.length);
+		System.arraycopy(this.noRules, 0, values, 0, values.length);
+		for (int i = 0, n = tags.size(); i < n; ++i) {
+			Tag tag = tags.get(i);
+			int tagId = tagTable.getTagId(tag);
+			if (tagId < 0) {
+				or(keys, getRules(this.keyIndex, tag.key));
+				or(values, getRules(this.valueIndex, tag.value));
+				continue;
+			}
+
+			if (tagTable.keyRules[tagId] == null) {
+				tagTable.keyRules[tagId] = getRules(this.keyIndex, tag.key);
+				tagTable.valueRules[tagId] = getRules(this.valueIndex, tag.value);
+			}
+			or(keys, tagTable.keyRules[tagId]);
+			or(values, tagTable.valueRules[tagId]);
+		}
+
+		for (int word = 0; word < keys.length; ++word) {
+			long negative = this.negativeRules[word];
+			long positiveMatches = (this.anyKeyRules[word] | keys[word]) & (this.anyValueRules[word] | values[word]);
+			long negativeMatches = ~keys[word] | values[word];
+			this.matchingRules[word] = (~negative & positiveMatches) | (negative & negativeMatches);
+		}
+		return ruleSequence;
+	}
+
+	private long[] getRules(Map<String, long[]> index, String string) {
+		long[] bits = index.get(string);
+		if (bits == null) {
+			return this.noRules;
+		}
+		return bits;
+	}
+}
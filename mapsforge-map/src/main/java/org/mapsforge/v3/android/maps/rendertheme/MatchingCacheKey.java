@@ -18,19 +18,59 @@ import java.util.List;
 
 import org.mapsforge.v3.core.Tag;
 
+/**
+ * The key of the matching cache of a {@link RenderTheme}.
+ * <p>
+ * A single mutable key is reused to look up each element, so a cache hit does not allocate any objects. Only on a
+ * cache miss an immutable copy of the key is stored in the cache.
+ */
 class MatchingCacheKey {
-	private final Closed closed;
-	private final int hashCodeValue;
-	private final List<Tag> tags;
-	private final byte zoomLevel;
+	private static final Tag[] EMPTY_TAGS = new Tag[0];
+	private static final int INITIAL_TAGS = 16;
 
-	MatchingCacheKey(List<Tag> tags, byte zoomLevel, Closed closed) {
-		this.tags = tags;
-		this.zoomLevel = zoomLevel;
-		this.closed = closed;
-		this.hashCodeValue = calculateHashCode();
+	private static boolean equalsNullable(String string1, String string2) {
+		if (string1 == null) {
+			return string2 == null;
+		}
+		return string1.equals(string2);
+	}
+
+	private Closed closed;
+	private Element element;
+	private int hashCodeValue;
+	private int numberOfTags;
+	private Tag[] tags;
+	private byte zoomLevel;
+
+	/**
+	 * Creates an empty key which must be filled via {@link #set(List, Element, Closed, byte)} before it is used.
+	 */
+	MatchingCacheKey() {
+		this.tags = new Tag[INITIAL_TAGS];
 	}
 
+	/**
+	 * Creates an immutable copy of the given key.
+	 */
+	private MatchingCacheKey(MatchingCacheKey matchingCacheKey) {
+		this.closed = matchingCacheKey.closed;
+		this.element = matchingCacheKey.element;
+		this.hashCodeValue = matchingCacheKey.hashCodeValue;
+		this.numberOfTags = matchingCacheKey.numberOfTags;
+		if (this.numberOfTags == 0) {
+			this.tags = EMPTY_TAGS;
+		} else {
+			this.tags = new Tag[this.numberOfTags];
+			System.arraycopy(matchingCacheKey.tags, 0, this.tags, 0, this.numberOfTags);
+		}
+		this.zoomLevel = matchingCacheKey.zoomLevel;
+	}
+
+	/**
+	 * Tags are compared by reference first, which is sufficient for the shared tag instances of a map file. Otherwise
+	 * only the tag fields are compared, so the values of lazy tags are neither decoded nor part of the key, just like
+	 * in the matchers of a render theme.
+	 */
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
@@ -39,16 +79,25 @@ class MatchingCacheKey {
 			return false;
 		}
 		MatchingCacheKey other = (MatchingCacheKey) obj;
-		if (this.closed == null && other.closed != null) {
+		if (this.hashCodeValue != other.hashCodeValue) {
 			return false;
-		} else if (this.closed != null && !this.closed.equals(other.closed)) {
+		} else if (this.element != other.element) {
 			return false;
-		} else if (this.tags == null && other.tags != null) {
-			return false;
-		} else if (this.tags != null && !this.tags.equals(other.tags)) {
+		} else if (this.closed != other.closed) {
 			return false;
 		} else if (this.zoomLevel != other.zoomLevel) {
 			return false;
+		} else if (this.numberOfTags != other.numberOfTags) {
+			return false;
+		}
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			Tag tag = this.tags[i];
+			Tag otherTag = other.tags[i];
+			if (tag == otherTag) {
+				continue;
+			} else if (!equalsNullable(tag.key, otherTag.key) || !equalsNullable(tag.value, otherTag.value)) {
+				return false;
+			}
 		}
 		return true;
 	}
@@ -58,13 +107,51 @@ class MatchingCacheKey {
 		return this.hashCodeValue;
 	}
 
+	/**
+	 * @return an immutable copy of this key which can be stored in the cache.
+	 */
+	MatchingCacheKey copy() {
+		return new MatchingCacheKey(this);
+	}
+
+	/**
+	 * Sets this key to the given element. The tags are copied into a reused array.
+	 * 
+	 * @param newTags
+	 *            the tags of the element.
+	 * @param newElement
+	 *            the type of the element.
+	 * @param newClosed
+	 *            whether the element is a closed way, {@link Closed#ANY} for nodes.
+	 * @param newZoomLevel
+	 *            the zoom level at which the element is matched.
+	 */
+	void set(List<Tag> newTags, Element newElement, Closed newClosed, byte newZoomLevel) {
+		this.numberOfTags = newTags.size();
+		if (this.numberOfTags > this.tags.length) {
+			this.tags = new Tag[Math.max(this.numberOfTags, this.tags.length * 2)];
+		}
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			this.tags[i] = newTags.get(i);
+		}
+		this.element = newElement;
+		this.closed = newClosed;
+		this.zoomLevel = newZoomLevel;
+		this.hashCodeValue = calculateHashCode();
+	}
+
 	/**
 	 * @return the hash code of this object.
 	 */
 	private int calculateHashCode() {
 		int result = 7;
-		result = 31 * result + ((this.closed == null) ? 0 : this.closed.hashCode());
-		result = 31 * result + ((this.tags == null) ? 0 : this.tags.hashCode());
+		result = 31 * result + this.element.ordinal();
+		result = 31 * result + this.closed.ordinal();
+		for (int i = 0; i < this.numberOfTags; ++i) {
+			Tag tag = this.tags[i];
+			result = 31 * result + ((tag.key == null) ? 0 : tag.key.hashCode());
+			result = 31 * result + ((tag.value == null) ? 0 : tag.value.hashCode());
+		}
 		result = 31 * result + this.zoomLevel;
 		return result;
 	}
@@ -48,4 +48,11 @@ class MultiKeyMatcher implements AttributeMatcher {
 		}
 		return false;
 	}
+
+	/**
+	 * @return the keys which are accepted by this matcher.
+	 */
+	List<String> getKeys() {
+		return this.keys;
+	}
 }
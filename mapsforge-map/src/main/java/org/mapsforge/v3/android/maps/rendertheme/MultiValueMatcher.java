@@ -48,4 +48,11 @@ class MultiValueMatcher implements AttributeMatcher {
 		}
 		return false;
 	}
+
+	/**
+	 * @return the values which are accepted by this matcher.
+	 */
+	List<String> getValues() {
+		return this.values;
+	}
 }
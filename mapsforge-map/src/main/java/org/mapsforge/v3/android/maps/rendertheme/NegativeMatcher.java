@@ -46,6 +46,20 @@ class NegativeMatcher implements AttributeMatcher {
 		return false;
 	}
 
+	/**
+	 * @return the keys whose absence is accepted by this matcher.
+	 */
+	List<String> getKeys() {
+		return this.keyList;
+	}
+
+	/**
+	 * @return the values which are accepted by this matcher regardless of the keys.
+	 */
+	List<String> getValues() {
+		return this.valueList;
+	}
+
 	private boolean keyListDoesNotContainKeys(List<Tag> tags) {
 		for (int i = 0, n = tags.size(); i < n; ++i) {
 			if (this.keyList.contains(tags.get(i).key)) {
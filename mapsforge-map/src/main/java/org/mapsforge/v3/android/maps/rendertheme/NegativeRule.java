@@ -14,6 +14,7 @@
  */
 package org.mapsforge.v3.android.maps.rendertheme;
 
+import java.util.BitSet;
 import java.util.List;
 
 import org.mapsforge.v3.core.Tag;
@@ -28,12 +29,33 @@ class NegativeRule extends Rule {
 		this.attributeMatcher = attributeMatcher;
 	}
 
+	@Override
+	List<String> getIndexKeys() {
+		return null;
+	}
+
+	@Override
+	List<String> getIndexValues() {
+		return null;
+	}
+
+	@Override
+	BitSet getMatchingTagIds(Tag[] tags) {
+		// a negative rule also matches elements without any of its keys
+		return null;
+	}
+
 	@Override
 	boolean matchesNode(List<Tag> tags, byte zoomLevel) {
 		return this.zoomMin <= zoomLevel && this.zoomMax >= zoomLevel && this.elementMatcher.matches(Element.NODE)
 				&& this.attributeMatcher.matches(tags);
 	}
 
+	@Override
+	boolean matchesTags(List<Tag> tags) {
+		return this.attributeMatcher.matches(tags);
+	}
+
 	@Override
 	boolean matchesWay(List<Tag> tags, byte zoomLevel, Closed closed) {
 		return this.zoomMin <= zoomLevel && this.zoomMax >= zoomLevel && this.elementMatcher.matches(Element.WAY)
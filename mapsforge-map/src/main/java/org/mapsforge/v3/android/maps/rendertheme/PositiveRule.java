@@ -14,11 +14,20 @@
  */
 package org.mapsforge.v3.android.maps.rendertheme;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
 
 import org.mapsforge.v3.core.Tag;
 
 class PositiveRule extends Rule {
+	/**
+	 * The tags which are added by the map database in addition to those referenced by tag IDs.
+	 */
+	private static final List<Tag> IMPLICIT_TAGS = Arrays.asList(new Tag("addr:housenumber", null),
+			new Tag("ele", null), new Tag("name", null), new Tag("ref", null));
+
 	final AttributeMatcher keyMatcher;
 	final AttributeMatcher valueMatcher;
 
@@ -30,12 +39,53 @@ class PositiveRule extends Rule {
 		this.valueMatcher = valueMatcher;
 	}
 
+	@Override
+	List<String> getIndexKeys() {
+		if (this.keyMatcher instanceof SingleKeyMatcher) {
+			return Collections.singletonList(((SingleKeyMatcher) this.keyMatcher).getKey());
+		} else if (this.keyMatcher instanceof MultiKeyMatcher) {
+			return ((MultiKeyMatcher) this.keyMatcher).getKeys();
+		}
+		return null;
+	}
+
+	@Override
+	List<String> getIndexValues() {
+		if (this.valueMatcher instanceof SingleValueMatcher) {
+			return Collections.singletonList(((SingleValueMatcher) this.valueMatcher).getValue());
+		} else if (this.valueMatcher instanceof MultiValueMatcher) {
+			return ((MultiValueMatcher) this.valueMatcher).getValues();
+		}
+		return null;
+	}
+
+	@Override
+	BitSet getMatchingTagIds(Tag[] tags) {
+		if (this.keyMatcher.matches(IMPLICIT_TAGS)) {
+			// the rule matches any key or a key which is not represented by a tag ID
+			return null;
+		}
+
+		BitSet matchingTagIds = new BitSet(tags.length);
+		for (int tagId = 0; tagId < tags.length; ++tagId) {
+			if (this.keyMatcher.matches(Collections.singletonList(tags[tagId]))) {
+				matchingTagIds.set(tagId);
+			}
+		}
+		return matchingTagIds;
+	}
+
 	@Override
 	boolean matchesNode(List<Tag> tags, byte zoomLevel) {
 		return this.zoomMin <= zoomLevel && this.zoomMax >= zoomLevel && this.elementMatcher.matches(Element.NODE)
 				&& this.keyMatcher.matches(tags) && this.valueMatcher.matches(tags);
 	}
 
+	@Override
+	boolean matchesTags(List<Tag> tags) {
+		return this.keyMatcher.matches(tags) && this.valueMatcher.matches(tags);
+	}
+
 	@Override
 	boolean matchesWay(List<Tag> tags, byte zoomLevel, Closed closed) {
 		return this.zoomMin <= zoomLevel && this.zoomMax >= zoomLevel && this.elementMatcher.matches(Element.WAY)
@@ -15,20 +15,37 @@
 package org.mapsforge.v3.android.maps.rendertheme;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
 import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.CacheStatistics;
 import org.mapsforge.v3.core.LRUCache;
 import org.mapsforge.v3.core.Tag;
+import org.mapsforge.v3.map.reader.TagFilter;
+import org.mapsforge.v3.map.reader.header.MapFileInfo;
 import org.xml.sax.Attributes;
 
 import android.graphics.Color;
 
 /**
  * A RenderTheme defines how ways and nodes are drawn.
+ * <p>
+ * The rules are compiled into a {@link RuleIndex} per element type and zoom level when they are first matched, so that
+ * each element is only checked against the rules which may match its keys or values. The render instructions of
+ * recently matched tag combinations are kept in a matching cache for nodes and ways.
+ * <p>
+ * If the map file of the elements is known via {@link #setMapFileInfo(MapFileInfo)}, cache misses are matched via a
+ * {@link MatchTable} for the tags of that file instead, which replaces the string comparisons by bit set operations.
  */
 public class RenderTheme {
-	private static final int MATCHING_CACHE_SIZE = 512;
+	/**
+	 * The default number of tag combinations in the matching cache.
+	 */
+	public static final int DEFAULT_MATCHING_CACHE_SIZE = 512;
+
+	private static final int MATCH_TABLE_CACHE_SIZE = 4;
 	private static final int RENDER_THEME_VERSION = 1;
 
 	private static void validate(String elementName, Integer version, float baseStrokeWidth, float baseTextSize) {
@@ -74,9 +91,20 @@ public class RenderTheme {
 
 	private final float baseStrokeWidth;
 	private final float baseTextSize;
+	private final RuleIndex[] closedWayRuleIndexes;
 	private int levels;
+	private final RuleIndex[] linearWayRuleIndexes;
 	private final int mapBackground;
-	private final LRUCache<MatchingCacheKey, List<RenderInstruction>> matchingCache;
+	private MatchTable matchTable;
+	private final Map<MapFileInfo, MatchTable> matchTables;
+	private LRUCache<MatchingCacheKey, List<RenderInstruction>> matchingCache;
+	private long matchingCacheEvictions;
+	private long matchingCacheHits;
+	private final MatchingCacheKey matchingCacheKey;
+	private long matchingCacheMisses;
+	private int matchingCacheSize;
+	private final RuleIndex[] nodeRuleIndexes;
+	private final boolean[] ruleIndexesCompiled;
 	private final ArrayList<Rule> rulesList;
 
 	RenderTheme(int mapBackground, float baseStrokeWidth, float baseTextSize) {
@@ -84,7 +112,49 @@ public class RenderTheme {
 		this.baseStrokeWidth = baseStrokeWidth;
 		this.baseTextSize = baseTextSize;
 		this.rulesList = new ArrayList<Rule>();
-		this.matchingCache = new LRUCache<MatchingCacheKey, List<RenderInstruction>>(MATCHING_CACHE_SIZE);
+		this.matchingCacheSize = DEFAULT_MATCHING_CACHE_SIZE;
+		this.matchingCache = new LRUCache<MatchingCacheKey, List<RenderInstruction>>(this.matchingCacheSize);
+		this.matchingCacheKey = new MatchingCacheKey();
+		this.matchTables = new LRUCache<MapFileInfo, MatchTable>(MATCH_TABLE_CACHE_SIZE);
+		this.nodeRuleIndexes = new RuleIndex[Byte.MAX_VALUE + 1];
+		this.closedWayRuleIndexes = new RuleIndex[Byte.MAX_VALUE + 1];
+		this.linearWayRuleIndexes = new RuleIndex[Byte.MAX_VALUE + 1];
+		this.ruleIndexesCompiled = new boolean[Byte.MAX_VALUE + 1];
+	}
+
+	/**
+	 * Creates a tag filter which rejects all elements of the given map file that cannot trigger any render instruction
+	 * of this theme at the given zoom level. The filter is conservative: elements without tag IDs are only rejected if
+	 * no rule can match their implicit name, house number, reference or elevation tags.
+	 * 
+	 * @param mapFileInfo
+	 *            the metadata of the map file with the tags which are referenced by the tag IDs.
+	 * @param zoomLevel
+	 *            the zoom level at which the elements are rendered.
+	 * @return a new tag filter for the given map file.
+	 */
+	public TagFilter createTagFilter(MapFileInfo mapFileInfo, byte zoomLevel) {
+		TagFilter tagFilter = new TagFilter(mapFileInfo);
+
+		BitSet poiTagIds = getRequiredTagIds(mapFileInfo.poiTags, Element.NODE, zoomLevel);
+		if (poiTagIds == null) {
+			tagFilter.acceptAllPois();
+		} else {
+			for (int tagId = poiTagIds.nextSetBit(0); tagId >= 0; tagId = poiTagIds.nextSetBit(tagId + 1)) {
+				tagFilter.acceptPoiTagId(tagId);
+			}
+		}
+
+		BitSet wayTagIds = getRequiredTagIds(mapFileInfo.wayTags, Element.WAY, zoomLevel);
+		if (wayTagIds == null) {
+			tagFilter.acceptAllWays();
+		} else {
+			for (int tagId = wayTagIds.nextSetBit(0); tagId >= 0; tagId = wayTagIds.nextSetBit(tagId + 1)) {
+				tagFilter.acceptWayTagId(tagId);
+			}
+		}
+
+		return tagFilter;
 	}
 
 	/**
@@ -92,6 +162,8 @@ public class RenderTheme {
 	 */
 	public void destroy() {
 		this.matchingCache.clear();
+		this.matchTables.clear();
+		this.matchTable = null;
 		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
 			this.rulesList.get(i).onDestroy();
 		}
@@ -112,6 +184,14 @@ public class RenderTheme {
 		return this.mapBackground;
 	}
 
+	/**
+	 * @return the statistics of the matching cache since this RenderTheme has been created.
+	 */
+	public CacheStatistics getMatchingCacheStatistics() {
+		return new CacheStatistics(this.matchingCacheHits, this.matchingCacheMisses, this.matchingCacheEvictions,
+				this.matchingCache.size(), this.matchingCacheSize);
+	}
+
 	/**
 	 * Matches a closed way with the given parameters against this RenderTheme.
 	 * 
@@ -151,9 +231,28 @@ public class RenderTheme {
 	 *            the zoom level at which the node should be matched.
 	 */
 	public void matchNode(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel) {
-		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
-			this.rulesList.get(i).matchNode(renderCallback, tags, zoomLevel);
+		List<RenderInstruction> matchingList = getCachedRenderInstructions(tags, Element.NODE, Closed.ANY, zoomLevel);
+		if (matchingList != null) {
+			// cache hit
+			for (int i = 0, n = matchingList.size(); i < n; ++i) {
+				matchingList.get(i).renderNode(renderCallback, tags);
+			}
+			return;
+		}
+
+		// cache miss
+		matchingList = new ArrayList<RenderInstruction>();
+		if (this.matchTable != null) {
+			this.matchTable.matchNode(renderCallback, tags, zoomLevel, matchingList);
+		} else if (zoomLevel >= 0) {
+			compileRules(zoomLevel);
+			RuleIndex ruleIndex = this.nodeRuleIndexes[zoomLevel];
+			if (ruleIndex != null) {
+				ruleIndex.matchNode(renderCallback, tags, matchingList);
+			}
 		}
+
+		putCachedRenderInstructions(matchingList);
 	}
 
 	/**
@@ -180,10 +279,78 @@ public class RenderTheme {
 		}
 	}
 
-	private void matchWay(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel, Closed closed) {
-		MatchingCacheKey matchingCacheKey = new MatchingCacheKey(tags, zoomLevel, closed);
+	/**
+	 * Sets the map file whose elements are matched next. Elements which are not in the matching cache are then
+	 * matched via a table for the tags of this file, which is created on first use and kept for the last few map
+	 * files. Elements from other sources may still be matched, their tags are looked up by key and value.
+	 * 
+	 * @param mapFileInfo
+	 *            the metadata of the map file, or null to match elements via the compiled rules.
+	 */
+	public void setMapFileInfo(MapFileInfo mapFileInfo) {
+		if (mapFileInfo == null) {
+			this.matchTable = null;
+			return;
+		}
+
+		MatchTable mapFileMatchTable = this.matchTables.get(mapFileInfo);
+		if (mapFileMatchTable == null) {
+			mapFileMatchTable = new MatchTable(this.rulesList, mapFileInfo.poiTags, mapFileInfo.wayTags);
+			this.matchTables.put(mapFileInfo, mapFileMatchTable);
+		}
+		this.matchTable = mapFileMatchTable;
+	}
+
+	/**
+	 * Sets the maximum number of tag combinations in the matching cache and clears it. Its statistics are retained.
+	 * 
+	 * @param matchingCacheSize
+	 *            the new size of the matching cache, zero to disable it.
+	 * @throws IllegalArgumentException
+	 *             if the size is negative.
+	 */
+	public void setMatchingCacheSize(int matchingCacheSize) {
+		if (matchingCacheSize < 0) {
+			throw new IllegalArgumentException("matching cache size must not be negative: " + matchingCacheSize);
+		}
+		this.matchingCacheSize = matchingCacheSize;
+		this.matchingCache = new LRUCache<MatchingCacheKey, List<RenderInstruction>>(matchingCacheSize);
+	}
+
+	/**
+	 * Compiles the rules for all element types at the given zoom level, unless this has already been done.
+	 */
+	private void compileRules(byte zoomLevel) {
+		if (!this.ruleIndexesCompiled[zoomLevel]) {
+			this.nodeRuleIndexes[zoomLevel] = RuleIndex.create(this.rulesList, Element.NODE, Closed.ANY, zoomLevel);
+			this.closedWayRuleIndexes[zoomLevel] = RuleIndex.create(this.rulesList, Element.WAY, Closed.YES,
+					zoomLevel);
+			this.linearWayRuleIndexes[zoomLevel] = RuleIndex.create(this.rulesList, Element.WAY, Closed.NO,
+					zoomLevel);
+			this.ruleIndexesCompiled[zoomLevel] = true;
+		}
+	}
+
+	/**
+	 * Looks up the render instructions of the given element in the matching cache. The reused key is left set to the
+	 * element, so that a following {@link #putCachedRenderInstructions(List)} can store the result of a cache miss.
+	 * 
+	 * @return the cached render instructions, or null in case of a cache miss.
+	 */
+	private List<RenderInstruction> getCachedRenderInstructions(List<Tag> tags, Element element, Closed closed,
+			byte zoomLevel) {
+		this.matchingCacheKey.set(tags, element, closed, zoomLevel);
+		List<RenderInstruction> matchingList = this.matchingCache.get(this.matchingCacheKey);
+		if (matchingList == null) {
+			++this.matchingCacheMisses;
+		} else {
+			++this.matchingCacheHits;
+		}
+		return matchingList;
+	}
 
-		List<RenderInstruction> matchingList = this.matchingCache.get(matchingCacheKey);
+	private void matchWay(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel, Closed closed) {
+		List<RenderInstruction> matchingList = getCachedRenderInstructions(tags, Element.WAY, closed, zoomLevel);
 		if (matchingList != null) {
 			// cache hit
 			for (int i = 0, n = matchingList.size(); i < n; ++i) {
@@ -194,11 +361,36 @@ public class RenderTheme {
 
 		// cache miss
 		matchingList = new ArrayList<RenderInstruction>();
-		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
-			this.rulesList.get(i).matchWay(renderCallback, tags, zoomLevel, closed, matchingList);
+		if (this.matchTable != null) {
+			this.matchTable.matchWay(renderCallback, tags, zoomLevel, closed, matchingList);
+		} else if (zoomLevel >= 0) {
+			compileRules(zoomLevel);
+			RuleIndex ruleIndex;
+			if (closed == Closed.YES) {
+				ruleIndex = this.closedWayRuleIndexes[zoomLevel];
+			} else {
+				ruleIndex = this.linearWayRuleIndexes[zoomLevel];
+			}
+			if (ruleIndex != null) {
+				ruleIndex.matchWay(renderCallback, tags, matchingList);
+			}
 		}
 
-		this.matchingCache.put(matchingCacheKey, matchingList);
+		putCachedRenderInstructions(matchingList);
+	}
+
+	/**
+	 * Stores the given render instructions in the matching cache under a copy of the current key.
+	 */
+	private void putCachedRenderInstructions(List<RenderInstruction> matchingList) {
+		if (this.matchingCacheSize == 0) {
+			return;
+		}
+		int size = this.matchingCache.size();
+		this.matchingCache.put(this.matchingCacheKey.copy(), matchingList);
+		if (this.matchingCache.size() == size) {
+			++this.matchingCacheEvictions;
+		}
 	}
 
 	void addRule(Rule rule) {
@@ -212,6 +404,30 @@ public class RenderTheme {
 		}
 	}
 
+	/**
+	 * Calculates the tags of which an element needs at least one to trigger any render instruction of this theme.
+	 * 
+	 * @param tags
+	 *            the tags of a map file, indexed by their tag IDs.
+	 * @param element
+	 *            the type of the elements.
+	 * @param zoomLevel
+	 *            the zoom level at which the elements are matched.
+	 * @return the IDs of the required tags, or null if elements without any of these tags may be rendered as well.
+	 * @see Rule#getRequiredTagIds(Tag[], Element, byte)
+	 */
+	BitSet getRequiredTagIds(Tag[] tags, Element element, byte zoomLevel) {
+		BitSet requiredTagIds = new BitSet(tags.length);
+		for (int i = 0, n = this.rulesList.size(); i < n; ++i) {
+			BitSet tagIds = this.rulesList.get(i).getRequiredTagIds(tags, element, zoomLevel);
+			if (tagIds == null) {
+				return null;
+			}
+			requiredTagIds.or(tagIds);
+		}
+		return requiredTagIds;
+	}
+
 	void setLevels(int levels) {
 		this.levels = levels;
 	}
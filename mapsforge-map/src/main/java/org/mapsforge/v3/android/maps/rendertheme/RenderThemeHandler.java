@@ -53,6 +53,9 @@ public final class RenderThemeHandler extends DefaultHandler {
 	private static final String UNEXPECTED_ELEMENT = "unexpected element: ";
 
 	/**
+	 * Parses the given render theme. Only one theme is parsed at a time, as the rules share a cache for their
+	 * matchers during parsing.
+	 * 
 	 * @param jobTheme
 	 *            the JobTheme to create a RenderTheme from.
 	 * @return a new RenderTheme which is created by parsing the XML data from the input stream.
@@ -63,8 +66,8 @@ public final class RenderThemeHandler extends DefaultHandler {
 	 * @throws IOException
 	 *             if an I/O error occurs while reading from the input stream.
 	 */
-	public static RenderTheme getRenderTheme(JobTheme jobTheme) throws SAXException, ParserConfigurationException,
-			IOException {
+	public static synchronized RenderTheme getRenderTheme(JobTheme jobTheme) throws SAXException,
+			ParserConfigurationException, IOException {
 		RenderThemeHandler renderThemeHandler = new RenderThemeHandler(jobTheme.getRelativePathPrefix());
 		XMLReader xmlReader = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
 		xmlReader.setContentHandler(renderThemeHandler);
@@ -16,6 +16,7 @@ package org.mapsforge.v3.android.maps.rendertheme;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -169,11 +170,10 @@ abstract class Rule {
 		return createRule(ruleStack, element, keys, values, closed, zoomMin, zoomMax);
 	}
 
-	private final ArrayList<RenderInstruction> renderInstructions;
-	private final ArrayList<Rule> subRules;
-
 	final ClosedMatcher closedMatcher;
 	final ElementMatcher elementMatcher;
+	final ArrayList<RenderInstruction> renderInstructions;
+	final ArrayList<Rule> subRules;
 	final byte zoomMax;
 	final byte zoomMin;
 
@@ -195,8 +195,83 @@ abstract class Rule {
 		this.subRules.add(rule);
 	}
 
+	/**
+	 * @return the keys of which an element needs at least one to match this rule, or null if this rule may match
+	 *         elements with any keys.
+	 */
+	abstract List<String> getIndexKeys();
+
+	/**
+	 * @return the values of which an element needs at least one to match this rule, or null if this rule may match
+	 *         elements with any values.
+	 */
+	abstract List<String> getIndexValues();
+
+	/**
+	 * @param tags
+	 *            the tags of a map file, indexed by their tag IDs.
+	 * @return the IDs of the tags of which an element needs at least one to match this rule, or null if this rule may
+	 *         match elements without any of these tags.
+	 */
+	abstract BitSet getMatchingTagIds(Tag[] tags);
+
+	/**
+	 * Calculates the tags of which an element needs at least one to trigger any render instruction of this rule or its
+	 * sub-rules. The result is conservative, an element may contain such a tag and still not be rendered.
+	 * 
+	 * @param tags
+	 *            the tags of a map file, indexed by their tag IDs.
+	 * @param element
+	 *            the type of the elements.
+	 * @param zoomLevel
+	 *            the zoom level at which the elements are matched.
+	 * @return the IDs of the required tags, or null if elements without any of these tags may be rendered as well.
+	 */
+	BitSet getRequiredTagIds(Tag[] tags, Element element, byte zoomLevel) {
+		if (this.zoomMin > zoomLevel || this.zoomMax < zoomLevel || !this.elementMatcher.matches(element)) {
+			return new BitSet();
+		}
+
+		// the render instructions of this rule are reached by all elements which match it
+		BitSet subRuleTagIds = null;
+		if (this.renderInstructions.isEmpty()) {
+			subRuleTagIds = new BitSet();
+			for (int i = 0, n = this.subRules.size(); i < n; ++i) {
+				BitSet tagIds = this.subRules.get(i).getRequiredTagIds(tags, element, zoomLevel);
+				if (tagIds == null) {
+					subRuleTagIds = null;
+					break;
+				}
+				subRuleTagIds.or(tagIds);
+			}
+			if (subRuleTagIds != null && subRuleTagIds.isEmpty()) {
+				// no element can be rendered via this rule
+				return subRuleTagIds;
+			}
+		}
+
+		// this rule and one of its sub-rules must both match, so either condition is sufficient
+		BitSet matchingTagIds = getMatchingTagIds(tags);
+		if (matchingTagIds == null) {
+			return subRuleTagIds;
+		} else if (subRuleTagIds == null || matchingTagIds.cardinality() <= subRuleTagIds.cardinality()) {
+			return matchingTagIds;
+		}
+		return subRuleTagIds;
+	}
+
 	abstract boolean matchesNode(List<Tag> tags, byte zoomLevel);
 
+	/**
+	 * Checks only the key and value conditions of this rule, regardless of the element type, the zoom level and
+	 * whether the way is closed.
+	 * 
+	 * @param tags
+	 *            the tags of the element.
+	 * @return true if the tags match this rule, false otherwise.
+	 */
+	abstract boolean matchesTags(List<Tag> tags);
+
 	abstract boolean matchesWay(List<Tag> tags, byte zoomLevel, Closed closed);
 
 	void matchNode(RenderCallback renderCallback, List<Tag> tags, byte zoomLevel) {
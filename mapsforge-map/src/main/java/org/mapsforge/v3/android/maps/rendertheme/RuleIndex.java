@@ -0,0 +1,215 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * A compiled list of sibling rules for one element type and zoom level.
+ * <p>
+ * Only the rules which can trigger a render instruction for the element type and zoom level are kept. The rules are
+ * indexed by the keys or values which they require, so matching an element only evaluates the rules that contain one
+ * of its keys or values and the rules without such a requirement. The rules are still evaluated in the order of the
+ * render theme, which keeps the order of the render instructions unchanged.
+ * <p>
+ * Matching uses a reused bit set and is therefore not thread-safe.
+ */
+final class RuleIndex {
+	private static final int BITS_PER_WORD = 64;
+
+	private static void addToIndex(Map<String, long[]> index, List<String> strings, int ruleIndex, int words) {
+		for (int i = 0, n = strings.size(); i < n; ++i) {
+			long[] bits = index.get(strings.get(i));
+			if (bits == null) {
+				bits = new long[words];
+				index.put(strings.get(i), bits);
+			}
+			setBit(bits, ruleIndex);
+		}
+	}
+
+	private static void or(long[] target, long[] bits) {
+		if (bits != null) {
+			for (int i = 0; i < target.length; ++i) {
+				target[i] |= bits[i];
+			}
+		}
+	}
+
+	private static void setBit(long[] bits, int index) {
+		bits[index / BITS_PER_WORD] |= 1L << (index % BITS_PER_WORD);
+	}
+
+	/**
+	 * Compiles the given rules for the given element type and zoom level.
+	 * 
+	 * @param rules
+	 *            the sibling rules in the order of the render theme.
+	 * @param element
+	 *            the type of the elements which are matched.
+	 * @param closed
+	 *            whether the matched ways are closed, ignored for nodes.
+	 * @param zoomLevel
+	 *            the zoom level at which the elements are matched.
+	 * @return the compiled rules, or null if none of the rules can trigger a render instruction.
+	 */
+	static RuleIndex create(List<Rule> rules, Element element, Closed closed, byte zoomLevel) {
+		List<Rule> indexedRules = new ArrayList<Rule>();
+		List<RuleIndex> indexedSubRules = new ArrayList<RuleIndex>();
+		for (int i = 0, n = rules.size(); i < n; ++i) {
+			Rule rule = rules.get(i);
+			if (rule.zoomMin > zoomLevel || rule.zoomMax < zoomLevel || !rule.elementMatcher.matches(element)) {
+				continue;
+			} else if (element == Element.WAY && !rule.closedMatcher.matches(closed)) {
+				continue;
+			}
+
+			RuleIndex subRuleIndex = create(rule.subRules, element, closed, zoomLevel);
+			if (subRuleIndex != null || !rule.renderInstructions.isEmpty()) {
+				indexedRules.add(rule);
+				indexedSubRules.add(subRuleIndex);
+			}
+		}
+
+		if (indexedRules.isEmpty()) {
+			return null;
+		}
+		return new RuleIndex(indexedRules, indexedSubRules);
+	}
+
+	private final long[] candidates;
+	private final Map<String, long[]> keyIndex;
+	private final RenderInstruction[][] renderInstructions;
+	private final Rule[] rules;
+	private final RuleIndex[] subRuleIndexes;
+	private final long[] unindexedRules;
+	private final Map<String, long[]> valueIndex;
+
+	private RuleIndex(List<Rule> rules, List<RuleIndex> subRuleIndexes) {
+		int numberOfRules = rules.size();
+		int words = (numberOfRules + BITS_PER_WORD - 1) / BITS_PER_WORD;
+		this.rules = rules.toArray(new Rule[numberOfRules]);
+		this.subRuleIndexes = subRuleIndexes.toArray(new RuleIndex[numberOfRules]);
+		this.renderInstructions = new RenderInstruction[numberOfRules][];
+		this.candidates = new long[words];
+		this.unindexedRules = new long[words];
+		this.keyIndex = new HashMap<String, long[]>();
+		this.valueIndex = new HashMap<String, long[]>();
+
+		for (int i = 0; i < numberOfRules; ++i) {
+			Rule rule = this.rules[i];
+			List<RenderInstruction> ruleRenderInstructions = rule.renderInstructions;
+			this.renderInstructions[i] = ruleRenderInstructions.toArray(new RenderInstruction[ruleRenderInstructions
+					.size()]);
+
+			// both conditions are necessary for a match, so checking one of them is sufficient
+			List<String> keys = rule.getIndexKeys();
+			List<String> values = rule.getIndexValues();
+			if (keys != null) {
+				addToIndex(this.keyIndex, keys, i, words);
+			} else if (values != null) {
+				addToIndex(this.valueIndex, values, i, words);
+			} else {
+				setBit(this.unindexedRules, i);
+			}
+		}
+	}
+
+	/**
+	 * Executes the render instructions of all rules which match the given node.
+	 * 
+	 * @param renderCallback
+	 *            the callback implementation which will be executed on each match.
+	 * @param tags
+	 *            the tags of the node.
+	 * @param matchingList
+	 *            the list to which all executed render instructions are added.
+	 */
+	void matchNode(RenderCallback renderCallback, List<Tag> tags, List<RenderInstruction> matchingList) {
+		findCandidates(tags);
+		for (int word = 0; word < this.candidates.length; ++word) {
+			long bits = this.candidates[word];
+			while (bits != 0) {
+				int i = word * BITS_PER_WORD + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (this.rules[i].matchesTags(tags)) {
+					RenderInstruction[] ruleRenderInstructions = this.renderInstructions[i];
+					for (int j = 0; j < ruleRenderInstructions.length; ++j) {
+						ruleRenderInstructions[j].renderNode(renderCallback, tags);
+						matchingList.add(ruleRenderInstructions[j]);
+					}
+					if (this.subRuleIndexes[i] != null) {
+						this.subRuleIndexes[i].matchNode(renderCallback, tags, matchingList);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Executes the render instructions of all rules which match the given way.
+	 * 
+	 * @param renderCallback
+	 *            the callback implementation which will be executed on each match.
+	 * @param tags
+	 *            the tags of the way.
+	 * @param matchingList
+	 *            the list to which all executed render instructions are added.
+	 */
+	void matchWay(RenderCallback renderCallback, List<Tag> tags, List<RenderInstruction> matchingList) {
+		findCandidates(tags);
+		for (int word = 0; word < this.candidates.length; ++word) {
+			long bits = this.candidates[word];
+			while (bits != 0) {
+				int i = word * BITS_PER_WORD + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+				if (this.rules[i].matchesTags(tags)) {
+					RenderInstruction[] ruleRenderInstructions = this.renderInstructions[i];
+					for (int j = 0; j < ruleRenderInstructions.length; ++j) {
+						ruleRenderInstructions[j].renderWay(renderCallback, tags);
+						matchingList.add(ruleRenderInstructions[j]);
+					}
+					if (this.subRuleIndexes[i] != null) {
+						this.subRuleIndexes[i].matchWay(renderCallback, tags, matchingList);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks all rules which may match the given tags in the reused candidate bit set.
+	 */
+	private void findCandidates(List<Tag> tags) {
+		System.arraycopy(this.unindexedRules, 0, this.candidates, 0, this.candidates.length);
+		boolean hasKeyIndex = !this.keyIndex.isEmpty();
+		boolean hasValueIndex = !this.valueIndex.isEmpty();
+		for (int i = 0, n = tags.size(); i < n; ++i) {
+			Tag tag = tags.get(i);
+			if (hasKeyIndex) {
+				or(this.candidates, this.keyIndex.get(tag.key));
+			}
+			if (hasValueIndex) {
+				or(this.candidates, this.valueIndex.get(tag.value));
+			}
+		}
+	}
+}
@@ -40,4 +40,11 @@ class SingleKeyMatcher implements AttributeMatcher {
 		}
 		return false;
 	}
+
+	/**
+	 * @return the key which is accepted by this matcher.
+	 */
+	String getKey() {
+		return this.key;
+	}
 }
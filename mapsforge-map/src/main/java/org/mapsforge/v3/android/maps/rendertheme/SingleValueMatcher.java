@@ -40,4 +40,11 @@ class SingleValueMatcher implements AttributeMatcher {
 		}
 		return false;
 	}
+
+	/**
+	 * @return the value which is accepted by this matcher.
+	 */
+	String getValue() {
+		return this.value;
+	}
 }
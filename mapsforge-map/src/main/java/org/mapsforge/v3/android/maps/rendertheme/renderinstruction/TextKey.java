@@ -51,7 +51,8 @@ final class TextKey {
 	String getValue(List<Tag> tags) {
 		for (int i = 0, n = tags.size(); i < n; ++i) {
 			if (this.key.equals(tags.get(i).key)) {
-				return tags.get(i).value;
+				// decode lazy values like names only if they are actually needed
+				return tags.get(i).getValue();
 			}
 		}
 		return null;
@@ -0,0 +1,278 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.v3.android.maps.mapgenerator.databaserenderer.LabelPlacement.ReferencePosition;
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * Tests the greedy label selection of the {@link LabelPlacement} class against the former implementation with
+ * {@link PriorityQueue PriorityQueues}.
+ */
+public class LabelPlacementTest {
+	private static final Comparator<ReferencePosition> BOTTOM_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.y < y.y) {
+				return -1;
+			}
+
+			if (x.y > y.y) {
+				return 1;
+			}
+
+			return 0;
+		}
+	};
+
+	/**
+	 * The fraction of reference positions which are invalid, for example because they overlap with a symbol.
+	 */
+	private static final double INVALID_FRACTION = 0.2;
+
+	private static final Comparator<ReferencePosition> LEFT_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.x < y.x) {
+				return -1;
+			}
+
+			if (x.x > y.x) {
+				return 1;
+			}
+
+			return 0;
+		}
+	};
+
+	private static final int NUMBER_OF_SETS = 3000;
+
+	private static final Comparator<ReferencePosition> RIGHT_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.x + x.width < y.x + y.width) {
+				return -1;
+			}
+
+			if (x.x + x.width > y.x + y.width) {
+				return 1;
+			}
+
+			return 0;
+		}
+	};
+
+	private static final Comparator<ReferencePosition> TOP_EDGE_COMPARATOR = new Comparator<ReferencePosition>() {
+		@Override
+		public int compare(ReferencePosition x, ReferencePosition y) {
+			if (x.y - x.height < y.y - y.height) {
+				return -1;
+			}
+
+			if (x.y - x.height > y.y - y.height) {
+				return 1;
+			}
+			return 0;
+		}
+	};
+
+	/**
+	 * Creates random reference positions for the given number of labels. If the coordinates are integral, many
+	 * positions have equal keys, so that the order of equal elements in the heaps is tested as well.
+	 */
+	private static ReferencePosition[] createReferencePositions(Random random, int labels, int positionsPerLabel,
+			boolean integral) {
+		ReferencePosition[] refPos = new ReferencePosition[labels * positionsPerLabel];
+		for (int label = 0; label < labels; ++label) {
+			float x;
+			float y;
+			float width;
+			float height;
+			float symbolSize;
+			if (integral) {
+				x = random.nextInt(Tile.TILE_SIZE / 4) * 4;
+				y = random.nextInt(Tile.TILE_SIZE / 4) * 4;
+				width = 8 << random.nextInt(3);
+				height = 4 << random.nextInt(2);
+				symbolSize = 8 << random.nextInt(2);
+			} else {
+				x = random.nextFloat() * Tile.TILE_SIZE;
+				y = random.nextFloat() * Tile.TILE_SIZE;
+				width = 20 + random.nextInt(60);
+				height = 10 + random.nextInt(6);
+				symbolSize = 8 + random.nextInt(16);
+			}
+
+			float[] positionsX;
+			float[] positionsY;
+			if (positionsPerLabel == 4) {
+				positionsX = new float[] { x - width / 2, x - width / 2, x - symbolSize / 2 - width,
+						x + symbolSize / 2 };
+				positionsY = new float[] { y - symbolSize / 2, y + symbolSize / 2 + height, y + height / 2,
+						y + height / 2 - 0.1f };
+			} else {
+				positionsX = new float[] { x - width / 2 - 0.1f, x - width / 2 };
+				positionsY = new float[] { y - height - symbolSize / 2, y + symbolSize / 2 };
+			}
+
+			for (int i = 0; i < positionsPerLabel; ++i) {
+				if (random.nextDouble() >= INVALID_FRACTION) {
+					refPos[label * positionsPerLabel + i] = new ReferencePosition(positionsX[i], positionsY[i], label,
+							width, height, null);
+				}
+			}
+		}
+		return refPos;
+	}
+
+	/**
+	 * Removes the candidates from the sweep queue which overlap with the placed position from the other queue, like
+	 * the former implementation.
+	 */
+	private static void removeOverlapping(ReferencePosition placed, PriorityQueue<ReferencePosition> sweepQueue,
+			PriorityQueue<ReferencePosition> otherQueue) {
+		LinkedList<ReferencePosition> linkedRef = new LinkedList<ReferencePosition>();
+		while (sweepQueue.size() != 0) {
+			if (sweepQueue.peek().x < placed.x + placed.width) {
+				linkedRef.add(sweepQueue.remove());
+			} else {
+				break;
+			}
+		}
+
+		for (int i = 0; i < linkedRef.size(); i++) {
+			if ((linkedRef.get(i).x <= placed.x + placed.width)
+					&& (linkedRef.get(i).y >= placed.y - linkedRef.get(i).height)
+					&& (linkedRef.get(i).y <= placed.y + linkedRef.get(i).height)) {
+				otherQueue.remove(linkedRef.get(i));
+				linkedRef.remove(i);
+				i--;
+			}
+		}
+		sweepQueue.addAll(linkedRef);
+	}
+
+	/**
+	 * Selects the label positions with the former implementation of the four point greedy strategy.
+	 */
+	private static List<ReferencePosition> selectFourPointGreedyPriorityQueue(ReferencePosition[] refPos) {
+		List<ReferencePosition> placedPositions = new ArrayList<ReferencePosition>();
+		PriorityQueue<ReferencePosition> priorUp = new PriorityQueue<ReferencePosition>(refPos.length * 2 + 1,
+				BOTTOM_EDGE_COMPARATOR);
+		PriorityQueue<ReferencePosition> priorDown = new PriorityQueue<ReferencePosition>(refPos.length * 2 + 1,
+				TOP_EDGE_COMPARATOR);
+
+		for (int i = 0; i < refPos.length; i++) {
+			if (refPos[i] != null) {
+				priorUp.add(refPos[i]);
+				priorDown.add(refPos[i]);
+			}
+		}
+
+		while (priorUp.size() != 0) {
+			ReferencePosition referencePosition = priorUp.remove();
+			placedPositions.add(referencePosition);
+
+			if (priorUp.size() == 0) {
+				return placedPositions;
+			}
+
+			for (int i = 0; i < 4; ++i) {
+				priorUp.remove(refPos[referencePosition.nodeNumber * 4 + i]);
+			}
+			for (int i = 0; i < 4; ++i) {
+				priorDown.remove(refPos[referencePosition.nodeNumber * 4 + i]);
+			}
+
+			removeOverlapping(referencePosition, priorDown, priorUp);
+		}
+
+		return placedPositions;
+	}
+
+	/**
+	 * Selects the label positions with the former implementation of the two point greedy strategy.
+	 */
+	private static List<ReferencePosition> selectTwoPointGreedyPriorityQueue(ReferencePosition[] refPos) {
+		List<ReferencePosition> placedPositions = new ArrayList<ReferencePosition>();
+		PriorityQueue<ReferencePosition> priorRight = new PriorityQueue<ReferencePosition>(refPos.length + 1,
+				RIGHT_EDGE_COMPARATOR);
+		PriorityQueue<ReferencePosition> priorLeft = new PriorityQueue<ReferencePosition>(refPos.length + 1,
+				LEFT_EDGE_COMPARATOR);
+
+		for (int i = 0; i < refPos.length; i++) {
+			if (refPos[i] != null) {
+				priorLeft.add(refPos[i]);
+				priorRight.add(refPos[i]);
+			}
+		}
+
+		while (priorRight.size() != 0) {
+			ReferencePosition referencePosition = priorRight.remove();
+			placedPositions.add(referencePosition);
+
+			priorRight.remove(refPos[referencePosition.nodeNumber * 2 + 1]);
+
+			if (priorRight.size() == 0) {
+				return placedPositions;
+			}
+
+			priorLeft.remove(referencePosition);
+			priorLeft.remove(refPos[referencePosition.nodeNumber * 2 + 1]);
+
+			removeOverlapping(referencePosition, priorLeft, priorRight);
+		}
+
+		return placedPositions;
+	}
+
+	/**
+	 * Tests that {@link LabelPlacement#selectFourPointGreedy} places the same positions in the same order as the
+	 * former implementation.
+	 */
+	@Test
+	public void selectFourPointGreedyTest() {
+		Random random = new Random(1);
+		for (int i = 0; i < NUMBER_OF_SETS; ++i) {
+			ReferencePosition[] refPos = createReferencePositions(random, random.nextInt(60), 4, i % 2 == 0);
+			List<ReferencePosition> expected = selectFourPointGreedyPriorityQueue(refPos);
+			Assert.assertEquals(expected, LabelPlacement.selectFourPointGreedy(refPos));
+		}
+	}
+
+	/**
+	 * Tests that {@link LabelPlacement#selectTwoPointGreedy} places the same positions in the same order as the
+	 * former implementation.
+	 */
+	@Test
+	public void selectTwoPointGreedyTest() {
+		Random random = new Random(2);
+		for (int i = 0; i < NUMBER_OF_SETS; ++i) {
+			ReferencePosition[] refPos = createReferencePositions(random, random.nextInt(60), 2, i % 2 == 0);
+			List<ReferencePosition> expected = selectTwoPointGreedyPriorityQueue(refPos);
+			Assert.assertEquals(expected, LabelPlacement.selectTwoPointGreedy(refPos));
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.mapgenerator.databaserenderer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.v3.core.Tile;
+
+/**
+ * Tests the {@link RectangleGrid} class against comparing all pairs of rectangles.
+ */
+public class RectangleGridTest {
+	private static final int MAXIMUM = 2 * Tile.TILE_SIZE;
+	private static final int MINIMUM = -Tile.TILE_SIZE;
+	private static final int NUMBER_OF_RECTANGLES = 1000;
+
+	/**
+	 * Creates a random coordinate, which is often next to the border of a grid cell.
+	 */
+	private static int createCoordinate(Random random, int range) {
+		int coordinate = MINIMUM - range + random.nextInt(MAXIMUM - MINIMUM + 2 * range);
+		if (random.nextBoolean()) {
+			return coordinate / 16 * 16 - 1 + random.nextInt(3);
+		}
+		return coordinate;
+	}
+
+	private static int[] createRectangle(Random random, int range, int maximumSize) {
+		int left = createCoordinate(random, range);
+		int top = createCoordinate(random, range);
+		return new int[] { left, top, left + random.nextInt(maximumSize + 1), top + random.nextInt(maximumSize + 1) };
+	}
+
+	private static boolean intersectsAny(List<int[]> rectangles, int[] rectangle) {
+		for (int[] other : rectangles) {
+			if (rectangle[0] < other[2] && other[0] < rectangle[2] && rectangle[1] < other[3]
+					&& other[1] < rectangle[3]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tests the {@link RectangleGrid#intersects} method with random rectangles of different sizes, some of which are
+	 * empty, touch each other or lie outside of the grid.
+	 */
+	@Test
+	public void intersectsTest() {
+		Random random = new Random(1);
+		RectangleGrid rectangleGrid = new RectangleGrid(MINIMUM, MAXIMUM);
+		List<int[]> rectangles = new ArrayList<int[]>();
+
+		int intersections = 0;
+		for (int maximumSize : new int[] { 0, 8, 40, 200, 2000 }) {
+			for (int range : new int[] { 0, Tile.TILE_SIZE }) {
+				rectangleGrid.clear();
+				rectangles.clear();
+				for (int i = 0; i < NUMBER_OF_RECTANGLES; ++i) {
+					int[] rectangle = createRectangle(random, range, maximumSize);
+					boolean expected = intersectsAny(rectangles, rectangle);
+					Assert.assertEquals(expected, rectangleGrid.intersects(rectangle[0], rectangle[1], rectangle[2],
+							rectangle[3]));
+
+					if (expected) {
+						++intersections;
+					}
+					if (!expected || random.nextInt(4) == 0) {
+						rectangleGrid.add(rectangle[0], rectangle[1], rectangle[2], rectangle[3]);
+						rectangles.add(rectangle);
+					}
+				}
+			}
+		}
+		Assert.assertTrue(intersections > 0);
+	}
+
+	/**
+	 * Tests that rectangles which only touch each other do not intersect and that {@link RectangleGrid#clear} removes
+	 * all rectangles.
+	 */
+	@Test
+	public void touchingTest() {
+		RectangleGrid rectangleGrid = new RectangleGrid(MINIMUM, MAXIMUM);
+		Assert.assertFalse(rectangleGrid.intersects(0, 0, 10, 10));
+
+		rectangleGrid.add(0, 0, 32, 32);
+		Assert.assertTrue(rectangleGrid.intersects(31, 31, 40, 40));
+		Assert.assertFalse(rectangleGrid.intersects(32, 0, 64, 32));
+		Assert.assertFalse(rectangleGrid.intersects(0, 32, 32, 64));
+		Assert.assertFalse(rectangleGrid.intersects(-10, -10, 0, 0));
+
+		rectangleGrid.clear();
+		Assert.assertFalse(rectangleGrid.intersects(0, 0, 32, 32));
+	}
+}
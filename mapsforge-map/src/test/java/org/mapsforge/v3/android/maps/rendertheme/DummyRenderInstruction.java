@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.util.List;
+
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * Replaces the render instructions of a theme, which need Android to be created, and counts how often it is executed.
+ */
+class DummyRenderInstruction implements RenderInstruction {
+	int calls;
+	private final List<RenderInstruction> executedRenderInstructions;
+
+	DummyRenderInstruction() {
+		this(null);
+	}
+
+	/**
+	 * @param executedRenderInstructions
+	 *            the list to which this render instruction is added on each execution (may be null).
+	 */
+	DummyRenderInstruction(List<RenderInstruction> executedRenderInstructions) {
+		this.executedRenderInstructions = executedRenderInstructions;
+	}
+
+	@Override
+	public void destroy() {
+		// do nothing
+	}
+
+	@Override
+	public void renderNode(RenderCallback renderCallback, List<Tag> tags) {
+		execute();
+	}
+
+	@Override
+	public void renderWay(RenderCallback renderCallback, List<Tag> tags) {
+		execute();
+	}
+
+	@Override
+	public void scaleStrokeWidth(float scaleFactor) {
+		// do nothing
+	}
+
+	@Override
+	public void scaleTextSize(float scaleFactor) {
+		// do nothing
+	}
+
+	private void execute() {
+		++this.calls;
+		if (this.executedRenderInstructions != null) {
+			this.executedRenderInstructions.add(this);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * Tests the {@link MatchTable} class against matching the rule tree.
+ */
+public class MatchTableTest {
+	/**
+	 * The keys of the tags which a map database passes in addition to those referenced by tag IDs.
+	 */
+	private static final String[] IMPLICIT_KEYS = { "addr:housenumber", "ele", "name", "ref" };
+
+	private static final int NUMBER_OF_ELEMENTS = 300;
+
+	/**
+	 * Nested positive and negative rules with wildcards, implicit keys and limited zoom levels.
+	 */
+	private static final String RULES = "<rule e=\"way\" k=\"highway\" v=\"*\">"
+			+ "<rule e=\"way\" k=\"tunnel\" v=\"~|no\"><line/></rule>"
+			+ "<rule e=\"way\" k=\"tunnel\" v=\"yes\" zoom-min=\"12\"><line/><line/></rule>"
+			+ "<rule e=\"any\" k=\"name\" v=\"*\" zoom-max=\"15\"><caption/></rule></rule>"
+			+ "<rule e=\"way\" k=\"*\" v=\"yes\" closed=\"yes\"><area/></rule>"
+			+ "<rule e=\"node\" k=\"amenity|shop\" v=\"restaurant|bakery\"><symbol/>"
+			+ "<rule e=\"node\" k=\"name\" v=\"~\"><caption/></rule></rule>"
+			+ "<rule e=\"any\" k=\"building\" v=\"~|no|yes\" closed=\"no\"><line/></rule>"
+			+ "<rule e=\"node\" k=\"ele|ref\" v=\"*\" zoom-min=\"14\"><caption/></rule>"
+			+ "<rule e=\"any\" k=\"*\" v=\"*\" zoom-min=\"18\"><caption/></rule>";
+
+	private static final String UNKNOWN = "unknown";
+	private static final byte ZOOM_LEVEL_MAX = 21;
+
+	private static void assertEquivalent(RuleHandler ruleHandler, long seed) {
+		List<RenderInstruction> executedRenderInstructions = new ArrayList<RenderInstruction>();
+		ruleHandler.recordRenderInstructions(executedRenderInstructions);
+		Random random = new Random(seed);
+		Tag[] poiTags = createTags(ruleHandler, random);
+		Tag[] wayTags = createTags(ruleHandler, random);
+		String[] values = ruleHandler.values.toArray(new String[ruleHandler.values.size()]);
+		MatchTable matchTable = new MatchTable(ruleHandler.rules, poiTags, wayTags);
+		List<RenderInstruction> matchingList = new ArrayList<RenderInstruction>();
+
+		// the zoom levels are visited in random order, so that the lazily created tables are reused in between
+		int matches = 0;
+		for (int i = 0; i < NUMBER_OF_ELEMENTS * (ZOOM_LEVEL_MAX + 1); ++i) {
+			byte zoomLevel = (byte) random.nextInt(ZOOM_LEVEL_MAX + 1);
+			Element element = random.nextBoolean() ? Element.NODE : Element.WAY;
+			Closed closed = random.nextBoolean() ? Closed.YES : Closed.NO;
+			List<Tag> tags = createElement(random, element == Element.NODE ? poiTags : wayTags, values);
+
+			executedRenderInstructions.clear();
+			matchingList.clear();
+			for (int j = 0, n = ruleHandler.rules.size(); j < n; ++j) {
+				if (element == Element.NODE) {
+					ruleHandler.rules.get(j).matchNode(null, tags, zoomLevel);
+				} else {
+					ruleHandler.rules.get(j).matchWay(null, tags, zoomLevel, closed, matchingList);
+				}
+			}
+			List<RenderInstruction> expected = new ArrayList<RenderInstruction>(executedRenderInstructions);
+
+			executedRenderInstructions.clear();
+			matchingList.clear();
+			if (element == Element.NODE) {
+				matchTable.matchNode(null, tags, zoomLevel, matchingList);
+			} else {
+				matchTable.matchWay(null, tags, zoomLevel, closed, matchingList);
+			}
+			String message = element + " " + closed + " " + zoomLevel + " " + tags;
+			Assert.assertEquals(message, expected, executedRenderInstructions);
+			Assert.assertEquals(message, expected, matchingList);
+			matches += expected.size();
+		}
+		Assert.assertTrue(matches > 0);
+	}
+
+	/**
+	 * Creates an element with up to four random tags. Most of them are instances of the tag table, the others are
+	 * equal copies of them, implicit tags or unknown tags, which are all matched by their key and value.
+	 */
+	private static List<Tag> createElement(Random random, Tag[] tags, String[] values) {
+		List<Tag> element = new ArrayList<Tag>();
+		for (int i = random.nextInt(5); i > 0; --i) {
+			Tag tag = tags[random.nextInt(tags.length)];
+			switch (random.nextInt(8)) {
+				case 0:
+					element.add(new Tag(tag.key, tag.value));
+					break;
+				case 1:
+					element.add(new Tag(IMPLICIT_KEYS[random.nextInt(IMPLICIT_KEYS.length)],
+							values[random.nextInt(values.length)]));
+					break;
+				case 2:
+					element.add(new Tag(UNKNOWN, random.nextBoolean() ? UNKNOWN : tag.value));
+					break;
+				default:
+					element.add(tag);
+					break;
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Creates the tags of a map file in random order from the keys and values of the given rules, except for the
+	 * implicit keys.
+	 */
+	private static Tag[] createTags(RuleHandler ruleHandler, Random random) {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (String key : ruleHandler.keys) {
+			if (!isImplicitKey(key)) {
+				for (String value : ruleHandler.values) {
+					tags.add(new Tag(key, value));
+				}
+			}
+		}
+		tags.add(new Tag(UNKNOWN, UNKNOWN));
+		Collections.shuffle(tags, random);
+		return tags.toArray(new Tag[tags.size()]);
+	}
+
+	private static boolean isImplicitKey(String key) {
+		for (String implicitKey : IMPLICIT_KEYS) {
+			if (implicitKey.equals(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tests that a {@link MatchTable} executes the same render instructions in the same order as the rules of
+	 * {@link InternalRenderTheme#OSMARENDER} for random elements at all zoom levels.
+	 * 
+	 * @throws Exception
+	 *             if the render theme cannot be parsed.
+	 */
+	@Test
+	public void matchOsmarenderTest() throws Exception {
+		assertEquivalent(RuleHandler.parseOsmarender(new DummyRenderInstruction()), 1);
+	}
+
+	/**
+	 * Tests that a {@link MatchTable} executes the same render instructions in the same order as nested positive and
+	 * negative rules with wildcards, implicit keys and limited zoom levels.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void matchRulesTest() throws Exception {
+		assertEquivalent(RuleHandler.parse(RULES, new DummyRenderInstruction()), 2);
+	}
+}
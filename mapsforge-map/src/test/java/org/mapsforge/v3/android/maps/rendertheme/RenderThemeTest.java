@@ -0,0 +1,275 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.LazyTag;
+import org.mapsforge.v3.core.Tag;
+import org.xml.sax.SAXException;
+
+/**
+ * Tests the {@link RenderTheme} class.
+ */
+public class RenderThemeTest {
+	/**
+	 * The keys of the tags which a map database passes in addition to those referenced by tag IDs.
+	 */
+	private static final String[] IMPLICIT_KEYS = { "addr:housenumber", "ele", "name", "ref" };
+
+	private static final int NUMBER_OF_ELEMENTS = 500;
+	private static final Tag[] POI_TAGS = { new Tag("amenity", "restaurant"), new Tag("amenity", "bench"),
+			new Tag("place", "city"), new Tag("shop", "bakery") };
+	private static final Tag[] WAY_TAGS = { new Tag("highway", "primary"), new Tag("building", "yes"),
+			new Tag("railway", "rail"), new Tag("tunnel", "yes") };
+	private static final byte ZOOM_LEVEL_MAX = 21;
+
+	private static BitSet createBitSet(int... bitIndexes) {
+		BitSet bitSet = new BitSet();
+		for (int bitIndex : bitIndexes) {
+			bitSet.set(bitIndex);
+		}
+		return bitSet;
+	}
+
+	private static LazyTag createLazyTag(String key, String value) throws UnsupportedEncodingException {
+		return new LazyTag(key, value.getBytes("UTF-8"));
+	}
+
+	private static List<Tag> createNode(Tag tag) {
+		List<Tag> node = new ArrayList<Tag>();
+		node.add(new Tag("place", "city"));
+		node.add(tag);
+		return node;
+	}
+
+	private static List<Tag> createRejectedElement(Random random, Tag[] tags, BitSet requiredTagIds, String[] values) {
+		List<Tag> element = new ArrayList<Tag>();
+		for (int i = 1 + random.nextInt(3); i > 0; --i) {
+			int tagId = requiredTagIds.nextClearBit(random.nextInt(tags.length));
+			if (tagId < tags.length) {
+				element.add(tags[tagId]);
+			}
+		}
+		for (String implicitKey : IMPLICIT_KEYS) {
+			if (random.nextBoolean()) {
+				element.add(new Tag(implicitKey, values[random.nextInt(values.length)]));
+			}
+		}
+		return element;
+	}
+
+	private static RenderTheme createRenderTheme(String rules) throws IOException, ParserConfigurationException,
+			SAXException {
+		return RuleHandler.parse(rules, new DummyRenderInstruction()).createRenderTheme();
+	}
+
+	/**
+	 * Creates the tags of a map file from all keys and values of the given rules, except for the implicit keys.
+	 */
+	private static Tag[] createTags(RuleHandler ruleHandler) {
+		List<Tag> tags = new ArrayList<Tag>();
+		for (String key : ruleHandler.keys) {
+			if (!isImplicitKey(key)) {
+				for (String value : ruleHandler.values) {
+					tags.add(new Tag(key, value));
+				}
+			}
+		}
+		return tags.toArray(new Tag[tags.size()]);
+	}
+
+	private static boolean isImplicitKey(String key) {
+		for (String implicitKey : IMPLICIT_KEYS) {
+			if (implicitKey.equals(key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tests the {@link RenderTheme#getRequiredTagIds} method with rules for specific keys.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void getRequiredTagIdsTest() throws Exception {
+		RenderTheme renderTheme = createRenderTheme("<rule e=\"node\" k=\"amenity\" v=\"restaurant\"><symbol/></rule>"
+				+ "<rule e=\"way\" k=\"highway|railway\" v=\"*\"><line/></rule>"
+				+ "<rule e=\"any\" k=\"shop\" v=\"*\"><caption/></rule>");
+
+		// the values are not taken into account
+		Assert.assertEquals(createBitSet(0, 1, 3), renderTheme.getRequiredTagIds(POI_TAGS, Element.NODE, (byte) 0));
+		Assert.assertEquals(createBitSet(0, 2), renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+	}
+
+	/**
+	 * Tests the {@link RenderTheme#getRequiredTagIds} method with rules for the keys of tags which are not represented
+	 * by tag IDs.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void getRequiredTagIdsImplicitKeysTest() throws Exception {
+		for (String implicitKey : IMPLICIT_KEYS) {
+			RenderTheme renderTheme = createRenderTheme("<rule e=\"node\" k=\"" + implicitKey
+					+ "\" v=\"*\"><caption/></rule>");
+			Assert.assertNull(renderTheme.getRequiredTagIds(POI_TAGS, Element.NODE, (byte) 0));
+			Assert.assertEquals(new BitSet(), renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+		}
+
+		RenderTheme renderTheme = createRenderTheme("<rule e=\"way\" k=\"*\" v=\"*\"><line/></rule>");
+		Assert.assertNull(renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+
+		// an implicit key in a sub-rule is restricted by the parent rule
+		renderTheme = createRenderTheme("<rule e=\"node\" k=\"place\" v=\"*\">"
+				+ "<rule e=\"node\" k=\"name\" v=\"*\"><caption/></rule></rule>");
+		Assert.assertEquals(createBitSet(2), renderTheme.getRequiredTagIds(POI_TAGS, Element.NODE, (byte) 0));
+	}
+
+	/**
+	 * Tests the {@link RenderTheme#getRequiredTagIds} method with negative rules.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void getRequiredTagIdsNegativeTest() throws Exception {
+		// a negative rule also matches elements without any of its keys
+		RenderTheme renderTheme = createRenderTheme("<rule e=\"way\" k=\"tunnel\" v=\"~|no\"><line/></rule>");
+		Assert.assertNull(renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+
+		renderTheme = createRenderTheme("<rule e=\"way\" k=\"highway\" v=\"*\">"
+				+ "<rule e=\"way\" k=\"tunnel\" v=\"~|no\"><line/></rule></rule>");
+		Assert.assertEquals(createBitSet(0), renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+
+		renderTheme = createRenderTheme("<rule e=\"way\" k=\"tunnel\" v=\"~|no\">"
+				+ "<rule e=\"way\" k=\"railway\" v=\"rail\"><line/></rule></rule>");
+		Assert.assertEquals(createBitSet(2), renderTheme.getRequiredTagIds(WAY_TAGS, Element.WAY, (byte) 0));
+	}
+
+	/**
+	 * Tests the {@link RenderTheme#getRequiredTagIds} method with rules for limited zoom levels.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void getRequiredTagIdsZoomLevelTest() throws Exception {
+		RenderTheme renderTheme = createRenderTheme("<rule e=\"node\" k=\"place\" v=\"*\" zoom-min=\"5\" "
+				+ "zoom-max=\"10\"><caption/></rule><rule e=\"node\" k=\"name\" v=\"*\" zoom-min=\"14\"><caption/>"
+				+ "</rule>");
+
+		for (byte zoomLevel = 0; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			BitSet requiredTagIds = renderTheme.getRequiredTagIds(POI_TAGS, Element.NODE, zoomLevel);
+			if (zoomLevel >= 14) {
+				Assert.assertNull(requiredTagIds);
+			} else if (zoomLevel >= 5 && zoomLevel <= 10) {
+				Assert.assertEquals(createBitSet(2), requiredTagIds);
+			} else {
+				Assert.assertEquals(new BitSet(), requiredTagIds);
+			}
+		}
+	}
+
+	/**
+	 * Tests that the tags which are rejected by {@link RenderTheme#getRequiredTagIds} can never trigger a render
+	 * instruction of {@link InternalRenderTheme#OSMARENDER}, regardless of the implicit tags of an element.
+	 * 
+	 * @throws Exception
+	 *             if the render theme cannot be parsed.
+	 */
+	@Test
+	public void getRequiredTagIdsOsmarenderTest() throws Exception {
+		DummyRenderInstruction dummyRenderInstruction = new DummyRenderInstruction();
+		RuleHandler ruleHandler = RuleHandler.parseOsmarender(dummyRenderInstruction);
+		RenderTheme renderTheme = ruleHandler.createRenderTheme();
+		Tag[] tags = createTags(ruleHandler);
+		String[] values = ruleHandler.values.toArray(new String[ruleHandler.values.size()]);
+		List<RenderInstruction> matchingList = new ArrayList<RenderInstruction>();
+		Random random = new Random(1);
+
+		int filteredZoomLevels = 0;
+		for (byte zoomLevel = 0; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			for (Element element : new Element[] { Element.NODE, Element.WAY }) {
+				BitSet requiredTagIds = renderTheme.getRequiredTagIds(tags, element, zoomLevel);
+				if (requiredTagIds == null) {
+					continue;
+				}
+				++filteredZoomLevels;
+
+				for (int i = 0; i < NUMBER_OF_ELEMENTS; ++i) {
+					List<Tag> rejectedElement = createRejectedElement(random, tags, requiredTagIds, values);
+					for (int j = 0, n = ruleHandler.rules.size(); j < n; ++j) {
+						Rule rule = ruleHandler.rules.get(j);
+						if (element == Element.NODE) {
+							rule.matchNode(null, rejectedElement, zoomLevel);
+						} else {
+							rule.matchWay(null, rejectedElement, zoomLevel, Closed.YES, matchingList);
+							rule.matchWay(null, rejectedElement, zoomLevel, Closed.NO, matchingList);
+						}
+					}
+					Assert.assertEquals(rejectedElement.toString(), 0, dummyRenderInstruction.calls);
+				}
+			}
+		}
+		Assert.assertTrue(filteredZoomLevels > 0);
+	}
+
+	/**
+	 * Tests that lazy tags are only matched by their key and that their values are neither decoded nor part of the
+	 * matching cache key.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void matchNodeLazyTagsTest() throws Exception {
+		DummyRenderInstruction dummyRenderInstruction = new DummyRenderInstruction();
+		RenderTheme renderTheme = RuleHandler.parse("<rule e=\"node\" k=\"name\" v=\"*\"><caption/></rule>"
+				+ "<rule e=\"node\" k=\"name\" v=\"Berlin\"><symbol/></rule>", dummyRenderInstruction)
+				.createRenderTheme();
+
+		renderTheme.matchNode(null, createNode(new Tag("name", "Berlin")), (byte) 10);
+		Assert.assertEquals(2, dummyRenderInstruction.calls);
+
+		LazyTag lazyTag1 = createLazyTag("name", "Berlin");
+		renderTheme.matchNode(null, createNode(lazyTag1), (byte) 10);
+		Assert.assertEquals(3, dummyRenderInstruction.calls);
+
+		long hits = renderTheme.getMatchingCacheStatistics().hits;
+		LazyTag lazyTag2 = createLazyTag("name", "Hamburg");
+		renderTheme.matchNode(null, createNode(lazyTag2), (byte) 10);
+		Assert.assertEquals(4, dummyRenderInstruction.calls);
+		Assert.assertEquals(hits + 1, renderTheme.getMatchingCacheStatistics().hits);
+
+		Assert.assertFalse(lazyTag1.isDecoded());
+		Assert.assertFalse(lazyTag2.isDecoded());
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.Stack;
+import java.util.TreeSet;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Builds the rule tree of a render theme like the {@link RenderThemeHandler}, but replaces all render instructions with
+ * the given one. It also collects all keys and values which are used by the rules.
+ */
+class RuleHandler extends DefaultHandler {
+	private static final String ELEMENT_NAME_RULE = "rule";
+	private static final String OSMARENDER_FILE = "osmarender.xml";
+
+	/**
+	 * Parses the rules of the given render theme.
+	 * 
+	 * @param inputStream
+	 *            the XML data of the render theme.
+	 * @param renderInstruction
+	 *            the render instruction which replaces all render instructions of the theme.
+	 * @return the handler with the parsed rules.
+	 * @throws IOException
+	 *             if the render theme cannot be read.
+	 * @throws ParserConfigurationException
+	 *             if the XML parser cannot be created.
+	 * @throws SAXException
+	 *             if the render theme cannot be parsed.
+	 */
+	static RuleHandler parse(InputStream inputStream, RenderInstruction renderInstruction) throws IOException,
+			ParserConfigurationException, SAXException {
+		SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+		saxParserFactory.setNamespaceAware(true);
+		XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
+		RuleHandler ruleHandler = new RuleHandler(renderInstruction);
+		xmlReader.setContentHandler(ruleHandler);
+		xmlReader.parse(new InputSource(inputStream));
+		return ruleHandler;
+	}
+
+	/**
+	 * Parses the given rules, which are wrapped into a root element.
+	 * 
+	 * @param rules
+	 *            the XML elements of the rules.
+	 * @param renderInstruction
+	 *            the render instruction which replaces all render instructions of the rules.
+	 * @return the handler with the parsed rules.
+	 * @throws IOException
+	 *             if the rules cannot be read.
+	 * @throws ParserConfigurationException
+	 *             if the XML parser cannot be created.
+	 * @throws SAXException
+	 *             if the rules cannot be parsed.
+	 */
+	static RuleHandler parse(String rules, RenderInstruction renderInstruction) throws IOException,
+			ParserConfigurationException, SAXException {
+		String renderTheme = "<rendertheme>" + rules + "</rendertheme>";
+		return parse(new ByteArrayInputStream(getBytes(renderTheme)), renderInstruction);
+	}
+
+	/**
+	 * Parses the rules of {@link InternalRenderTheme#OSMARENDER}.
+	 * 
+	 * @param renderInstruction
+	 *            the render instruction which replaces all render instructions of the theme.
+	 * @return the handler with the parsed rules.
+	 * @throws IOException
+	 *             if the render theme cannot be read.
+	 * @throws ParserConfigurationException
+	 *             if the XML parser cannot be created.
+	 * @throws SAXException
+	 *             if the render theme cannot be parsed.
+	 */
+	static RuleHandler parseOsmarender(RenderInstruction renderInstruction) throws IOException,
+			ParserConfigurationException, SAXException {
+		String path = InternalRenderTheme.OSMARENDER.getRelativePathPrefix() + OSMARENDER_FILE;
+		InputStream inputStream = InternalRenderTheme.class.getResourceAsStream(path);
+		if (inputStream == null) {
+			throw new IOException("render theme not found: " + path);
+		}
+		try {
+			return parse(inputStream, renderInstruction);
+		} finally {
+			inputStream.close();
+		}
+	}
+
+	private static void addRecordingRenderInstructions(List<Rule> rules,
+			List<RenderInstruction> executedRenderInstructions) {
+		for (int i = 0, n = rules.size(); i < n; ++i) {
+			Rule rule = rules.get(i);
+			for (int j = 0, m = rule.renderInstructions.size(); j < m; ++j) {
+				rule.renderInstructions.set(j, new DummyRenderInstruction(executedRenderInstructions));
+			}
+			addRecordingRenderInstructions(rule.subRules, executedRenderInstructions);
+		}
+	}
+
+	private static byte[] getBytes(String string) {
+		try {
+			return string.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * The keys of all rules, except for the wildcard.
+	 */
+	final SortedSet<String> keys;
+
+	/**
+	 * The top-level rules of the render theme.
+	 */
+	final List<Rule> rules;
+
+	/**
+	 * The values of all rules, except for the wildcard and the negation.
+	 */
+	final SortedSet<String> values;
+
+	private final RenderInstruction renderInstruction;
+	private final Stack<Rule> ruleStack;
+
+	private RuleHandler(RenderInstruction renderInstruction) {
+		super();
+		this.renderInstruction = renderInstruction;
+		this.keys = new TreeSet<String>();
+		this.rules = new ArrayList<Rule>();
+		this.ruleStack = new Stack<Rule>();
+		this.values = new TreeSet<String>();
+	}
+
+	@Override
+	public void endDocument() {
+		for (int i = 0, n = this.rules.size(); i < n; ++i) {
+			this.rules.get(i).onComplete();
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) {
+		if (ELEMENT_NAME_RULE.equals(localName)) {
+			this.ruleStack.pop();
+		}
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) {
+		if (ELEMENT_NAME_RULE.equals(localName)) {
+			Rule rule = Rule.create(localName, attributes, this.ruleStack);
+			if (this.ruleStack.empty()) {
+				this.rules.add(rule);
+			} else {
+				this.ruleStack.peek().addSubRule(rule);
+			}
+			this.ruleStack.push(rule);
+
+			this.keys.addAll(Arrays.asList(attributes.getValue("k").split("\\|")));
+			this.keys.remove("*");
+			this.values.addAll(Arrays.asList(attributes.getValue("v").split("\\|")));
+			this.values.remove("*");
+			this.values.remove("~");
+		} else if (!this.ruleStack.empty()) {
+			this.ruleStack.peek().addRenderingInstruction(this.renderInstruction);
+		}
+	}
+
+	/**
+	 * Creates a render theme with the parsed rules, which have already been completed.
+	 * 
+	 * @return the new render theme.
+	 */
+	RenderTheme createRenderTheme() {
+		RenderTheme renderTheme = new RenderTheme(0, 1, 1);
+		for (int i = 0, n = this.rules.size(); i < n; ++i) {
+			renderTheme.addRule(this.rules.get(i));
+		}
+		return renderTheme;
+	}
+
+	/**
+	 * Replaces the render instructions of all parsed rules with separate instances, which add themselves to the given
+	 * list on each execution. This allows to compare the executed render instructions including their order.
+	 * 
+	 * @param executedRenderInstructions
+	 *            the list to which the executed render instructions are added.
+	 */
+	void recordRenderInstructions(List<RenderInstruction> executedRenderInstructions) {
+		addRecordingRenderInstructions(this.rules, executedRenderInstructions);
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforge.v3.android.maps.rendertheme;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.mapsforge.v3.android.maps.rendertheme.renderinstruction.RenderInstruction;
+import org.mapsforge.v3.core.Tag;
+
+/**
+ * Tests the {@link RuleIndex} class against matching the rule tree.
+ */
+public class RuleIndexTest {
+	private static final int NUMBER_OF_ELEMENTS = 300;
+
+	/**
+	 * Nested positive and negative rules with wildcards and limited zoom levels.
+	 */
+	private static final String RULES = "<rule e=\"way\" k=\"highway\" v=\"*\">"
+			+ "<rule e=\"way\" k=\"tunnel\" v=\"~|no\"><line/></rule>"
+			+ "<rule e=\"way\" k=\"tunnel\" v=\"yes\" zoom-min=\"12\"><line/><line/></rule>"
+			+ "<rule e=\"any\" k=\"name\" v=\"*\" zoom-max=\"15\"><caption/></rule></rule>"
+			+ "<rule e=\"way\" k=\"*\" v=\"yes\" closed=\"yes\"><area/></rule>"
+			+ "<rule e=\"node\" k=\"amenity|shop\" v=\"restaurant|bakery\"><symbol/>"
+			+ "<rule e=\"node\" k=\"name\" v=\"~\"><caption/></rule></rule>"
+			+ "<rule e=\"any\" k=\"building\" v=\"~|no|yes\" closed=\"no\"><line/></rule>"
+			+ "<rule e=\"any\" k=\"*\" v=\"*\" zoom-min=\"18\"><caption/></rule>";
+
+	private static final String UNKNOWN = "unknown";
+	private static final byte ZOOM_LEVEL_MAX = 21;
+
+	private static void assertEquivalent(RuleHandler ruleHandler, long seed) {
+		List<RenderInstruction> executedRenderInstructions = new ArrayList<RenderInstruction>();
+		ruleHandler.recordRenderInstructions(executedRenderInstructions);
+		String[] keys = ruleHandler.keys.toArray(new String[ruleHandler.keys.size()]);
+		String[] values = ruleHandler.values.toArray(new String[ruleHandler.values.size()]);
+		List<RenderInstruction> matchingList = new ArrayList<RenderInstruction>();
+		Random random = new Random(seed);
+
+		int matches = 0;
+		for (byte zoomLevel = 0; zoomLevel <= ZOOM_LEVEL_MAX; ++zoomLevel) {
+			for (Element element : new Element[] { Element.NODE, Element.WAY }) {
+				for (Closed closed : new Closed[] { Closed.NO, Closed.YES }) {
+					RuleIndex ruleIndex = RuleIndex.create(ruleHandler.rules, element, closed, zoomLevel);
+					for (int i = 0; i < NUMBER_OF_ELEMENTS; ++i) {
+						List<Tag> tags = createElement(random, keys, values);
+
+						executedRenderInstructions.clear();
+						matchTree(ruleHandler.rules, element, closed, tags, zoomLevel, matchingList);
+						List<RenderInstruction> expected = new ArrayList<RenderInstruction>(executedRenderInstructions);
+
+						executedRenderInstructions.clear();
+						matchingList.clear();
+						if (ruleIndex != null && element == Element.NODE) {
+							ruleIndex.matchNode(null, tags, matchingList);
+						} else if (ruleIndex != null) {
+							ruleIndex.matchWay(null, tags, matchingList);
+						}
+						String message = element + " " + closed + " " + zoomLevel + " " + tags;
+						Assert.assertEquals(message, expected, executedRenderInstructions);
+						Assert.assertEquals(message, expected, matchingList);
+						matches += expected.size();
+					}
+				}
+			}
+		}
+		Assert.assertTrue(matches > 0);
+	}
+
+	/**
+	 * Creates an element with up to four random tags from the given keys and values, some of which are unknown.
+	 */
+	private static List<Tag> createElement(Random random, String[] keys, String[] values) {
+		List<Tag> element = new ArrayList<Tag>();
+		for (int i = random.nextInt(5); i > 0; --i) {
+			String key = random.nextInt(10) == 0 ? UNKNOWN : keys[random.nextInt(keys.length)];
+			String value = random.nextInt(10) == 0 ? UNKNOWN : values[random.nextInt(values.length)];
+			element.add(new Tag(key, value));
+		}
+		return element;
+	}
+
+	private static void matchTree(List<Rule> rules, Element element, Closed closed, List<Tag> tags, byte zoomLevel,
+			List<RenderInstruction> matchingList) {
+		for (int i = 0, n = rules.size(); i < n; ++i) {
+			if (element == Element.NODE) {
+				rules.get(i).matchNode(null, tags, zoomLevel);
+			} else {
+				rules.get(i).matchWay(null, tags, zoomLevel, closed, matchingList);
+			}
+		}
+	}
+
+	/**
+	 * Tests that a {@link RuleIndex} executes the same render instructions in the same order as the rules of
+	 * {@link InternalRenderTheme#OSMARENDER} for random elements at all zoom levels.
+	 * 
+	 * @throws Exception
+	 *             if the render theme cannot be parsed.
+	 */
+	@Test
+	public void matchOsmarenderTest() throws Exception {
+		assertEquivalent(RuleHandler.parseOsmarender(new DummyRenderInstruction()), 1);
+	}
+
+	/**
+	 * Tests that a {@link RuleIndex} executes the same render instructions in the same order as nested positive and
+	 * negative rules with wildcards and limited zoom levels.
+	 * 
+	 * @throws Exception
+	 *             if the rules cannot be parsed.
+	 */
+	@Test
+	public void matchRulesTest() throws Exception {
+		assertEquivalent(RuleHandler.parse(RULES, new DummyRenderInstruction()), 2);
+	}
+}